@@ -8876,7 +8876,8 @@ CREATE TABLE basic_parameter (
     hideorderedproductworkplan boolean DEFAULT false,
     selectiontasksbyorderdateinterminal boolean DEFAULT false,
     showprogress boolean DEFAULT false,
-    showdelays boolean DEFAULT false
+    showdelays boolean DEFAULT false,
+    postwarehousedocumentsasynchronously boolean DEFAULT false
 );
 
 
@@ -16422,7 +16423,9 @@ CREATE SEQUENCE materialflowresources_resourcedto_id_seq
 CREATE TABLE materialflowresources_resourcestock (
     id bigint NOT NULL,
     location_id bigint,
-    product_id bigint
+    product_id bigint,
+    quantity numeric(14,5),
+    quantityinadditionalunit numeric(14,5)
 );
 
 
@@ -16445,6 +16448,37 @@ CREATE SEQUENCE materialflowresources_resourcestock_id_seq
 ALTER SEQUENCE materialflowresources_resourcestock_id_seq OWNED BY materialflowresources_resourcestock.id;
 
 
+--
+-- Name: deliveriesminstate_replenishmentchange; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE deliveriesminstate_replenishmentchange (
+    id bigint NOT NULL,
+    location_id bigint,
+    product_id bigint,
+    changenumber integer DEFAULT 0 NOT NULL
+);
+
+
+--
+-- Name: deliveriesminstate_replenishmentchange_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE deliveriesminstate_replenishmentchange_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: deliveriesminstate_replenishmentchange_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE deliveriesminstate_replenishmentchange_id_seq OWNED BY deliveriesminstate_replenishmentchange.id;
+
+
 --
 -- Name: warehouseminimalstate_warehouseminimumstate; Type: TABLE; Schema: public; Owner: -
 --
@@ -16474,11 +16508,9 @@ CREATE VIEW materialflowresources_resourcestockdto AS
             sum(warehouseminimalstate_warehouseminimumstate.minimumstate) AS quantity
            FROM warehouseminimalstate_warehouseminimumstate
           GROUP BY warehouseminimalstate_warehouseminimumstate.product_id, warehouseminimalstate_warehouseminimumstate.location_id
-        ), quantities AS (
+        ), total_values AS (
          SELECT materialflowresources_resource.product_id,
             materialflowresources_resource.location_id,
-            sum(materialflowresources_resource.quantity) AS quantity,
-            sum(materialflowresources_resource.quantityinadditionalunit) AS quantityinadditionalunit,
             sum((materialflowresources_resource.quantity * materialflowresources_resource.price)) AS totalvalue
            FROM materialflowresources_resource
           GROUP BY materialflowresources_resource.product_id, materialflowresources_resource.location_id
@@ -16502,21 +16534,21 @@ CREATE VIEW materialflowresources_resourcestockdto AS
     (rs.product_id)::integer AS product_id,
     COALESCE(oq.quantity, (0)::numeric) AS orderedquantity,
     COALESCE(ms.quantity, (0)::numeric) AS minimumstate,
-    COALESCE(q.quantity, (0)::numeric) AS quantity,
-    COALESCE(q.quantityinadditionalunit, (0)::numeric) AS quantityinadditionalunit,
+    COALESCE(rs.quantity, (0)::numeric) AS quantity,
+    COALESCE(rs.quantityinadditionalunit, (0)::numeric) AS quantityinadditionalunit,
     COALESCE(rq.quantity, (0)::numeric) AS reservedquantity,
-    (COALESCE(q.quantity, (0)::numeric) - COALESCE(rq.quantity, (0)::numeric)) AS availablequantity,
+    (COALESCE(rs.quantity, (0)::numeric) - COALESCE(rq.quantity, (0)::numeric)) AS availablequantity,
     location.number AS locationnumber,
     location.name AS locationname,
     product.number AS productnumber,
     product.name AS productname,
     product.unit AS productunit,
-    COALESCE(q.totalvalue, (0)::numeric) AS totalvalue,
+    COALESCE(tv.totalvalue, (0)::numeric) AS totalvalue,
     family.number AS familynumber
    FROM (((((((materialflowresources_resourcestock rs
      LEFT JOIN ordered_quantities oq ON (((oq.product_id = rs.product_id) AND (oq.location_id = rs.location_id))))
      LEFT JOIN minimum_states ms ON (((ms.product_id = rs.product_id) AND (ms.location_id = rs.location_id))))
-     LEFT JOIN quantities q ON (((q.product_id = rs.product_id) AND (q.location_id = rs.location_id))))
+     LEFT JOIN total_values tv ON (((tv.product_id = rs.product_id) AND (tv.location_id = rs.location_id))))
      LEFT JOIN reserved_quantities rq ON (((rq.product_id = rs.product_id) AND (rq.location_id = rs.location_id))))
      JOIN materialflow_location location ON ((location.id = rs.location_id)))
      JOIN basic_product product ON ((product.id = rs.product_id)))
@@ -18604,6 +18636,37 @@ CREATE SEQUENCE ordersupplies_columnforcoverages_id_seq
 ALTER SEQUENCE ordersupplies_columnforcoverages_id_seq OWNED BY ordersupplies_columnforcoverages.id;
 
 
+--
+-- Name: ordersupplies_coveragegeneration; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE ordersupplies_coveragegeneration (
+    id bigint NOT NULL,
+    materialrequirementcoverage_id bigint,
+    criteria text,
+    snapshotxmin bigint
+);
+
+
+--
+-- Name: ordersupplies_coveragegeneration_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE ordersupplies_coveragegeneration_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: ordersupplies_coveragegeneration_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE ordersupplies_coveragegeneration_id_seq OWNED BY ordersupplies_coveragegeneration.id;
+
+
 --
 -- Name: ordersupplies_coveragelocation; Type: TABLE; Schema: public; Owner: -
 --
@@ -18667,6 +18730,36 @@ CREATE SEQUENCE ordersupplies_coverageorderstate_id_seq
 ALTER SEQUENCE ordersupplies_coverageorderstate_id_seq OWNED BY ordersupplies_coverageorderstate.id;
 
 
+--
+-- Name: ordersupplies_coverageproductchange; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE ordersupplies_coverageproductchange (
+    id bigint NOT NULL,
+    product_id bigint,
+    changetxid bigint
+);
+
+
+--
+-- Name: ordersupplies_coverageproductchange_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE ordersupplies_coverageproductchange_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: ordersupplies_coverageproductchange_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE ordersupplies_coverageproductchange_id_seq OWNED BY ordersupplies_coverageproductchange.id;
+
+
 --
 -- Name: ordersupplies_coverageproduct_id_seq; Type: SEQUENCE; Schema: public; Owner: -
 --
@@ -19678,6 +19771,44 @@ CREATE SEQUENCE productflowthrudivision_productandquantityhelper_id_seq
 ALTER SEQUENCE productflowthrudivision_productandquantityhelper_id_seq OWNED BY productflowthrudivision_productandquantityhelper.id;
 
 
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsposting; Type: TABLE; Schema: public; Owner: -
+--
+
+CREATE TABLE productflowthrudivision_productiontrackingdocumentsposting (
+    id bigint NOT NULL,
+    productiontracking_id bigint,
+    state character varying(255) DEFAULT '01pending'::character varying,
+    attempts integer DEFAULT 0,
+    failcause text,
+    postdate timestamp without time zone,
+    createdate timestamp without time zone,
+    updatedate timestamp without time zone,
+    createuser character varying(255),
+    updateuser character varying(255),
+    entityversion bigint DEFAULT 0
+);
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsposting_id_seq; Type: SEQUENCE; Schema: public; Owner: -
+--
+
+CREATE SEQUENCE productflowthrudivision_productiontrackingdocumentsposting_id_seq
+    START WITH 1
+    INCREMENT BY 1
+    NO MINVALUE
+    NO MAXVALUE
+    CACHE 1;
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsposting_id_seq; Type: SEQUENCE OWNED BY; Schema: public; Owner: -
+--
+
+ALTER SEQUENCE productflowthrudivision_productiontrackingdocumentsposting_id_seq OWNED BY productflowthrudivision_productiontrackingdocumentsposting.id;
+
+
 --
 -- Name: productflowthrudivision_productstoissue; Type: TABLE; Schema: public; Owner: -
 --
@@ -27044,6 +27175,13 @@ ALTER TABLE ONLY materialflowresources_resourcecorrection ALTER COLUMN id SET DE
 ALTER TABLE ONLY materialflowresources_resourcestock ALTER COLUMN id SET DEFAULT nextval('materialflowresources_resourcestock_id_seq'::regclass);
 
 
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY deliveriesminstate_replenishmentchange ALTER COLUMN id SET DEFAULT nextval('deliveriesminstate_replenishmentchange_id_seq'::regclass);
+
+
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -27324,6 +27462,13 @@ ALTER TABLE ONLY ordersgroups_ordersgroup ALTER COLUMN id SET DEFAULT nextval('o
 ALTER TABLE ONLY ordersupplies_columnforcoverages ALTER COLUMN id SET DEFAULT nextval('ordersupplies_columnforcoverages_id_seq'::regclass);
 
 
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY ordersupplies_coveragegeneration ALTER COLUMN id SET DEFAULT nextval('ordersupplies_coveragegeneration_id_seq'::regclass);
+
+
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -27338,6 +27483,13 @@ ALTER TABLE ONLY ordersupplies_coveragelocation ALTER COLUMN id SET DEFAULT next
 ALTER TABLE ONLY ordersupplies_coverageorderstate ALTER COLUMN id SET DEFAULT nextval('ordersupplies_coverageorderstate_id_seq'::regclass);
 
 
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY ordersupplies_coverageproductchange ALTER COLUMN id SET DEFAULT nextval('ordersupplies_coverageproductchange_id_seq'::regclass);
+
+
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -27492,6 +27644,13 @@ ALTER TABLE ONLY productflowthrudivision_materialavailability ALTER COLUMN id SE
 ALTER TABLE ONLY productflowthrudivision_productandquantityhelper ALTER COLUMN id SET DEFAULT nextval('productflowthrudivision_productandquantityhelper_id_seq'::regclass);
 
 
+--
+-- Name: id; Type: DEFAULT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsposting ALTER COLUMN id SET DEFAULT nextval('productflowthrudivision_productiontrackingdocumentsposting_id_seq'::regclass);
+
+
 --
 -- Name: id; Type: DEFAULT; Schema: public; Owner: -
 --
@@ -33824,6 +33983,21 @@ COPY materialflowresources_resourcestock (id, location_id, product_id) FROM stdi
 SELECT pg_catalog.setval('materialflowresources_resourcestock_id_seq', 1, false);
 
 
+--
+-- Data for Name: deliveriesminstate_replenishmentchange; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY deliveriesminstate_replenishmentchange (id, location_id, product_id, changenumber) FROM stdin;
+\.
+
+
+--
+-- Name: deliveriesminstate_replenishmentchange_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('deliveriesminstate_replenishmentchange_id_seq', 1, false);
+
+
 --
 -- Name: materialflowresources_resourcestockdto_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
 --
@@ -34558,6 +34732,21 @@ COPY ordersupplies_columnforcoverages (id, identifier, name, description, column
 SELECT pg_catalog.setval('ordersupplies_columnforcoverages_id_seq', 12, true);
 
 
+--
+-- Data for Name: ordersupplies_coveragegeneration; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY ordersupplies_coveragegeneration (id, materialrequirementcoverage_id, criteria, snapshotxmin) FROM stdin;
+\.
+
+
+--
+-- Name: ordersupplies_coveragegeneration_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('ordersupplies_coveragegeneration_id_seq', 1, false);
+
+
 --
 -- Data for Name: ordersupplies_coveragelocation; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -34588,6 +34777,21 @@ COPY ordersupplies_coverageorderstate (id, materialrequirementcoverage_id, param
 SELECT pg_catalog.setval('ordersupplies_coverageorderstate_id_seq', 1, false);
 
 
+--
+-- Data for Name: ordersupplies_coverageproductchange; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY ordersupplies_coverageproductchange (id, product_id, changetxid) FROM stdin;
+\.
+
+
+--
+-- Name: ordersupplies_coverageproductchange_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('ordersupplies_coverageproductchange_id_seq', 1, false);
+
+
 --
 -- Data for Name: ordersupplies_coverageproduct; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -34976,6 +35180,21 @@ COPY productflowthrudivision_productandquantityhelper (id, product_id, location_
 SELECT pg_catalog.setval('productflowthrudivision_productandquantityhelper_id_seq', 1, false);
 
 
+--
+-- Data for Name: productflowthrudivision_productiontrackingdocumentsposting; Type: TABLE DATA; Schema: public; Owner: -
+--
+
+COPY productflowthrudivision_productiontrackingdocumentsposting (id, productiontracking_id, state, attempts, failcause, postdate, createdate, updatedate, createuser, updateuser, entityversion) FROM stdin;
+\.
+
+
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsposting_id_seq; Type: SEQUENCE SET; Schema: public; Owner: -
+--
+
+SELECT pg_catalog.setval('productflowthrudivision_productiontrackingdocumentsposting_id_seq', 1, false);
+
+
 --
 -- Data for Name: productflowthrudivision_productstoissue; Type: TABLE DATA; Schema: public; Owner: -
 --
@@ -40429,6 +40648,22 @@ ALTER TABLE ONLY materialflowresources_resourcestock
     ADD CONSTRAINT materialflowresources_resourcestock_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: deliveriesminstate_replenishmentchange_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY deliveriesminstate_replenishmentchange
+    ADD CONSTRAINT deliveriesminstate_replenishmentchange_pkey PRIMARY KEY (id);
+
+
+--
+-- Name: replenishmentchange_location_product_key; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY deliveriesminstate_replenishmentchange
+    ADD CONSTRAINT replenishmentchange_location_product_key UNIQUE (location_id, product_id);
+
+
 --
 -- Name: materialflowresources_stocktaking_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -40757,6 +40992,22 @@ ALTER TABLE ONLY ordersupplies_columnforcoverages
     ADD CONSTRAINT ordersupplies_columnforcoverages_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: ordersupplies_coveragegeneration_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY ordersupplies_coveragegeneration
+    ADD CONSTRAINT ordersupplies_coveragegeneration_pkey PRIMARY KEY (id);
+
+
+--
+-- Name: ordersupplies_coveragegeneration_materialrequirementcoverage_id_key; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY ordersupplies_coveragegeneration
+    ADD CONSTRAINT ordersupplies_coveragegeneration_materialrequirementcoverage_id_key UNIQUE (materialrequirementcoverage_id);
+
+
 --
 -- Name: ordersupplies_coveragelocation_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -40773,6 +41024,22 @@ ALTER TABLE ONLY ordersupplies_coverageorderstate
     ADD CONSTRAINT ordersupplies_coverageorderstate_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: ordersupplies_coverageproductchange_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY ordersupplies_coverageproductchange
+    ADD CONSTRAINT ordersupplies_coverageproductchange_pkey PRIMARY KEY (id);
+
+
+--
+-- Name: ordersupplies_coverageproductchange_product_id_key; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY ordersupplies_coverageproductchange
+    ADD CONSTRAINT ordersupplies_coverageproductchange_product_id_key UNIQUE (product_id);
+
+
 --
 -- Name: ordersupplies_coverageproduct_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -40981,6 +41248,14 @@ ALTER TABLE ONLY productflowthrudivision_productandquantityhelper
     ADD CONSTRAINT productflowthrudivision_productandquantityhelper_pkey PRIMARY KEY (id);
 
 
+--
+-- Name: productflowthrudivision_productiontrackingdocumentsposting_pkey; Type: CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsposting
+    ADD CONSTRAINT productflowthrudivision_productiontrackingdocumentsposting_pkey PRIMARY KEY (id);
+
+
 --
 -- Name: productflowthrudivision_productstoissue_pkey; Type: CONSTRAINT; Schema: public; Owner: -
 --
@@ -42028,6 +42303,20 @@ ALTER TABLE ONLY zmbak_tpctable
 CREATE INDEX arch_assignmenttoshift_staffassignmenttoshif_masterorder_id_idx ON arch_assignmenttoshift_staffassignmenttoshift USING btree (masterorder_id);
 
 
+--
+-- Name: productflowthrudivision_ptdposting_state_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX productflowthrudivision_ptdposting_state_idx ON productflowthrudivision_productiontrackingdocumentsposting USING btree (state);
+
+
+--
+-- Name: productflowthrudivision_ptdposting_productiontracking_id_idx; Type: INDEX; Schema: public; Owner: -
+--
+
+CREATE INDEX productflowthrudivision_ptdposting_productiontracking_id_idx ON productflowthrudivision_productiontrackingdocumentsposting USING btree (productiontracking_id);
+
+
 --
 -- Name: arch_basicproductioncounting__technologyoperationcomponent__idx; Type: INDEX; Schema: public; Owner: -
 --
@@ -44131,6 +44420,30 @@ CREATE TRIGGER materialflowresources_document_trigger_number BEFORE INSERT ON ma
 CREATE TRIGGER repairs_repairorder_trigger_number BEFORE INSERT ON repairs_repairorder FOR EACH ROW EXECUTE PROCEDURE generate_and_set_repairorder_number_trigger();
 
 
+--
+-- Name: productiontrackingdocumentsposting_productiontracking_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY productflowthrudivision_productiontrackingdocumentsposting
+    ADD CONSTRAINT productiontrackingdocumentsposting_productiontracking_fkey FOREIGN KEY (productiontracking_id) REFERENCES productioncounting_productiontracking(id) DEFERRABLE;
+
+
+--
+-- Name: replenishmentchange_location_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY deliveriesminstate_replenishmentchange
+    ADD CONSTRAINT replenishmentchange_location_fkey FOREIGN KEY (location_id) REFERENCES materialflow_location(id) DEFERRABLE;
+
+
+--
+-- Name: replenishmentchange_product_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
+--
+
+ALTER TABLE ONLY deliveriesminstate_replenishmentchange
+    ADD CONSTRAINT replenishmentchange_product_fkey FOREIGN KEY (product_id) REFERENCES basic_product(id) DEFERRABLE;
+
+
 --
 -- Name: action_subassembly_action_fkey; Type: FK CONSTRAINT; Schema: public; Owner: -
 --
@@ -64,4 +64,19 @@ public class ProductQuantitiesServiceImplBPCOverrideAspect {
                 nonComponents, onTheFly);
     }
 
+    @Pointcut("execution(private java.util.Map com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl.getProductComponentWithQuantitiesForEachOrder(..)) "
+            + "&& args(orders, operationRuns, nonComponents, onTheFly)")
+    public void getProductComponentWithQuantitiesForEachOrderExecution(final List<Entity> orders,
+            final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
+            final boolean onTheFly) {
+    }
+
+    @Around("getProductComponentWithQuantitiesForEachOrderExecution(orders, operationRuns, nonComponents, onTheFly)")
+    public Map<Long, OperationProductComponentWithQuantityContainer> aroundGetProductComponentWithQuantitiesForEachOrderExecution(
+            final ProceedingJoinPoint pjp, final List<Entity> orders, final Map<Long, BigDecimal> operationRuns,
+            final Set<OperationProductComponentHolder> nonComponents, final boolean onTheFly) throws Throwable {
+        return productQuantitiesServiceImplBPCOverrideUtil.getProductComponentWithQuantitiesForEachOrder(orders, operationRuns,
+                nonComponents, onTheFly);
+    }
+
 }
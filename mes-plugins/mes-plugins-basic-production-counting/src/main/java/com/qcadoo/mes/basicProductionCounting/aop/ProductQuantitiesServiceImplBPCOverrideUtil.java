@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.basicProductionCounting.aop;
 
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.qcadoo.mes.basicProductionCounting.constants.BasicProductionCountingConstants;
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingOperationRunFields;
@@ -30,11 +31,13 @@ import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuanti
 import com.qcadoo.mes.basicProductionCounting.constants.ProductionCountingQuantityRole;
 import com.qcadoo.mes.orders.constants.OrderFields;
 import com.qcadoo.mes.orders.states.constants.OrderStateStringValues;
+import com.qcadoo.mes.technologies.ProductQuantitiesExplosionService;
 import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductMaterialType;
+import com.qcadoo.mes.technologies.dto.TechnologyExplosion;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
@@ -52,17 +55,32 @@ public class ProductQuantitiesServiceImplBPCOverrideUtil {
     @Autowired
     private ProductQuantitiesServiceImpl productQuantitiesServiceImpl;
 
+    @Autowired
+    private ProductQuantitiesExplosionService productQuantitiesExplosionService;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     public OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
             final boolean onTheFly) {
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders =
+                getProductComponentWithQuantitiesForEachOrder(orders, operationRuns, nonComponents, onTheFly);
+
+        return productQuantitiesServiceImpl.groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
+    }
+
+    /**
+     * Accepted, in progress and interrupted orders take their quantities from production counting quantities, unless they are
+     * calculated on the fly. Other orders are exploded from their technologies.
+     */
+    public Map<Long, OperationProductComponentWithQuantityContainer> getProductComponentWithQuantitiesForEachOrder(
+            final List<Entity> orders, final Map<Long, BigDecimal> operationRuns,
+            final Set<OperationProductComponentHolder> nonComponents, final boolean onTheFly) {
         Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
+        List<Entity> ordersToExplode = Lists.newArrayList();
 
         for (Entity order : orders) {
-            BigDecimal plannedQuantity = order.getDecimalField(OrderFields.PLANNED_QUANTITY);
-
             Entity technology = order.getBelongsToField(OrderFields.TECHNOLOGY);
 
             if (technology == null) {
@@ -79,13 +97,22 @@ public class ProductQuantitiesServiceImplBPCOverrideUtil {
                 fillOperationRuns(operationRuns, order);
                 fillNonComponents(nonComponents, order);
             } else {
-                productComponentWithQuantitiesForOrders.put(order.getId(),
-                        productQuantitiesServiceImpl.getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity,
-                                operationRuns, nonComponents));
+                ordersToExplode.add(order);
             }
         }
 
-        return productQuantitiesServiceImpl.groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
+        List<TechnologyExplosion> explosions = productQuantitiesExplosionService.explodeOrders(ordersToExplode);
+
+        for (int i = 0; i < ordersToExplode.size(); i++) {
+            TechnologyExplosion explosion = explosions.get(i);
+
+            operationRuns.putAll(explosion.getOperationRuns());
+            nonComponents.addAll(explosion.getNonComponents());
+            productComponentWithQuantitiesForOrders.put(ordersToExplode.get(i).getId(),
+                    explosion.getProductComponentWithQuantities());
+        }
+
+        return productComponentWithQuantitiesForOrders;
     }
 
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantities(final Entity order) {
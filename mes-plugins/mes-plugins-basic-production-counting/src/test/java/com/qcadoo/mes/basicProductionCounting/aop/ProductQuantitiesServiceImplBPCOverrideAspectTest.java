@@ -51,4 +51,14 @@ public class ProductQuantitiesServiceImplBPCOverrideAspectTest {
         assertEquals(OperationProductComponentWithQuantityContainer.class, method.getReturnType());
     }
 
+    @Test
+    public final void checkGetProductComponentWithQuantitiesForEachOrderExecution() throws NoSuchMethodException {
+        Class<?> clazz = ProductQuantitiesServiceImpl.class;
+        final Method method = clazz.getDeclaredMethod("getProductComponentWithQuantitiesForEachOrder", List.class, Map.class,
+                Set.class, boolean.class);
+        assertNotNull(method);
+        assertTrue(Modifier.isPrivate(method.getModifiers()));
+        assertEquals(Map.class, method.getReturnType());
+    }
+
 }
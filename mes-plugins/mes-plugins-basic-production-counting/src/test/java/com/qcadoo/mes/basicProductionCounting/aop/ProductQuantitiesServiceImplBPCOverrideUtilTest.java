@@ -0,0 +1,222 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basicProductionCounting.aop;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.ProductQuantitiesExplosionService;
+import com.qcadoo.mes.technologies.ProductQuantitiesServiceImpl;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentEntityType;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.dto.ProductMaterialType;
+import com.qcadoo.mes.technologies.dto.TechnologyExplosion;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest(SearchRestrictions.class)
+public class ProductQuantitiesServiceImplBPCOverrideUtilTest {
+
+    private ProductQuantitiesServiceImplBPCOverrideUtil productQuantitiesServiceImplBPCOverrideUtil;
+
+    @Mock
+    private ProductQuantitiesServiceImpl productQuantitiesServiceImpl;
+
+    @Mock
+    private ProductQuantitiesExplosionService productQuantitiesExplosionService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private DataDefinition productionCountingQuantityDD, productionCountingOperationRunDD;
+
+    @Mock
+    private SearchCriteriaBuilder productionCountingQuantitiesCriteria, productionCountingOperationRunsCriteria;
+
+    @Mock
+    private SearchResult productionCountingQuantitiesResult, nonComponentsResult, productionCountingOperationRunsResult;
+
+    @Mock
+    private Entity acceptedOrder, pendingOrder, technology, product1, product2, operationComponent;
+
+    @Mock
+    private Entity productionCountingQuantity1, productionCountingQuantity2;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productQuantitiesServiceImplBPCOverrideUtil = new ProductQuantitiesServiceImplBPCOverrideUtil();
+
+        ReflectionTestUtils.setField(productQuantitiesServiceImplBPCOverrideUtil, "productQuantitiesServiceImpl",
+                productQuantitiesServiceImpl);
+        ReflectionTestUtils.setField(productQuantitiesServiceImplBPCOverrideUtil, "productQuantitiesExplosionService",
+                productQuantitiesExplosionService);
+        ReflectionTestUtils.setField(productQuantitiesServiceImplBPCOverrideUtil, "dataDefinitionService",
+                dataDefinitionService);
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+
+        given(dataDefinitionService.get("basicProductionCounting", "productionCountingQuantity")).willReturn(
+                productionCountingQuantityDD);
+        given(dataDefinitionService.get("basicProductionCounting", "productionCountingOperationRun")).willReturn(
+                productionCountingOperationRunDD);
+
+        given(productionCountingQuantityDD.find()).willReturn(productionCountingQuantitiesCriteria);
+        given(productionCountingQuantitiesCriteria.add(any())).willReturn(productionCountingQuantitiesCriteria);
+        given(productionCountingQuantitiesCriteria.list()).willReturn(productionCountingQuantitiesResult, nonComponentsResult);
+        given(productionCountingOperationRunDD.find()).willReturn(productionCountingOperationRunsCriteria);
+        given(productionCountingOperationRunsCriteria.add(any())).willReturn(productionCountingOperationRunsCriteria);
+        given(productionCountingOperationRunsCriteria.list()).willReturn(productionCountingOperationRunsResult);
+
+        given(productionCountingQuantitiesResult.getEntities()).willReturn(
+                asList(productionCountingQuantity1, productionCountingQuantity2));
+        given(nonComponentsResult.getEntities()).willReturn(Collections.<Entity> emptyList());
+        given(productionCountingOperationRunsResult.getEntities()).willReturn(Collections.<Entity> emptyList());
+
+        given(acceptedOrder.getId()).willReturn(1L);
+        given(acceptedOrder.getBelongsToField("technology")).willReturn(technology);
+        given(acceptedOrder.getStringField("state")).willReturn("02accepted");
+        given(pendingOrder.getId()).willReturn(2L);
+        given(pendingOrder.getBelongsToField("technology")).willReturn(technology);
+        given(pendingOrder.getStringField("state")).willReturn("01pending");
+
+        given(product1.getId()).willReturn(11L);
+        given(product2.getId()).willReturn(12L);
+        given(operationComponent.getId()).willReturn(21L);
+
+        stubProductionCountingQuantity(productionCountingQuantity1, 31L, product1, "01used", "01component", "7.5");
+        stubProductionCountingQuantity(productionCountingQuantity2, 32L, product2, "02produced", "03finalProduct", "3");
+    }
+
+    @Test
+    public void shouldTakeQuantitiesOfAcceptedOrderFromProductionCountingQuantities() {
+        // given
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        given(productQuantitiesExplosionService.explodeOrders(Collections.<Entity> emptyList())).willReturn(
+                Collections.<TechnologyExplosion> emptyList());
+
+        // when
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantities =
+                productQuantitiesServiceImplBPCOverrideUtil.getProductComponentWithQuantitiesForEachOrder(
+                        asList(acceptedOrder), operationRuns, nonComponents, false);
+
+        // then
+        OperationProductComponentWithQuantityContainer quantities = productComponentWithQuantities.get(1L);
+
+        assertEquals(2, quantities.asMap().size());
+        assertEquals(new BigDecimal("7.5"), quantities.get(new OperationProductComponentHolder(product1, operationComponent,
+                productionCountingQuantity1, OperationProductComponentEntityType.OPERATION_PRODUCT_IN_COMPONENT,
+                ProductMaterialType.COMPONENT)));
+        assertEquals(new BigDecimal("3"), quantities.get(new OperationProductComponentHolder(product2, operationComponent,
+                productionCountingQuantity2, OperationProductComponentEntityType.OPERATION_PRODUCT_OUT_COMPONENT,
+                ProductMaterialType.FINAL_PRODUCT)));
+
+        for (OperationProductComponentHolder holder : quantities.asMap().keySet()) {
+            assertEquals(holder.getProductId() == 11L ? Long.valueOf(31L) : Long.valueOf(32L),
+                    holder.getProductionCountingQuantityId());
+        }
+    }
+
+    @Test
+    public void shouldExplodeOrdersWithoutProductionCountingQuantities() {
+        // given
+        OperationProductComponentWithQuantityContainer explodedQuantities = new OperationProductComponentWithQuantityContainer();
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        given(productQuantitiesExplosionService.explodeOrders(asList(pendingOrder))).willReturn(
+                asList(new TechnologyExplosion(explodedQuantities, Collections.singletonMap(21L, BigDecimal.TEN), Collections
+                        .<OperationProductComponentHolder> emptySet())));
+
+        // when
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantities =
+                productQuantitiesServiceImplBPCOverrideUtil.getProductComponentWithQuantitiesForEachOrder(
+                        asList(acceptedOrder, pendingOrder), operationRuns, nonComponents, false);
+
+        // then
+        assertEquals(2, productComponentWithQuantities.size());
+        assertSame(explodedQuantities, productComponentWithQuantities.get(2L));
+        assertEquals(BigDecimal.TEN, operationRuns.get(21L));
+    }
+
+    @Test
+    public void shouldExplodeAcceptedOrderOnTheFly() {
+        // given
+        OperationProductComponentWithQuantityContainer explodedQuantities = new OperationProductComponentWithQuantityContainer();
+
+        given(productQuantitiesExplosionService.explodeOrders(asList(acceptedOrder))).willReturn(
+                asList(new TechnologyExplosion(explodedQuantities, Maps.newHashMap(), Sets.newHashSet())));
+
+        // when
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantities =
+                productQuantitiesServiceImplBPCOverrideUtil.getProductComponentWithQuantitiesForEachOrder(
+                        asList(acceptedOrder), Maps.newHashMap(), Sets.newHashSet(), true);
+
+        // then
+        assertSame(explodedQuantities, productComponentWithQuantities.get(1L));
+    }
+
+    private void stubProductionCountingQuantity(final Entity productionCountingQuantity, final Long id, final Entity product,
+            final String role, final String typeOfMaterial, final String plannedQuantity) {
+        given(productionCountingQuantity.getId()).willReturn(id);
+        given(productionCountingQuantity.getBelongsToField("technologyOperationComponent")).willReturn(operationComponent);
+        given(productionCountingQuantity.getBelongsToField("product")).willReturn(product);
+        given(productionCountingQuantity.getStringField("role")).willReturn(role);
+        given(productionCountingQuantity.getStringField("typeOfMaterial")).willReturn(typeOfMaterial);
+        given(productionCountingQuantity.getDecimalField("plannedQuantity")).willReturn(new BigDecimal(plannedQuantity));
+    }
+
+}
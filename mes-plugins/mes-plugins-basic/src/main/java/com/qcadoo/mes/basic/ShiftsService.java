@@ -54,6 +54,11 @@ public interface ShiftsService {
 
     Date findDateToForProductionLine(final Date dateFrom, final long seconds, Entity productionLine);
 
+    /**
+     * Drops cached working calendars, has to be called when shifts, timetable exceptions or production line shifts change.
+     */
+    void invalidateWorkingCalendars();
+
     List<ShiftHour> getHoursForShift(final Entity shift, final Date dateFrom, final Date dateTo);
 
     /**
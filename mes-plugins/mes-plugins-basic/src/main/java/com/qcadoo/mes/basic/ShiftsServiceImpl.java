@@ -33,29 +33,31 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.IllegalFieldValueException;
-import org.joda.time.Interval;
 import org.joda.time.LocalTime;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.util.StringUtils;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.qcadoo.commons.dateTime.TimeRange;
 import com.qcadoo.mes.basic.constants.BasicConstants;
-import com.qcadoo.mes.basic.constants.ShiftFields;
-import com.qcadoo.mes.basic.constants.TimetableExceptionType;
 import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.shift.WorkingCalendar;
 import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FieldComponent;
@@ -96,14 +98,22 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     private static final int MILLS = 1000;
 
+    private static final int L_WORKING_CALENDAR_DAYS = 31;
+
+    private static final long L_WORKING_CALENDAR_MAX_AGE = 10 * 60 * 1000L;
+
+    private static final Long L_WITHOUT_PRODUCTION_LINE = 0L;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
-    private TimetableExceptionService timetableExceptionService;
+    private ShiftExceptionService shiftExceptionService;
 
     @Autowired
-    private ShiftExceptionService shiftExceptionService;
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, Map<Long, WorkingCalendar>> workingCalendarsByTenant = new ConcurrentHashMap<>();
 
     private static final String[] WEEK_DAYS = { L_MONDAY, L_TUESDAY, L_WENSDAY, L_THURSDAY, L_FRIDAY, L_SATURDAY, L_SUNDAY };
 
@@ -132,157 +142,38 @@ public class ShiftsServiceImpl implements ShiftsService {
         return DAY_OF_WEEK.get(c.get(Calendar.DAY_OF_WEEK));
     }
 
+    /**
+     * Finds the nearest working date in the working calendar and returns the first shift working at that date. Shift work
+     * time starting on the previous day is checked too, because it may last past midnight.
+     */
     @Override
     public Optional<Shift> getShiftForNearestWorkingDate(DateTime nearestWorkingDate, Entity productionLine) {
-        List<Shift> shifts = findAll(productionLine);
-        List<DateTimeRange> finalShiftWorkTimes = Lists.newArrayList();
-        DateTime currentDate = nearestWorkingDate.minusDays(1);
-
-        if (shifts.stream().noneMatch(shift -> checkShiftWorkingAfterDate(nearestWorkingDate, productionLine, shift))) {
-            return Optional.empty();
-        }
-
-        while (finalShiftWorkTimes.isEmpty()) {
-            for (Shift shift : shifts) {
-                getNearestWorkingDateForShift(shift, productionLine, nearestWorkingDate, currentDate, finalShiftWorkTimes);
-                if (!finalShiftWorkTimes.isEmpty()) {
-                    return Optional.of(shift);
-                }
-            }
+        Optional<DateTime> workingDate = getNearestWorkingDate(nearestWorkingDate, productionLine);
 
-            currentDate = currentDate.plusDays(1);
-        }
-        return Optional.empty();
-    }
-
-    @Override
-    public Optional<DateTime> getNearestWorkingDate(DateTime dateFrom, Entity productionLine) {
-        List<Shift> shifts = findAll(productionLine);
-        List<DateTimeRange> finalShiftWorkTimes = Lists.newArrayList();
-
-        DateTime currentDate = dateFrom.minusDays(1);
-
-        if (shifts.stream().noneMatch(shift -> checkShiftWorkingAfterDate(dateFrom, productionLine, shift))) {
+        if (!workingDate.isPresent()) {
             return Optional.empty();
         }
 
-        while (finalShiftWorkTimes.isEmpty()) {
-            for (Shift shift : shifts) {
-                getNearestWorkingDateForShift(shift, productionLine, dateFrom, currentDate, finalShiftWorkTimes);
-            }
-
-            currentDate = currentDate.plusDays(1);
-        }
-
-        DateTime result = finalShiftWorkTimes.stream().min(Comparator.comparing(DateTimeRange::getFrom)).get().getFrom();
-
-        if (result.compareTo(dateFrom) <= 0) {
-            return Optional.of(dateFrom);
-        }
-
-        return Optional.of(result);
-    }
-
-    private void getNearestWorkingDateForShift(final Shift shift, final Entity productionLine, final DateTime dateFrom,
-            final DateTime currentDate, final List<DateTimeRange> finalShiftWorkTimes) {
-        List<DateTimeRange> workTimes = Lists.newArrayList();
-        List<TimeRange> shiftWorkTimes = shift.findWorkTimeAt(currentDate.toLocalDate());
-
-        for (TimeRange shiftWorkTime : shiftWorkTimes) {
-            getNearestWorkingDateForShiftWorkTime(shiftWorkTime, dateFrom, currentDate, workTimes);
-        }
-
-        workTimes = shiftExceptionService.manageExceptions(workTimes, productionLine, shift, currentDate.toDate());
-
-        workTimes = workTimes.stream().filter(workTime -> workTime.contains(dateFrom) || workTime.isAfter(dateFrom))
-                .collect(Collectors.toList());
-        finalShiftWorkTimes.addAll(workTimes);
-    }
-
-    private void getNearestWorkingDateForShiftWorkTime(final TimeRange shiftWorkTime, final DateTime dateFrom,
-            final DateTime currentDate, final List<DateTimeRange> workTimes) {
-        LocalTime currentTime = currentDate.toLocalTime();
-        LocalTime timeTo = shiftWorkTime.getTo();
-        LocalTime timeFrom = shiftWorkTime.getFrom();
-
-        if (!currentDate.equals(dateFrom.minusDays(1)) || timeFrom.isAfter(timeTo)) {
-            if (timeFrom.isAfter(timeTo) && currentDate.equals(dateFrom.minusDays(1))) {
-                if (currentTime.compareTo(LocalTime.MIDNIGHT) >= 0 && currentTime.compareTo(timeTo) <= 0) {
-                    Optional<Interval> interval = createInterval(currentDate.plusDays(1), currentTime, timeTo);
-
-                    interval.ifPresent(i -> workTimes.add(new DateTimeRange(i)));
-                }
-            } else {
-                if (currentDate.equals(dateFrom)) {
-                    if (timeFrom.compareTo(currentTime) < 0 && timeTo.compareTo(currentTime) > 0) {
-                        Optional<Interval> interval = createInterval(currentDate, currentTime, timeTo);
-
-                        interval.ifPresent(i -> workTimes.add(new DateTimeRange(i)));
-                    } else if (timeFrom.isAfter(timeTo)) {
-                        if (timeFrom.compareTo(currentTime) < 0) {
-                            Optional<Interval> interval = createInterval(currentDate, currentTime, timeTo);
-
-                            interval.ifPresent(i -> workTimes.add(new DateTimeRange(i)));
-                        } else {
-                            Optional<Interval> interval = createInterval(currentDate, timeFrom, timeTo);
-
-                            interval.ifPresent(i -> workTimes.add(new DateTimeRange(i)));
-                        }
-                    } else if (timeFrom.compareTo(currentTime) >= 0) {
-                        Optional<Interval> interval = createInterval(currentDate, timeFrom, timeTo);
+        DateTime dateOfDay = workingDate.get().withTimeAtStartOfDay();
 
-                        interval.ifPresent(i -> workTimes.add(new DateTimeRange(i)));
-                    }
-                } else {
-                    Optional<Interval> interval = createInterval(currentDate, timeFrom, timeTo);
+        for (Shift shift : findAll(productionLine)) {
+            List<DateTimeRange> shiftWorkDateTimes = Lists.newArrayList();
 
-                    interval.ifPresent(i -> workTimes.add(new DateTimeRange(i)));
-                }
-            }
-        }
-    }
+            shiftWorkDateTimes.addAll(shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay.minusDays(1)));
+            shiftWorkDateTimes.addAll(shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay));
 
-    private boolean checkShiftWorkingAfterDate(final DateTime date, final Entity productionLine, final Shift shift) {
-        for (int i = 1; i <= 7; i++) {
-            if (shift.worksAt(i)) {
-                return true;
+            if (shiftWorkDateTimes.stream().anyMatch(shiftWorkDateTime -> shiftWorkDateTime.contains(workingDate.get()))) {
+                return Optional.of(shift);
             }
         }
 
-        List<Entity> exceptions;
-
-        if (Objects.isNull(productionLine)) {
-            exceptions = shift.getEntity().getHasManyField(ShiftFields.TIMETABLE_EXCEPTIONS);
-        } else {
-            exceptions = timetableExceptionService.findFor(productionLine, shift.getEntity(), date.toDate(),
-                    TimetableExceptionType.WORK_TIME.getStringValue());
-        }
-
-        return !exceptions.isEmpty();
-    }
-
-    private DateTime convertToDateTime(final DateTime currentDate, final LocalTime time) {
-        return new DateTime(currentDate).withTime(time.getHourOfDay(), time.getMinuteOfHour(), time.getSecondOfMinute(),
-                time.getMillisOfSecond());
-    }
-
-    private Optional<Interval> createInterval(final DateTime dateFrom, final LocalTime timeFrom, final LocalTime timeTo) {
-        if (timeFrom.isAfter(timeTo)) {
-            return createInterval(dateFrom, timeFrom, dateFrom.plusDays(1), timeTo);
-        }
-
-        return createInterval(dateFrom, timeFrom, dateFrom, timeTo);
+        return Optional.empty();
     }
 
-    private Optional<Interval> createInterval(final DateTime dateFrom, final LocalTime timeFrom, final DateTime dateTo,
-            final LocalTime timeTo) {
-        Interval interval = new Interval(convertToDateTime(dateFrom, timeFrom), convertToDateTime(dateTo, timeTo));
-
-        if (interval.toDuration().isEqual(null)) {
-            return Optional.empty();
-        }
-
-        return Optional.of(interval);
+    @Override
+    public Optional<DateTime> getNearestWorkingDate(DateTime dateFrom, Entity productionLine) {
+        return findInWorkingCalendar(productionLine, dateFrom,
+                workingCalendar -> workingCalendar.findNearestWorkingDate(dateFrom));
     }
 
     public boolean validateShiftTimetableException(final DataDefinition dataDefinition, final Entity entity) {
@@ -339,41 +230,128 @@ public class ShiftsServiceImpl implements ShiftsService {
 
     @Override
     public Date findDateToForProductionLine(final Date dateFrom, final long seconds, final Entity productionLine) {
-        if (getShiftDataDefinition().find().list().getTotalNumberOfEntities() == 0) {
-            return Date.from(dateFrom.toInstant().plusSeconds(seconds));
+        DateTime dateFromDT = new DateTime(dateFrom, DateTimeZone.getDefault());
+
+        Optional<DateTime> dateTo = findInWorkingCalendar(productionLine, dateFromDT,
+                workingCalendar -> workingCalendar.findDateAfterWorkingMillis(dateFromDT, seconds * MILLS));
+
+        return dateTo.map(DateTime::toDate).orElseGet(() -> Date.from(dateFrom.toInstant().plusSeconds(seconds)));
+    }
+
+    /**
+     * Searches the working calendar of given production line, extending it day by day up to {@link #MAX_LOOPS} days after given
+     * date. Calendars are cached per tenant and production line and rebuilt when shifts, timetable exceptions or production lines change,
+     * see {@link #invalidateWorkingCalendars()}.
+     */
+    private Optional<DateTime> findInWorkingCalendar(final Entity productionLine, final DateTime date,
+            final Function<WorkingCalendar, Optional<DateTime>> finder) {
+        DateTime firstDay = date.minusDays(1).withTimeAtStartOfDay();
+        DateTime maxLastDay = firstDay.plusDays(MAX_LOOPS + 1);
+
+        int days = L_WORKING_CALENDAR_DAYS;
+
+        while (true) {
+            DateTime lastDay = firstDay.plusDays(Math.min(days, MAX_LOOPS + 1));
+
+            Optional<DateTime> result = finder.apply(getWorkingCalendar(productionLine, firstDay, lastDay));
+
+            if (result.isPresent()) {
+                return result.filter(found -> !found.isAfter(maxLastDay));
+            }
+
+            if (!lastDay.isBefore(maxLastDay)) {
+                return Optional.empty();
+            }
+
+            days *= 2;
         }
+    }
 
-        DateTime dateFromDT = new DateTime(dateFrom, DateTimeZone.getDefault());
+    private WorkingCalendar getWorkingCalendar(final Entity productionLine, final DateTime firstDay, final DateTime lastDay) {
+        Map<Long, WorkingCalendar> workingCalendars = getWorkingCalendars(multiTenantService.getCurrentTenantId());
+        Long key = getWorkingCalendarKey(productionLine);
 
-        List<Shift> shifts = findAll(productionLine);
-        DateTime dateOfDay = new DateTime(dateFrom);
-        dateOfDay = dateOfDay.minusDays(1);
-        dateOfDay = dateOfDay.toLocalDate().toDateTimeAtStartOfDay();
-        long leftMilliseconds = seconds * MILLS;
-        int loopCount = 0;
-        while (leftMilliseconds > 0L) {
-            if (loopCount > MAX_LOOPS) {
-                return Date.from(dateFrom.toInstant().plusSeconds(seconds));
+        WorkingCalendar workingCalendar = null;
+
+        if (Objects.nonNull(key)) {
+            workingCalendar = workingCalendars.get(key);
+        }
+
+        if (Objects.nonNull(workingCalendar)
+                && System.currentTimeMillis() - workingCalendar.getBuiltAt() > L_WORKING_CALENDAR_MAX_AGE) {
+            workingCalendar = null;
+        }
+
+        if (Objects.isNull(workingCalendar)) {
+            workingCalendar = new WorkingCalendar(firstDay, lastDay, getShiftWorkDateTimes(productionLine, firstDay, lastDay));
+        } else if (!workingCalendar.covers(firstDay, lastDay)) {
+            List<DateTimeRange> newRanges = Lists.newArrayList();
+
+            if (workingCalendar.getFirstDay().isAfter(firstDay)) {
+                newRanges.addAll(getShiftWorkDateTimes(productionLine, firstDay, workingCalendar.getFirstDay()));
+            }
+
+            if (workingCalendar.getLastDay().isBefore(lastDay)) {
+                newRanges.addAll(getShiftWorkDateTimes(productionLine, workingCalendar.getLastDay(), lastDay));
             }
+
+            workingCalendar = workingCalendar.extend(
+                    workingCalendar.getFirstDay().isAfter(firstDay) ? firstDay : workingCalendar.getFirstDay(),
+                    workingCalendar.getLastDay().isBefore(lastDay) ? lastDay : workingCalendar.getLastDay(), newRanges);
+        } else {
+            return workingCalendar;
+        }
+
+        if (Objects.nonNull(key)) {
+            workingCalendars.put(key, workingCalendar);
+        }
+
+        return workingCalendar;
+    }
+
+    private Map<Long, WorkingCalendar> getWorkingCalendars(final int tenantId) {
+        return workingCalendarsByTenant.computeIfAbsent(tenantId, id -> new ConcurrentHashMap<>());
+    }
+
+    private Long getWorkingCalendarKey(final Entity productionLine) {
+        if (Objects.isNull(productionLine)) {
+            return L_WITHOUT_PRODUCTION_LINE;
+        }
+
+        return productionLine.getId();
+    }
+
+    private List<DateTimeRange> getShiftWorkDateTimes(final Entity productionLine, final DateTime firstDay,
+            final DateTime lastDay) {
+        List<DateTimeRange> shiftWorkDateTimes = Lists.newArrayList();
+
+        List<Shift> shifts = findAll(productionLine);
+
+        for (DateTime dateOfDay = firstDay; dateOfDay.isBefore(lastDay); dateOfDay = dateOfDay.plusDays(1)) {
             for (Shift shift : shifts) {
-                for (DateTimeRange range : shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay)) {
-                    if (dateFrom.after(dateOfDay.toDate())) {
-                        range = range.trimBefore(dateFromDT);
-                    }
-                    if (range != null) {
-                        if (leftMilliseconds > range.durationMillis()) {
-                            leftMilliseconds = leftMilliseconds - range.durationMillis();
-                        } else {
-                            return range.getFrom().plusMillis((int) leftMilliseconds).toDate();
-                        }
-                    }
-                }
+                shiftWorkDateTimes.addAll(shiftExceptionService.getShiftWorkDateTimes(productionLine, shift, dateOfDay));
             }
-            loopCount++;
-            dateOfDay = dateOfDay.plusDays(1);
         }
 
-        return Date.from(dateFrom.toInstant().plusSeconds(seconds));
+        return shiftWorkDateTimes;
+    }
+
+    @Override
+    public void invalidateWorkingCalendars() {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        getWorkingCalendars(tenantId).clear();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    super.afterCompletion(status);
+                    getWorkingCalendars(tenantId).clear();
+                }
+            });
+        }
     }
 
     @Override
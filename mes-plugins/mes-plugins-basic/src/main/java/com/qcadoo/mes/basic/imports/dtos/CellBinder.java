@@ -75,9 +75,19 @@ public abstract class CellBinder {
         return new OptionalCellBinder(fieldName, cellParser);
     }
 
-    public abstract void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor);
+    public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        bind(cell, entity, errorsAccessor, null);
+    }
+
+    public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        bind(cellValue, entity, errorsAccessor, null);
+    }
 
-    public abstract void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor);
+    public abstract void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor,
+            final ImportLookupCache lookupCache);
+
+    public abstract void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor,
+            final ImportLookupCache lookupCache);
 
     private static String formatCell(final Cell cell) {
         Locale locale = LocaleContextHolder.getLocale();
@@ -115,21 +125,23 @@ public abstract class CellBinder {
         }
 
         @Override
-        public void bind(Cell cell, Entity entity, CellErrorsAccessor errorsAccessor) {
+        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor,
+                final ImportLookupCache lookupCache) {
             if (Objects.isNull(cell)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
             } else {
-                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o));
+                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o), lookupCache);
             }
         }
 
         @Override
-        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor,
+                final ImportLookupCache lookupCache) {
             if (StringUtils.isEmpty(cellValue)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_MISSING);
             } else {
                 getCellParser().parse(formatCell(cellValue), errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
+                        fieldValue -> entity.setField(getFieldName(), fieldValue), lookupCache);
             }
         }
     }
@@ -145,21 +157,22 @@ public abstract class CellBinder {
         }
 
         @Override
-        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        public void bind(final Cell cell, final Entity entity, final CellErrorsAccessor errorsAccessor,
+                final ImportLookupCache lookupCache) {
             if (Objects.nonNull(cell)) {
-                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o));
+                getCellParser().parse(formatCell(cell), errorsAccessor, o -> entity.setField(getFieldName(), o), lookupCache);
             }
         }
 
         @Override
-        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor) {
+        public void bind(final String cellValue, final Entity entity, final CellErrorsAccessor errorsAccessor,
+                final ImportLookupCache lookupCache) {
             if (StringUtils.isNotEmpty(cellValue)) {
                 getCellParser().parse(formatCell(cellValue), errorsAccessor,
-                        fieldValue -> entity.setField(getFieldName(), fieldValue));
-            } else {
-                if (getCellParser() instanceof BooleanCellParser) {
-                    getCellParser().parse("false", errorsAccessor, fieldValue -> entity.setField(getFieldName(), fieldValue));
-                }
+                        fieldValue -> entity.setField(getFieldName(), fieldValue), lookupCache);
+            } else if (Objects.nonNull(cellValue) && (getCellParser() instanceof BooleanCellParser)) {
+                // empty csv fields are read as false, cells missing in xlsx sheets (null) leave the field unset
+                getCellParser().parse("false", errorsAccessor, fieldValue -> entity.setField(getFieldName(), fieldValue));
             }
         }
     }
@@ -0,0 +1,115 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.dtos;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Entities referenced by cells, resolved once per import run and shared by all cell parsers of that run. Lookups that were
+ * preloaded are complete, so a missing key is not searched again. For other lookups only found entities are kept, because
+ * rows saved later in the same import can create the missing ones, and entities saved by the import are evicted.
+ */
+public class ImportLookupCache {
+
+    private final Map<String, Map<String, Entity>> lookups = Maps.newHashMap();
+
+    private final Set<String> preloadedLookups = Sets.newHashSet();
+
+    private final Map<String, Set<Map.Entry<String, String>>> keysByEntity = Maps.newHashMap();
+
+    private int hits;
+
+    private int misses;
+
+    public Entity get(final String lookupName, final String key, final Function<String, Entity> loader) {
+        Map<String, Entity> entities = lookups.computeIfAbsent(lookupName, name -> Maps.newHashMap());
+
+        Entity entity = entities.get(key);
+
+        if (Objects.nonNull(entity) || preloadedLookups.contains(lookupName)) {
+            hits++;
+
+            return entity;
+        }
+
+        misses++;
+
+        entity = loader.apply(key);
+
+        if (Objects.nonNull(entity)) {
+            entities.put(key, entity);
+
+            keysByEntity.computeIfAbsent(getEntityKey(entity), entityKey -> Sets.newHashSet())
+                    .add(Maps.immutableEntry(lookupName, key));
+        }
+
+        return entity;
+    }
+
+    public void evict(final Entity entity) {
+        if (Objects.isNull(entity) || Objects.isNull(entity.getId())) {
+            return;
+        }
+
+        Set<Map.Entry<String, String>> keys = keysByEntity.remove(getEntityKey(entity));
+
+        if (Objects.nonNull(keys)) {
+            keys.forEach(key -> lookups.get(key.getKey()).remove(key.getValue()));
+        }
+    }
+
+    private String getEntityKey(final Entity entity) {
+        return entity.getDataDefinition().getPluginIdentifier() + "." + entity.getDataDefinition().getName() + "#"
+                + entity.getId();
+    }
+
+    public boolean isPreloaded(final String lookupName) {
+        return preloadedLookups.contains(lookupName);
+    }
+
+    public void preload(final String lookupName, final Collection<Entity> entities, final Function<Entity, String> keyExtractor) {
+        Map<String, Entity> entitiesByKey = lookups.computeIfAbsent(lookupName, name -> Maps.newHashMap());
+
+        entities.forEach(entity -> entitiesByKey.putIfAbsent(keyExtractor.apply(entity), entity));
+
+        preloadedLookups.add(lookupName);
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+}
@@ -43,6 +43,8 @@ public class ImportStatus {
 
     private Set<ImportError> errors = Sets.newHashSet();
 
+    private final ImportLookupCache lookupCache = new ImportLookupCache();
+
     public int getRowsProcessed() {
         return rowsProcessed;
     }
@@ -59,6 +61,18 @@ public class ImportStatus {
         errors.add(importError);
     }
 
+    public ImportLookupCache getLookupCache() {
+        return lookupCache;
+    }
+
+    public int getLookupHits() {
+        return lookupCache.getHits();
+    }
+
+    public int getLookupMisses() {
+        return lookupCache.getMisses();
+    }
+
     public boolean hasErrors() {
         return !CollectionUtils.isEmpty(errors);
     }
@@ -25,8 +25,18 @@ package com.qcadoo.mes.basic.imports.helpers;
 
 import java.util.function.Consumer;
 
+import com.qcadoo.mes.basic.imports.dtos.ImportLookupCache;
+
 public interface CellParser {
 
     void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer);
 
+    /**
+     * Parses the cell value, resolving referenced entities through the lookup cache of the current import (may be null).
+     */
+    default void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer,
+            final ImportLookupCache lookupCache) {
+        parse(cellValue, errorsAccessor, valueConsumer);
+    }
+
 }
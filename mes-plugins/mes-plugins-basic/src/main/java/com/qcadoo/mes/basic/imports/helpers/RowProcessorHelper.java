@@ -56,6 +56,12 @@ public class RowProcessorHelper {
 
     private List<ImportError> rowErrors = Lists.newArrayList();
 
+    private List<Object> cellValues = Lists.newArrayList();
+
+    private boolean bindCells = false;
+
+    private Entity savedEntity;
+
     public RowProcessorHelper(final Entity entity, final CellBinderRegistry cellBinderRegistry, final ImportStatus importStatus,
             final int rowIndex) {
         this.entity = entity;
@@ -64,6 +70,14 @@ public class RowProcessorHelper {
         this.currentRow = rowIndex;
     }
 
+    public Entity getEntity() {
+        return entity;
+    }
+
+    public Entity getSavedEntity() {
+        return savedEntity;
+    }
+
     public boolean isEmpty() {
         return empty;
     }
@@ -75,9 +89,11 @@ public class RowProcessorHelper {
             empty = false;
         }
 
-        final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+        bindCells = true;
+
+        cellValues.add(cell);
 
-        binder.bind(cell, entity, errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
+        bind(cell);
     }
 
     public void append(final String cellValue) {
@@ -87,9 +103,38 @@ public class RowProcessorHelper {
             empty = false;
         }
 
-        CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+        cellValues.add(cellValue);
 
-        binder.bind(cellValue, entity, errorCode -> rowErrors.add(new ImportError(currentRow, binder.getFieldName(), errorCode)));
+        bind(cellValue);
+    }
+
+    /**
+     * Binds the row again if binding failed, e.g. because it refers to an entity saved by one of the previous rows after this
+     * row was read.
+     */
+    public void rebindIfFailed() {
+        assureNotProcessedYet();
+
+        if (!rowErrors.isEmpty()) {
+            rowErrors.clear();
+
+            index = 0;
+
+            cellValues.forEach(this::bind);
+        }
+    }
+
+    private void bind(final Object cellValue) {
+        final CellBinder binder = cellBinderRegistry.getCellBinder(index++);
+
+        CellErrorsAccessor errorsAccessor = errorCode -> rowErrors
+                .add(new ImportError(currentRow, binder.getFieldName(), errorCode));
+
+        if (bindCells) {
+            binder.bind((Cell) cellValue, entity, errorsAccessor, importStatus.getLookupCache());
+        } else {
+            binder.bind((String) cellValue, entity, errorsAccessor, importStatus.getLookupCache());
+        }
     }
 
     public void update(final Entity entityToUpdate, final Function<Entity, Boolean> checkOnUpdate) {
@@ -134,7 +179,9 @@ public class RowProcessorHelper {
         populateImportStatusWithBindingErrors();
 
         if (rowErrors.isEmpty()) {
-            Entity savedEntity = save();
+            savedEntity = save();
+
+            importStatus.getLookupCache().evict(savedEntity);
 
             populateImportStatusWithEntityErrors(savedEntity);
         }
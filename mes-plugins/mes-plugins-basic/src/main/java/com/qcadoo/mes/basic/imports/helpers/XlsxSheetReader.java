@@ -0,0 +1,301 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.ss.usermodel.BuiltinFormats;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Reads the first sheet of a xlsx file row by row using the SAX parser, so that only the current row (and the shared strings
+ * table) is kept in memory. Cell values are formatted the same way as {@link org.apache.poi.ss.usermodel.DataFormatter} formats
+ * them for the workbook model. Rows are passed to the handler starting from the second row (the first one is the header) until
+ * the handler stops reading or the first missing row is reached.
+ */
+public class XlsxSheetReader {
+
+    private static final String L_ROW = "row";
+
+    private static final String L_CELL = "c";
+
+    private static final String L_VALUE = "v";
+
+    private static final String L_INLINE_STRING = "is";
+
+    private static final String L_TEXT = "t";
+
+    private static final String L_DIMENSION = "dimension";
+
+    private static final String L_REFERENCE = "r";
+
+    private static final String L_TYPE = "t";
+
+    private static final String L_STYLE = "s";
+
+    private static final String L_REF = "ref";
+
+    private final int columnsCount;
+
+    private int lastRowIndex = -1;
+
+    public XlsxSheetReader(final int columnsCount) {
+        this.columnsCount = columnsCount;
+    }
+
+    /**
+     * Index of the last row of the sheet taken from the sheet dimension, or -1 when the sheet does not declare it.
+     */
+    public int getLastRowIndex() {
+        return lastRowIndex;
+    }
+
+    public void read(final InputStream inputStream, final RowHandler rowHandler) throws IOException {
+        try (OPCPackage opcPackage = OPCPackage.open(inputStream)) {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(opcPackage);
+            StylesTable styles = xssfReader.getStylesTable();
+
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+
+            if (!sheets.hasNext()) {
+                return;
+            }
+
+            try (InputStream sheet = sheets.next()) {
+                SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+                saxParserFactory.setNamespaceAware(true);
+                saxParserFactory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+
+                XMLReader xmlReader = saxParserFactory.newSAXParser().getXMLReader();
+                xmlReader.setContentHandler(new SheetHandler(sharedStrings, styles, rowHandler));
+                xmlReader.parse(new InputSource(sheet));
+            } catch (StopReadingException e) {
+                // handler finished reading
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface RowHandler {
+
+        /**
+         * @return false if reading should be stopped
+         */
+        boolean handle(final int rowIndex, final String[] cellValues);
+
+    }
+
+    private static class StopReadingException extends SAXException {
+
+        private static final long serialVersionUID = 1L;
+
+    }
+
+    private class SheetHandler extends DefaultHandler {
+
+        private final ReadOnlySharedStringsTable sharedStrings;
+
+        private final StylesTable styles;
+
+        private final RowHandler rowHandler;
+
+        private final DataFormatter dataFormatter;
+
+        private final StringBuilder value = new StringBuilder();
+
+        private int expectedRowIndex = 1;
+
+        private int rowIndex = -1;
+
+        private String[] cellValues;
+
+        private int columnIndex = -1;
+
+        private String cellType;
+
+        private String cellStyle;
+
+        private boolean readingValue = false;
+
+        private boolean readingInlineString = false;
+
+        SheetHandler(final ReadOnlySharedStringsTable sharedStrings, final StylesTable styles, final RowHandler rowHandler) {
+            this.sharedStrings = sharedStrings;
+            this.styles = styles;
+            this.rowHandler = rowHandler;
+
+            Locale locale = LocaleContextHolder.getLocale();
+
+            this.dataFormatter = new DataFormatter(Objects.isNull(locale) ? Locale.getDefault() : locale);
+        }
+
+        @Override
+        public void startElement(final String uri, final String localName, final String qName, final Attributes attributes)
+                throws SAXException {
+            if (L_DIMENSION.equals(localName)) {
+                lastRowIndex = getLastRowIndex(attributes.getValue(L_REF));
+            } else if (L_ROW.equals(localName)) {
+                String reference = attributes.getValue(L_REFERENCE);
+
+                rowIndex = Objects.isNull(reference) ? rowIndex + 1 : Integer.parseInt(reference) - 1;
+                columnIndex = -1;
+
+                if (rowIndex > 0) {
+                    if (rowIndex != expectedRowIndex) {
+                        throw new StopReadingException();
+                    }
+
+                    cellValues = new String[columnsCount];
+                }
+            } else if (L_CELL.equals(localName)) {
+                String reference = attributes.getValue(L_REFERENCE);
+
+                columnIndex = Objects.isNull(reference) ? columnIndex + 1 : getColumnIndex(reference);
+                cellType = attributes.getValue(L_TYPE);
+                cellStyle = attributes.getValue(L_STYLE);
+
+                value.setLength(0);
+            } else if (L_VALUE.equals(localName)) {
+                readingValue = true;
+            } else if (L_INLINE_STRING.equals(localName)) {
+                readingInlineString = true;
+            } else if (L_TEXT.equals(localName) && readingInlineString) {
+                readingValue = true;
+            }
+        }
+
+        @Override
+        public void endElement(final String uri, final String localName, final String qName) throws SAXException {
+            if (L_VALUE.equals(localName) || L_TEXT.equals(localName)) {
+                readingValue = false;
+            } else if (L_INLINE_STRING.equals(localName)) {
+                readingInlineString = false;
+            } else if (L_CELL.equals(localName)) {
+                if ((rowIndex > 0) && (columnIndex >= 0) && (columnIndex < columnsCount) && (value.length() > 0)) {
+                    cellValues[columnIndex] = StringUtils.defaultIfEmpty(formatValue(value.toString()), null);
+                }
+            } else if (L_ROW.equals(localName) && (rowIndex > 0)) {
+                expectedRowIndex++;
+
+                if (!rowHandler.handle(rowIndex, cellValues)) {
+                    throw new StopReadingException();
+                }
+            }
+        }
+
+        @Override
+        public void characters(final char[] ch, final int start, final int length) {
+            if (readingValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        private String formatValue(final String rawValue) {
+            if (Objects.isNull(cellType) || "n".equals(cellType)) {
+                return formatNumber(rawValue);
+            } else if ("s".equals(cellType)) {
+                return sharedStrings.getEntryAt(Integer.parseInt(rawValue));
+            } else if ("b".equals(cellType)) {
+                return "1".equals(rawValue) ? "TRUE" : "FALSE";
+            } else {
+                return rawValue;
+            }
+        }
+
+        private String formatNumber(final String rawValue) {
+            int formatIndex = 0;
+            String formatString = null;
+
+            if (Objects.nonNull(cellStyle) && Objects.nonNull(styles)) {
+                XSSFCellStyle style = styles.getStyleAt(Integer.parseInt(cellStyle));
+
+                formatIndex = style.getDataFormat();
+                formatString = style.getDataFormatString();
+            }
+
+            if (Objects.isNull(formatString)) {
+                formatString = BuiltinFormats.getBuiltinFormat(formatIndex);
+            }
+
+            try {
+                return dataFormatter.formatRawCellContents(Double.parseDouble(rawValue), formatIndex, formatString);
+            } catch (NumberFormatException e) {
+                return rawValue;
+            }
+        }
+
+        private int getColumnIndex(final String reference) {
+            int index = 0;
+
+            for (char character : reference.toCharArray()) {
+                if (!Character.isLetter(character)) {
+                    break;
+                }
+
+                index = index * 26 + (Character.toUpperCase(character) - 'A' + 1);
+            }
+
+            return index - 1;
+        }
+
+        private int getLastRowIndex(final String reference) {
+            if (StringUtils.isEmpty(reference)) {
+                return -1;
+            }
+
+            String digits = StringUtils.substringAfterLast(reference, ":").replaceAll("[^0-9]", "");
+
+            if (digits.isEmpty()) {
+                digits = reference.replaceAll("[^0-9]", "");
+            }
+
+            return digits.isEmpty() ? -1 : Integer.parseInt(digits) - 1;
+        }
+
+    }
+
+}
@@ -27,12 +27,14 @@ import static com.qcadoo.model.api.search.SearchRestrictions.and;
 import static com.qcadoo.model.api.search.SearchRestrictions.belongsTo;
 import static com.qcadoo.model.api.search.SearchRestrictions.eq;
 
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.qcadoo.mes.basic.imports.dtos.ImportLookupCache;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
 import com.qcadoo.model.api.DataDefinition;
@@ -66,6 +68,8 @@ public class DictionaryCellParsers {
 
         private static final String L_BASIC_IMPORT_ERROR_FIELD_INACTIVE_DICTIONARY_ITEM = "basic.import.error.field.inactiveDictionaryItem";
 
+        private static final String L_DICTIONARY = "dictionary.";
+
         private final String dictionaryName;
 
         private DictionaryParser(final String dictionaryName) {
@@ -74,7 +78,26 @@ public class DictionaryCellParsers {
 
         @Override
         public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-            Entity dictionaryItem = getDictionaryItemByName(cellValue);
+            parse(cellValue, errorsAccessor, valueConsumer, null);
+        }
+
+        @Override
+        public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer,
+                final ImportLookupCache lookupCache) {
+            Entity dictionaryItem;
+
+            if (Objects.isNull(lookupCache)) {
+                dictionaryItem = getDictionaryItemByName(cellValue);
+            } else {
+                String lookupName = L_DICTIONARY + dictionaryName;
+
+                if (!lookupCache.isPreloaded(lookupName)) {
+                    lookupCache.preload(lookupName, getDictionaryItems(),
+                            item -> item.getStringField(DictionaryItemFields.NAME));
+                }
+
+                dictionaryItem = lookupCache.get(lookupName, cellValue, this::getDictionaryItemByName);
+            }
 
             if (Objects.isNull(dictionaryItem)) {
                 errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_INVALID_DICTIONARY_ITEM);
@@ -91,6 +114,11 @@ public class DictionaryCellParsers {
                     .setMaxResults(1).uniqueResult();
         }
 
+        private List<Entity> getDictionaryItems() {
+            return getDictionaryItemDD().find().add(belongsTo(DictionaryItemFields.DICTIONARY, getDictionaryByName())).list()
+                    .getEntities();
+        }
+
         private Entity getDictionaryByName() {
             return getDictionaryDD().find().add(eq(DictionaryFields.NAME, dictionaryName)).setMaxResults(1).uniqueResult();
         }
@@ -31,6 +31,7 @@ import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.PalletNumberFields;
+import com.qcadoo.mes.basic.imports.dtos.ImportLookupCache;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
 import com.qcadoo.model.api.DataDefinition;
@@ -43,12 +44,26 @@ public class PalletNumberCellParser implements CellParser {
 
     private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
 
+    private static final String L_PALLET_NUMBER = BasicConstants.MODEL_PALLET_NUMBER;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Override
     public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity palletNumber = getPalletNumberByNumber(cellValue);
+        parse(cellValue, errorsAccessor, valueConsumer, null);
+    }
+
+    @Override
+    public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer,
+            final ImportLookupCache lookupCache) {
+        Entity palletNumber;
+
+        if (Objects.isNull(lookupCache)) {
+            palletNumber = getPalletNumberByNumber(cellValue);
+        } else {
+            palletNumber = lookupCache.get(L_PALLET_NUMBER, cellValue, this::getPalletNumberByNumber);
+        }
 
         if (Objects.isNull(palletNumber)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
@@ -31,6 +31,7 @@ import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.CompanyFields;
+import com.qcadoo.mes.basic.imports.dtos.ImportLookupCache;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
 import com.qcadoo.model.api.DataDefinition;
@@ -43,12 +44,26 @@ public class ProducerCellParser implements CellParser {
 
     private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
 
+    private static final String L_COMPANY = BasicConstants.MODEL_COMPANY;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Override
     public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity company = getCompanyByNumber(cellValue);
+        parse(cellValue, errorsAccessor, valueConsumer, null);
+    }
+
+    @Override
+    public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer,
+            final ImportLookupCache lookupCache) {
+        Entity company;
+
+        if (Objects.isNull(lookupCache)) {
+            company = getCompanyByNumber(cellValue);
+        } else {
+            company = lookupCache.get(L_COMPANY, cellValue, this::getCompanyByNumber);
+        }
 
         if (Objects.isNull(company)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
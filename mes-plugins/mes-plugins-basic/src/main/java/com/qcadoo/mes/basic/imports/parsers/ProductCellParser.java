@@ -31,6 +31,7 @@ import org.springframework.stereotype.Component;
 
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.imports.dtos.ImportLookupCache;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
 import com.qcadoo.model.api.DataDefinition;
@@ -43,12 +44,26 @@ public class ProductCellParser implements CellParser {
 
     private static final String L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND = "qcadooView.validate.field.error.lookupCodeNotFound";
 
+    private static final String L_PRODUCT = BasicConstants.MODEL_PRODUCT;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Override
     public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity product = getProductByNumber(cellValue);
+        parse(cellValue, errorsAccessor, valueConsumer, null);
+    }
+
+    @Override
+    public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer,
+            final ImportLookupCache lookupCache) {
+        Entity product;
+
+        if (Objects.isNull(lookupCache)) {
+            product = getProductByNumber(cellValue);
+        } else {
+            product = lookupCache.get(L_PRODUCT, cellValue, this::getProductByNumber);
+        }
 
         if (Objects.isNull(product)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
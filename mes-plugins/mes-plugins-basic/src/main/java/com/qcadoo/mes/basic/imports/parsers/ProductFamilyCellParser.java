@@ -32,6 +32,7 @@ import org.springframework.stereotype.Component;
 import com.qcadoo.mes.basic.constants.BasicConstants;
 import com.qcadoo.mes.basic.constants.ProductFamilyElementType;
 import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.imports.dtos.ImportLookupCache;
 import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
 import com.qcadoo.mes.basic.imports.helpers.CellParser;
 import com.qcadoo.model.api.DataDefinition;
@@ -46,12 +47,26 @@ public class ProductFamilyCellParser implements CellParser {
 
     private static final String L_BASIC_IMPORT_ERROR_FIELD_NOT_FAMILY = "basic.import.error.field.notFamily";
 
+    private static final String L_PRODUCT = BasicConstants.MODEL_PRODUCT;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Override
     public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer) {
-        Entity productFamily = getProductFamilyByNumber(cellValue);
+        parse(cellValue, errorsAccessor, valueConsumer, null);
+    }
+
+    @Override
+    public void parse(final String cellValue, final CellErrorsAccessor errorsAccessor, final Consumer<Object> valueConsumer,
+            final ImportLookupCache lookupCache) {
+        Entity productFamily;
+
+        if (Objects.isNull(lookupCache)) {
+            productFamily = getProductFamilyByNumber(cellValue);
+        } else {
+            productFamily = lookupCache.get(L_PRODUCT, cellValue, this::getProductFamilyByNumber);
+        }
 
         if (Objects.isNull(productFamily)) {
             errorsAccessor.addError(L_QCADOO_VIEW_VALIDATE_FIELD_ERROR_LOOKUP_CODE_NOT_FOUND);
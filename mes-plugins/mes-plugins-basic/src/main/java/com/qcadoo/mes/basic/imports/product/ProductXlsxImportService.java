@@ -37,6 +37,16 @@ public class ProductXlsxImportService extends XlsxImportService {
 
     private static final String L_COST_FOR_NUMBER = "costForNumber";
 
+    @Override
+    public Object getUpdateKey(final Entity product) {
+        return product.getStringField(ProductFields.NUMBER);
+    }
+
+    @Override
+    public boolean shouldCommitPerChunk() {
+        return true;
+    }
+
     @Override
     public Entity createEntity(final String pluginIdentifier, final String modelName) {
         Entity product = getDataDefinition(pluginIdentifier, modelName).create();
@@ -34,6 +34,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.opencsv.CSVParser;
 import com.opencsv.CSVParserBuilder;
@@ -62,6 +63,8 @@ public class CsvImportService extends ImportService {
 
         int rowIndex = 0;
 
+        List<RowProcessorHelper> rowsToProcess = Lists.newArrayList();
+
         for (String[] row : rows) {
             Entity entity = createEntity(pluginIdentifier, modelName);
 
@@ -79,19 +82,18 @@ public class CsvImportService extends ImportService {
                 break;
             }
 
-            if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
-                Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
+            rowsToProcess.add(rowProcessorService);
 
-                rowProcessorService.update(entityToUpdate, checkOnUpdate);
+            if (rowsToProcess.size() >= getChunkSize()) {
+                processRows(rowsToProcess, rollbackOnError, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier,
+                        checkOnUpdate);
             }
 
-            validateEntity(entity, entity.getDataDefinition());
-
-            rowProcessorService.process();
-
             rowIndex++;
         }
 
+        processRows(rowsToProcess, rollbackOnError, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
+
         if (rollbackOnError && importStatus.hasErrors()) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
         }
@@ -27,6 +27,7 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.Function;
@@ -37,6 +38,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.i18n.LocaleContextHolder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.UriComponentsBuilder;
 
@@ -49,10 +51,13 @@ import com.qcadoo.mes.basic.constants.LogFields;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
 import com.qcadoo.mes.basic.imports.dtos.ImportError;
 import com.qcadoo.mes.basic.imports.dtos.ImportStatus;
+import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchDisjunction;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.CheckBoxComponent;
@@ -115,6 +120,8 @@ public abstract class ImportService {
 
     public static final String L_XLSX = "xlsx";
 
+    private static final int L_CHUNK_SIZE = 500;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -184,6 +191,11 @@ public abstract class ImportService {
                 ImportStatus importStatus = importFile(fis, cellBinderRegistry, rollbackOnError, pluginIdentifier, modelName,
                         belongsTo, belongsToName, shouldUpdate, criteriaSupplier, checkOnUpdate);
 
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(String.format("Import of %s: %d lookups resolved from cache, %d from database", modelName,
+                            importStatus.getLookupHits(), importStatus.getLookupMisses()));
+                }
+
                 Integer rowsProcessed = importStatus.getRowsProcessed();
                 Integer rowsWithErrors = importStatus.getErrorsSize();
                 Integer savedEntities = rowsProcessed - rowsWithErrors;
@@ -259,6 +271,120 @@ public abstract class ImportService {
         return getDataDefinition(pluginIdentifier, modelName).find().add(searchCriterion).setMaxResults(1).uniqueResult();
     }
 
+    /**
+     * Key identifying the entity to update, used to match entities found for a whole chunk of rows with one query. When it
+     * returns null (default), the entity to update is searched separately for each row.
+     */
+    public Object getUpdateKey(final Entity entity) {
+        return null;
+    }
+
+    /**
+     * Number of rows bound before they are saved together.
+     */
+    public int getChunkSize() {
+        return L_CHUNK_SIZE;
+    }
+
+    /**
+     * If true and rollbackOnError is false, every chunk of rows is saved and committed in its own transaction.
+     */
+    public boolean shouldCommitPerChunk() {
+        return false;
+    }
+
+    protected void processRows(final List<RowProcessorHelper> rows, final Boolean rollbackOnError, final String pluginIdentifier,
+            final String modelName, final Boolean shouldUpdate, final Function<Entity, SearchCriterion> criteriaSupplier,
+            final Function<Entity, Boolean> checkOnUpdate) {
+        if (rows.isEmpty()) {
+            return;
+        }
+
+        if (!rollbackOnError && shouldCommitPerChunk()) {
+            saveRowsInNewTransaction(rows, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
+        } else {
+            saveRows(rows, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
+        }
+
+        rows.clear();
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    protected void saveRowsInNewTransaction(final List<RowProcessorHelper> rows, final String pluginIdentifier,
+            final String modelName, final Boolean shouldUpdate, final Function<Entity, SearchCriterion> criteriaSupplier,
+            final Function<Entity, Boolean> checkOnUpdate) {
+        saveRows(rows, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
+    }
+
+    protected void saveRows(final List<RowProcessorHelper> rows, final String pluginIdentifier, final String modelName,
+            final Boolean shouldUpdate, final Function<Entity, SearchCriterion> criteriaSupplier,
+            final Function<Entity, Boolean> checkOnUpdate) {
+        boolean update = shouldUpdate && !Objects.isNull(criteriaSupplier);
+
+        Map<Object, Entity> entitiesToUpdate = Maps.newHashMap();
+
+        if (update) {
+            entitiesToUpdate = getEntitiesToUpdate(rows, pluginIdentifier, modelName, criteriaSupplier);
+        }
+
+        for (RowProcessorHelper row : rows) {
+            row.rebindIfFailed();
+
+            Entity entity = row.getEntity();
+            Object updateKey = null;
+
+            if (update) {
+                updateKey = getUpdateKey(entity);
+
+                Entity entityToUpdate;
+
+                if (Objects.isNull(updateKey)) {
+                    entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
+                } else {
+                    entityToUpdate = entitiesToUpdate.get(updateKey);
+                }
+
+                row.update(entityToUpdate, checkOnUpdate);
+            }
+
+            validateEntity(entity, entity.getDataDefinition());
+
+            row.process();
+
+            Entity savedEntity = row.getSavedEntity();
+
+            if (Objects.nonNull(updateKey) && Objects.nonNull(savedEntity) && savedEntity.isValid()) {
+                entitiesToUpdate.put(updateKey, savedEntity);
+            }
+        }
+    }
+
+    private Map<Object, Entity> getEntitiesToUpdate(final List<RowProcessorHelper> rows, final String pluginIdentifier,
+            final String modelName, final Function<Entity, SearchCriterion> criteriaSupplier) {
+        Map<Object, Entity> entitiesToUpdate = Maps.newHashMap();
+
+        SearchDisjunction searchDisjunction = SearchRestrictions.disjunction();
+
+        boolean hasKeys = false;
+
+        for (RowProcessorHelper row : rows) {
+            if (Objects.nonNull(getUpdateKey(row.getEntity()))) {
+                searchDisjunction.add(criteriaSupplier.apply(row.getEntity()));
+
+                hasKeys = true;
+            }
+        }
+
+        if (hasKeys) {
+            for (Entity entity : getDataDefinition(pluginIdentifier, modelName).find().add(searchDisjunction).list()
+                    .getEntities()) {
+                entitiesToUpdate.putIfAbsent(getUpdateKey(entity), entity);
+            }
+        }
+
+        return entitiesToUpdate;
+    }
+
     public void validateEntity(final Entity entity, final DataDefinition entityDD) {
     }
 
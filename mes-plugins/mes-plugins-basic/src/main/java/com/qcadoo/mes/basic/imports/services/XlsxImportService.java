@@ -25,26 +25,30 @@ package com.qcadoo.mes.basic.imports.services;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 
-import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import com.google.common.collect.Lists;
 import com.google.common.io.Files;
 import com.qcadoo.mes.basic.imports.dtos.CellBinderRegistry;
 import com.qcadoo.mes.basic.imports.dtos.ImportStatus;
 import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
+import com.qcadoo.mes.basic.imports.helpers.XlsxSheetReader;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchCriterion;
 
 @Service
 public class XlsxImportService extends ImportService {
 
+    private static final Logger LOG = LoggerFactory.getLogger(XlsxImportService.class);
+
     @Transactional
     public ImportStatus importFile(final FileInputStream fis, final CellBinderRegistry cellBinderRegistry,
             final Boolean rollbackOnError, final String pluginIdentifier, final String modelName, final Entity belongsTo,
@@ -52,16 +56,11 @@ public class XlsxImportService extends ImportService {
             final Function<Entity, Boolean> checkOnUpdate) throws IOException {
         ImportStatus importStatus = new ImportStatus();
 
-        XSSFWorkbook workbook = new XSSFWorkbook(fis);
-        XSSFSheet sheet = workbook.getSheetAt(0);
-
-        for (int rowIndex = 1; rowIndex <= sheet.getLastRowNum(); rowIndex++) {
-            Row row = sheet.getRow(rowIndex);
+        XlsxSheetReader xlsxSheetReader = new XlsxSheetReader(cellBinderRegistry.getSize());
 
-            if (Objects.isNull(row)) {
-                break;
-            }
+        List<RowProcessorHelper> rows = Lists.newArrayList();
 
+        xlsxSheetReader.read(fis, (rowIndex, cellValues) -> {
             Entity entity = createEntity(pluginIdentifier, modelName);
 
             if (Objects.nonNull(belongsTo) && Objects.nonNull(belongsToName)) {
@@ -70,24 +69,26 @@ public class XlsxImportService extends ImportService {
 
             RowProcessorHelper rowProcessorHelper = new RowProcessorHelper(entity, cellBinderRegistry, importStatus, rowIndex);
 
-            for (int columnIndex = 0; columnIndex < cellBinderRegistry.getSize(); columnIndex++) {
-                rowProcessorHelper.append(row.getCell(columnIndex, Row.RETURN_BLANK_AS_NULL));
+            for (String cellValue : cellValues) {
+                rowProcessorHelper.append(cellValue);
             }
 
             if (rowProcessorHelper.isEmpty()) {
-                break;
+                return false;
             }
 
-            if (shouldUpdate && !Objects.isNull(criteriaSupplier)) {
-                Entity entityToUpdate = getEntity(pluginIdentifier, modelName, criteriaSupplier.apply(entity));
+            rows.add(rowProcessorHelper);
 
-                rowProcessorHelper.update(entityToUpdate, checkOnUpdate);
+            if (rows.size() >= getChunkSize()) {
+                processRows(rows, rollbackOnError, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
+
+                logProgress(importStatus, xlsxSheetReader.getLastRowIndex(), modelName);
             }
 
-            validateEntity(entity, entity.getDataDefinition());
+            return true;
+        });
 
-            rowProcessorHelper.process();
-        }
+        processRows(rows, rollbackOnError, pluginIdentifier, modelName, shouldUpdate, criteriaSupplier, checkOnUpdate);
 
         if (rollbackOnError && importStatus.hasErrors()) {
             TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
@@ -96,6 +97,18 @@ public class XlsxImportService extends ImportService {
         return importStatus;
     }
 
+    private void logProgress(final ImportStatus importStatus, final int lastRowIndex, final String modelName) {
+        if (LOG.isInfoEnabled()) {
+            if (lastRowIndex > 0) {
+                LOG.info(String.format("Import of %s: %d of %d rows processed, %d errors", modelName,
+                        importStatus.getRowsProcessed(), lastRowIndex, importStatus.getErrorsSize()));
+            } else {
+                LOG.info(String.format("Import of %s: %d rows processed, %d errors", modelName, importStatus.getRowsProcessed(),
+                        importStatus.getErrorsSize()));
+            }
+        }
+    }
+
     public boolean checkFileExtension(final String filePath) {
         return Files.getFileExtension(filePath).equalsIgnoreCase(L_XLSX);
     }
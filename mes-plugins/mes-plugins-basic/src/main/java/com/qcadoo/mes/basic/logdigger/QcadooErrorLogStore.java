@@ -26,6 +26,12 @@ package com.qcadoo.mes.basic.logdigger;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +51,26 @@ public class QcadooErrorLogStore implements ErrorLogStore {
 
     private static final Logger LOG = LoggerFactory.getLogger(QcadooErrorLogStore.class);
 
+    private static final int L_STORE_QUEUE_CAPACITY = 1000;
+
+    private static final int L_JIRA_QUEUE_CAPACITY = 100;
+
+    private static final int L_MAX_ERRORS_PER_SIGNATURE = 10;
+
+    private static final long L_SIGNATURE_WINDOW = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int L_MAX_SIGNATURE_WINDOWS = 10000;
+
+    private static final long L_SHUTDOWN_TIMEOUT = 10;
+
+    private final Map<String, SignatureWindow> signatureWindows = new ConcurrentHashMap<>();
+
+    private final AtomicInteger droppedErrors = new AtomicInteger();
+
+    private ThreadPoolExecutor storeExecutor;
+
+    private ThreadPoolExecutor jiraExecutor;
+
     private JdbcErrorLogStore jdbcErrorLogStore;
 
     private String[][] ignoredErrors;
@@ -63,9 +89,26 @@ public class QcadooErrorLogStore implements ErrorLogStore {
 
     @Override
     public void destroy() {
+        shutdown(storeExecutor);
+        shutdown(jiraExecutor);
+
         jdbcErrorLogStore.destroy();
     }
 
+    private void shutdown(final ThreadPoolExecutor executor) {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(L_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                LOG.warn("Logdigger: " + executor.shutdownNow().size() + " errors were not stored before shutdown");
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+
+            Thread.currentThread().interrupt();
+        }
+    }
+
     @Override
     public ResultsPage<ErrorLog> findInDateRange(final Date fromDate, final Date toDate, final int offset, final int limit) {
         return jdbcErrorLogStore.findInDateRange(fromDate, toDate, offset, limit);
@@ -114,6 +157,18 @@ public class QcadooErrorLogStore implements ErrorLogStore {
         logdiggerJiraUser = String.valueOf(attributeProvider.getAttribute("logdiggerJiraUser"));
         logdiggerJiraPass = String.valueOf(attributeProvider.getAttribute("logdiggerJiraPass"));
         logdiggerJiraProject = String.valueOf(attributeProvider.getAttribute("logdiggerJiraProject"));
+
+        storeExecutor = createExecutor("logdigger-store", L_STORE_QUEUE_CAPACITY);
+        jiraExecutor = createExecutor("logdigger-jira", L_JIRA_QUEUE_CAPACITY);
+    }
+
+    private ThreadPoolExecutor createExecutor(final String threadName, final int queueCapacity) {
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            thread.setDaemon(true);
+
+            return thread;
+        }, (runnable, executor) -> droppedErrors.incrementAndGet());
     }
 
     @Override
@@ -121,6 +176,10 @@ public class QcadooErrorLogStore implements ErrorLogStore {
         return jdbcErrorLogStore.isAvailable(feature);
     }
 
+    /**
+     * Errors are stored in the background, so the id of a stored error isn't known yet when this method returns. Null is
+     * returned for every error, the same as for ignored, suppressed and dropped ones.
+     */
     @Override
     public String save(final ErrorLog errorLog) {
         for (String[] ignoredError : ignoredErrors) {
@@ -151,39 +210,117 @@ public class QcadooErrorLogStore implements ErrorLogStore {
             }
         }
 
-        String id = jdbcErrorLogStore.save(errorLog);
+        if (!shouldStore(errorLog)) {
+            return null;
+        }
 
-        if (jdbcErrorLogStore.findSimilar(errorLog, 0, 1).getTotalCount() == 1) {
-            String description = (logdiggerAddress + "/console/view?err=" + id + "\n\n" + errorLog.getStackTrace()).replaceAll(
-                    "[\n\t\r]+", "\\\n");
-            String summary = "LogDigger " + errorLog.getLogSnippet().split("\n")[0];
+        storeExecutor.execute(() -> store(errorLog));
 
-            JerseyJiraRestClientFactory jerseyJiraRestClientFactory = new JerseyJiraRestClientFactory();
+        return null;
+    }
 
-            try {
-                URI jiraServerURI = new URI(logdiggerJira);
-                NullProgressMonitor nullProgressMonitor = new NullProgressMonitor();
+    /**
+     * Errors with the same category signature are stored at most L_MAX_ERRORS_PER_SIGNATURE times per minute, so an error storm
+     * does not flood the store queue with copies of one error.
+     */
+    private boolean shouldStore(final ErrorLog errorLog) {
+        long now = System.currentTimeMillis();
 
-                JiraRestClient jiraRestClient = jerseyJiraRestClientFactory.createWithBasicHttpAuthentication(jiraServerURI,
-                        logdiggerJiraUser, logdiggerJiraPass);
+        if (signatureWindows.size() > L_MAX_SIGNATURE_WINDOWS) {
+            signatureWindows.values().removeIf(window -> now - window.start >= L_SIGNATURE_WINDOW);
+        }
 
-                IssueInputBuilder issueInputBuilder = new IssueInputBuilder(logdiggerJiraProject, (long) 1);
-                issueInputBuilder.setReporterName(logdiggerJiraUser);
-                issueInputBuilder.setSummary(summary);
-                issueInputBuilder.setDescription(description);
-                issueInputBuilder.setPriorityId((long) 3);
+        SignatureWindow signatureWindow = signatureWindows.compute(getSignature(errorLog), (signature, window) -> {
+            if ((window == null) || (now - window.start >= L_SIGNATURE_WINDOW)) {
+                if ((window != null) && (window.suppressed > 0)) {
+                    LOG.warn("Logdigger: " + window.suppressed + " repeated errors not stored: " + signature);
+                }
 
-                IssueInput issueInput = issueInputBuilder.build();
+                return new SignatureWindow(now);
+            }
 
-                jiraRestClient.getIssueClient().createIssue(issueInput, nullProgressMonitor);
+            window.count++;
 
-                LOG.info(" Logdigger: " + issueInput.toString());
-            } catch (URISyntaxException e) {
-                LOG.warn(e.getMessage(), e);
+            if (window.count > L_MAX_ERRORS_PER_SIGNATURE) {
+                window.suppressed++;
             }
+
+            return window;
+        });
+
+        return signatureWindow.count <= L_MAX_ERRORS_PER_SIGNATURE;
+    }
+
+    private String getSignature(final ErrorLog errorLog) {
+        StringBuilder signature = new StringBuilder();
+
+        for (int i = 0; i < jdbcErrorLogStore.getMaxCategories(); i++) {
+            signature.append(errorLog.getCategorySignature(i)).append('|');
+        }
+
+        return signature.toString();
+    }
+
+    private void store(final ErrorLog errorLog) {
+        int dropped = droppedErrors.getAndSet(0);
+
+        if (dropped > 0) {
+            LOG.warn("Logdigger: " + dropped + " errors dropped, queue is full");
+        }
+
+        try {
+            String id = jdbcErrorLogStore.save(errorLog);
+
+            if (jdbcErrorLogStore.findSimilar(errorLog, 0, 1).getTotalCount() == 1) {
+                jiraExecutor.execute(() -> createIssue(errorLog, id));
+            }
+        } catch (RuntimeException e) {
+            LOG.warn(e.getMessage(), e);
+        }
+    }
+
+    private void createIssue(final ErrorLog errorLog, final String id) {
+        String description = (logdiggerAddress + "/console/view?err=" + id + "\n\n" + errorLog.getStackTrace()).replaceAll(
+                "[\n\t\r]+", "\\\n");
+        String summary = "LogDigger " + errorLog.getLogSnippet().split("\n")[0];
+
+        JerseyJiraRestClientFactory jerseyJiraRestClientFactory = new JerseyJiraRestClientFactory();
+
+        try {
+            URI jiraServerURI = new URI(logdiggerJira);
+            NullProgressMonitor nullProgressMonitor = new NullProgressMonitor();
+
+            JiraRestClient jiraRestClient = jerseyJiraRestClientFactory.createWithBasicHttpAuthentication(jiraServerURI,
+                    logdiggerJiraUser, logdiggerJiraPass);
+
+            IssueInputBuilder issueInputBuilder = new IssueInputBuilder(logdiggerJiraProject, (long) 1);
+            issueInputBuilder.setReporterName(logdiggerJiraUser);
+            issueInputBuilder.setSummary(summary);
+            issueInputBuilder.setDescription(description);
+            issueInputBuilder.setPriorityId((long) 3);
+
+            IssueInput issueInput = issueInputBuilder.build();
+
+            jiraRestClient.getIssueClient().createIssue(issueInput, nullProgressMonitor);
+
+            LOG.info(" Logdigger: " + issueInput.toString());
+        } catch (URISyntaxException | RuntimeException e) {
+            LOG.warn(e.getMessage(), e);
+        }
+    }
+
+    private static class SignatureWindow {
+
+        private final long start;
+
+        private int count = 1;
+
+        private int suppressed = 0;
+
+        SignatureWindow(final long start) {
+            this.start = start;
         }
 
-        return id;
     }
 
 }
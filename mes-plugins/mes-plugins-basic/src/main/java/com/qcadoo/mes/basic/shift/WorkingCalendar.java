@@ -0,0 +1,211 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+/**
+ * Working time of a production line between two days, as sorted, disjoint intervals with cumulative working time, so finding
+ * the date after given working time or the nearest working date is a binary search.
+ *
+ * Answers are given only if they are not later than the last day of the calendar, because work time ranges of further days
+ * are not known yet. Empty optional means that the calendar has to be extended.
+ */
+public class WorkingCalendar {
+
+    private final DateTime firstDay;
+
+    private final DateTime lastDay;
+
+    private final List<DateTimeRange> ranges;
+
+    private final long[] starts;
+
+    private final long[] ends;
+
+    private final long[] cumulativeMillis;
+
+    private final long builtAt;
+
+    public WorkingCalendar(final DateTime firstDay, final DateTime lastDay, final List<DateTimeRange> ranges) {
+        this(firstDay, lastDay, ranges, System.currentTimeMillis());
+    }
+
+    private WorkingCalendar(final DateTime firstDay, final DateTime lastDay, final List<DateTimeRange> ranges,
+            final long builtAt) {
+        this.firstDay = firstDay;
+        this.lastDay = lastDay;
+        this.ranges = Collections.unmodifiableList(Lists.newArrayList(ranges));
+        this.builtAt = builtAt;
+
+        List<DateTimeRange> sortedRanges = Lists.newArrayList(ranges);
+
+        sortedRanges.sort(Comparator.comparing(DateTimeRange::getFrom));
+
+        long[] mergedStarts = new long[sortedRanges.size()];
+        long[] mergedEnds = new long[sortedRanges.size()];
+        int size = 0;
+
+        for (DateTimeRange range : sortedRanges) {
+            long start = range.getFrom().getMillis();
+            long end = range.getTo().getMillis();
+
+            if (end <= start) {
+                continue;
+            }
+
+            if (size > 0 && start <= mergedEnds[size - 1]) {
+                mergedEnds[size - 1] = Math.max(mergedEnds[size - 1], end);
+            } else {
+                mergedStarts[size] = start;
+                mergedEnds[size] = end;
+                size++;
+            }
+        }
+
+        starts = Arrays.copyOf(mergedStarts, size);
+        ends = Arrays.copyOf(mergedEnds, size);
+        cumulativeMillis = new long[size + 1];
+
+        for (int i = 0; i < size; i++) {
+            cumulativeMillis[i + 1] = cumulativeMillis[i] + ends[i] - starts[i];
+        }
+    }
+
+    /**
+     * Returns calendar with work time ranges of preceding or following days added.
+     */
+    public WorkingCalendar extend(final DateTime newFirstDay, final DateTime newLastDay, final List<DateTimeRange> newRanges) {
+        List<DateTimeRange> allRanges = Lists.newArrayList(ranges);
+
+        allRanges.addAll(newRanges);
+
+        return new WorkingCalendar(newFirstDay, newLastDay, allRanges, builtAt);
+    }
+
+    /**
+     * Returns the date on which given working time, counted from given date, ends.
+     */
+    public Optional<DateTime> findDateAfterWorkingMillis(final DateTime dateFrom, final long millis) {
+        if (millis <= 0L) {
+            return Optional.of(dateFrom);
+        }
+
+        int index = findFirstIntervalEndingAfter(dateFrom.getMillis());
+
+        if (index == starts.length) {
+            return Optional.empty();
+        }
+
+        long target = cumulativeMillis[index] + Math.max(0L, dateFrom.getMillis() - starts[index]) + millis;
+
+        if (target > cumulativeMillis[starts.length]) {
+            return Optional.empty();
+        }
+
+        int low = index + 1;
+        int high = starts.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (cumulativeMillis[middle] >= target) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        int interval = low - 1;
+
+        return withinCalendar(starts[interval] + target - cumulativeMillis[interval]);
+    }
+
+    /**
+     * Returns given date if it is a working one, otherwise start of the next working interval.
+     */
+    public Optional<DateTime> findNearestWorkingDate(final DateTime date) {
+        int index = findFirstIntervalEndingAfter(date.getMillis());
+
+        if (index == starts.length) {
+            return Optional.empty();
+        }
+
+        return withinCalendar(Math.max(starts[index], date.getMillis()));
+    }
+
+    private Optional<DateTime> withinCalendar(final long millis) {
+        if (millis > lastDay.getMillis()) {
+            return Optional.empty();
+        }
+
+        return Optional.of(new DateTime(millis, lastDay.getZone()));
+    }
+
+    private int findFirstIntervalEndingAfter(final long millis) {
+        int low = 0;
+        int high = ends.length;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (ends[middle] > millis) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Checks if work time ranges of all days between given ones are known.
+     */
+    public boolean covers(final DateTime from, final DateTime to) {
+        return !from.isBefore(firstDay) && !to.isAfter(lastDay);
+    }
+
+    public DateTime getFirstDay() {
+        return firstDay;
+    }
+
+    public DateTime getLastDay() {
+        return lastDay;
+    }
+
+    public long getBuiltAt() {
+        return builtAt;
+    }
+
+}
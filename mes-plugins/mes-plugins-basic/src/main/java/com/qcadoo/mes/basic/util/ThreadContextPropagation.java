@@ -0,0 +1,86 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContext;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Passes the tenant, locale and security context of the current thread to tasks run by pooled threads. Wrap tasks on the
+ * thread submitting them - the context is captured when a task is wrapped, set on the thread running it and cleared when it's
+ * done. Tasks run in the tenant of the submitting thread, so they read and write its database.
+ */
+@Service
+public class ThreadContextPropagation {
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    public <T> Callable<T> withCurrentContext(final Callable<T> task) {
+        int tenantId = multiTenantService.getCurrentTenantId();
+        LocaleContext localeContext = LocaleContextHolder.getLocaleContext();
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+
+        return () -> {
+            LocaleContextHolder.setLocaleContext(localeContext);
+            SecurityContextHolder.setContext(securityContext);
+
+            try {
+                return callInTenant(tenantId, task);
+            } finally {
+                SecurityContextHolder.clearContext();
+                LocaleContextHolder.resetLocaleContext();
+            }
+        };
+    }
+
+    private <T> T callInTenant(final int tenantId, final Callable<T> task) throws Exception {
+        AtomicReference<T> result = new AtomicReference<>();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+
+        multiTenantService.doInMultiTenantContext(tenantId, () -> {
+            try {
+                result.set(task.call());
+            } catch (Exception e) {
+                failure.set(e);
+            }
+        });
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+
+        return result.get();
+    }
+
+}
@@ -24,9 +24,19 @@
 package com.qcadoo.mes.basic;
 
 import static junit.framework.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.joda.time.DateTime;
 
 import org.junit.Test;
 import org.mockito.Mock;
@@ -34,17 +44,41 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.shift.Shift;
+import com.qcadoo.mes.basic.util.DateTimeRange;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 public class ShiftsServiceTest {
 
+    private static final Long L_FIRST_SHIFT_ID = 1L;
+
+    private static final Long L_SECOND_SHIFT_ID = 2L;
+
+    private static final int L_TENANT_ID = 3;
+
     private ShiftsServiceImpl shiftsService;
 
+    private int currentTenantId;
+
+    private AtomicInteger shiftWorkDateTimesQueries;
+
     @Mock
     private DataDefinitionService dataDefinitionService;
 
+    @Mock
+    private ShiftExceptionService shiftExceptionService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private Entity productionLine, firstShift, secondShift;
+
     @Mock
     private DataDefinition dataDefinition;
 
@@ -57,6 +91,91 @@ public class ShiftsServiceTest {
         MockitoAnnotations.initMocks(this);
 
         ReflectionTestUtils.setField(shiftsService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(shiftsService, "shiftExceptionService", shiftExceptionService);
+        ReflectionTestUtils.setField(shiftsService, "multiTenantService", multiTenantService);
+
+        currentTenantId = L_TENANT_ID;
+        shiftWorkDateTimesQueries = new AtomicInteger();
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> currentTenantId);
+
+        mockShift(firstShift, L_FIRST_SHIFT_ID);
+        mockShift(secondShift, L_SECOND_SHIFT_ID);
+
+        EntityList shifts = mockEntityList(Lists.newArrayList(secondShift, firstShift));
+        given(productionLine.getHasManyField("shifts")).willReturn(shifts);
+        given(productionLine.getId()).willReturn(1L);
+
+        given(shiftExceptionService.getShiftWorkDateTimes(any(Entity.class), any(Shift.class), any(DateTime.class))).willAnswer(
+                invocation -> {
+                    shiftWorkDateTimesQueries.incrementAndGet();
+
+                    Shift shift = (Shift) invocation.getArguments()[1];
+                    DateTime dateOfDay = (DateTime) invocation.getArguments()[2];
+
+                    if (L_FIRST_SHIFT_ID.equals(shift.getId())) {
+                        return Lists.newArrayList(new DateTimeRange(dateOfDay.plusHours(6), dateOfDay.plusHours(14)));
+                    } else {
+                        return Lists.newArrayList(new DateTimeRange(dateOfDay.plusHours(14), dateOfDay.plusHours(22)));
+                    }
+                });
+    }
+
+    private void mockShift(final Entity shift, final Long shiftId) {
+        EntityList timetableExceptions = mockEntityList(Collections.emptyList());
+
+        given(shift.copy()).willReturn(shift);
+        given(shift.getId()).willReturn(shiftId);
+        given(shift.getHasManyField(anyString())).willReturn(timetableExceptions);
+    }
+
+    private EntityList mockEntityList(final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+        given(entityList.stream()).willAnswer(invocation -> entities.stream());
+        given(entityList.isEmpty()).willReturn(entities.isEmpty());
+
+        return entityList;
+    }
+
+    @Test
+    public void shouldReturnShiftWorkingAtNearestWorkingDate() {
+        // given
+        DateTime dateOfDay = new DateTime(2020, 3, 2, 0, 0);
+
+        // when
+        Optional<Shift> duringSecondShift = shiftsService.getShiftForNearestWorkingDate(dateOfDay.plusHours(15),
+                productionLine);
+        Optional<Shift> afterSecondShift = shiftsService.getShiftForNearestWorkingDate(dateOfDay.plusHours(23),
+                productionLine);
+
+        // then
+        assertEquals(L_SECOND_SHIFT_ID, duringSecondShift.get().getId());
+        assertEquals(L_FIRST_SHIFT_ID, afterSecondShift.get().getId());
+    }
+
+    @Test
+    public void shouldKeepWorkingCalendarsPerTenant() {
+        // given
+        DateTime date = new DateTime(2020, 3, 2, 15, 0);
+
+        shiftsService.getNearestWorkingDate(date, productionLine);
+
+        int queries = shiftWorkDateTimesQueries.get();
+
+        // when
+        currentTenantId = L_TENANT_ID + 1;
+
+        shiftsService.getNearestWorkingDate(date, productionLine);
+        shiftsService.invalidateWorkingCalendars();
+
+        currentTenantId = L_TENANT_ID;
+
+        shiftsService.getNearestWorkingDate(date, productionLine);
+
+        // then
+        assertEquals(2 * queries, shiftWorkDateTimesQueries.get());
     }
 
     @Test
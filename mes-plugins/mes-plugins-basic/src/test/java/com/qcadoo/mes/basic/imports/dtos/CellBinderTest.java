@@ -0,0 +1,87 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.dtos;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.qcadoo.mes.basic.imports.helpers.CellErrorsAccessor;
+import com.qcadoo.mes.basic.imports.parsers.BooleanCellParser;
+import com.qcadoo.model.api.Entity;
+
+public class CellBinderTest {
+
+    private static final String L_FIELD_NAME = "active";
+
+    private CellBinder optionalBooleanCellBinder;
+
+    @Mock
+    private Entity entity;
+
+    @Mock
+    private CellErrorsAccessor errorsAccessor;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        optionalBooleanCellBinder = CellBinder.optional(L_FIELD_NAME, new BooleanCellParser());
+    }
+
+    @Test
+    public void shouldLeaveOptionalBooleanUnsetWhenCellIsMissing() {
+        // when
+        optionalBooleanCellBinder.bind((String) null, entity, errorsAccessor);
+
+        // then
+        verify(entity, never()).setField(anyString(), any());
+        verify(errorsAccessor, never()).addError(anyString());
+    }
+
+    @Test
+    public void shouldBindOptionalBooleanToFalseWhenFieldIsEmpty() {
+        // when
+        optionalBooleanCellBinder.bind("", entity, errorsAccessor);
+
+        // then
+        verify(entity).setField(L_FIELD_NAME, false);
+    }
+
+    @Test
+    public void shouldBindOptionalBooleanValue() {
+        // when
+        optionalBooleanCellBinder.bind("tak", entity, errorsAccessor);
+
+        // then
+        verify(entity).setField(L_FIELD_NAME, true);
+    }
+
+}
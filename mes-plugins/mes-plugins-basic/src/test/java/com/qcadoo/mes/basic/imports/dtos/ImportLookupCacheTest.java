@@ -0,0 +1,148 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.dtos;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+public class ImportLookupCacheTest {
+
+    private ImportLookupCache importLookupCache;
+
+    @Mock
+    private Entity product;
+
+    @Mock
+    private DataDefinition productDD;
+
+    private AtomicInteger queries;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        importLookupCache = new ImportLookupCache();
+        queries = new AtomicInteger();
+
+        given(product.getId()).willReturn(1L);
+        given(product.getDataDefinition()).willReturn(productDD);
+        given(productDD.getPluginIdentifier()).willReturn("basic");
+        given(productDD.getName()).willReturn("product");
+    }
+
+    @Test
+    public final void shouldQueryFoundEntityOnce() {
+        // given
+        Function<String, Entity> loader = number -> {
+            queries.incrementAndGet();
+
+            return product;
+        };
+
+        // when
+        Entity first = importLookupCache.get("product", "P-1", loader);
+        Entity second = importLookupCache.get("product", "P-1", loader);
+
+        // then
+        assertSame(product, first);
+        assertSame(product, second);
+        assertEquals(1, queries.get());
+        assertEquals(1, importLookupCache.getHits());
+        assertEquals(1, importLookupCache.getMisses());
+    }
+
+    @Test
+    public final void shouldQueryMissingEntityAgain() {
+        // given
+        Function<String, Entity> loader = number -> {
+            queries.incrementAndGet();
+
+            return null;
+        };
+
+        // when
+        importLookupCache.get("product", "P-1", loader);
+        importLookupCache.get("product", "P-1", loader);
+
+        // then
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    public final void shouldNotQueryPreloadedLookup() {
+        // given
+        given(product.getStringField("name")).willReturn("szt");
+
+        importLookupCache.preload("units", Lists.newArrayList(product), entity -> entity.getStringField("name"));
+
+        Function<String, Entity> loader = name -> {
+            queries.incrementAndGet();
+
+            return null;
+        };
+
+        // when
+        Entity found = importLookupCache.get("units", "szt", loader);
+        Entity missing = importLookupCache.get("units", "kg", loader);
+
+        // then
+        assertSame(product, found);
+        assertNull(missing);
+        assertEquals(0, queries.get());
+    }
+
+    @Test
+    public final void shouldQueryAgainAfterEviction() {
+        // given
+        Function<String, Entity> loader = number -> {
+            queries.incrementAndGet();
+
+            return product;
+        };
+
+        importLookupCache.get("product", "P-1", loader);
+
+        // when
+        importLookupCache.evict(product);
+        importLookupCache.get("product", "P-1", loader);
+
+        // then
+        assertEquals(2, queries.get());
+    }
+
+}
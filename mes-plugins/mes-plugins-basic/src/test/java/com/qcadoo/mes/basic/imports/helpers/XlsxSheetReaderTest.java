@@ -0,0 +1,134 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.helpers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.i18n.LocaleContextHolder;
+
+import com.google.common.collect.Lists;
+
+public class XlsxSheetReaderTest {
+
+    private List<String[]> rows;
+
+    @Before
+    public void init() {
+        LocaleContextHolder.setLocale(Locale.ENGLISH);
+
+        rows = Lists.newArrayList();
+    }
+
+    @After
+    public void cleanUp() {
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    public final void shouldReadRowsAfterHeader() throws IOException {
+        // given
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet sheet = workbook.createSheet();
+
+        sheet.createRow(0).createCell(0).setCellValue("number");
+
+        XSSFRow row = sheet.createRow(1);
+        row.createCell(0).setCellValue("P-1");
+        row.createCell(1).setCellValue(12.5);
+        row.createCell(3).setCellValue(true);
+
+        sheet.createRow(2).createCell(1).setCellValue("second");
+
+        XlsxSheetReader xlsxSheetReader = new XlsxSheetReader(3);
+
+        // when
+        xlsxSheetReader.read(toInputStream(workbook), (rowIndex, cellValues) -> rows.add(cellValues));
+
+        // then
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] { "P-1", "12.5", null }, rows.get(0));
+        assertArrayEquals(new String[] { null, "second", null }, rows.get(1));
+    }
+
+    @Test
+    public final void shouldStopOnMissingRow() throws IOException {
+        // given
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet sheet = workbook.createSheet();
+
+        sheet.createRow(0).createCell(0).setCellValue("number");
+        sheet.createRow(1).createCell(0).setCellValue("P-1");
+        sheet.createRow(3).createCell(0).setCellValue("P-3");
+
+        XlsxSheetReader xlsxSheetReader = new XlsxSheetReader(1);
+
+        // when
+        xlsxSheetReader.read(toInputStream(workbook), (rowIndex, cellValues) -> rows.add(cellValues));
+
+        // then
+        assertEquals(1, rows.size());
+        assertArrayEquals(new String[] { "P-1" }, rows.get(0));
+    }
+
+    @Test
+    public final void shouldStopWhenHandlerReturnsFalse() throws IOException {
+        // given
+        XSSFWorkbook workbook = new XSSFWorkbook();
+        XSSFSheet sheet = workbook.createSheet();
+
+        sheet.createRow(0).createCell(0).setCellValue("number");
+        sheet.createRow(1).createCell(0).setCellValue("P-1");
+        sheet.createRow(2).createCell(0).setCellValue("P-2");
+
+        XlsxSheetReader xlsxSheetReader = new XlsxSheetReader(1);
+
+        // when
+        xlsxSheetReader.read(toInputStream(workbook), (rowIndex, cellValues) -> !rows.add(cellValues));
+
+        // then
+        assertEquals(1, rows.size());
+    }
+
+    private ByteArrayInputStream toInputStream(final XSSFWorkbook workbook) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        workbook.write(outputStream);
+
+        return new ByteArrayInputStream(outputStream.toByteArray());
+    }
+
+}
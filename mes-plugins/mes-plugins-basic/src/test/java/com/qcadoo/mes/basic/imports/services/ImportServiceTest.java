@@ -0,0 +1,128 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.imports.services;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.imports.helpers.RowProcessorHelper;
+import com.qcadoo.mes.basic.imports.product.ProductXlsxImportService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriterion;
+
+public class ImportServiceTest {
+
+    private static final String L_BASIC = "basic";
+
+    private static final String L_PRODUCT = "product";
+
+    private ImportService productImportService;
+
+    private ImportService importService;
+
+    @Mock
+    private RowProcessorHelper row;
+
+    @Mock
+    private Function<Entity, SearchCriterion> criteriaSupplier;
+
+    private List<RowProcessorHelper> rows;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productImportService = stubSaving(spy(new ProductXlsxImportService()));
+        importService = stubSaving(spy(new XlsxImportService()));
+
+        rows = Lists.newArrayList(row);
+    }
+
+    @SuppressWarnings("unchecked")
+    private ImportService stubSaving(final ImportService importService) {
+        doNothing().when(importService).saveRows(anyListOf(RowProcessorHelper.class), anyString(), anyString(), anyBoolean(),
+                any(Function.class), any(Function.class));
+        doNothing().when(importService).saveRowsInNewTransaction(anyListOf(RowProcessorHelper.class), anyString(),
+                anyString(), anyBoolean(), any(Function.class), any(Function.class));
+
+        return importService;
+    }
+
+    @Test
+    public final void shouldCommitEveryChunkOfProductsWhenNotRollingBackOnError() {
+        // when
+        productImportService.processRows(rows, false, L_BASIC, L_PRODUCT, true, criteriaSupplier, null);
+
+        // then
+        verify(productImportService).saveRowsInNewTransaction(same(rows), eq(L_BASIC), eq(L_PRODUCT),
+                eq(true), eq(criteriaSupplier), eq(null));
+        verify(productImportService, never()).saveRows(anyListOf(RowProcessorHelper.class), anyString(), anyString(),
+                anyBoolean(), any(Function.class), any(Function.class));
+        assertTrue(rows.isEmpty());
+    }
+
+    @Test
+    public final void shouldSaveProductsInImportTransactionWhenRollingBackOnError() {
+        // when
+        productImportService.processRows(rows, true, L_BASIC, L_PRODUCT, true, criteriaSupplier, null);
+
+        // then
+        verify(productImportService).saveRows(same(rows), eq(L_BASIC), eq(L_PRODUCT), eq(true),
+                eq(criteriaSupplier), eq(null));
+        verify(productImportService, never()).saveRowsInNewTransaction(anyListOf(RowProcessorHelper.class), anyString(),
+                anyString(), anyBoolean(), any(Function.class), any(Function.class));
+        assertTrue(rows.isEmpty());
+    }
+
+    @Test
+    public final void shouldSaveRowsInImportTransactionByDefault() {
+        // when
+        importService.processRows(rows, false, L_BASIC, L_PRODUCT, false, null, null);
+
+        // then
+        verify(importService).saveRows(same(rows), eq(L_BASIC), eq(L_PRODUCT), eq(false), eq(null),
+                eq(null));
+        verify(importService, never()).saveRowsInNewTransaction(anyListOf(RowProcessorHelper.class), anyString(),
+                anyString(), anyBoolean(), any(Function.class), any(Function.class));
+    }
+
+}
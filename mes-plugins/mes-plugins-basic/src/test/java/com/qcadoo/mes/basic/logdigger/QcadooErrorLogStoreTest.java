@@ -0,0 +1,219 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.logdigger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.logdigger.connector.ErrorLog;
+import com.logdigger.connector.ResultsPage;
+import com.logdigger.jdbc.JdbcErrorLogStore;
+
+public class QcadooErrorLogStoreTest {
+
+    private static final String L_IGNORED_MESSAGE = "ignored error";
+
+    private QcadooErrorLogStore qcadooErrorLogStore;
+
+    @Mock
+    private JdbcErrorLogStore jdbcErrorLogStore;
+
+    @Mock
+    private ThreadPoolExecutor storeExecutor, jiraExecutor;
+
+    @Mock
+    private ResultsPage<ErrorLog> similarErrorLogs;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        qcadooErrorLogStore = new QcadooErrorLogStore();
+
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "jdbcErrorLogStore", jdbcErrorLogStore);
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "storeExecutor", storeExecutor);
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "jiraExecutor", jiraExecutor);
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "ignoredErrors", new String[][] { {} });
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "ignoredErrorMessages", new String[][] { { L_IGNORED_MESSAGE } });
+
+        given(jdbcErrorLogStore.getMaxCategories()).willReturn(2);
+        given(jdbcErrorLogStore.findSimilar(any(ErrorLog.class), anyInt(), anyInt())).willReturn(similarErrorLogs);
+    }
+
+    @Test
+    public void shouldQueueErrorAndReturnNull() {
+        // given
+        ErrorLog errorLog = mockErrorLog("error", "signature");
+
+        // when
+        String id = qcadooErrorLogStore.save(errorLog);
+
+        // then
+        assertNull(id);
+
+        verify(storeExecutor).execute(any(Runnable.class));
+        verify(jdbcErrorLogStore, never()).save(errorLog);
+    }
+
+    @Test
+    public void shouldNotQueueIgnoredError() {
+        // given
+        ErrorLog errorLog = mockErrorLog(L_IGNORED_MESSAGE + ": details", "signature");
+
+        // when
+        qcadooErrorLogStore.save(errorLog);
+
+        // then
+        verify(storeExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void shouldSuppressRepeatedErrorsOfOneSignature() {
+        // given
+        ErrorLog errorLog = mockErrorLog("error", "signature");
+
+        // when
+        for (int i = 0; i < 15; i++) {
+            qcadooErrorLogStore.save(errorLog);
+        }
+
+        // then
+        verify(storeExecutor, times(10)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void shouldNotSuppressErrorsOfOtherSignatures() {
+        // given
+        ErrorLog errorLog = mockErrorLog("error", "signature");
+        ErrorLog otherErrorLog = mockErrorLog("other error", "other signature");
+
+        // when
+        for (int i = 0; i < 15; i++) {
+            qcadooErrorLogStore.save(errorLog);
+        }
+
+        qcadooErrorLogStore.save(otherErrorLog);
+
+        // then
+        verify(storeExecutor, times(11)).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void shouldStoreQueuedErrorWithoutIssueForKnownError() throws InterruptedException {
+        // given
+        ThreadPoolExecutor executor = createExecutor("logdigger-store-test", 1);
+
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "storeExecutor", executor);
+
+        ErrorLog errorLog = mockErrorLog("error", "signature");
+
+        given(jdbcErrorLogStore.save(errorLog)).willReturn("1");
+
+        // when
+        qcadooErrorLogStore.save(errorLog);
+
+        // then
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        verify(jdbcErrorLogStore).save(errorLog);
+        verify(jiraExecutor, never()).execute(any(Runnable.class));
+    }
+
+    @Test
+    public void shouldCountErrorsDroppedWhenQueueIsFull() throws InterruptedException {
+        // given
+        ThreadPoolExecutor executor = createExecutor("logdigger-store-test", 1);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.execute(() -> {
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        ReflectionTestUtils.setField(qcadooErrorLogStore, "storeExecutor", executor);
+
+        // when
+        qcadooErrorLogStore.save(mockErrorLog("error", "signature"));
+        qcadooErrorLogStore.save(mockErrorLog("error", "second signature"));
+        qcadooErrorLogStore.save(mockErrorLog("error", "third signature"));
+
+        // then
+        assertEquals(2, getDroppedErrors().get());
+
+        release.countDown();
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(0, getDroppedErrors().get());
+    }
+
+    private ThreadPoolExecutor createExecutor(final String threadName, final int queueCapacity) {
+        return ReflectionTestUtils.invokeMethod(qcadooErrorLogStore, "createExecutor", threadName, queueCapacity);
+    }
+
+    private AtomicInteger getDroppedErrors() {
+        return (AtomicInteger) ReflectionTestUtils.getField(qcadooErrorLogStore, "droppedErrors");
+    }
+
+    private ErrorLog mockErrorLog(final String message, final String signature) {
+        ErrorLog errorLog = mock(ErrorLog.class);
+
+        given(errorLog.getMessage()).willReturn(message);
+        given(errorLog.getCategorySignature(0)).willReturn(signature);
+        given(errorLog.getCategorySignature(1)).willReturn(message);
+
+        return errorLog;
+    }
+
+}
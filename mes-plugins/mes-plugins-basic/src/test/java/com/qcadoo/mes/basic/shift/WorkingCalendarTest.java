@@ -0,0 +1,144 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.shift;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.util.DateTimeRange;
+
+public class WorkingCalendarTest {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    private DateTime firstDay;
+
+    private WorkingCalendar workingCalendar;
+
+    @Before
+    public void init() {
+        firstDay = new DateTime(2020, 3, 2, 0, 0);
+
+        List<DateTimeRange> ranges = Lists.newArrayList(range(1, 14, 1, 22), range(0, 6, 0, 14), range(1, 6, 1, 14),
+                range(0, 10, 0, 18));
+
+        workingCalendar = new WorkingCalendar(firstDay, firstDay.plusDays(3), ranges);
+    }
+
+    @Test
+    public final void shouldFindDateAfterWorkingTimeWithinInterval() {
+        // when
+        Optional<DateTime> dateTo = workingCalendar.findDateAfterWorkingMillis(at(0, 7), 2 * HOUR);
+
+        // then
+        assertEquals(at(0, 9), dateTo.get());
+    }
+
+    @Test
+    public final void shouldFindDateAfterWorkingTimeCountingOverlappingRangesOnce() {
+        // when
+        Optional<DateTime> dateTo = workingCalendar.findDateAfterWorkingMillis(at(0, 6), 12 * HOUR);
+
+        // then
+        assertEquals(at(0, 18), dateTo.get());
+    }
+
+    @Test
+    public final void shouldFindDateAfterWorkingTimeSkippingNonWorkingTime() {
+        // when
+        Optional<DateTime> dateTo = workingCalendar.findDateAfterWorkingMillis(at(0, 16), 4 * HOUR);
+
+        // then
+        assertEquals(at(1, 8), dateTo.get());
+    }
+
+    @Test
+    public final void shouldFindEndOfIntervalWhenWorkingTimeEndsWithIt() {
+        // when
+        Optional<DateTime> dateTo = workingCalendar.findDateAfterWorkingMillis(at(0, 16), 2 * HOUR);
+
+        // then
+        assertEquals(at(0, 18), dateTo.get());
+    }
+
+    @Test
+    public final void shouldNotFindDateAfterWorkingTimeBeyondCalendar() {
+        // when
+        Optional<DateTime> dateTo = workingCalendar.findDateAfterWorkingMillis(at(1, 6), 17 * HOUR);
+
+        // then
+        assertFalse(dateTo.isPresent());
+    }
+
+    @Test
+    public final void shouldFindNearestWorkingDate() {
+        // when
+        Optional<DateTime> duringWork = workingCalendar.findNearestWorkingDate(at(0, 12));
+        Optional<DateTime> afterWork = workingCalendar.findNearestWorkingDate(at(0, 20));
+
+        // then
+        assertEquals(at(0, 12), duringWork.get());
+        assertEquals(at(1, 6), afterWork.get());
+    }
+
+    @Test
+    public final void shouldCoverDaysWithinCalendar() {
+        // when & then
+        assertTrue(workingCalendar.covers(firstDay, firstDay.plusDays(3)));
+        assertTrue(workingCalendar.covers(firstDay.plusDays(1), firstDay.plusDays(2)));
+        assertFalse(workingCalendar.covers(firstDay.minusDays(1), firstDay.plusDays(2)));
+        assertFalse(workingCalendar.covers(firstDay, firstDay.plusDays(4)));
+    }
+
+    @Test
+    public final void shouldFindDateAfterWorkingTimeInExtendedCalendar() {
+        // given
+        WorkingCalendar extendedCalendar = workingCalendar.extend(firstDay, firstDay.plusDays(4),
+                Lists.newArrayList(range(3, 6, 3, 14)));
+
+        // when
+        Optional<DateTime> dateTo = extendedCalendar.findDateAfterWorkingMillis(at(1, 6), 17 * HOUR);
+
+        // then
+        assertEquals(at(3, 7), dateTo.get());
+    }
+
+    private DateTimeRange range(final int fromDay, final int fromHour, final int toDay, final int toHour) {
+        return new DateTimeRange(at(fromDay, fromHour), at(toDay, toHour));
+    }
+
+    private DateTime at(final int day, final int hour) {
+        return firstDay.plusDays(day).withHourOfDay(hour);
+    }
+
+}
@@ -0,0 +1,153 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.basic.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ThreadContextPropagationTest {
+
+    private static final int L_TENANT_ID = 7;
+
+    private static final ThreadLocal<Integer> CURRENT_TENANT_ID = new ThreadLocal<>();
+
+    private ThreadContextPropagation threadContextPropagation;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    private ExecutorService executorService;
+
+    private Authentication authentication;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        threadContextPropagation = new ThreadContextPropagation();
+
+        ReflectionTestUtils.setField(threadContextPropagation, "multiTenantService", multiTenantService);
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> CURRENT_TENANT_ID.get());
+        willAnswer(invocation -> {
+            CURRENT_TENANT_ID.set((Integer) invocation.getArguments()[0]);
+
+            try {
+                ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+            } finally {
+                CURRENT_TENANT_ID.remove();
+            }
+
+            return null;
+        }).given(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        executorService = Executors.newSingleThreadExecutor();
+
+        authentication = new TestingAuthenticationToken("admin", "admin");
+
+        CURRENT_TENANT_ID.set(L_TENANT_ID);
+        LocaleContextHolder.setLocale(Locale.GERMAN);
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+    }
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+
+        CURRENT_TENANT_ID.remove();
+        SecurityContextHolder.clearContext();
+        LocaleContextHolder.resetLocaleContext();
+    }
+
+    @Test
+    public void shouldRunTaskInTenantOfSubmittingThread() throws InterruptedException, ExecutionException {
+        // when
+        Integer tenantId = executorService.submit(threadContextPropagation.withCurrentContext(CURRENT_TENANT_ID::get)).get();
+        Integer tenantIdWithoutContext = executorService.submit(CURRENT_TENANT_ID::get).get();
+
+        // then
+        assertEquals(Integer.valueOf(L_TENANT_ID), tenantId);
+        assertNull(tenantIdWithoutContext);
+    }
+
+    @Test
+    public void shouldRunTaskInContextOfSubmittingThread() throws InterruptedException, ExecutionException {
+        // when
+        Locale locale = executorService.submit(threadContextPropagation.withCurrentContext(LocaleContextHolder::getLocale))
+                .get();
+        Authentication taskAuthentication = executorService.submit(
+                threadContextPropagation.withCurrentContext(() -> SecurityContextHolder.getContext().getAuthentication()))
+                .get();
+
+        // then
+        assertEquals(Locale.GERMAN, locale);
+        assertSame(authentication, taskAuthentication);
+    }
+
+    @Test
+    public void shouldClearContextAfterTask() throws InterruptedException, ExecutionException {
+        // given
+        executorService.submit(threadContextPropagation.withCurrentContext(() -> null)).get();
+
+        // when
+        Authentication taskAuthentication = executorService.submit(
+                () -> SecurityContextHolder.getContext().getAuthentication()).get();
+
+        // then
+        assertNull(taskAuthentication);
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void shouldRethrowTaskFailure() throws InterruptedException, ExecutionException {
+        // when
+        executorService.submit(threadContextPropagation.withCurrentContext(() -> {
+            throw new IllegalStateException("failure");
+        })).get();
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costCalculation;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 import com.qcadoo.model.api.Entity;
 
@@ -39,6 +40,18 @@ public interface CostCalculationService {
      */
     Entity calculateTotalCost(final Entity entity);
 
+    /**
+     * Calculates total cost without saving given entity, sharing lookups between many calculations
+     * 
+     * @param entity
+     *            entity
+     * @param parameter
+     *            basic parameter with average hourly costs
+     * @param products
+     *            products holding cost norms, thread safe if calculations run in parallel
+     */
+    void fillTotalCost(final Entity entity, final Entity parameter, final Map<Long, Entity> products);
+
     /**
      * Calculates operations and products costs
      * 
@@ -28,10 +28,13 @@ import java.math.MathContext;
 import java.math.RoundingMode;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
 import com.qcadoo.mes.costCalculation.constants.SourceOfOperationCosts;
 import com.qcadoo.mes.costNormsForMaterials.ProductsCostCalculationService;
@@ -56,35 +59,48 @@ public class CostCalculationServiceImpl implements CostCalculationService {
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private ParameterService parameterService;
+
     private final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
 
     @Override
     public Entity calculateTotalCost(final Entity entity) {
+        fillTotalCost(entity, parameterService.getParameter(), Maps.newHashMap());
+
+        return entity.getDataDefinition().save(entity);
+    }
+
+    @Override
+    public void fillTotalCost(final Entity entity, final Entity parameter, final Map<Long, Entity> products) {
         entity.setField(CostCalculationFields.DATE, new Date());
         // FIXME MAKU beware of side effects - order of computations matter!
-        calculateOperationsAndProductsCosts(entity);
+        calculateOperationsAndProductsCosts(entity, parameter, products);
         final BigDecimal productionCosts = calculateProductionCost(entity);
         calculateMarginsAndOverheads(entity, productionCosts);
         final BigDecimal effectiveQuantity = getEffectiveQuantity(entity);
 
         calculateTotalCosts(entity, productionCosts, effectiveQuantity);
-
-        return entity.getDataDefinition().save(entity);
     }
 
     @Override
     public void calculateOperationsAndProductsCosts(final Entity entity) {
+        calculateOperationsAndProductsCosts(entity, parameterService.getParameter(), Maps.newHashMap());
+    }
+
+    private void calculateOperationsAndProductsCosts(final Entity entity, final Entity parameter,
+            final Map<Long, Entity> products) {
         boolean hourlyCostFromOperation = true;
         String sourceOfOperationCosts = entity.getStringField("sourceOfOperationCosts");
         if (sourceOfOperationCosts != null
                 && SourceOfOperationCosts.PARAMETERS.equals(SourceOfOperationCosts.parseString(sourceOfOperationCosts))) {
             hourlyCostFromOperation = false;
         }
-        operationsCostCalculationService.calculateOperationsCost(entity, hourlyCostFromOperation);
+        operationsCostCalculationService.calculateOperationsCost(entity, hourlyCostFromOperation, parameter);
 
         final String sourceOfMaterialCosts = entity.getStringField(CostCalculationFields.SOURCE_OF_MATERIAL_COSTS);
 
-        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts);
+        productsCostCalculationService.calculateTotalProductsCost(entity, sourceOfMaterialCosts, products);
     }
 
     @Override
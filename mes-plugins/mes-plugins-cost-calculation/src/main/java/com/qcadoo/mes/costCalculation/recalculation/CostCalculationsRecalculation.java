@@ -0,0 +1,92 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.recalculation;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CostCalculationsRecalculation {
+
+    private final Long id;
+
+    private final int total;
+
+    private final AtomicInteger recalculated = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final Date startDate = new Date();
+
+    private volatile Date finishDate;
+
+    CostCalculationsRecalculation(final Long id, final int total) {
+        this.id = id;
+        this.total = total;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getRecalculated() {
+        return recalculated.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    public Date getStartDate() {
+        return new Date(startDate.getTime());
+    }
+
+    public Date getFinishDate() {
+        if (finishDate == null) {
+            return null;
+        }
+
+        return new Date(finishDate.getTime());
+    }
+
+    public boolean isFinished() {
+        return finishDate != null;
+    }
+
+    void addRecalculated(final int count) {
+        recalculated.addAndGet(count);
+    }
+
+    void addFailed(final int count) {
+        failed.addAndGet(count);
+    }
+
+    void finish() {
+        finishDate = new Date();
+    }
+
+}
@@ -0,0 +1,83 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.recalculation;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+@Controller
+@RequestMapping(value = "/costCalculation/recalculations")
+public class CostCalculationsRecalculationController {
+
+    @Autowired
+    private CostCalculationsRecalculationService costCalculationsRecalculationService;
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CostCalculationsRecalculation recalculate(
+            @RequestParam(value = "technologies", required = false) final List<Long> technologiesIds,
+            @RequestParam(value = "productFamily", required = false) final Long productFamilyId,
+            final HttpServletResponse response) {
+        if (productFamilyId != null) {
+            return costCalculationsRecalculationService.recalculateForProductFamily(productFamilyId);
+        }
+
+        if ((technologiesIds == null) || technologiesIds.isEmpty()) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+
+            return null;
+        }
+
+        return costCalculationsRecalculationService.recalculateForTechnologies(technologiesIds);
+    }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<CostCalculationsRecalculation> getRecalculations() {
+        return costCalculationsRecalculationService.getRecalculations();
+    }
+
+    @ResponseBody
+    @RequestMapping(value = "{id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public CostCalculationsRecalculation getRecalculation(@PathVariable final Long id, final HttpServletResponse response) {
+        CostCalculationsRecalculation recalculation = costCalculationsRecalculationService.getRecalculation(id).orElse(null);
+
+        if (recalculation == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        }
+
+        return recalculation;
+    }
+
+}
@@ -0,0 +1,294 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.recalculation;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.basic.constants.ProductFields;
+import com.qcadoo.mes.basic.util.ThreadContextPropagation;
+import com.qcadoo.mes.costCalculation.CostCalculationService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Recalculates many existing cost calculations at once, e.g. after purchase prices or hourly costs changed. Recalculations run
+ * one after another; cost calculations of a recalculation are split into batches, recalculated by a pool of workers and saved
+ * in one transaction per batch. Basic parameter and products holding cost norms are looked up once per recalculation.
+ * Recalculations are kept per tenant and run in the tenant, locale and security context of the user who started them.
+ */
+@Service
+public class CostCalculationsRecalculationService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CostCalculationsRecalculationService.class);
+
+    private static final int L_WORKERS = 4;
+
+    private static final int L_BATCH_SIZE = 50;
+
+    private static final int L_KEPT_RECALCULATIONS = 20;
+
+    private static final String L_ID = "id";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private CostCalculationService costCalculationService;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private ThreadContextPropagation threadContextPropagation;
+
+    private final ExecutorService recalculationsExecutorService = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("cost-calculations-recalculation").setDaemon(true).build());
+
+    private final ExecutorService workersExecutorService = Executors.newFixedThreadPool(L_WORKERS, new ThreadFactoryBuilder()
+            .setNameFormat("cost-calculations-recalculation-worker-%d").setDaemon(true).build());
+
+    private final AtomicLong recalculationsIds = new AtomicLong();
+
+    private final Map<Integer, ConcurrentNavigableMap<Long, CostCalculationsRecalculation>> recalculationsByTenant = Maps
+            .newConcurrentMap();
+
+    public CostCalculationsRecalculation recalculateForTechnologies(final Collection<Long> technologiesIds) {
+        return recalculate(findCostCalculationsIds(CostCalculationFields.TECHNOLOGY, technologiesIds));
+    }
+
+    public CostCalculationsRecalculation recalculateForProductFamily(final Long productFamilyId) {
+        return recalculate(findCostCalculationsIds(CostCalculationFields.PRODUCT, getFamilyProductsIds(productFamilyId)));
+    }
+
+    public Optional<CostCalculationsRecalculation> getRecalculation(final Long recalculationId) {
+        return Optional.ofNullable(getTenantRecalculations().get(recalculationId));
+    }
+
+    public List<CostCalculationsRecalculation> getRecalculations() {
+        return Lists.newArrayList(getTenantRecalculations().descendingMap().values());
+    }
+
+    private ConcurrentNavigableMap<Long, CostCalculationsRecalculation> getTenantRecalculations() {
+        return recalculationsByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(),
+                tenantId -> new ConcurrentSkipListMap<>());
+    }
+
+    private CostCalculationsRecalculation recalculate(final List<Long> costCalculationsIds) {
+        CostCalculationsRecalculation recalculation = new CostCalculationsRecalculation(recalculationsIds.incrementAndGet(),
+                costCalculationsIds.size());
+
+        addRecalculation(recalculation);
+
+        recalculationsExecutorService.submit(threadContextPropagation.withCurrentContext(() -> {
+            performRecalculation(recalculation, costCalculationsIds);
+
+            return null;
+        }));
+
+        return recalculation;
+    }
+
+    private void addRecalculation(final CostCalculationsRecalculation recalculation) {
+        ConcurrentNavigableMap<Long, CostCalculationsRecalculation> recalculations = getTenantRecalculations();
+
+        recalculations.put(recalculation.getId(), recalculation);
+
+        for (CostCalculationsRecalculation oldRecalculation : recalculations.values()) {
+            if (recalculations.size() <= L_KEPT_RECALCULATIONS) {
+                break;
+            }
+            if (oldRecalculation.isFinished()) {
+                recalculations.remove(oldRecalculation.getId());
+            }
+        }
+    }
+
+    private void performRecalculation(final CostCalculationsRecalculation recalculation, final List<Long> costCalculationsIds) {
+        LOG.info("Cost calculations recalculation {} started for {} cost calculations", recalculation.getId(),
+                recalculation.getTotal());
+
+        Entity parameter = parameterService.getParameter();
+        Map<Long, Entity> products = Maps.newConcurrentMap();
+
+        List<Callable<Void>> tasks = Lists.partition(costCalculationsIds, L_BATCH_SIZE).stream()
+                .map(batch -> threadContextPropagation.withCurrentContext(() -> {
+                    recalculate(recalculation, batch, parameter, products);
+
+                    return null;
+                })).collect(Collectors.toList());
+
+        try {
+            for (Future<Void> future : workersExecutorService.invokeAll(tasks)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            LOG.warn("Cost calculations recalculation " + recalculation.getId() + " was interrupted", e);
+        } catch (ExecutionException e) {
+            LOG.warn("Cost calculations recalculation " + recalculation.getId() + " failed", e.getCause());
+        } finally {
+            recalculation.finish();
+        }
+
+        LOG.info("Cost calculations recalculation {} finished: {} recalculated, {} failed", recalculation.getId(),
+                recalculation.getRecalculated(), recalculation.getFailed());
+    }
+
+    private void recalculate(final CostCalculationsRecalculation recalculation, final List<Long> costCalculationsIds,
+            final Entity parameter, final Map<Long, Entity> products) {
+        try {
+            recalculateBatch(costCalculationsIds, parameter, products);
+
+            recalculation.addRecalculated(costCalculationsIds.size());
+        } catch (RuntimeException batchException) {
+            LOG.warn("Cost calculations batch could not be recalculated, retrying them one by one", batchException);
+
+            for (Long costCalculationId : costCalculationsIds) {
+                try {
+                    recalculateBatch(Collections.singletonList(costCalculationId), parameter, products);
+
+                    recalculation.addRecalculated(1);
+                } catch (RuntimeException e) {
+                    LOG.warn("Cost calculation " + costCalculationId + " could not be recalculated", e);
+
+                    recalculation.addFailed(1);
+                }
+            }
+        }
+
+        LOG.info("Cost calculations recalculation {}: {} of {} done", recalculation.getId(),
+                recalculation.getRecalculated() + recalculation.getFailed(), recalculation.getTotal());
+    }
+
+    @Transactional
+    private void recalculateBatch(final List<Long> costCalculationsIds, final Entity parameter,
+            final Map<Long, Entity> products) {
+        DataDefinition costCalculationDD = getCostCalculationDD();
+
+        for (Long costCalculationId : costCalculationsIds) {
+            Entity costCalculation = costCalculationDD.get(costCalculationId);
+
+            if (costCalculation == null) {
+                continue;
+            }
+
+            costCalculationService.fillTotalCost(costCalculation, parameter, products);
+            costCalculationService.calculateSellPriceOverhead(costCalculation);
+            costCalculationService.calculateSellPrice(costCalculation);
+
+            costCalculation.setField(CostCalculationFields.GENERATED, false);
+            costCalculation.setField(CostCalculationFields.FILE_NAME, null);
+
+            costCalculation = costCalculationDD.save(costCalculation);
+
+            if (!costCalculation.isValid()) {
+                throw new IllegalStateException("Cost calculation " + costCalculationId + " is invalid after recalculation");
+            }
+        }
+    }
+
+    private List<Long> findCostCalculationsIds(final String field, final Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        return getCostCalculationDD().find().createAlias(field, field, JoinType.INNER)
+                .add(SearchRestrictions.in(field + ".id", ids))
+                .setProjection(SearchProjections.alias(SearchProjections.id(), L_ID)).addOrder(SearchOrders.asc(L_ID)).list()
+                .getEntities().stream().map(projection -> (Long) projection.getField(L_ID)).collect(Collectors.toList());
+    }
+
+    private Set<Long> getFamilyProductsIds(final Long productFamilyId) {
+        Set<Long> productsIds = Sets.newHashSet(productFamilyId);
+        List<Long> parentsIds = Lists.newArrayList(productFamilyId);
+
+        while (!parentsIds.isEmpty()) {
+            parentsIds = getProductDD().find().createAlias(ProductFields.PARENT, ProductFields.PARENT, JoinType.INNER)
+                    .add(SearchRestrictions.in(ProductFields.PARENT + ".id", parentsIds))
+                    .setProjection(SearchProjections.alias(SearchProjections.id(), L_ID)).list().getEntities().stream()
+                    .map(projection -> (Long) projection.getField(L_ID)).filter(id -> !productsIds.contains(id))
+                    .collect(Collectors.toList());
+
+            productsIds.addAll(parentsIds);
+        }
+
+        return productsIds;
+    }
+
+    private DataDefinition getCostCalculationDD() {
+        return dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION);
+    }
+
+    private DataDefinition getProductDD() {
+        return dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        recalculationsExecutorService.shutdownNow();
+        workersExecutorService.shutdownNow();
+    }
+
+}
@@ -0,0 +1,295 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.costCalculation.recalculation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.basic.util.ThreadContextPropagation;
+import com.qcadoo.mes.costCalculation.CostCalculationService;
+import com.qcadoo.mes.costCalculation.constants.CostCalculationConstants;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ SearchRestrictions.class, SearchOrders.class, SearchProjections.class })
+public class CostCalculationsRecalculationServiceTest {
+
+    private static final int L_COST_CALCULATIONS = 120;
+
+    private static final long L_TIMEOUT = 10000L;
+
+    private static final int L_TENANT_ID = 3;
+
+    private static final ThreadLocal<Integer> CURRENT_TENANT_ID = new ThreadLocal<>();
+
+    private CostCalculationsRecalculationService costCalculationsRecalculationService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private CostCalculationService costCalculationService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DataDefinition costCalculationDD;
+
+    @Mock
+    private SearchCriteriaBuilder costCalculationsCriteria;
+
+    @Mock
+    private SearchResult costCalculationsResult;
+
+    @Mock
+    private Entity parameter;
+
+    private final Map<Long, Entity> costCalculations = Maps.newHashMap();
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        costCalculationsRecalculationService = new CostCalculationsRecalculationService();
+
+        ReflectionTestUtils.setField(costCalculationsRecalculationService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(costCalculationsRecalculationService, "costCalculationService", costCalculationService);
+        ReflectionTestUtils.setField(costCalculationsRecalculationService, "parameterService", parameterService);
+        ReflectionTestUtils.setField(costCalculationsRecalculationService, "multiTenantService", multiTenantService);
+
+        ThreadContextPropagation threadContextPropagation = new ThreadContextPropagation();
+
+        ReflectionTestUtils.setField(threadContextPropagation, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(costCalculationsRecalculationService, "threadContextPropagation",
+                threadContextPropagation);
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> CURRENT_TENANT_ID.get());
+        willAnswer(invocation -> {
+            CURRENT_TENANT_ID.set((Integer) invocation.getArguments()[0]);
+
+            try {
+                ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+            } finally {
+                CURRENT_TENANT_ID.remove();
+            }
+
+            return null;
+        }).given(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        CURRENT_TENANT_ID.set(L_TENANT_ID);
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+        PowerMockito.mockStatic(SearchOrders.class);
+        PowerMockito.mockStatic(SearchProjections.class);
+
+        LongStream.rangeClosed(1, L_COST_CALCULATIONS).forEach(id -> costCalculations.put(id, mockCostCalculation(id)));
+
+        List<Entity> projections = LongStream.rangeClosed(1, L_COST_CALCULATIONS).mapToObj(costCalculations::get)
+                .collect(Collectors.toList());
+
+        given(dataDefinitionService.get(CostCalculationConstants.PLUGIN_IDENTIFIER,
+                CostCalculationConstants.MODEL_COST_CALCULATION)).willReturn(costCalculationDD);
+        given(costCalculationDD.find()).willReturn(costCalculationsCriteria);
+        given(costCalculationsCriteria.createAlias(anyString(), anyString(), any(JoinType.class))).willReturn(
+                costCalculationsCriteria);
+        given(costCalculationsCriteria.add(any(SearchCriterion.class))).willReturn(costCalculationsCriteria);
+        given(costCalculationsCriteria.setProjection(any())).willReturn(costCalculationsCriteria);
+        given(costCalculationsCriteria.addOrder(any())).willReturn(costCalculationsCriteria);
+        given(costCalculationsCriteria.list()).willReturn(costCalculationsResult);
+        given(costCalculationsResult.getEntities()).willReturn(projections);
+        given(costCalculationDD.get(anyLong())).willAnswer(invocation -> costCalculations.get(invocation.getArguments()[0]));
+        given(costCalculationDD.save(any(Entity.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        given(parameterService.getParameter()).willReturn(parameter);
+    }
+
+    @After
+    public void shutdown() {
+        costCalculationsRecalculationService.shutdown();
+
+        CURRENT_TENANT_ID.remove();
+    }
+
+    @Test
+    public void shouldRecalculateAllCostCalculationsInBatches() throws InterruptedException {
+        // when
+        CostCalculationsRecalculation recalculation = awaitFinish(costCalculationsRecalculationService
+                .recalculateForTechnologies(Lists.newArrayList(1L)));
+
+        // then
+        assertEquals(L_COST_CALCULATIONS, recalculation.getTotal());
+        assertEquals(L_COST_CALCULATIONS, recalculation.getRecalculated());
+        assertEquals(0, recalculation.getFailed());
+
+        verify(parameterService, times(1)).getParameter();
+        verify(costCalculationDD, times(L_COST_CALCULATIONS)).save(any(Entity.class));
+        verify(costCalculationService, times(L_COST_CALCULATIONS)).fillTotalCost(any(Entity.class), eq(parameter),
+                anyMapOf(Long.class, Entity.class));
+    }
+
+    @Test
+    public void shouldRecalculateFailedBatchOneByOne() throws InterruptedException {
+        // given
+        Entity failingCostCalculation = costCalculations.get(60L);
+
+        willThrow(new IllegalStateException("failure")).given(costCalculationService).fillTotalCost(
+                eq(failingCostCalculation), any(Entity.class), anyMapOf(Long.class, Entity.class));
+
+        // when
+        CostCalculationsRecalculation recalculation = awaitFinish(costCalculationsRecalculationService
+                .recalculateForTechnologies(Lists.newArrayList(1L)));
+
+        // then
+        assertEquals(L_COST_CALCULATIONS - 1, recalculation.getRecalculated());
+        assertEquals(1, recalculation.getFailed());
+
+        verify(costCalculationService, times(2)).fillTotalCost(eq(failingCostCalculation), any(Entity.class),
+                anyMapOf(Long.class, Entity.class));
+        verify(costCalculationDD, never()).save(failingCostCalculation);
+        verify(costCalculationDD, times(2)).save(costCalculations.get(51L));
+        verify(costCalculationDD, times(1)).save(costCalculations.get(61L));
+        verify(costCalculationDD, times(1)).save(costCalculations.get(1L));
+    }
+
+    @Test
+    public void shouldRecalculateInTenantOfCaller() throws InterruptedException {
+        // given
+        Set<Integer> tenantsIds = Sets.newConcurrentHashSet();
+
+        willAnswer(invocation -> tenantsIds.add(CURRENT_TENANT_ID.get())).given(costCalculationService).fillTotalCost(
+                any(Entity.class), any(Entity.class), anyMapOf(Long.class, Entity.class));
+
+        // when
+        awaitFinish(costCalculationsRecalculationService.recalculateForTechnologies(Lists.newArrayList(1L)));
+
+        // then
+        assertEquals(Sets.newHashSet(L_TENANT_ID), tenantsIds);
+    }
+
+    @Test
+    public void shouldKeepRecalculationsPerTenant() throws InterruptedException {
+        // given
+        CostCalculationsRecalculation recalculation = awaitFinish(costCalculationsRecalculationService
+                .recalculateForTechnologies(Lists.newArrayList(1L)));
+
+        // when
+        CURRENT_TENANT_ID.set(L_TENANT_ID + 1);
+
+        // then
+        assertFalse(costCalculationsRecalculationService.getRecalculation(recalculation.getId()).isPresent());
+        assertTrue(costCalculationsRecalculationService.getRecalculations().isEmpty());
+
+        CURRENT_TENANT_ID.set(L_TENANT_ID);
+
+        assertTrue(costCalculationsRecalculationService.getRecalculation(recalculation.getId()).isPresent());
+    }
+
+    @Test
+    public void shouldFinishRecalculationWithoutCostCalculations() throws InterruptedException {
+        // when
+        CostCalculationsRecalculation recalculation = awaitFinish(costCalculationsRecalculationService
+                .recalculateForTechnologies(Lists.newArrayList()));
+
+        // then
+        assertEquals(0, recalculation.getTotal());
+        assertEquals(0, recalculation.getRecalculated());
+        assertEquals(0, recalculation.getFailed());
+
+        verify(costCalculationDD, never()).save(any(Entity.class));
+    }
+
+    private CostCalculationsRecalculation awaitFinish(final CostCalculationsRecalculation recalculation)
+            throws InterruptedException {
+        long timeout = System.currentTimeMillis() + L_TIMEOUT;
+
+        while (!recalculation.isFinished() && (System.currentTimeMillis() < timeout)) {
+            Thread.sleep(10L);
+        }
+
+        assertTrue(recalculation.isFinished());
+
+        return recalculation;
+    }
+
+    private Entity mockCostCalculation(final Long id) {
+        Entity costCalculation = mock(Entity.class);
+
+        given(costCalculation.getId()).willReturn(id);
+        given(costCalculation.getField("id")).willReturn(id);
+        given(costCalculation.isValid()).willReturn(true);
+
+        return costCalculation;
+    }
+
+}
@@ -24,6 +24,7 @@
 package com.qcadoo.mes.costNormsForMaterials;
 
 import java.math.BigDecimal;
+import java.util.Map;
 
 import com.qcadoo.model.api.Entity;
 
@@ -31,6 +32,13 @@ public interface ProductsCostCalculationService {
 
     void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts);
 
+    /**
+     * Same as {@link #calculateTotalProductsCost(Entity, String)}, but products holding cost norms are taken from (and added to)
+     * given map, so they can be shared by many calculations. The map has to be thread safe if calculations run in parallel.
+     */
+    void calculateTotalProductsCost(final Entity costCalculation, final String sourceOfMaterialCosts,
+            final Map<Long, Entity> products);
+
     BigDecimal calculateProductCostForGivenQuantity(final Entity product, final BigDecimal quantity,
             final String calculateMaterialCostsMode);
 
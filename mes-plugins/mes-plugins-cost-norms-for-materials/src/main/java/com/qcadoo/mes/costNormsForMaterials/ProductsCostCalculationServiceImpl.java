@@ -69,7 +69,14 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
 
     @Override
     public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts) {
-        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts);
+        calculateTotalProductsCost(entity, sourceOfMaterialCosts, Maps.newHashMap());
+    }
+
+    @Override
+    public void calculateTotalProductsCost(final Entity entity, final String sourceOfMaterialCosts,
+            final Map<Long, Entity> products) {
+        Map<Entity, BigDecimal> listProductWithCost = calculateListProductsCostForPlannedQuantity(entity, sourceOfMaterialCosts,
+                products);
         BigDecimal result = BigDecimal.ZERO;
         for (Entry<Entity, BigDecimal> productWithCost : listProductWithCost.entrySet()) {
             result = result.add(productWithCost.getValue(), numberService.getMathContext());
@@ -78,7 +85,7 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     }
 
     private Map<Entity, BigDecimal> calculateListProductsCostForPlannedQuantity(final Entity entity,
-            final String sourceOfMaterialCosts) {
+            final String sourceOfMaterialCosts, final Map<Long, Entity> products) {
         checkArgument(entity != null);
         BigDecimal quantity = BigDecimalUtils.convertNullToZero(entity.getDecimalField("quantity"));
 
@@ -91,9 +98,9 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
         Entity order = entity.getBelongsToField("order");
 
         if ("02fromOrdersMaterialCosts".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order);
+            return getProductWithCostForPlannedQuantities(technology, quantity, calculateMaterialCostsMode, order, products);
         } else if ("01currentGlobalDefinitionsInProduct".equals(sourceOfMaterialCosts)) {
-            return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode);
+            return getProductWithCostForPlannedQuantities(entity, technology, quantity, calculateMaterialCostsMode, products);
         }
 
         throw new IllegalStateException("sourceOfProductCosts is neither FROM_ORDER nor GLOBAL");
@@ -114,12 +121,12 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     }
 
     private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity entity, final Entity technology,
-                                                                           final BigDecimal quantity, final String calculateMaterialCostsMode) {
+            final BigDecimal quantity, final String calculateMaterialCostsMode, final Map<Long, Entity> products) {
         Map<Long, BigDecimal> neededProductQuantities = getNeededProductQuantities(entity, technology, quantity,
                 MrpAlgorithm.ONLY_COMPONENTS);
         Map<Entity, BigDecimal> results = new HashMap<>();
         for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-            Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
+            Entity product = getProduct(productQuantity.getKey(), products);
             BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(product, productQuantity.getValue(),
                     calculateMaterialCostsMode);
             results.put(product, thisProductsCost);
@@ -133,14 +140,14 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
     }
 
     private Map<Entity, BigDecimal> getProductWithCostForPlannedQuantities(final Entity technology, final BigDecimal quantity,
-                                                                           final String calculateMaterialCostsMode, final Entity order) {
+            final String calculateMaterialCostsMode, final Entity order, final Map<Long, Entity> products) {
         Map<Entity, BigDecimal> results = Maps.newHashMap();
         if (OrderState.PENDING.equals(OrderState.of(order))) {
             Map<Long, BigDecimal> neededProductQuantities = productQuantitiesService.getNeededProductQuantities(technology,
                     quantity, MrpAlgorithm.ONLY_COMPONENTS);
 
             for (Entry<Long, BigDecimal> productQuantity : neededProductQuantities.entrySet()) {
-                Entity product = productQuantitiesService.getProduct(productQuantity.getKey());
+                Entity product = getProduct(productQuantity.getKey(), products);
                 for (Entity orderMaterialCosts : findOrderMaterialCosts(order, product).asSet()) {
                     BigDecimal thisProductsCost = calculateProductCostForGivenQuantity(orderMaterialCosts,
                             productQuantity.getValue(), calculateMaterialCostsMode);
@@ -186,6 +193,18 @@ public class ProductsCostCalculationServiceImpl implements ProductsCostCalculati
                 + order.getId());
     }
 
+    private Entity getProduct(final Long productId, final Map<Long, Entity> products) {
+        Entity product = products.get(productId);
+
+        if (product == null) {
+            product = productQuantitiesService.getProduct(productId);
+
+            products.put(productId, product);
+        }
+
+        return product;
+    }
+
     private Optional<Entity> findOrderMaterialCosts(final Entity order, final Entity product) {
         return orderMaterialCostsDataProvider.find(order.getId(), product.getId());
     }
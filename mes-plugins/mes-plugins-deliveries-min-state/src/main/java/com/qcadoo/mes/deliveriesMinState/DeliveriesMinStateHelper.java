@@ -45,7 +45,6 @@ import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.constants.UnitConversionItemFieldsB;
 import com.qcadoo.mes.costNormsForProduct.constants.ProductFieldsCNFP;
 import com.qcadoo.mes.deliveries.DeliveriesService;
-import com.qcadoo.mes.deliveries.constants.CompanyProductFields;
 import com.qcadoo.mes.deliveries.constants.DeliveriesConstants;
 import com.qcadoo.mes.deliveries.constants.DeliveryFields;
 import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
@@ -195,13 +194,43 @@ public class DeliveriesMinStateHelper {
         if (LOG.isDebugEnabled()) {
             LOG.debug(String.format("CreateDeliveriesFromMinimalState invoked with: %d warehouses.", warehouses.size()));
         }
+        warehouses.forEach(w -> fillPositions(w, getMinimalStateGreaterThanZeroForWarehouse(w),
+                minimalStatePerWarehousesAndSupplier));
+
+        createDeliveries(minimalStatePerWarehousesAndSupplier);
+        return minimalStatePerWarehousesAndSupplier;
+    }
+
+    public Map<Long, Multimap<Long, Entity>> createDeliveriesForChangedStocks(final Multimap<Long, Long> productsByWarehouses) {
+        Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier = Maps.newHashMap();
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("CreateDeliveriesForChangedStocks invoked with: %d warehouses, %d products.",
+                    productsByWarehouses.keySet().size(), productsByWarehouses.size()));
+        }
+        for (Long warehouseId : productsByWarehouses.keySet()) {
+            Entity warehouse = flowService.getLocationById(warehouseId);
+
+            if (warehouse != null) {
+                List<Entity> minimalStates = getMinimalStateGreaterThanZeroForWarehouse(warehouse,
+                        productsByWarehouses.get(warehouseId));
+
+                if (!minimalStates.isEmpty()) {
+                    fillPositions(warehouse, minimalStates, minimalStatePerWarehousesAndSupplier);
+                }
+            }
+        }
+
+        createDeliveries(minimalStatePerWarehousesAndSupplier);
+        return minimalStatePerWarehousesAndSupplier;
+    }
+
+    private void createDeliveries(final Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier) {
         List<String> createdDeliveries = Lists.newArrayList();
-        warehouses.forEach(w -> fillPositions(w, minimalStatePerWarehousesAndSupplier));
         minimalStatePerWarehousesAndSupplier.keySet().forEach(
                 p -> createdDeliveries.addAll(createDeliveries(p, minimalStatePerWarehousesAndSupplier.get(p))));
 
         sendEmailNotifications(createdDeliveries);
-        return minimalStatePerWarehousesAndSupplier;
     }
 
     private List<String> createDeliveries(Long warehouse, Multimap<Long, Entity> multiMap) {
@@ -216,42 +245,61 @@ public class DeliveriesMinStateHelper {
         return createDeliveries(warehouse, supplier, Lists.newArrayList(minimalStates));
     }
 
-    private void fillPositions(final Entity warehouse,
+    private void fillPositions(final Entity warehouse, final List<Entity> minmialStates,
             final Map<Long, Multimap<Long, Entity>> minimalStatePerWarehousesAndSupplier) {
 
-        List<Entity> minmialStates = getMinimalStateGreaterThanZeroForWarehouse(warehouse);
         Map<Long, Entity> minmialStatesByProduct = minmialStates.stream().collect(
                 Collectors.toMap(res -> res.getBelongsToField("product").getId(), res -> res));
         List<Entity> stocks = getWarehouseStockWithTooSmallMinState(warehouse,
                 minmialStates.stream().map(res -> res.getBelongsToField("product")).collect(Collectors.toList()));
         Map<Long, Entity> stocksByProduct = stocks.stream()
                 .collect(Collectors.toMap(res -> res.getIntegerField("product_id").longValue(), res -> res));
+        Map<Long, Long> suppliersByProduct = deliveriesService.getDefaultSuppliersIds(minmialStatesByProduct.keySet());
+        Map<Long, BigDecimal> orderedQuantitiesByProduct = getOrderedQuantitiesForProductsWithoutStock(warehouse,
+                suppliersByProduct.keySet(), stocksByProduct);
         Multimap<Long, Entity> positions = ArrayListMultimap.create();
         minmialStatesByProduct.keySet().forEach(
-                productId -> createPositions(positions, warehouse.getId(), productId, minmialStatesByProduct, stocksByProduct));
+                productId -> createPositions(positions, productId, minmialStatesByProduct, stocksByProduct, suppliersByProduct,
+                        orderedQuantitiesByProduct));
         minimalStatePerWarehousesAndSupplier.put(warehouse.getId(), positions);
     }
 
-    private void createPositions(Multimap<Long, Entity> positions, Long warehouseId, Long productId,
-            Map<Long, Entity> minmialStatesByProduct, Map<Long, Entity> stocksByProduct) {
+    private Map<Long, BigDecimal> getOrderedQuantitiesForProductsWithoutStock(final Entity warehouse,
+            final Collection<Long> productIds, final Map<Long, Entity> stocksByProduct) {
+        List<Long> productIdsWithoutStock = productIds.stream().filter(productId -> !stocksByProduct.containsKey(productId))
+                .collect(Collectors.toList());
+
+        if (productIdsWithoutStock.isEmpty()) {
+            return Maps.newHashMap();
+        }
+
+        return warehouseMinimalStateHelper.getOrderedQuantitiesForProductsAndLocation(warehouse.getId(),
+                productIdsWithoutStock);
+    }
+
+    private void createPositions(Multimap<Long, Entity> positions, Long productId, Map<Long, Entity> minmialStatesByProduct,
+            Map<Long, Entity> stocksByProduct, Map<Long, Long> suppliersByProduct,
+            Map<Long, BigDecimal> orderedQuantitiesByProduct) {
+
+        Long supplierId = suppliersByProduct.get(productId);
+        if (supplierId == null) {
+            return;
+        }
 
         Entity stock = stocksByProduct.get(productId);
         Entity minimalState = minmialStatesByProduct.get(productId);
         if (stock == null) {
-            deliveriesService.getDefaultSupplier(productId).ifPresent(supplier -> {
-                BigDecimal ordered = warehouseMinimalStateHelper.getOrderedQuantityForProductAndLocation(warehouseId, productId);
-                if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, ordered,
-                        minimalState.getDecimalField("minimumState"))) {
-                    positions.put(supplier.getBelongsToField(CompanyProductFields.COMPANY).getId(), minimalState);
-                }
-            });
+            BigDecimal ordered = BigDecimalUtils.convertNullToZero(orderedQuantitiesByProduct.get(productId));
+            if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, ordered,
+                    minimalState.getDecimalField("minimumState"))) {
+                positions.put(supplierId, minimalState);
+            }
         } else {
             BigDecimal statePlusOrder = BigDecimalUtils.convertNullToZero(stock.getDecimalField("orderedQuantity"))
                     .add(BigDecimalUtils.convertNullToZero(stock.getDecimalField("quantity")), numberService.getMathContext());
             if (warehouseMinimalStateHelper.checkIfLowerThanMinimum(productId, statePlusOrder,
                     stock.getDecimalField("minimumState"))) {
-                deliveriesService.getDefaultSupplier(productId).ifPresent(supplier -> positions
-                        .put(supplier.getBelongsToField(CompanyProductFields.COMPANY).getId(), minimalState));
+                positions.put(supplierId, minimalState);
             }
         }
     }
@@ -267,6 +315,13 @@ public class DeliveriesMinStateHelper {
         return getWarehouseMinimumStateDD().find(query).setParameter("warehouseId", warehouse.getId()).list().getEntities();
     }
 
+    public List<Entity> getMinimalStateGreaterThanZeroForWarehouse(final Entity warehouse, final Collection<Long> productIds) {
+        String query = "select state from #warehouseMinimalState_warehouseMinimumState as state where state.minimumState > 0"
+                + " and state.location.id = :warehouseId and state.product.id in (:productIds)";
+        return getWarehouseMinimumStateDD().find(query).setParameter("warehouseId", warehouse.getId())
+                .setParameterList("productIds", productIds).list().getEntities();
+    }
+
     // WARNING unused argument is used in aspect in plugin integration
     public List<Entity> getWarehouseStockWithTooSmallMinState(final Entity warehouse, final List<Entity> products) {
         String query = "select stock from #materialFlowResources_resourceStockDto as stock where stock.minimumState > 0"
@@ -28,6 +28,7 @@ import org.springframework.stereotype.Service;
 
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.deliveriesMinState.constants.DeliveriesMinStateConstants;
+import com.qcadoo.mes.deliveriesMinState.replenishment.ReplenishmentChangesService;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.tenant.api.MultiTenantCallback;
 import com.qcadoo.tenant.api.MultiTenantService;
@@ -47,13 +48,36 @@ public class DeliveriesMinStateService {
     @Autowired
     ParameterService parameterService;
 
+    @Autowired
+    private ReplenishmentChangesService replenishmentChangesService;
+
+    private final Object deliveriesCreationLock = new Object();
+
     public void automaticDeliveriesMinStateTrigger() {
         multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
 
             @Override
             public void invoke() {
                 if (parameterService.getParameter().getBooleanField("automaticDeliveriesMinState")) {
-                    deliveriesMinStateHelper.createDeliveriesFromMinimalState();
+                    synchronized (deliveriesCreationLock) {
+                        deliveriesMinStateHelper.createDeliveriesFromMinimalState();
+                    }
+                }
+            }
+
+        });
+    }
+
+    public void automaticReplenishmentTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                if (parameterService.getParameter().getBooleanField("automaticDeliveriesMinState")) {
+                    synchronized (deliveriesCreationLock) {
+                        replenishmentChangesService
+                                .processChangedStocks(deliveriesMinStateHelper::createDeliveriesForChangedStocks);
+                    }
                 }
             }
 
@@ -61,7 +85,9 @@ public class DeliveriesMinStateService {
     }
 
     public void triggerDeliveriesMinState(final ViewDefinitionState view, final ComponentState componentState, final String[] args) {
-        deliveriesMinStateHelper.createDeliveriesFromMinimalState();
+        synchronized (deliveriesCreationLock) {
+            deliveriesMinStateHelper.createDeliveriesFromMinimalState();
+        }
         componentState.addMessage("deliveriesMinState.createDeliveries.info", ComponentState.MessageType.SUCCESS);
 
     }
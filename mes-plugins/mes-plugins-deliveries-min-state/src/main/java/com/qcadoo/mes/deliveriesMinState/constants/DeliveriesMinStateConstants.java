@@ -8,4 +8,6 @@ public final class DeliveriesMinStateConstants {
 
     public static final String PLUGIN_IDENTIFIER = "deliveriesMinState";
 
+    public static final String MODEL_REPLENISHMENT_CHANGE = "replenishmentChange";
+
 }
@@ -0,0 +1,106 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.replenishment;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+
+/**
+ * Collects (warehouse, product) pairs whose stock or minimal state changed, so that replenishment can evaluate only them.
+ * Pairs are stored in the tenant's database in the transaction of the change - rolled back changes don't need replenishment.
+ * Each pair is kept once, a repeated change only increments its change number, so that a pair changed again while being
+ * processed is not removed with the processed change.
+ */
+@Service
+public class ReplenishmentChangesService {
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void markStockChanged(final Long warehouseId, final Long productId) {
+        if (Objects.isNull(warehouseId) || Objects.isNull(productId)) {
+            return;
+        }
+
+        String query = "INSERT INTO deliveriesminstate_replenishmentchange (location_id, product_id) "
+                + "VALUES (:locationId, :productId) ON CONFLICT (location_id, product_id) "
+                + "DO UPDATE SET changenumber = deliveriesminstate_replenishmentchange.changenumber + 1";
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("locationId", warehouseId);
+        params.put("productId", productId);
+
+        jdbcTemplate.update(query, params);
+    }
+
+    /**
+     * Passes changed stocks (products by warehouses) to given processor and removes them when it finishes without exception.
+     */
+    @Transactional
+    public void processChangedStocks(final Consumer<Multimap<Long, Long>> processor) {
+        String query = "SELECT id, location_id, product_id, changenumber FROM deliveriesminstate_replenishmentchange";
+
+        List<Map<String, Object>> replenishmentChanges = jdbcTemplate.queryForList(query, Maps.newHashMap());
+
+        if (replenishmentChanges.isEmpty()) {
+            return;
+        }
+
+        Multimap<Long, Long> productsByWarehouses = HashMultimap.create();
+
+        for (Map<String, Object> replenishmentChange : replenishmentChanges) {
+            productsByWarehouses.put(((Number) replenishmentChange.get("location_id")).longValue(),
+                    ((Number) replenishmentChange.get("product_id")).longValue());
+        }
+
+        processor.accept(productsByWarehouses);
+
+        removeChanges(replenishmentChanges);
+    }
+
+    private void removeChanges(final List<Map<String, Object>> replenishmentChanges) {
+        String query = "DELETE FROM deliveriesminstate_replenishmentchange WHERE id = :id AND changenumber = :changeNumber";
+
+        SqlParameterSource[] params = replenishmentChanges.stream()
+                .map(replenishmentChange -> new MapSqlParameterSource("id", replenishmentChange.get("id")).addValue(
+                        "changeNumber", replenishmentChange.get("changenumber"))).toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(query, params);
+    }
+
+}
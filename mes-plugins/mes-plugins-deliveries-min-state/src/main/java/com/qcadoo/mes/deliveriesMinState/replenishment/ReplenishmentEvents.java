@@ -0,0 +1,63 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo Framework
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.deliveriesMinState.replenishment;
+
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.warehouseMinimalState.constants.WarehouseMinimumStateFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class ReplenishmentEvents {
+
+    @Autowired
+    private ReplenishmentChangesService replenishmentChangesService;
+
+    public void onSaveResource(final DataDefinition resourceDD, final Entity resource) {
+        markStockChanged(resource, ResourceFields.LOCATION, ResourceFields.PRODUCT);
+    }
+
+    public void onDeleteResource(final DataDefinition resourceDD, final Entity resource) {
+        markStockChanged(resource, ResourceFields.LOCATION, ResourceFields.PRODUCT);
+    }
+
+    public void onSaveWarehouseMinimumState(final DataDefinition warehouseMinimumStateDD, final Entity warehouseMinimumState) {
+        markStockChanged(warehouseMinimumState, WarehouseMinimumStateFields.LOCATION, WarehouseMinimumStateFields.PRODUCT);
+    }
+
+    private void markStockChanged(final Entity entity, final String locationFieldName, final String productFieldName) {
+        Entity location = entity.getBelongsToField(locationFieldName);
+        Entity product = entity.getBelongsToField(productFieldName);
+
+        if (Objects.nonNull(location) && Objects.nonNull(product)) {
+            replenishmentChangesService.markStockChanged(location.getId(), product.getId());
+        }
+    }
+
+}
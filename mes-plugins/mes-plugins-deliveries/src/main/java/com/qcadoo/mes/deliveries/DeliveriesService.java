@@ -24,8 +24,10 @@
 package com.qcadoo.mes.deliveries;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 
 import com.qcadoo.mes.deliveries.print.DeliveryProduct;
@@ -294,6 +296,15 @@ public interface DeliveriesService {
 
     Optional<Entity> getDefaultSupplier(Long productId);
 
+    /**
+     * Gets default suppliers of many products at once, resolved the same way as in {@link #getDefaultSupplier(Long)}
+     *
+     * @param productsIds products ids
+     *
+     * @return map of product id to its default supplier (company) id, products without default supplier are omitted
+     */
+    Map<Long, Long> getDefaultSuppliersIds(final Collection<Long> productsIds);
+
     Optional<Entity> getDefaultSupplierWithIntegration(Long productId);
 
     List<Entity> getSuppliersWithIntegration(Long productId);
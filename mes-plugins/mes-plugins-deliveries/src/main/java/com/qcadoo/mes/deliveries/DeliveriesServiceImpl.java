@@ -24,6 +24,7 @@
 package com.qcadoo.mes.deliveries;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.CompanyService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.ProductService;
@@ -62,6 +63,9 @@ import com.qcadoo.view.api.ribbon.RibbonActionItem;
 import com.qcadoo.view.api.ribbon.RibbonGroup;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
@@ -69,9 +73,11 @@ import java.text.DecimalFormat;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 
@@ -108,6 +114,9 @@ public class DeliveriesServiceImpl implements DeliveriesService {
     @Autowired
     private ProductService productService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Override
     public Entity getDelivery(final Long deliveryId) {
         return getDeliveryDD().get(deliveryId);
@@ -616,6 +625,44 @@ public class DeliveriesServiceImpl implements DeliveriesService {
         return Optional.empty();
     }
 
+    @Override
+    public Map<Long, Long> getDefaultSuppliersIds(final Collection<Long> productsIds) {
+        Map<Long, Long> defaultSuppliersIds = Maps.newHashMap();
+
+        if (productsIds.isEmpty()) {
+            return defaultSuppliersIds;
+        }
+
+        String query = "WITH RECURSIVE families (product_id, family_id, level) AS ( "
+                + "SELECT product.id, product.parent_id, 1 FROM basic_product product "
+                + "WHERE product.id IN (:productsIds) AND product.entitytype = :entityType AND product.parent_id IS NOT NULL "
+                + "UNION ALL "
+                + "SELECT families.product_id, family.parent_id, families.level + 1 FROM families "
+                + "JOIN basic_product family ON family.id = families.family_id WHERE family.parent_id IS NOT NULL), "
+                + "suppliers AS ( "
+                + "SELECT families.product_id, companyproductsfamily.company_id, families.level FROM families "
+                + "JOIN deliveries_companyproductsfamily companyproductsfamily "
+                + "ON companyproductsfamily.product_id = families.family_id "
+                + "WHERE companyproductsfamily.isdefault "
+                + "UNION ALL "
+                + "SELECT companyproduct.product_id, companyproduct.company_id, " + Integer.MAX_VALUE + " "
+                + "FROM deliveries_companyproduct companyproduct "
+                + "JOIN basic_product product ON product.id = companyproduct.product_id "
+                + "WHERE companyproduct.product_id IN (:productsIds) AND product.entitytype = :entityType "
+                + "AND companyproduct.isdefault) "
+                + "SELECT DISTINCT ON (product_id) product_id, company_id FROM suppliers ORDER BY product_id, level";
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        parameters.addValue("productsIds", productsIds);
+        parameters.addValue("entityType", ProductFamilyElementType.PARTICULAR_PRODUCT.getStringValue());
+
+        jdbcTemplate.query(query, parameters,
+                (RowCallbackHandler) resultSet -> defaultSuppliersIds.put(resultSet.getLong("product_id"), resultSet.getLong("company_id")));
+
+        return defaultSuppliersIds;
+    }
+
     public Optional<Entity> getDefaultSupplierWithIntegration(Long productId) {
         Entity product = dataDefinitionService.get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_PRODUCT).get(productId);
 
@@ -14,6 +14,7 @@ import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.dto.ColumnProperties;
 import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 import java.math.BigDecimal;
 import java.util.Arrays;
@@ -21,6 +22,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,9 +36,16 @@ import org.springframework.util.StringUtils;
 @Repository
 public class DocumentPositionService {
 
+    private static final List<String> L_KEYSET_SORT_COLUMNS = Arrays.asList("id", "number");
+
+    private static final long L_GRID_COLUMNS_MAX_AGE = 10 * 60 * 1000L;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
     @Autowired
     private DocumentPositionValidator validator;
 
@@ -55,59 +64,45 @@ public class DocumentPositionService {
     @Autowired
     private AttributePositionService attributePositionService;
 
+    private final Map<Integer, GridColumns> gridColumnsByTenant = new ConcurrentHashMap<>();
+
+    /**
+     * Returns a page of document positions. When lastId (id of the last row of the previous page) is given and the grid is
+     * sorted by id or number, the page is read with a seek condition instead of OFFSET, so that late pages of long documents
+     * are not slower than the first ones.
+     */
     public GridResponse<DocumentPositionDTO> findAll(final Long documentId, final String _sidx, final String _sord, int page,
-            int perPage, final DocumentPositionDTO position, final Map<String, String> attributeFilters) {
+            int perPage, final Long lastId, final DocumentPositionDTO position, final Map<String, String> attributeFilters) {
         String sidx = _sidx != null ? _sidx : "";
         String sord = _sord != null ? _sord : "";
 
         Preconditions.checkState(Arrays.asList("asc", "desc", "").contains(sord));
 
-        Map<String, Object> config = getGridConfig(documentId);
-        List<ColumnProperties> columns = (List<ColumnProperties>) config.get("columns");
+        List<ColumnProperties> columns = getGridColumns();
         List<String> attrCloumns = columns.stream().filter(c -> c.isChecked() && c.isForAttribute()).map(c -> c.getName())
                 .collect(Collectors.toList());
-        StringBuilder attrQueryPart = new StringBuilder();
-        if (!attrCloumns.isEmpty()) {
-            attrCloumns.forEach(ac -> {
-                attrQueryPart.append(" , ");
-                attrQueryPart.append("(SELECT string_agg(positionattributevalue.value, ', ') ");
-                attrQueryPart.append("FROM materialflowresources_positionattributevalue positionattributevalue ");
-                attrQueryPart.append("LEFT JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
-                attrQueryPart.append("WHERE positionattributevalue.position_id = p.id AND att.number ='" + ac
-                        + "' group by att.number) as \"" + ac + "\" ");
-            });
-
-        }
-        String query = "SELECT %s FROM ( SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
-                + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, \n"
-                + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource "
-                + attrQueryPart.toString()
-                + "	FROM materialflowresources_position p\n"
-                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
-                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
-                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
-                + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
-                + " LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
-                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId %s) q ";
 
         Map<String, Object> parameters = Maps.newHashMap();
 
         parameters.put("documentId", documentId);
 
-        query += lookupUtils.addQueryWhereForObject(position);
+        String where = lookupUtils.addQueryWhereForObject(position);
         parameters.putAll(lookupUtils.getParametersForObject(position));
 
         if (!attributeFilters.isEmpty()) {
             StringBuilder attributeFiltersBuilder = new StringBuilder();
-            attributeFiltersBuilder.append("WHERE ");
             for (Map.Entry<String, String> filterElement : attributeFilters.entrySet()) {
+                String parameterName = filterElement.getKey().replaceAll("[^a-zA-Z0-9]+", "");
+                attributeFiltersBuilder.append(where.isEmpty() && attributeFiltersBuilder.length() == 0 ? " WHERE " : " AND ");
                 attributeFiltersBuilder.append("q.\"" + filterElement.getKey() + "\" ");
-                attributeFiltersBuilder.append("ilike :" + filterElement.getKey().replaceAll("[^a-zA-Z0-9]+","") + " ");
-                parameters.put(filterElement.getKey().replaceAll("[^a-zA-Z0-9]+",""), "%" + filterElement.getValue() + "%");
+                attributeFiltersBuilder.append("ilike :" + parameterName + " ");
+                parameters.put(parameterName, "%" + filterElement.getValue() + "%");
             }
-            query = query + attributeFiltersBuilder.toString();
+            where += attributeFiltersBuilder.toString();
         }
-        String queryCount = String.format(query, "COUNT(*)", "");
+
+        String queryCount = String.format(getPositionsQuery(attributeFilters.isEmpty() ? Collections.emptyList() : attrCloumns,
+                parameters), "COUNT(*)", "") + where;
 
         String orderBy = org.apache.commons.lang3.StringUtils.EMPTY;
         if (sidx.startsWith("attrs.")) {
@@ -116,8 +111,32 @@ public class DocumentPositionService {
             orderBy = sidx;
         }
 
-        String queryRecords = String.format(query, "*", "ORDER BY " + orderBy + " " + sord)
-                + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        String query = getPositionsQuery(attrCloumns, parameters);
+        String queryRecords;
+
+        if (lastId != null && L_KEYSET_SORT_COLUMNS.contains(sidx)) {
+            String direction = "desc".equals(sord) ? "desc" : "asc";
+            String seekOperator = "desc".equals(sord) ? "<" : ">";
+
+            String seekCondition;
+            if ("number".equals(sidx)) {
+                seekCondition = "(q.number, q.id) " + seekOperator
+                        + " (SELECT number, id FROM materialflowresources_position WHERE id = :lastId)";
+                orderBy = "q.number " + direction + ", q.id " + direction;
+            } else {
+                seekCondition = "q.id " + seekOperator + " :lastId";
+                orderBy = "q.id " + direction;
+            }
+            parameters.put("lastId", lastId);
+
+            queryRecords = String.format(query, "*", "") + where + (where.isEmpty() ? " WHERE " : " AND ") + seekCondition
+                    + " ORDER BY " + orderBy + String.format(" LIMIT %d", perPage);
+        } else {
+            String sortOrder = orderBy.isEmpty() ? "" : orderBy + " " + sord + ", ";
+
+            queryRecords = String.format(query, "*", "") + where + " ORDER BY " + sortOrder + "q.number, q.id"
+                    + String.format(" LIMIT %d OFFSET %d", perPage, perPage * (page - 1));
+        }
 
         Integer countRecords = jdbcTemplate.queryForObject(queryCount, parameters, Long.class).intValue();
         List<DocumentPositionDTO> records = jdbcTemplate.query(queryRecords, parameters, (resultSet, i) -> {
@@ -160,6 +179,43 @@ public class DocumentPositionService {
                 records);
     }
 
+    private String getPositionsQuery(final List<String> attrCloumns, final Map<String, Object> parameters) {
+        StringBuilder attrSelectPart = new StringBuilder();
+        StringBuilder attrJoinPart = new StringBuilder();
+
+        if (!attrCloumns.isEmpty()) {
+            attrJoinPart.append("	LEFT JOIN (SELECT positionattributevalue.position_id ");
+            for (int i = 0; i < attrCloumns.size(); i++) {
+                String ac = attrCloumns.get(i);
+                attrSelectPart.append(" , attrs.\"" + ac + "\" ");
+                attrJoinPart.append(", string_agg(CASE WHEN att.number = :attributeNumber" + i
+                        + " THEN positionattributevalue.value END, ', ') AS \"" + ac + "\" ");
+                parameters.put("attributeNumber" + i, ac);
+            }
+            attrJoinPart.append("FROM materialflowresources_positionattributevalue positionattributevalue ");
+            attrJoinPart.append("JOIN basic_attribute att ON att.id = positionattributevalue.attribute_id ");
+            attrJoinPart.append("JOIN materialflowresources_position ap ON ap.id = positionattributevalue.position_id ");
+            attrJoinPart.append("WHERE ap.document_id = :documentId GROUP BY positionattributevalue.position_id) attrs ");
+            attrJoinPart.append("ON attrs.position_id = p.id\n");
+        }
+
+        return "SELECT %s FROM ( SELECT p.*, p.document_id AS document, product.number AS product, product.name AS productName, product.unit, additionalcode.code AS additionalcode, "
+                + "palletnumber.number AS palletnumber, location.number AS storagelocation, resource.number AS resource, \n"
+                + "(coalesce(r1.resourcesCount,0) < 2 AND p.quantity >= coalesce(resource.quantity,0)) AS lastResource "
+                + attrSelectPart.toString()
+                + "	FROM materialflowresources_position p\n"
+                + "	LEFT JOIN basic_product product ON (p.product_id = product.id)\n"
+                + "	LEFT JOIN basic_additionalcode additionalcode ON (p.additionalcode_id = additionalcode.id)\n"
+                + "	LEFT JOIN basic_palletnumber palletnumber ON (p.palletnumber_id = palletnumber.id)\n"
+                + "	LEFT JOIN materialflowresources_resource resource ON (p.resource_id = resource.id)\n"
+                + " LEFT JOIN (SELECT palletnumber_id, count(id) as resourcesCount FROM materialflowresources_resource "
+                + "WHERE palletnumber_id IN (SELECT pr.palletnumber_id FROM materialflowresources_position pp "
+                + "JOIN materialflowresources_resource pr ON pr.id = pp.resource_id WHERE pp.document_id = :documentId) "
+                + "GROUP BY palletnumber_id) r1 ON r1.palletnumber_id = resource.palletnumber_id \n"
+                + attrJoinPart.toString()
+                + "	LEFT JOIN materialflowresources_storagelocation location ON (p.storagelocation_id = location.id) WHERE p.document_id = :documentId %s) q ";
+    }
+
     public void delete(final Long id) {
         validator.validateBeforeDelete(id);
 
@@ -267,13 +323,7 @@ public class DocumentPositionService {
 
     public Map<String, Object> getGridConfig(final Long documentId) {
         try {
-            StringBuilder query = new StringBuilder();
-            query.append("SELECT documentpositionparametersitem.*, attr.dataType as attributeDataType, attr.valueType as attributeValueType ");
-            query.append("FROM materialflowresources_documentpositionparametersitem documentpositionparametersitem ");
-            query.append("LEFT JOIN basic_attribute attr ON attr.id = documentpositionparametersitem.attribute_id ");
-            query.append(" ORDER BY documentpositionparametersitem.ordering");
-            List<ColumnProperties> columns = jdbcTemplate.query(query.toString(), Collections.EMPTY_MAP,
-                    new BeanPropertyRowMapper(ColumnProperties.class));
+            List<ColumnProperties> columns = getGridColumns();
 
             Map<String, Object> config = Maps.newHashMap();
 
@@ -289,6 +339,47 @@ public class DocumentPositionService {
         }
     }
 
+    /**
+     * Columns of the document positions grid are the same for all documents of a tenant (documentPositionParametersItem), so
+     * they are read once per tenant and kept until an item or an attribute changes, see {@link #invalidateGridColumns()}.
+     */
+    public List<ColumnProperties> getGridColumns() {
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        GridColumns cached = gridColumnsByTenant.get(tenantId);
+
+        if (cached == null || System.currentTimeMillis() - cached.loadedAt > L_GRID_COLUMNS_MAX_AGE) {
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT documentpositionparametersitem.*, attr.dataType as attributeDataType, attr.valueType as attributeValueType ");
+            query.append("FROM materialflowresources_documentpositionparametersitem documentpositionparametersitem ");
+            query.append("LEFT JOIN basic_attribute attr ON attr.id = documentpositionparametersitem.attribute_id ");
+            query.append(" ORDER BY documentpositionparametersitem.ordering");
+            List<ColumnProperties> columns = jdbcTemplate.query(query.toString(), Collections.EMPTY_MAP,
+                    new BeanPropertyRowMapper(ColumnProperties.class));
+
+            cached = new GridColumns(Collections.unmodifiableList(columns));
+            gridColumnsByTenant.put(tenantId, cached);
+        }
+
+        return cached.columns;
+    }
+
+    public void invalidateGridColumns() {
+        gridColumnsByTenant.remove(multiTenantService.getCurrentTenantId());
+    }
+
+    private static final class GridColumns {
+
+        private final List<ColumnProperties> columns;
+
+        private final long loadedAt = System.currentTimeMillis();
+
+        private GridColumns(final List<ColumnProperties> columns) {
+            this.columns = columns;
+        }
+
+    }
+
     public Map<String, Object> unitsOfProduct(final String productNumber) {
         try {
             Map<String, Object> units = getUnitsFromProduct(productNumber);
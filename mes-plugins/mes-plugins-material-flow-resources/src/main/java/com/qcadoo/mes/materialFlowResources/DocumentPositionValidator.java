@@ -250,8 +250,11 @@ public class DocumentPositionValidator {
             }
         }
 
-        String query = "SELECT availableQuantity FROM materialflowresources_resourcestockdto "
-                + "WHERE product_id = :product_id AND location_id = :location_id";
+        String query = "SELECT COALESCE(rs.quantity, 0) - COALESCE((SELECT SUM(r.quantity) "
+                + "FROM materialflowresources_reservation r "
+                + "WHERE r.location_id = rs.location_id AND r.product_id = rs.product_id), 0) AS availableQuantity "
+                + "FROM materialflowresources_resourcestock rs "
+                + "WHERE rs.product_id = :product_id AND rs.location_id = :location_id";
 
         Map<String, Object> params = Maps.newHashMap();
 
@@ -9,6 +9,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.mes.materialFlowResources.service.ResourceStockService;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -24,14 +25,19 @@ public class MaterialFlowResourcesOnStartupService extends Module {
     @Autowired
     private ParameterService parameterService;
 
+    @Autowired
+    private ResourceStockService resourceStockService;
+
     @Override
     public void enableOnStartup() {
         setDocumentPositionParameters();
+        resourceStockService.fillResourceStocks();
     }
 
     @Override
     public void enable() {
         setDocumentPositionParameters();
+        resourceStockService.fillResourceStocks();
     }
 
     @Transactional
@@ -11,5 +11,7 @@ public final class ResourceStockFields {
 
     public static final String QUANTITY = "quantity";
 
+    public static final String QUANTITY_IN_ADDITIONAL_UNIT = "quantityInAdditionalUnit";
+
     public static final String AVAILABLE_QUANTITY = "availableQuantity";
 }
@@ -46,9 +46,10 @@ public class DocumentPositionsController {
     @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE, value = "{id}")
     public GridResponse<DocumentPositionDTO> findAll(@PathVariable Long id, @RequestParam String sidx, @RequestParam String sord,
             @RequestParam(defaultValue = "1", required = false, value = "page") Integer page,
-            @RequestParam(value = "rows") int perPage, DocumentPositionDTO positionDTO,HttpServletRequest request) {
+            @RequestParam(value = "rows") int perPage, @RequestParam(required = false, value = "lastId") Long lastId,
+            DocumentPositionDTO positionDTO, HttpServletRequest request) {
         Map<String, String> attributeFilters = extractAttributesFilters(request);
-        return documentPositionService.findAll(id, sidx, sord, page, perPage, positionDTO, attributeFilters);
+        return documentPositionService.findAll(id, sidx, sord, page, perPage, lastId, positionDTO, attributeFilters);
     }
 
 
@@ -0,0 +1,45 @@
+package com.qcadoo.mes.materialFlowResources.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Available quantities of resources in one warehouse, summed by product and conversion.
+ */
+public class WarehouseAvailableQuantities {
+
+    private final Map<Long, List<Entry>> entriesByProduct = Maps.newHashMap();
+
+    public void add(final Long productId, final BigDecimal conversion, final BigDecimal availableQuantity) {
+        entriesByProduct.computeIfAbsent(productId, id -> Lists.newArrayList()).add(new Entry(conversion, availableQuantity));
+    }
+
+    public BigDecimal get(final Long productId, final BigDecimal conversion) {
+        return entriesByProduct.getOrDefault(productId, Lists.newArrayList()).stream()
+                .filter(entry -> entry.hasConversion(conversion)).map(entry -> entry.availableQuantity)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static class Entry {
+
+        private final BigDecimal conversion;
+
+        private final BigDecimal availableQuantity;
+
+        private Entry(final BigDecimal conversion, final BigDecimal availableQuantity) {
+            this.conversion = conversion;
+            this.availableQuantity = availableQuantity;
+        }
+
+        private boolean hasConversion(final BigDecimal otherConversion) {
+            return Objects.nonNull(conversion) && Objects.nonNull(otherConversion) && conversion.compareTo(otherConversion) == 0;
+        }
+
+    }
+
+}
@@ -32,6 +32,10 @@ public class NotEnoughResourcesErrorMessageHolder {
         messages.add(message.toString());
     }
 
+    public void addErrorEntry(Entity product, BigDecimal quantity, BigDecimal availableQuantity) {
+        addErrorEntry(product, quantity.subtract(availableQuantity, numberService.getMathContext()));
+    }
+
     public List<String> getErrorMessages() {
         return messages;
     }
@@ -34,6 +34,7 @@ import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentType;
 import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
+import com.qcadoo.mes.materialFlowResources.service.DraftDocumentsNotificationService;
 import com.qcadoo.mes.materialFlowResources.service.ReservationsService;
 import com.qcadoo.mes.materialFlowResources.validators.DocumentValidators;
 import com.qcadoo.model.api.DataDefinition;
@@ -53,6 +54,9 @@ public class DocumentModelHooks {
     @Autowired
     private ReservationsService reservationsService;
 
+    @Autowired
+    private DraftDocumentsNotificationService draftDocumentsNotificationService;
+
     public void onCreate(final DataDefinition documentDD, final Entity document) {
         setInitialDocumentNumber(document);
         setInitialDocumentInBuffer(document);
@@ -96,6 +100,14 @@ public class DocumentModelHooks {
         if (document.getBooleanField(DocumentFields.IN_BUFFER) && checkIfLocationsChange(document)) {
             cleanPositionsResource(document);
         }
+
+        draftDocumentsNotificationService.invalidate(document);
+    }
+
+    public boolean onDelete(final DataDefinition documentDD, final Entity document) {
+        draftDocumentsNotificationService.invalidate(document);
+
+        return true;
     }
 
     private void cleanPositionsResource(final Entity document) {
@@ -0,0 +1,47 @@
+package com.qcadoo.mes.materialFlowResources.hooks;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.mes.materialFlowResources.DocumentPositionService;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class DocumentPositionParametersItemHooks {
+
+    @Autowired
+    private DocumentPositionService documentPositionService;
+
+    public void onSave(final DataDefinition documentPositionParametersItemDD, final Entity documentPositionParametersItem) {
+        invalidateGridColumns();
+    }
+
+    public boolean onDelete(final DataDefinition documentPositionParametersItemDD, final Entity documentPositionParametersItem) {
+        invalidateGridColumns();
+
+        return true;
+    }
+
+    public void onAttributeSave(final DataDefinition attributeDD, final Entity attribute) {
+        invalidateGridColumns();
+    }
+
+    private void invalidateGridColumns() {
+        documentPositionService.invalidateGridColumns();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(int status) {
+                    super.afterCompletion(status);
+                    documentPositionService.invalidateGridColumns();
+                }
+            });
+        }
+    }
+
+}
@@ -1,17 +1,25 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
+import static com.qcadoo.model.api.search.SearchOrders.asc;
+import static com.qcadoo.model.api.search.SearchProjections.alias;
+import static com.qcadoo.model.api.search.SearchProjections.rowCount;
 import static com.qcadoo.model.api.search.SearchRestrictions.eq;
 import static com.qcadoo.model.api.search.SearchRestrictions.in;
 import static com.qcadoo.model.api.search.SearchRestrictions.isNull;
 import static com.qcadoo.model.api.search.SearchRestrictions.or;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
-import com.qcadoo.mes.materialFlow.constants.UserFieldsMF;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
 import com.qcadoo.mes.materialFlow.constants.UserLocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
 import com.qcadoo.mes.materialFlowResources.constants.DocumentState;
@@ -19,31 +27,42 @@ import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConst
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
-import com.qcadoo.model.api.EntityList;
 import com.qcadoo.model.api.search.JoinType;
 import com.qcadoo.model.api.search.SearchConjunction;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.security.api.SecurityService;
-import com.qcadoo.security.constants.QcadooSecurityConstants;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 @Service
 public class DraftDocumentsNotificationService {
 
     static final String ROLE_DOCUMENTS_NOTIFICATION = "ROLE_DOCUMENTS_NOTIFICATION";
 
+    private static final String L_USER_LOCATION = "userLocation";
+
+    private static final String L_COUNT = "count";
+
+    private static final long L_DRAFT_DOCUMENTS_COUNTER_MAX_AGE = 60 * 1000L;
+
+    private final Map<Integer, Map<Long, DraftDocumentsCounter>> countersByTenant = new ConcurrentHashMap<>();
+
     private final SecurityService securityService;
 
     private final DataDefinitionService dataDefinitionService;
 
+    private final MultiTenantService multiTenantService;
+
     @Autowired
-    public DraftDocumentsNotificationService(SecurityService securityService, DataDefinitionService dataDefinitionService) {
+    public DraftDocumentsNotificationService(SecurityService securityService, DataDefinitionService dataDefinitionService,
+            MultiTenantService multiTenantService) {
         this.securityService = securityService;
         this.dataDefinitionService = dataDefinitionService;
+        this.multiTenantService = multiTenantService;
     }
 
-    private DataDefinition userDataDefinition() {
-        return dataDefinitionService.get(QcadooSecurityConstants.PLUGIN_IDENTIFIER, QcadooSecurityConstants.MODEL_USER);
+    private DataDefinition userLocationDataDefinition() {
+        return dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER, L_USER_LOCATION);
     }
 
     private DataDefinition documentDataDefinition() {
@@ -57,24 +76,158 @@ public class DraftDocumentsNotificationService {
                 && countDraftDocumentsForUser(currentUserId) > 0;
     }
 
+    /**
+     * Counts are cached per tenant and user together with user's locations for a minute and evicted earlier when a document
+     * from or to one of these locations is saved or deleted, see {@link #invalidate(Entity)}, or when user's locations change,
+     * see {@link #invalidateUserLocation(Entity)}.
+     */
     int countDraftDocumentsForUser(Long currentUserId) {
-        EntityList userLocations = userDataDefinition().get(currentUserId).getHasManyField(UserFieldsMF.USER_LOCATIONS);
+        Map<Long, DraftDocumentsCounter> counters = getCounters(multiTenantService.getCurrentTenantId());
+
+        DraftDocumentsCounter counter = counters.get(currentUserId);
+
+        if (counter == null || counter.isExpired()) {
+            Set<Long> locationIds = getUserLocationIds(currentUserId);
+
+            counter = new DraftDocumentsCounter(locationIds, countDraftDocuments(locationIds));
+
+            counters.put(currentUserId, counter);
+        }
+
+        return counter.getCount();
+    }
+
+    /**
+     * Evicts counts of users of both current and previously saved locations of the document, now and again after the
+     * transaction completes, so that counts read meanwhile from not yet committed data are not kept.
+     */
+    public void invalidate(final Entity document) {
+        Set<Long> locationIds = Sets.newHashSet();
+
+        addLocationIds(locationIds, document);
+
+        if (document.getId() != null) {
+            Entity savedDocument = documentDataDefinition().get(document.getId());
+
+            if (savedDocument != null) {
+                addLocationIds(locationIds, savedDocument);
+            }
+        }
+
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        invalidateAfterCompletion(() -> getCounters(tenantId).values().removeIf(counter -> counter.concerns(locationIds)));
+    }
+
+    /**
+     * Evicts counts of both current and previously saved user of the user location.
+     */
+    public void invalidateUserLocation(final Entity userLocation) {
+        Set<Long> userIds = Sets.newHashSet();
+
+        addUserId(userIds, userLocation);
+
+        if (userLocation.getId() != null) {
+            Entity savedUserLocation = userLocationDataDefinition().get(userLocation.getId());
+
+            if (savedUserLocation != null) {
+                addUserId(userIds, savedUserLocation);
+            }
+        }
+
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        invalidateAfterCompletion(() -> getCounters(tenantId).keySet().removeAll(userIds));
+    }
+
+    private void invalidateAfterCompletion(final Runnable invalidation) {
+        invalidation.run();
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    invalidation.run();
+                }
+
+            });
+        }
+    }
+
+    private Map<Long, DraftDocumentsCounter> getCounters(final int tenantId) {
+        return countersByTenant.computeIfAbsent(tenantId, id -> new ConcurrentHashMap<>());
+    }
+
+    private void addLocationIds(final Set<Long> locationIds, final Entity document) {
+        addId(locationIds, document.getBelongsToField(DocumentFields.LOCATION_FROM));
+        addId(locationIds, document.getBelongsToField(DocumentFields.LOCATION_TO));
+    }
+
+    private void addUserId(final Set<Long> userIds, final Entity userLocation) {
+        addId(userIds, userLocation.getBelongsToField(UserLocationFields.USER));
+    }
+
+    private void addId(final Set<Long> ids, final Entity entity) {
+        if (entity != null) {
+            ids.add(entity.getId());
+        }
+    }
+
+    Set<Long> getUserLocationIds(Long currentUserId) {
+        return userLocationDataDefinition().find().add(eq(UserLocationFields.USER + ".id", currentUserId)).list().getEntities()
+                .stream().map(ul -> ul.getBelongsToField(UserLocationFields.LOCATION)).map(Entity::getId)
+                .collect(Collectors.toSet());
+    }
+
+    int countDraftDocuments(Set<Long> locationIds) {
         SearchConjunction conjunction = SearchRestrictions.conjunction();
         conjunction.add(eq(DocumentFields.STATE, DocumentState.DRAFT.getStringValue()));
         conjunction.add(eq(DocumentFields.ACTIVE, Boolean.TRUE));
         conjunction.add(isNull("order.id"));
 
         SearchCriteriaBuilder criteriaBuilder = documentDataDefinition().find();
-        if (!userLocations.isEmpty()) {
+        if (!locationIds.isEmpty()) {
             criteriaBuilder.createAlias(DocumentFields.LOCATION_FROM, "locFrom", JoinType.LEFT);
             criteriaBuilder.createAlias(DocumentFields.LOCATION_TO, "locTo", JoinType.LEFT);
 
-            Set<Long> locationIds = userLocations.stream().map(ul -> ul.getBelongsToField(UserLocationFields.LOCATION))
-                    .map(Entity::getId).collect(Collectors.toSet());
             conjunction.add(or(in("locFrom.id", locationIds), in("locTo.id", locationIds)));
         }
         criteriaBuilder.add(conjunction);
-        return criteriaBuilder.list().getTotalNumberOfEntities();
+        criteriaBuilder.setProjection(alias(rowCount(), L_COUNT));
+        criteriaBuilder.addOrder(asc(L_COUNT));
+
+        Entity countProjection = criteriaBuilder.setMaxResults(1).uniqueResult();
+
+        return countProjection.getLongField(L_COUNT).intValue();
+    }
+
+    private static final class DraftDocumentsCounter {
+
+        private final Set<Long> locationIds;
+
+        private final int count;
+
+        private final long countedAt;
+
+        private DraftDocumentsCounter(final Set<Long> locationIds, final int count) {
+            this.locationIds = locationIds;
+            this.count = count;
+            this.countedAt = System.currentTimeMillis();
+        }
+
+        private int getCount() {
+            return count;
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - countedAt > L_DRAFT_DOCUMENTS_COUNTER_MAX_AGE;
+        }
+
+        private boolean concerns(final Set<Long> documentLocationIds) {
+            return locationIds.isEmpty() || documentLocationIds.stream().anyMatch(locationIds::contains);
+        }
+
     }
 
 }
@@ -0,0 +1,155 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ * <p>
+ * This file is part of Qcadoo.
+ * <p>
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ * <p>
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ * <p>
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.materialFlowResources.service;
+
+import java.math.BigDecimal;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.BigDecimalUtils;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Resources of one warehouse, loaded once for all products of a document and shared by all of its positions.
+ *
+ * Entities handed out by {@link #getCandidates(Long, Long, Predicate, Comparator)} are the pooled instances, so quantity changes
+ * made on them are seen by the next positions. Resources deleted or saved outside of the pool have to be reported back with
+ * {@link #remove(Entity)} and {@link #update(Entity)}.
+ */
+public class ResourceCandidatesPool {
+
+    private final Map<Long, List<Entity>> resourcesByProduct = Maps.newHashMap();
+
+    public ResourceCandidatesPool(final List<Entity> resources) {
+        resources.forEach(this::update);
+    }
+
+    public List<Entity> getCandidates(final Long productId, final Long additionalCodeId,
+            final Predicate<Entity> conversionFilter, final Comparator<Entity> order) {
+        List<Entity> matching = resourcesByProduct.getOrDefault(productId, Lists.newArrayList()).stream()
+                .filter(resource -> BigDecimal.ZERO.compareTo(BigDecimalUtils.convertNullToZero(resource
+                        .getDecimalField(ResourceFields.AVAILABLE_QUANTITY))) < 0).filter(conversionFilter)
+                .collect(Collectors.toList());
+
+        if (additionalCodeId == null) {
+            return matching.stream().sorted(order).collect(Collectors.toList());
+        }
+
+        Map<Boolean, List<Entity>> byAdditionalCode = matching.stream().sorted(order)
+                .collect(Collectors.partitioningBy(resource -> additionalCodeId.equals(getAdditionalCodeId(resource))));
+
+        List<Entity> resources = Lists.newArrayList(byAdditionalCode.get(true));
+
+        resources.addAll(byAdditionalCode.get(false));
+
+        return resources;
+    }
+
+    public void update(final Entity resource) {
+        List<Entity> resources = resourcesByProduct.computeIfAbsent(getProductId(resource), productId -> Lists.newArrayList());
+
+        for (int index = 0; index < resources.size(); index++) {
+            if (resources.get(index).getId().equals(resource.getId())) {
+                resources.set(index, resource);
+
+                return;
+            }
+        }
+
+        resources.add(resource);
+    }
+
+    public void remove(final Entity resource) {
+        List<Entity> resources = resourcesByProduct.get(getProductId(resource));
+
+        if (resources != null) {
+            resources.removeIf(pooled -> pooled.getId().equals(resource.getId()));
+        }
+    }
+
+    public void reserve(final Entity resource, final BigDecimal quantity) {
+        List<Entity> resources = resourcesByProduct.getOrDefault(getProductId(resource), Lists.newArrayList());
+
+        resources.stream().filter(pooled -> pooled.getId().equals(resource.getId())).findAny().ifPresent(pooled -> {
+            BigDecimal availableQuantity = BigDecimalUtils.convertNullToZero(pooled
+                    .getDecimalField(ResourceFields.AVAILABLE_QUANTITY));
+            BigDecimal reservedQuantity = BigDecimalUtils.convertNullToZero(pooled
+                    .getDecimalField(ResourceFields.RESERVED_QUANTITY));
+
+            pooled.setField(ResourceFields.AVAILABLE_QUANTITY, availableQuantity.subtract(quantity));
+            pooled.setField(ResourceFields.RESERVED_QUANTITY, reservedQuantity.add(quantity));
+        });
+    }
+
+    public static Comparator<Entity> orderFor(final WarehouseAlgorithm warehouseAlgorithm) {
+        Comparator<Entity> order;
+
+        if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
+            order = descending(resource -> resource.getDateField(ResourceFields.TIME));
+        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
+            order = ascending(resource -> resource.getDateField(ResourceFields.EXPIRATION_DATE)).thenComparing(
+                    ascending(resource -> resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)));
+        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
+            order = descending(resource -> resource.getDateField(ResourceFields.EXPIRATION_DATE)).thenComparing(
+                    ascending(resource -> resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)));
+        } else {
+            order = ascending(resource -> resource.getDateField(ResourceFields.TIME));
+        }
+
+        return order.thenComparing(Entity::getId);
+    }
+
+    // nulls are ordered the way PostgreSQL does it: last when ascending, first when descending
+    private static <T extends Comparable<? super T>> Comparator<Entity> ascending(final Function<Entity, T> extractor) {
+        return Comparator.comparing(extractor, Comparator.nullsLast(Comparator.naturalOrder()));
+    }
+
+    private static <T extends Comparable<? super T>> Comparator<Entity> descending(final Function<Entity, T> extractor) {
+        return Comparator.comparing(extractor, Comparator.nullsFirst(Comparator.reverseOrder()));
+    }
+
+    private static Long getProductId(final Entity resource) {
+        return resource.getBelongsToField(ResourceFields.PRODUCT).getId();
+    }
+
+    private static Long getAdditionalCodeId(final Entity resource) {
+        Entity additionalCode = resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE);
+
+        if (Objects.isNull(additionalCode)) {
+            return null;
+        }
+
+        return additionalCode.getId();
+    }
+
+}
@@ -36,6 +36,7 @@ import com.qcadoo.model.api.NumberService;
 import com.qcadoo.view.api.utils.NumberGeneratorService;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.Date;
 import java.util.Optional;
 
@@ -58,6 +59,9 @@ public class ResourceCorrectionServiceImpl implements ResourceCorrectionService
     @Autowired
     private NumberService numberService;
 
+    @Autowired
+    private ResourceStockService resourceStockService;
+
     public long getPalletsCountInStorageLocation(final Entity newStorageLocation) {
         StringBuilder hql = new StringBuilder();
         hql.append("select count(distinct p.number) as palletsCount from #materialFlowResources_resource r ");
@@ -164,6 +168,9 @@ public class ResourceCorrectionServiceImpl implements ResourceCorrectionService
                 if (!savedCorrection.isValid()) {
                     throw new IllegalStateException("Could not save correction");
                 }
+
+                resourceStockService.updateResourceStocks(Collections.singleton(product(oldResource).getId()),
+                        Collections.singleton(location(oldResource).getId()));
                 return Optional.of(savedCorrection);
             } else {
                 return Optional.empty();
@@ -23,9 +23,8 @@
  */
 package com.qcadoo.mes.materialFlowResources.service;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
+import com.google.common.collect.Maps;
 import com.qcadoo.mes.basic.CalculationQuantityService;
 import com.qcadoo.mes.basic.ParameterService;
 import com.qcadoo.mes.basic.constants.ProductAttributeValueFields;
@@ -43,6 +42,7 @@ import com.qcadoo.mes.materialFlowResources.constants.ResourceAttributeValueFiel
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
 import com.qcadoo.mes.materialFlowResources.constants.StorageLocationFields;
 import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.mes.materialFlowResources.dto.WarehouseAvailableQuantities;
 import com.qcadoo.mes.materialFlowResources.exceptions.InvalidResourceException;
 import com.qcadoo.mes.materialFlowResources.helpers.NotEnoughResourcesErrorMessageCopyToEntityHelper;
 import com.qcadoo.mes.materialFlowResources.helpers.NotEnoughResourcesErrorMessageHolder;
@@ -52,10 +52,6 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.model.api.search.SearchCriteriaBuilder;
-import com.qcadoo.model.api.search.SearchCriterion;
-import com.qcadoo.model.api.search.SearchOrder;
-import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.security.api.UserService;
@@ -64,16 +60,21 @@ import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 
 import java.math.BigDecimal;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.exception.LockAcquisitionException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
 import org.springframework.transaction.annotation.Transactional;
@@ -83,6 +84,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ResourceManagementServiceImpl.class);
 
+    private static final int L_RESOURCE_CANDIDATES_PRODUCTS_PART_SIZE = 1000;
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -110,6 +113,9 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     @Autowired
     private CalculationQuantityService calculationQuantityService;
 
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
     @Override
     @Transactional
     public void createResources(final Entity document) {
@@ -126,13 +132,30 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
+    /**
+     * Has to be called by every method creating, releasing or moving resources of the document, as the resource stock quantities
+     * are read from the resourceStock table.
+     */
+    private void updateResourceStocks(final Entity document, final List<Entity> positions) {
+        Set<Long> productIds = positions.stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toSet());
+        Set<Long> locationIds = Stream
+                .of(document.getBelongsToField(DocumentFields.LOCATION_FROM),
+                        document.getBelongsToField(DocumentFields.LOCATION_TO)).filter(Objects::nonNull).map(Entity::getId)
+                .collect(Collectors.toSet());
+
+        resourceStockService.updateResourceStocks(productIds, locationIds);
+    }
+
     @Override
     @Transactional
     public void createResourcesForReceiptDocuments(final Entity document) {
         Entity warehouse = document.getBelongsToField(DocumentFields.LOCATION_TO);
         Object date = document.getField(DocumentFields.TIME);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        for (Entity position : positions) {
             createResource(document, warehouse, position, date);
 
             position = position.getDataDefinition().save(position);
@@ -145,6 +168,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                         .forEach(e -> document.addGlobalError(e.getMessage(), e.getAutoClose(), e.getVars()));
             }
         }
+
+        updateResourceStocks(document, positions);
     }
 
     private void createResource(final Entity document, final Entity warehouse, final Entity position, final Object date) {
@@ -291,97 +316,38 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private SearchCriteriaBuilder getSearchCriteriaForResourceForProductAndWarehouse(final Entity product, final Entity warehouse) {
-        return dataDefinitionService
-                .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
-                .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
-                .add(SearchRestrictions.belongsTo(ResourceFields.PRODUCT, product))
-                .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO));
-
-    }
-
-    public Multimap<Long, BigDecimal> getQuantitiesInWarehouse(final Entity warehouse,
-            final Multimap<Entity, Entity> productsAndPositions) {
-        Multimap<Long, BigDecimal> result = ArrayListMultimap.create();
-
-        for (Map.Entry<Entity, Entity> productAndPosition : productsAndPositions.entries()) {
-            Entity additionalCode = productAndPosition.getValue().getBelongsToField(PositionFields.ADDITIONAL_CODE);
-            BigDecimal conversion = productAndPosition.getValue().getDecimalField(PositionFields.CONVERSION);
-
-            List<Entity> resources = Lists.newArrayList();
-
-            if (additionalCode != null) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
-
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                resources = scb.add(SearchRestrictions.belongsTo(ResourceFields.ADDITIONAL_CODE, additionalCode)).list()
-                        .getEntities();
-
-                scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(), warehouse);
-
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                resources.addAll(scb
-                        .add(SearchRestrictions.or(SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                                SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))).list().getEntities());
-            }
-
-            if (resources.isEmpty()) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(productAndPosition.getKey(),
-                        warehouse);
+    private ResourceCandidatesPool createResourceCandidatesPool(final Entity warehouse, final List<Entity> positions) {
+        List<Long> productIds = positions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                .distinct().collect(Collectors.toList());
 
-                if (!StringUtils.isEmpty(productAndPosition.getKey().getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, conversion));
-                } else {
-                    scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                }
-
-                resources = scb.list().getEntities();
-            }
-
-            if (result.containsKey(productAndPosition.getKey().getId())) {
-                BigDecimal currentQuantity = result.get(productAndPosition.getKey().getId()).stream()
-                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+        List<Entity> resources = Lists.newArrayList();
 
-                result.put(productAndPosition.getKey().getId(),
-                        (resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).reduce(
-                                BigDecimal.ZERO, BigDecimal::add)).add(currentQuantity));
-            } else {
-                result.put(
-                        productAndPosition.getKey().getId(),
-                        resources.stream().map(res -> res.getDecimalField(ResourceFields.AVAILABLE_QUANTITY))
-                                .reduce(BigDecimal.ZERO, BigDecimal::add));
-            }
+        for (List<Long> productIdsPart : Lists.partition(productIds, L_RESOURCE_CANDIDATES_PRODUCTS_PART_SIZE)) {
+            resources.addAll(dataDefinitionService
+                    .get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER, MaterialFlowResourcesConstants.MODEL_RESOURCE).find()
+                    .add(SearchRestrictions.belongsTo(ResourceFields.LOCATION, warehouse))
+                    .add(SearchRestrictions.in(ResourceFields.PRODUCT + ".id", productIdsPart))
+                    .add(SearchRestrictions.gt(ResourceFields.AVAILABLE_QUANTITY, BigDecimal.ZERO)).list().getEntities());
         }
 
-        return result;
+        return new ResourceCandidatesPool(resources);
     }
 
-    private Multimap<Entity, Entity> getProductsAndPositionsFromDocument(final Entity document) {
-        Multimap<Entity, Entity> map = ArrayListMultimap.create();
-
-        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
-
-        positions.forEach(position -> map.put(position.getBelongsToField(PositionFields.PRODUCT), position));
+    private WarehouseAvailableQuantities getAvailableQuantities(final Entity warehouse, final List<Entity> positions) {
+        Set<Long> productIds = positions.stream().map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId())
+                .collect(Collectors.toSet());
 
-        return map;
+        return resourceStockService.getAvailableQuantities(productIds, warehouse);
     }
 
-    private BigDecimal getQuantityOfProductFromMultimap(final Multimap<Long, BigDecimal> quantitiesForWarehouse,
-            final Entity product) {
-        List<BigDecimal> quantities = Lists.newArrayList(quantitiesForWarehouse.get(product.getId()));
+    private BigDecimal getAvailableQuantity(final WarehouseAvailableQuantities availableQuantities, final Entity position) {
+        Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        return quantities.stream().reduce(BigDecimal.ZERO, BigDecimal::add);
+        if (StringUtils.isEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            return availableQuantities.get(product.getId(), BigDecimal.ONE);
+        } else {
+            return availableQuantities.get(product.getId(), position.getDecimalField(PositionFields.CONVERSION));
+        }
     }
 
     private void updateResourcesForReleaseDocuments(final Entity document) {
@@ -394,21 +360,22 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
 
-        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouse,
-                getProductsAndPositionsFromDocument(document));
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        WarehouseAvailableQuantities availableQuantities = getAvailableQuantities(warehouse, positions);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        ResourceCandidatesPool resourceCandidatesPool = createResourceCandidatesPool(warehouse, positions);
+
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm);
+            List<Entity> generatedPositions = updateResources(warehouse, position, warehouseAlgorithm, resourceCandidatesPool);
 
             enoughResources = enoughResources && position.isValid();
 
             if (!position.isValid()) {
-                BigDecimal quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
-                BigDecimal quantity = position.getDecimalField(ResourceFields.QUANTITY);
-
-                errorMessageHolder.addErrorEntry(product, quantity.subtract(quantityInWarehouse, numberService.getMathContext()));
+                errorMessageHolder.addErrorEntry(product, position.getDecimalField(PositionFields.QUANTITY),
+                        getAvailableQuantity(availableQuantities, position));
             } else {
                 if (generatedPositions.size() > 1) {
                     if (Objects.nonNull(position.getId())) {
@@ -433,6 +400,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouse, errorMessageHolder);
         }
+
+        updateResourceStocks(document, positions);
     }
 
     private void addPositionErrors(final Entity document, final Entity saved) {
@@ -470,12 +439,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private List<Entity> updateResources(final Entity warehouse, final Entity position,
-            final WarehouseAlgorithm warehouseAlgorithm) {
+            final WarehouseAlgorithm warehouseAlgorithm, final ResourceCandidatesPool resourceCandidatesPool) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(product, position, warehouseAlgorithm,
+                resourceCandidatesPool);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -514,6 +484,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
 
                     resource.getDataDefinition().delete(resource.getId());
+                    resourceCandidatesPool.remove(resource);
 
                     palletNumberDisposalService.tryToDispose(palletNumberToDispose);
                 } else {
@@ -530,6 +501,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    resourceCandidatesPool.update(resource);
                 }
 
                 newPosition.setField(PositionFields.QUANTITY,
@@ -560,6 +533,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                resourceCandidatesPool.update(resource);
+
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
                 newPosition.setField(PositionFields.GIVEN_QUANTITY, givenQuantity);
 
@@ -587,21 +562,23 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         NotEnoughResourcesErrorMessageHolder errorMessageHolder = notEnoughResourcesErrorMessageHolderFactory.create();
 
-        Multimap<Long, BigDecimal> quantitiesForWarehouse = getQuantitiesInWarehouse(warehouseFrom,
-                getProductsAndPositionsFromDocument(document));
+        List<Entity> positions = document.getHasManyField(DocumentFields.POSITIONS);
+
+        WarehouseAvailableQuantities availableQuantities = getAvailableQuantities(warehouseFrom, positions);
+
+        ResourceCandidatesPool resourceCandidatesPool = createResourceCandidatesPool(warehouseFrom, positions);
 
-        for (Entity position : document.getHasManyField(DocumentFields.POSITIONS)) {
+        for (Entity position : positions) {
             Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-            List<Entity> generatedPositions = moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm);
+            List<Entity> generatedPositions = moveResources(warehouseFrom, warehouseTo, position, date, warehouseAlgorithm,
+                    resourceCandidatesPool);
 
             enoughResources = enoughResources && position.isValid();
 
             if (!position.isValid()) {
-                BigDecimal quantityInWarehouse = getQuantityOfProductFromMultimap(quantitiesForWarehouse, product);
-                BigDecimal quantity = position.getDecimalField(ResourceFields.QUANTITY);
-
-                errorMessageHolder.addErrorEntry(product, quantity.subtract(quantityInWarehouse, numberService.getMathContext()));
+                errorMessageHolder.addErrorEntry(product, position.getDecimalField(PositionFields.QUANTITY),
+                        getAvailableQuantity(availableQuantities, position));
             } else {
                 if (generatedPositions.size() > 1) {
                     if (Objects.nonNull(position.getId())) {
@@ -627,6 +604,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         if (!enoughResources) {
             NotEnoughResourcesErrorMessageCopyToEntityHelper.addError(document, warehouseFrom, errorMessageHolder);
         }
+
+        updateResourceStocks(document, positions);
     }
 
     private void copyPositionErrors(final Entity position, final Entity newPosition) {
@@ -636,12 +615,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
     }
 
     private List<Entity> moveResources(final Entity warehouseFrom, final Entity warehouseTo, final Entity position,
-            final Object date, final WarehouseAlgorithm warehouseAlgorithm) {
+            final Object date, final WarehouseAlgorithm warehouseAlgorithm, final ResourceCandidatesPool resourceCandidatesPool) {
         List<Entity> newPositions = Lists.newArrayList();
 
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouseFrom, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(product, position, warehouseAlgorithm,
+                resourceCandidatesPool);
 
         reservationsService.deleteReservationFromDocumentPosition(position);
 
@@ -680,6 +660,7 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     Entity palletNumberToDispose = resource.getBelongsToField(ResourceFields.PALLET_NUMBER);
 
                     resource.getDataDefinition().delete(resource.getId());
+                    resourceCandidatesPool.remove(resource);
 
                     palletNumberDisposalService.tryToDispose(palletNumberToDispose);
                 } else {
@@ -696,6 +677,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     if (!savedResource.isValid()) {
                         throw new InvalidResourceException(savedResource);
                     }
+
+                    resourceCandidatesPool.update(resource);
                 }
 
                 Entity newResource = createResource(position, warehouseTo, resource, resourceAvailableQuantity, date);
@@ -734,6 +717,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                     throw new InvalidResourceException(savedResource);
                 }
 
+                resourceCandidatesPool.update(resource);
+
                 Entity newResource = createResource(position, warehouseTo, resource, quantity, date);
 
                 newPosition.setField(PositionFields.QUANTITY, numberService.setScaleWithDefaultMathContext(quantity));
@@ -765,8 +750,8 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity warehouse, final Entity product,
-            final Entity position, final WarehouseAlgorithm warehouseAlgorithm) {
+    private List<Entity> getResourcesForWarehouseProductAndAlgorithm(final Entity product, final Entity position,
+            final WarehouseAlgorithm warehouseAlgorithm, final ResourceCandidatesPool resourceCandidatesPool) {
         List<Entity> resources = Lists.newArrayList();
 
         Entity resource = position.getBelongsToField(PositionFields.RESOURCE);
@@ -788,79 +773,48 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
             }
 
             resources.add(resource);
-        } else if (WarehouseAlgorithm.FIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LIFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLIFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.FEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductFEFO(warehouse, product, additionalCode, position);
-        } else if (WarehouseAlgorithm.LEFO.equals(warehouseAlgorithm)) {
-            resources = getResourcesForLocationAndProductLEFO(warehouse, product, additionalCode, position);
+        } else {
+            resources = getResourcesForLocationCommonCode(product, additionalCode, position, resourceCandidatesPool,
+                    ResourceCandidatesPool.orderFor(warehouseAlgorithm));
         }
 
         return resources;
     }
 
-    private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position, final boolean resourceIrrespectiveOfConversion,
-            final SearchOrder... searchOrders) {
-        class SearchCriteriaHelper {
-
-            private List<Entity> getAll() {
-                return getAllThatSatisfies(null);
-            }
-
-            private List<Entity> getAllThatSatisfies(SearchCriterion searchCriterion) {
-                SearchCriteriaBuilder scb = getSearchCriteriaForResourceForProductAndWarehouse(product, warehouse);
-
-                if (resourceIrrespectiveOfConversion) {
-                    if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                        scb.add(SearchRestrictions.ne(PositionFields.CONVERSION,
-                                position.getDecimalField(PositionFields.CONVERSION)));
-                    } else {
-                        scb.add(SearchRestrictions.ne(ResourceFields.CONVERSION, BigDecimal.ONE));
-                    }
-                } else {
-                    if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
-                        scb.add(SearchRestrictions.eq(PositionFields.CONVERSION,
-                                position.getDecimalField(PositionFields.CONVERSION)));
-                    } else {
-                        scb.add(SearchRestrictions.eq(ResourceFields.CONVERSION, BigDecimal.ONE));
-                    }
-                }
+    private List<Entity> getResourcesForLocationCommonCodeConversion(final Entity product, final Entity additionalCode,
+            final Entity position, final boolean resourceIrrespectiveOfConversion,
+            final ResourceCandidatesPool resourceCandidatesPool, final Comparator<Entity> order) {
+        Long additionalCodeId = Objects.isNull(additionalCode) ? null : additionalCode.getId();
 
-                Optional.ofNullable(searchCriterion).ifPresent(scb::add);
+        return resourceCandidatesPool.getCandidates(product.getId(), additionalCodeId,
+                getConversionFilter(product, position, resourceIrrespectiveOfConversion), order);
+    }
 
-                for (SearchOrder searchOrder : searchOrders) {
-                    scb.addOrder(searchOrder);
-                }
+    private Predicate<Entity> getConversionFilter(final Entity product, final Entity position,
+            final boolean resourceIrrespectiveOfConversion) {
+        BigDecimal conversion;
 
-                return scb.list().getEntities();
-            }
+        if (StringUtils.isNotEmpty(product.getStringField(ProductFields.ADDITIONAL_UNIT))) {
+            conversion = position.getDecimalField(PositionFields.CONVERSION);
+        } else {
+            conversion = BigDecimal.ONE;
         }
 
-        List<Entity> resources = Lists.newArrayList();
-
-        if (additionalCode != null) {
-            resources = new SearchCriteriaHelper().getAllThatSatisfies(SearchRestrictions.belongsTo(
-                    ResourceFields.ADDITIONAL_CODE, additionalCode));
-
-            resources.addAll(new SearchCriteriaHelper().getAllThatSatisfies(SearchRestrictions.or(
-                    SearchRestrictions.isNull(ResourceFields.ADDITIONAL_CODE),
-                    SearchRestrictions.ne("additionalCode.id", additionalCode.getId()))));
-        }
+        return resource -> {
+            BigDecimal resourceConversion = resource.getDecimalField(ResourceFields.CONVERSION);
 
-        if (resources.isEmpty()) {
-            resources = new SearchCriteriaHelper().getAll();
-        }
+            if (Objects.isNull(conversion) || Objects.isNull(resourceConversion)) {
+                return false;
+            }
 
-        return resources;
+            return resourceIrrespectiveOfConversion != (conversion.compareTo(resourceConversion) == 0);
+        };
     }
 
-    private List<Entity> getResourcesForLocationCommonCode(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position, final SearchOrder... searchOrders) {
-        List<Entity> resources = getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, false,
-                searchOrders);
+    private List<Entity> getResourcesForLocationCommonCode(final Entity product, final Entity additionalCode,
+            final Entity position, final ResourceCandidatesPool resourceCandidatesPool, final Comparator<Entity> order) {
+        List<Entity> resources = getResourcesForLocationCommonCodeConversion(product, additionalCode, position, false,
+                resourceCandidatesPool, order);
 
         Entity documentPositionParameters = parameterService.getParameter().getBelongsToField(
                 ParameterFieldsMFR.DOCUMENT_POSITION_PARAMETERS);
@@ -869,38 +823,14 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                 .getBooleanField(DocumentPositionParametersFields.FILL_RESOURCE_IRRESPECTIVE_OF_CONVERSION);
 
         if (fillResourceIrrespectiveOfConversion) {
-            resources.addAll(getResourcesForLocationCommonCodeConversion(warehouse, product, additionalCode, position, true,
-                    searchOrders));
+            resources.addAll(getResourcesForLocationCommonCodeConversion(product, additionalCode, position, true,
+                    resourceCandidatesPool, order));
         }
 
         return resources;
     }
 
-    private List<Entity> getResourcesForLocationAndProductFIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.asc(ResourceFields.TIME));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLIFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.desc(ResourceFields.TIME));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductFEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.asc(ResourceFields.EXPIRATION_DATE), SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
-    }
-
-    private List<Entity> getResourcesForLocationAndProductLEFO(final Entity warehouse, final Entity product,
-            final Entity additionalCode, final Entity position) {
-        return getResourcesForLocationCommonCode(warehouse, product, additionalCode, position,
-                SearchOrders.desc(ResourceFields.EXPIRATION_DATE), SearchOrders.asc(ResourceFields.AVAILABLE_QUANTITY));
-    }
-
-    @Transactional(isolation = Isolation.REPEATABLE_READ)
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public void fillResourcesInDocument(final ViewDefinitionState view, final Entity document) throws LockAcquisitionException {
         LOGGER.info("FILL RESOURCES STARTED IN DOCUMENT: id = " + document.getId() + " number = "
                 + document.getStringField(DocumentFields.NUMBER));
@@ -918,9 +848,13 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
 
         boolean valid = true;
 
+        ResourceCandidatesPool resourceCandidatesPool = claimResourceCandidatesPool(warehouse, positions);
+
+        boolean draftMakesReservation = reservationsService.reservationsEnabledForDocumentPositions(document);
+
         for (Entity position : positions) {
             if (position.getBelongsToField(PositionFields.RESOURCE) == null) {
-                List<Entity> newPositions = matchResourcesToPosition(position, warehouse, warehouseAlgorithm);
+                List<Entity> newPositions = matchResourcesToPosition(position, warehouseAlgorithm, resourceCandidatesPool);
 
                 if (!newPositions.isEmpty()) {
                     LOGGER.info("GENERATED POSITIONS IN DOCUMENT: id = " + document.getId() + ", FOR POSITION: id = "
@@ -936,6 +870,10 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                             Entity saved = newPosition.getDataDefinition().save(newPosition);
                             valid = valid && saved.isValid();
                             addPositionErrors(view, saved);
+
+                            if (draftMakesReservation) {
+                                reserveInResourceCandidatesPool(resourceCandidatesPool, saved);
+                            }
                         }
                     } else {
                         copyPositionValues(position, newPositions.get(0));
@@ -943,6 +881,10 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
                         Entity saved = position.getDataDefinition().save(position);
                         valid = valid && saved.isValid();
                         addPositionErrors(view, saved);
+
+                        if (draftMakesReservation) {
+                            reserveInResourceCandidatesPool(resourceCandidatesPool, saved);
+                        }
                     }
                 }
             }
@@ -960,6 +902,48 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         throw new IllegalStateException("Unable to fill resources in document.");
     }
 
+    /**
+     * Serializes fills of documents taking the same products from the same warehouse. Products of positions without resource are
+     * locked with transaction level advisory locks one by one, in order of their ids, before their resources are read, so a fill
+     * sees resources reserved by the fill it waited for and two fills never wait for each other. Resources themselves aren't locked, so documents releasing or taking them
+     * otherwise don't wait for the fill.
+     */
+    private ResourceCandidatesPool claimResourceCandidatesPool(final Entity warehouse, final List<Entity> positions) {
+        List<Entity> positionsWithoutResource = positions.stream()
+                .filter(position -> Objects.isNull(position.getBelongsToField(PositionFields.RESOURCE)))
+                .collect(Collectors.toList());
+        List<Long> productIds = positionsWithoutResource.stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).distinct().sorted()
+                .collect(Collectors.toList());
+
+        lockProducts(warehouse, productIds);
+
+        LOGGER.info("LOCKED PRODUCTS IN WAREHOUSE: id = " + warehouse.getId() + ", products = " + productIds.size());
+
+        return createResourceCandidatesPool(warehouse, positionsWithoutResource);
+    }
+
+    private void lockProducts(final Entity warehouse, final List<Long> productIds) {
+        String query = "SELECT pg_advisory_xact_lock(CAST(:locationId AS integer), CAST(:productId AS integer))";
+
+        for (Long productId : productIds.stream().distinct().sorted().collect(Collectors.toList())) {
+            Map<String, Object> params = Maps.newHashMap();
+
+            params.put("locationId", warehouse.getId());
+            params.put("productId", productId);
+
+            jdbcTemplate.queryForList(query, params);
+        }
+    }
+
+    private void reserveInResourceCandidatesPool(final ResourceCandidatesPool resourceCandidatesPool, final Entity saved) {
+        Entity resource = saved.getBelongsToField(PositionFields.RESOURCE);
+
+        if (saved.isValid() && Objects.nonNull(resource)) {
+            resourceCandidatesPool.reserve(resource, saved.getDecimalField(PositionFields.QUANTITY));
+        }
+    }
+
     private void addPositionErrors(final ViewDefinitionState view, final Entity saved) {
         saved.getGlobalErrors().forEach(view::addMessage);
 
@@ -970,15 +954,16 @@ public class ResourceManagementServiceImpl implements ResourceManagementService
         }
     }
 
-    private List<Entity> matchResourcesToPosition(final Entity position, final Entity warehouse,
-            final WarehouseAlgorithm warehouseAlgorithm) {
+    private List<Entity> matchResourcesToPosition(final Entity position, final WarehouseAlgorithm warehouseAlgorithm,
+            final ResourceCandidatesPool resourceCandidatesPool) {
         DataDefinition positionDD = dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
                 MaterialFlowResourcesConstants.MODEL_POSITION);
 
         List<Entity> newPositions = Lists.newArrayList();
         Entity product = position.getBelongsToField(PositionFields.PRODUCT);
 
-        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(warehouse, product, position, warehouseAlgorithm);
+        List<Entity> resources = getResourcesForWarehouseProductAndAlgorithm(product, position, warehouseAlgorithm,
+                resourceCandidatesPool);
 
         BigDecimal quantity = position.getDecimalField(PositionFields.QUANTITY);
         BigDecimal conversion = BigDecimalUtils.convertNullToOne(position.getDecimalField(PositionFields.CONVERSION));
@@ -1,7 +1,10 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
 
+import com.qcadoo.mes.materialFlowResources.dto.WarehouseAvailableQuantities;
 import com.qcadoo.model.api.Entity;
 
 public interface ResourceStockService {
@@ -12,5 +15,38 @@ public interface ResourceStockService {
 
     BigDecimal getResourceStockQuantity(Entity product, Entity location);
 
+    /**
+     * Gets resource stock available quantities of given products in given location with one query. Products without resource
+     * stock are not present in the result.
+     */
+    Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Collection<Long> productIds, final Entity location);
+
+    /**
+     * Sums available quantities of resources of given products in given location, grouped by product and conversion, with one
+     * query.
+     */
+    WarehouseAvailableQuantities getAvailableQuantities(final Collection<Long> productIds, final Entity location);
+
     void checkResourcesStock(Entity document);
+
+    /**
+     * Recalculates stored resource stock quantities for every pair of given products and locations. Has to be called after
+     * resources are created, released, moved or corrected, in the same transaction.
+     */
+    void updateResourceStocks(final Collection<Long> productIds, final Collection<Long> locationIds);
+
+    /**
+     * Verifies stored resource stock quantities against resources and corrects the ones which are out of date.
+     *
+     * @return number of corrected resource stocks
+     */
+    int reconcileResourceStocks();
+
+    /**
+     * Computes quantities of resource stocks which don't have them yet (null after the quantity columns are added to an
+     * existing database). Does nothing, apart from one check, when all resource stocks are filled.
+     *
+     * @return number of filled resource stocks
+     */
+    int fillResourceStocks();
 }
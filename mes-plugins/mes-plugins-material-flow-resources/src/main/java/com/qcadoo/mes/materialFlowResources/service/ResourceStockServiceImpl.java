@@ -2,13 +2,18 @@ package com.qcadoo.mes.materialFlowResources.service;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 
@@ -22,19 +27,27 @@ import com.qcadoo.mes.materialFlowResources.constants.PositionFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
 import com.qcadoo.mes.materialFlowResources.constants.ResourceStockFields;
 import com.qcadoo.mes.materialFlowResources.dto.ResourceStockDto;
+import com.qcadoo.mes.materialFlowResources.dto.WarehouseAvailableQuantities;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 @Service
 public class ResourceStockServiceImpl implements ResourceStockService {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceStockServiceImpl.class);
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private MultiTenantService multiTenantService;
+
     @Override
     public void createResourceStock(final Entity resource) {
         Entity product = resource.getBelongsToField(ResourceFields.PRODUCT);
@@ -72,14 +85,16 @@ public class ResourceStockServiceImpl implements ResourceStockService {
 
     private Optional<ResourceStockDto> getResourceStockForProductAndLocation(Entity product, Entity location) {
         StringBuilder query = new StringBuilder();
-        query.append("SELECT rs.* ");
-        query.append("FROM materialflowresources_resourcestockdto rs ");
+        query.append("SELECT COALESCE(rs.quantity, 0) AS quantity, ");
+        query.append("COALESCE(rs.quantity, 0) - COALESCE((SELECT SUM(r.quantity) FROM materialflowresources_reservation r ");
+        query.append("WHERE r.location_id = rs.location_id AND r.product_id = rs.product_id), 0) AS availablequantity ");
+        query.append("FROM materialflowresources_resourcestock rs ");
         query.append("WHERE rs.location_id = :locationId AND rs.product_id = :productId ");
         query.append("LIMIT 1");
 
         Map<String, Object> params = Maps.newHashMap();
-        params.put("locationId", location.getId().intValue());
-        params.put("productId", product.getId().intValue());
+        params.put("locationId", location.getId());
+        params.put("productId", product.getId());
         List<ResourceStockDto> resourceStock = jdbcTemplate.query(query.toString(), params,
                 BeanPropertyRowMapper.newInstance(ResourceStockDto.class));
         if (resourceStock.isEmpty()) {
@@ -89,15 +104,146 @@ public class ResourceStockServiceImpl implements ResourceStockService {
         }
     }
 
+    @Override
+    public Map<Long, BigDecimal> getResourceStockAvailableQuantities(final Collection<Long> productIds, final Entity location) {
+        Map<Long, BigDecimal> availableQuantities = Maps.newHashMap();
+
+        if (productIds.isEmpty()) {
+            return availableQuantities;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT rs.product_id, ");
+        query.append("COALESCE(rs.quantity, 0) - COALESCE(SUM(r.quantity), 0) AS availablequantity ");
+        query.append("FROM materialflowresources_resourcestock rs ");
+        query.append("LEFT JOIN materialflowresources_reservation r ");
+        query.append("ON r.location_id = rs.location_id AND r.product_id = rs.product_id ");
+        query.append("WHERE rs.location_id = :locationId AND rs.product_id IN (:productIds) ");
+        query.append("GROUP BY rs.id, rs.product_id, rs.quantity");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", location.getId());
+        params.put("productIds", productIds);
+
+        jdbcTemplate.query(query.toString(), params, (RowCallbackHandler) resultSet -> availableQuantities
+                .putIfAbsent(resultSet.getLong("product_id"), resultSet.getBigDecimal("availablequantity")));
+
+        return availableQuantities;
+    }
+
+    @Override
+    public WarehouseAvailableQuantities getAvailableQuantities(final Collection<Long> productIds, final Entity location) {
+        WarehouseAvailableQuantities availableQuantities = new WarehouseAvailableQuantities();
+
+        if (productIds.isEmpty()) {
+            return availableQuantities;
+        }
+
+        StringBuilder query = new StringBuilder();
+        query.append("SELECT product_id, conversion, SUM(availablequantity) AS availablequantity ");
+        query.append("FROM materialflowresources_resource ");
+        query.append("WHERE location_id = :locationId AND product_id IN (:productIds) AND availablequantity > 0 ");
+        query.append("GROUP BY product_id, conversion");
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("locationId", location.getId());
+        params.put("productIds", productIds);
+
+        jdbcTemplate.query(query.toString(), params,
+                (RowCallbackHandler) resultSet -> availableQuantities.add(resultSet.getLong("product_id"),
+                        resultSet.getBigDecimal("conversion"), resultSet.getBigDecimal("availablequantity")));
+
+        return availableQuantities;
+    }
+
+    @Override
+    public void updateResourceStocks(final Collection<Long> productIds, final Collection<Long> locationIds) {
+        if (productIds.isEmpty() || locationIds.isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> params = Maps.newHashMap();
+        params.put("productIds", productIds);
+        params.put("locationIds", locationIds);
+
+        jdbcTemplate.update(getUpdateResourceStocksQuery(
+                "WHERE product_id IN (:productIds) AND location_id IN (:locationIds) ",
+                "AND stock.product_id IN (:productIds) AND stock.location_id IN (:locationIds) "), params);
+    }
+
+    public void reconcileResourceStocksTrigger() {
+        multiTenantService.doInMultiTenantContext(new MultiTenantCallback() {
+
+            @Override
+            public void invoke() {
+                reconcileResourceStocks();
+            }
+
+        });
+    }
+
+    @Override
+    public int reconcileResourceStocks() {
+        int corrected = jdbcTemplate.update(getUpdateResourceStocksQuery("",
+                "AND (rs.quantity IS DISTINCT FROM COALESCE(q.quantity, 0) "
+                        + "OR rs.quantityinadditionalunit IS DISTINCT FROM COALESCE(q.quantityinadditionalunit, 0)) "),
+                Maps.newHashMap());
+
+        if (corrected > 0) {
+            LOGGER.warn("RESOURCE STOCKS RECONCILED: " + corrected + " product and location quantities were out of date");
+        }
+
+        return corrected;
+    }
+
+    @Override
+    public int fillResourceStocks() {
+        String query = "SELECT EXISTS (SELECT id FROM materialflowresources_resourcestock "
+                + "WHERE quantity IS NULL OR quantityinadditionalunit IS NULL)";
+
+        if (!jdbcTemplate.queryForObject(query, Maps.newHashMap(), Boolean.class)) {
+            return 0;
+        }
+
+        int filled = jdbcTemplate.update(getUpdateResourceStocksQuery("",
+                "AND (rs.quantity IS NULL OR rs.quantityinadditionalunit IS NULL) "), Maps.newHashMap());
+
+        LOGGER.info("RESOURCE STOCKS FILLED: " + filled + " product and location quantities were computed from resources");
+
+        return filled;
+    }
+
+    private String getUpdateResourceStocksQuery(final String resourcesCondition, final String resourceStocksCondition) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("UPDATE materialflowresources_resourcestock rs ");
+        query.append("SET quantity = COALESCE(q.quantity, 0), ");
+        query.append("quantityinadditionalunit = COALESCE(q.quantityinadditionalunit, 0) ");
+        query.append("FROM materialflowresources_resourcestock stock ");
+        query.append("LEFT JOIN (SELECT product_id, location_id, SUM(quantity) AS quantity, ");
+        query.append("SUM(quantityinadditionalunit) AS quantityinadditionalunit ");
+        query.append("FROM materialflowresources_resource ");
+        query.append(resourcesCondition);
+        query.append("GROUP BY product_id, location_id) q ");
+        query.append("ON q.product_id = stock.product_id AND q.location_id = stock.location_id ");
+        query.append("WHERE stock.id = rs.id ");
+        query.append(resourceStocksCondition);
+
+        return query.toString();
+    }
+
     @Override
     public void checkResourcesStock(Entity document) {
         List<String> invalidProducts = new ArrayList<>();
         List<Entity> mergedPositions = mergePositionsBeforeValidation(document.getHasManyField(DocumentFields.POSITIONS));
+        Set<Long> productIds = mergedPositions.stream()
+                .map(position -> position.getBelongsToField(PositionFields.PRODUCT).getId()).collect(Collectors.toSet());
+        Map<Long, BigDecimal> availableQuantities = getResourceStockAvailableQuantities(productIds,
+                document.getBelongsToField(DocumentFields.LOCATION_FROM));
         for (Entity position : mergedPositions) {
-            if ((position.getDecimalField(PositionFields.QUANTITY)
-                    .compareTo(getResourceStockAvailableQuantity(position.getBelongsToField(PositionFields.PRODUCT),
-                            document.getBelongsToField(DocumentFields.LOCATION_FROM))) > 0)) {
-                Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            Entity product = position.getBelongsToField(PositionFields.PRODUCT);
+            if (position.getDecimalField(PositionFields.QUANTITY)
+                    .compareTo(availableQuantities.getOrDefault(product.getId(), BigDecimal.ZERO)) > 0) {
                 invalidProducts.add(product.getStringField(ProductFields.NUMBER));
             }
         }
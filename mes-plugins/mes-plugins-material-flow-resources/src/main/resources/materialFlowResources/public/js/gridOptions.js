@@ -437,6 +437,8 @@ myApp.controller('GridController', ['$scope', '$window', '$http', function ($sco
         var quantities = {};
         var conversionModified = true;
         var lastSel;
+        var lastLoadedPage;
+        var lastLoadedSort = {};
         var firstLoad = true;
         var hasAdditionalUnit = false;
 
@@ -1894,6 +1896,21 @@ myApp.controller('GridController', ['$scope', '$window', '$http', function ($sco
                 $.cookie("jqgrid_conf", JSON.stringify({
                     rowNum: $(this).getGridParam("rowNum")
                 }));
+
+                var grid = $(this);
+                var postData = grid.getGridParam("postData");
+                var rows = grid.jqGrid('getDataIDs');
+
+                delete postData.lastId;
+                if (lastLoadedPage && rows.length > 0 && grid.getGridParam("page") === lastLoadedPage + 1
+                        && postData.sidx === lastLoadedSort.sidx && postData.sord === lastLoadedSort.sord
+                        && postData.rows === lastLoadedSort.rows) {
+                    postData.lastId = rows[rows.length - 1];
+                }
+                lastLoadedSort = {sidx: postData.sidx, sord: postData.sord, rows: postData.rows};
+            },
+            loadComplete: function () {
+                lastLoadedPage = $(this).getGridParam("page");
             },
             ajaxRowOptions: {
                 contentType: "application/json"
@@ -1,14 +1,18 @@
 package com.qcadoo.mes.materialFlowResources.service;
 
 import static com.qcadoo.mes.materialFlowResources.service.DraftDocumentsNotificationService.ROLE_DOCUMENTS_NOTIFICATION;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
+import java.util.Set;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -17,9 +21,17 @@ import org.mockito.MockitoAnnotations;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.materialFlow.constants.MaterialFlowConstants;
+import com.qcadoo.mes.materialFlow.constants.UserLocationFields;
+import com.qcadoo.mes.materialFlowResources.constants.DocumentFields;
+import com.qcadoo.mes.materialFlowResources.constants.MaterialFlowResourcesConstants;
+import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.tenant.api.MultiTenantService;
 
 @RunWith(MockitoJUnitRunner.class)
 @PrepareForTest(SearchRestrictions.class)
@@ -27,6 +39,18 @@ public class DraftDocumentsNotificationServiceTest {
 
     private static final long CURRENT_USER_ID = 1L;
 
+    private static final long LOCATION_ID = 2L;
+
+    private static final long OTHER_LOCATION_ID = 3L;
+
+    private static final long DOCUMENT_ID = 4L;
+
+    private static final long USER_LOCATION_ID = 5L;
+
+    private static final int TENANT_ID = 6;
+
+    private int currentTenantId;
+
     private DraftDocumentsNotificationService draftDocumentsNotificationService;
 
     @Mock
@@ -35,10 +59,27 @@ public class DraftDocumentsNotificationServiceTest {
     @Mock
     private SecurityService securityService;
 
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DataDefinition documentDD, userLocationDD;
+
+    @Mock
+    private Entity document, savedDocument, location, otherLocation, userLocation, user;
+
     @Before
     public void init() {
         MockitoAnnotations.initMocks(this);
-        draftDocumentsNotificationService = new DraftDocumentsNotificationService(securityService, dataDefinitionService);
+        draftDocumentsNotificationService = new DraftDocumentsNotificationService(securityService, dataDefinitionService,
+                multiTenantService);
+
+        currentTenantId = TENANT_ID;
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> currentTenantId);
+        given(dataDefinitionService.get(MaterialFlowResourcesConstants.PLUGIN_IDENTIFIER,
+                MaterialFlowResourcesConstants.MODEL_DOCUMENT)).willReturn(documentDD);
+        given(dataDefinitionService.get(MaterialFlowConstants.PLUGIN_IDENTIFIER, "userLocation")).willReturn(userLocationDD);
     }
 
     @Test
@@ -106,4 +147,127 @@ public class DraftDocumentsNotificationServiceTest {
         assertTrue(result);
     }
 
+    @Test
+    public void shouldCountDraftDocumentsOnceForUser() {
+        // given
+        DraftDocumentsNotificationService spy = spy(draftDocumentsNotificationService);
+        Set<Long> locationIds = Sets.newHashSet(LOCATION_ID);
+        doReturn(locationIds).when(spy).getUserLocationIds(CURRENT_USER_ID);
+        doReturn(2).when(spy).countDraftDocuments(locationIds);
+
+        // when
+        int firstCount = spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+        int secondCount = spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(spy, times(1)).countDraftDocuments(locationIds);
+        assertEquals(2, firstCount);
+        assertEquals(2, secondCount);
+    }
+
+    @Test
+    public void shouldCountDraftDocumentsAgainWhenDocumentInUserLocationChanges() {
+        // given
+        DraftDocumentsNotificationService spy = spy(draftDocumentsNotificationService);
+        Set<Long> locationIds = Sets.newHashSet(LOCATION_ID);
+        doReturn(locationIds).when(spy).getUserLocationIds(CURRENT_USER_ID);
+        doReturn(2).when(spy).countDraftDocuments(locationIds);
+        given(document.getBelongsToField(DocumentFields.LOCATION_FROM)).willReturn(location);
+        given(location.getId()).willReturn(LOCATION_ID);
+
+        // when
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+        spy.invalidate(document);
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(spy, times(2)).countDraftDocuments(locationIds);
+    }
+
+    @Test
+    public void shouldNotCountDraftDocumentsAgainWhenDocumentInOtherLocationChanges() {
+        // given
+        DraftDocumentsNotificationService spy = spy(draftDocumentsNotificationService);
+        Set<Long> locationIds = Sets.newHashSet(LOCATION_ID);
+        doReturn(locationIds).when(spy).getUserLocationIds(CURRENT_USER_ID);
+        doReturn(2).when(spy).countDraftDocuments(locationIds);
+        given(document.getBelongsToField(DocumentFields.LOCATION_TO)).willReturn(location);
+        given(location.getId()).willReturn(OTHER_LOCATION_ID);
+
+        // when
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+        spy.invalidate(document);
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(spy, times(1)).countDraftDocuments(locationIds);
+    }
+
+    @Test
+    public void shouldCountDraftDocumentsAgainWhenDocumentIsMovedFromUserLocation() {
+        // given
+        DraftDocumentsNotificationService spy = spy(draftDocumentsNotificationService);
+        Set<Long> locationIds = Sets.newHashSet(LOCATION_ID);
+        doReturn(locationIds).when(spy).getUserLocationIds(CURRENT_USER_ID);
+        doReturn(2).when(spy).countDraftDocuments(locationIds);
+        given(document.getId()).willReturn(DOCUMENT_ID);
+        given(document.getBelongsToField(DocumentFields.LOCATION_FROM)).willReturn(otherLocation);
+        given(otherLocation.getId()).willReturn(OTHER_LOCATION_ID);
+        given(documentDD.get(DOCUMENT_ID)).willReturn(savedDocument);
+        given(savedDocument.getBelongsToField(DocumentFields.LOCATION_FROM)).willReturn(location);
+        given(location.getId()).willReturn(LOCATION_ID);
+
+        // when
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+        spy.invalidate(document);
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(spy, times(2)).countDraftDocuments(locationIds);
+    }
+
+    @Test
+    public void shouldCountDraftDocumentsAgainWhenUserLocationChanges() {
+        // given
+        DraftDocumentsNotificationService spy = spy(draftDocumentsNotificationService);
+        Set<Long> locationIds = Sets.newHashSet(LOCATION_ID);
+        doReturn(locationIds).when(spy).getUserLocationIds(CURRENT_USER_ID);
+        doReturn(2).when(spy).countDraftDocuments(locationIds);
+        given(userLocation.getId()).willReturn(USER_LOCATION_ID);
+        given(userLocationDD.get(USER_LOCATION_ID)).willReturn(userLocation);
+        given(userLocation.getBelongsToField(UserLocationFields.USER)).willReturn(user);
+        given(user.getId()).willReturn(CURRENT_USER_ID);
+
+        // when
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+        spy.invalidateUserLocation(userLocation);
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(spy, times(2)).getUserLocationIds(CURRENT_USER_ID);
+    }
+
+    @Test
+    public void shouldCountDraftDocumentsPerTenant() {
+        // given
+        DraftDocumentsNotificationService spy = spy(draftDocumentsNotificationService);
+        Set<Long> locationIds = Sets.newHashSet(LOCATION_ID);
+        doReturn(locationIds).when(spy).getUserLocationIds(CURRENT_USER_ID);
+        doReturn(2).when(spy).countDraftDocuments(locationIds);
+
+        // when
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        currentTenantId = TENANT_ID + 1;
+
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        currentTenantId = TENANT_ID;
+
+        spy.countDraftDocumentsForUser(CURRENT_USER_ID);
+
+        // then
+        verify(spy, times(2)).countDraftDocuments(locationIds);
+    }
+
 }
@@ -0,0 +1,116 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.materialFlowResources.constants.WarehouseAlgorithm;
+import com.qcadoo.model.api.Entity;
+
+public class ResourceCandidatesPoolTest {
+
+    private static final Long PRODUCT_ID = 1L;
+
+    private static final Long ADDITIONAL_CODE_ID = 7L;
+
+    private static final Predicate<Entity> ANY_CONVERSION = resource -> true;
+
+    @Test
+    public void shouldOrderResourcesByTimeForFifoAndLifo() {
+        // given
+        Entity older = mockResource(1L, new Date(1000L), null, BigDecimal.TEN, null);
+        Entity newer = mockResource(2L, new Date(2000L), null, BigDecimal.TEN, null);
+        ResourceCandidatesPool pool = new ResourceCandidatesPool(Lists.newArrayList(newer, older));
+
+        // when
+        List<Entity> fifo = pool.getCandidates(PRODUCT_ID, null, ANY_CONVERSION,
+                ResourceCandidatesPool.orderFor(WarehouseAlgorithm.FIFO));
+        List<Entity> lifo = pool.getCandidates(PRODUCT_ID, null, ANY_CONVERSION,
+                ResourceCandidatesPool.orderFor(WarehouseAlgorithm.LIFO));
+
+        // then
+        assertEquals(Lists.newArrayList(older, newer), fifo);
+        assertEquals(Lists.newArrayList(newer, older), lifo);
+    }
+
+    @Test
+    public void shouldOrderResourcesWithoutExpirationDateLikeDatabaseForFefoAndLefo() {
+        // given
+        Entity withoutDate = mockResource(1L, new Date(1000L), null, BigDecimal.ONE, null);
+        Entity expiring = mockResource(2L, new Date(1000L), new Date(5000L), BigDecimal.TEN, null);
+        Entity expiringSmaller = mockResource(3L, new Date(1000L), new Date(5000L), BigDecimal.ONE, null);
+        ResourceCandidatesPool pool = new ResourceCandidatesPool(Lists.newArrayList(withoutDate, expiring, expiringSmaller));
+
+        // when
+        List<Entity> fefo = pool.getCandidates(PRODUCT_ID, null, ANY_CONVERSION,
+                ResourceCandidatesPool.orderFor(WarehouseAlgorithm.FEFO));
+        List<Entity> lefo = pool.getCandidates(PRODUCT_ID, null, ANY_CONVERSION,
+                ResourceCandidatesPool.orderFor(WarehouseAlgorithm.LEFO));
+
+        // then
+        assertEquals(Lists.newArrayList(expiringSmaller, expiring, withoutDate), fefo);
+        assertEquals(Lists.newArrayList(withoutDate, expiringSmaller, expiring), lefo);
+    }
+
+    @Test
+    public void shouldReturnResourcesWithPositionAdditionalCodeFirst() {
+        // given
+        Entity additionalCode = mock(Entity.class);
+        given(additionalCode.getId()).willReturn(ADDITIONAL_CODE_ID);
+
+        Entity older = mockResource(1L, new Date(1000L), null, BigDecimal.TEN, null);
+        Entity newerWithCode = mockResource(2L, new Date(2000L), null, BigDecimal.TEN, additionalCode);
+        ResourceCandidatesPool pool = new ResourceCandidatesPool(Lists.newArrayList(older, newerWithCode));
+
+        // when
+        List<Entity> candidates = pool.getCandidates(PRODUCT_ID, ADDITIONAL_CODE_ID, ANY_CONVERSION,
+                ResourceCandidatesPool.orderFor(WarehouseAlgorithm.FIFO));
+
+        // then
+        assertEquals(Lists.newArrayList(newerWithCode, older), candidates);
+    }
+
+    @Test
+    public void shouldSkipRemovedAndExhaustedResources() {
+        // given
+        Entity removed = mockResource(1L, new Date(1000L), null, BigDecimal.TEN, null);
+        Entity exhausted = mockResource(2L, new Date(2000L), null, BigDecimal.ZERO, null);
+        ResourceCandidatesPool pool = new ResourceCandidatesPool(Lists.newArrayList(removed, exhausted));
+
+        // when
+        pool.remove(removed);
+
+        List<Entity> candidates = pool.getCandidates(PRODUCT_ID, null, ANY_CONVERSION,
+                ResourceCandidatesPool.orderFor(WarehouseAlgorithm.FIFO));
+
+        // then
+        assertTrue(candidates.isEmpty());
+    }
+
+    private Entity mockResource(final Long id, final Date time, final Date expirationDate, final BigDecimal availableQuantity,
+            final Entity additionalCode) {
+        Entity product = mock(Entity.class);
+        Entity resource = mock(Entity.class);
+
+        given(product.getId()).willReturn(PRODUCT_ID);
+        given(resource.getId()).willReturn(id);
+        given(resource.getBelongsToField(ResourceFields.PRODUCT)).willReturn(product);
+        given(resource.getBelongsToField(ResourceFields.ADDITIONAL_CODE)).willReturn(additionalCode);
+        given(resource.getDateField(ResourceFields.TIME)).willReturn(time);
+        given(resource.getDateField(ResourceFields.EXPIRATION_DATE)).willReturn(expirationDate);
+        given(resource.getDecimalField(ResourceFields.AVAILABLE_QUANTITY)).willReturn(availableQuantity);
+
+        return resource;
+    }
+
+}
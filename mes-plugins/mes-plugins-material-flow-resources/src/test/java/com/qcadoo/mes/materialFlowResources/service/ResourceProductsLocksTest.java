@@ -0,0 +1,212 @@
+package com.qcadoo.mes.materialFlowResources.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Multi-threaded harness for locks taken by document fills: workers lock random, overlapping sets of products of one
+ * warehouse, given in random order, like fills of documents with positions in any order. Advisory locks are emulated in
+ * memory, with a timeout standing for deadlock detection, and released when the worker's transaction ends.
+ */
+public class ResourceProductsLocksTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ResourceProductsLocksTest.class);
+
+    private static final Long L_WAREHOUSE_ID = 1L;
+
+    private static final int L_WORKERS = 8;
+
+    private static final int L_FILLS_PER_WORKER = 200;
+
+    private static final int L_PRODUCTS = 20;
+
+    private static final int L_PRODUCTS_PER_FILL = 5;
+
+    private static final long L_LOCK_TIMEOUT = 5000L;
+
+    private static final long L_FILL_NANOS = 100000L;
+
+    private ResourceManagementServiceImpl resourceManagementService;
+
+    private AdvisoryLocksJdbcTemplate jdbcTemplate;
+
+    private ExecutorService executorService;
+
+    private Entity warehouse;
+
+    @Before
+    public void init() {
+        resourceManagementService = new ResourceManagementServiceImpl();
+        jdbcTemplate = new AdvisoryLocksJdbcTemplate();
+        executorService = Executors.newFixedThreadPool(L_WORKERS);
+        warehouse = mock(Entity.class);
+
+        ReflectionTestUtils.setField(resourceManagementService, "jdbcTemplate", jdbcTemplate);
+
+        given(warehouse.getId()).willReturn(L_WAREHOUSE_ID);
+    }
+
+    @After
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void shouldLockProductsOneByOneInOrderOfIds() {
+        // when
+        lockProducts(Lists.newArrayList(30L, 10L, 20L, 10L));
+
+        // then
+        assertEquals(Lists.newArrayList(10L, 20L, 30L), jdbcTemplate.getHeldProductIds());
+    }
+
+    @Test
+    public void shouldFillConcurrentlyWithoutDeadlocks() throws InterruptedException, ExecutionException {
+        // given
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger fills = new AtomicInteger();
+        List<Callable<Void>> workers = Lists.newArrayList();
+
+        for (int worker = 0; worker < L_WORKERS; worker++) {
+            Random random = new Random(worker);
+
+            workers.add(() -> {
+                start.await();
+
+                for (int fill = 0; fill < L_FILLS_PER_WORKER; fill++) {
+                    try {
+                        lockProducts(getRandomProductIds(random));
+
+                        LockSupport.parkNanos(L_FILL_NANOS);
+
+                        fills.incrementAndGet();
+                    } finally {
+                        jdbcTemplate.endTransaction();
+                    }
+                }
+
+                return null;
+            });
+        }
+
+        List<Future<Void>> futures = workers.stream().map(executorService::submit).collect(Collectors.toList());
+
+        // when
+        long startTime = System.nanoTime();
+
+        start.countDown();
+
+        for (Future<Void> future : futures) {
+            future.get();
+        }
+
+        long duration = System.nanoTime() - startTime;
+
+        // then
+        assertEquals(L_WORKERS * L_FILLS_PER_WORKER, fills.get());
+        assertTrue(jdbcTemplate.areAllLocksReleased());
+
+        LOG.info("{} fills by {} workers took {} ms, {} fills per second", fills.get(), L_WORKERS,
+                TimeUnit.NANOSECONDS.toMillis(duration), fills.get() * TimeUnit.SECONDS.toNanos(1) / duration);
+    }
+
+    private void lockProducts(final List<Long> productIds) {
+        ReflectionTestUtils.invokeMethod(resourceManagementService, "lockProducts", warehouse, productIds);
+    }
+
+    private List<Long> getRandomProductIds(final Random random) {
+        List<Long> productIds = LongStream.rangeClosed(1, L_PRODUCTS).boxed().collect(Collectors.toList());
+
+        Collections.shuffle(productIds, random);
+
+        return Lists.newArrayList(productIds.subList(0, L_PRODUCTS_PER_FILL));
+    }
+
+    private static final class AdvisoryLocksJdbcTemplate extends NamedParameterJdbcTemplate {
+
+        private final Map<String, ReentrantLock> locks = Maps.newConcurrentMap();
+
+        private final ThreadLocal<List<Long>> heldProductIds = ThreadLocal.withInitial(Lists::newArrayList);
+
+        private AdvisoryLocksJdbcTemplate() {
+            super(new JdbcTemplate());
+        }
+
+        @Override
+        public List<Map<String, Object>> queryForList(final String sql, final Map<String, ?> paramMap) {
+            assertTrue(sql.startsWith("SELECT pg_advisory_xact_lock("));
+
+            Long productId = (Long) paramMap.get("productId");
+            ReentrantLock lock = getLock(paramMap.get("locationId"), productId);
+
+            try {
+                if (!lock.tryLock(L_LOCK_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    throw new CannotAcquireLockException("Deadlock detected on product " + productId);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new CannotAcquireLockException("Interrupted while locking product " + productId, e);
+            }
+
+            heldProductIds.get().add(productId);
+
+            return Lists.newArrayList();
+        }
+
+        private List<Long> getHeldProductIds() {
+            return heldProductIds.get();
+        }
+
+        private void endTransaction() {
+            for (Long productId : heldProductIds.get()) {
+                getLock(L_WAREHOUSE_ID, productId).unlock();
+            }
+
+            heldProductIds.get().clear();
+        }
+
+        private boolean areAllLocksReleased() {
+            return locks.values().stream().noneMatch(ReentrantLock::isLocked);
+        }
+
+        private ReentrantLock getLock(final Object locationId, final Long productId) {
+            return locks.computeIfAbsent(locationId + "_" + productId, key -> new ReentrantLock());
+        }
+
+    }
+
+}
@@ -43,6 +43,17 @@ public interface OperationsCostCalculationService {
      */
     void calculateOperationsCost(final Entity costCalculationOrProductionBalance, boolean hourlyCostFromOperation);
 
+    /**
+     * 
+     * @param costCalculationOrProductionBalance
+     *            cost calculation or production balance
+     * @param hourlyCostFromOperation
+     * @param parameter
+     *            basic parameter, given to share one lookup of average hourly costs between many calculations
+     */
+    void calculateOperationsCost(final Entity costCalculationOrProductionBalance, boolean hourlyCostFromOperation,
+            final Entity parameter);
+
     /**
      * 
      * @param calculationOperationComponent
@@ -133,6 +133,12 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
 
     @Override
     public void calculateOperationsCost(final Entity costCalculationOrProductionBalance, boolean hourlyCostFromOperation) {
+        calculateOperationsCost(costCalculationOrProductionBalance, hourlyCostFromOperation, parameterService.getParameter());
+    }
+
+    @Override
+    public void calculateOperationsCost(final Entity costCalculationOrProductionBalance, boolean hourlyCostFromOperation,
+            final Entity parameter) {
         checkArgument(costCalculationOrProductionBalance != null, "entity is null");
         String modelName = costCalculationOrProductionBalance.getDataDefinition().getName();
         checkArgument(L_COST_CALCULATION.equals(modelName) || L_PRODUCTION_BALANCE.equals(modelName), "unsupported entity type");
@@ -177,7 +183,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
         Boolean includeAdditionalTime = costCalculationOrProductionBalance.getBooleanField(L_INCLUDE_ADDITIONAL_TIME);
 
         Map<Long, Integer> workstations = getWorkstationsMapsForOperationsComponent(copyCostCalculationOrProductionBalance,
-                productionLine);
+                productionLine, parameter);
 
         List<Entity> tocs = calculationOperationComponents.stream().map(e -> e.getBelongsToField("technologyOperationComponent"))
                 .collect(Collectors.toList());
@@ -185,7 +191,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
                 productQuantitiesAndOperationRuns.getOperationRuns(), includeTPZ, includeAdditionalTime, workstations, true);
 
         Map<String, BigDecimal> resultsMap = estimateCostCalculationForHourly(calculationOperationComponents.getRoot(),
-                productionCostMargin, quantity, operationTimes, hourlyCostFromOperation);
+                productionCostMargin, quantity, operationTimes, hourlyCostFromOperation, parameter);
 
         costCalculationOrProductionBalance.setField(L_TOTAL_MACHINE_HOURLY_COSTS, numberService
                 .setScaleWithDefaultMathContext(resultsMap.get(CalculationOperationComponentFields.MACHINE_HOURLY_COST)));
@@ -204,6 +210,13 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
     public Map<String, BigDecimal> estimateCostCalculationForHourly(final EntityTreeNode calculationOperationComponent,
             final BigDecimal productionCostMargin, final BigDecimal plannedQuantity,
             final OperationTimesContainer realizationTimes, final boolean hourlyCostFromOperation) {
+        return estimateCostCalculationForHourly(calculationOperationComponent, productionCostMargin, plannedQuantity,
+                realizationTimes, hourlyCostFromOperation, parameterService.getParameter());
+    }
+
+    private Map<String, BigDecimal> estimateCostCalculationForHourly(final EntityTreeNode calculationOperationComponent,
+            final BigDecimal productionCostMargin, final BigDecimal plannedQuantity,
+            final OperationTimesContainer realizationTimes, final boolean hourlyCostFromOperation, final Entity parameter) {
         checkArgument(calculationOperationComponent != null, "given operationComponent is empty");
 
         Map<String, BigDecimal> costs = Maps.newHashMapWithExpectedSize(L_COST_KEYS.size());
@@ -216,7 +229,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
 
         for (EntityTreeNode child : calculationOperationComponent.getChildren()) {
             Map<String, BigDecimal> unitCosts = estimateCostCalculationForHourly(child, productionCostMargin, plannedQuantity,
-                    realizationTimes, hourlyCostFromOperation);
+                    realizationTimes, hourlyCostFromOperation, parameter);
 
             for (String costKey : L_COST_KEYS) {
                 BigDecimal unitCost = costs.get(costKey).add(unitCosts.get(costKey), mathContext);
@@ -228,7 +241,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
         OperationTimes operationTimes = realizationTimes.get(calculationOperationComponent.getBelongsToField(
                 "technologyOperationComponent").getId());
         Map<String, BigDecimal> costsForSingleOperation = estimateHourlyCostCalculationForSingleOperation(operationTimes,
-                productionCostMargin, hourlyCostFromOperation);
+                productionCostMargin, hourlyCostFromOperation, parameter);
         saveGeneratedValues(costsForSingleOperation, calculationOperationComponent, true, operationTimes.getTimes(), null);
 
         costs.put(L_MACHINE_HOURLY_COST,
@@ -240,7 +253,7 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
     }
 
     private Map<String, BigDecimal> estimateHourlyCostCalculationForSingleOperation(final OperationTimes operationTimes,
-            final BigDecimal productionCostMargin, boolean hourlyCostFromOperation) {
+            final BigDecimal productionCostMargin, boolean hourlyCostFromOperation, final Entity parameter) {
         Map<String, BigDecimal> costs = Maps.newHashMap();
 
         MathContext mathContext = numberService.getMathContext();
@@ -257,10 +270,8 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
             laborHourlyCost = BigDecimalUtils.convertNullToZero(technologyOperationComponent
                     .getField(TechnologyOperationComponentFieldsCNFO.LABOR_HOURLY_COST));
         } else {
-            machineHourlyCost = BigDecimalUtils.convertNullToZero(parameterService.getParameter().getDecimalField(
-                    "averageMachineHourlyCostPB"));
-            laborHourlyCost = BigDecimalUtils.convertNullToZero(parameterService.getParameter().getDecimalField(
-                    "averageLaborHourlyCostPB"));
+            machineHourlyCost = BigDecimalUtils.convertNullToZero(parameter.getDecimalField("averageMachineHourlyCostPB"));
+            laborHourlyCost = BigDecimalUtils.convertNullToZero(parameter.getDecimalField("averageLaborHourlyCostPB"));
         }
 
         BigDecimal durationMachine = BigDecimal.valueOf(operationWorkTimes.getMachineWorkTime());
@@ -366,19 +377,20 @@ public class OperationsCostCalculationServiceImpl implements OperationsCostCalcu
     }
 
     private Map<Long, Integer> getWorkstationsMapsForOperationsComponent(final Entity costCalculationOrProductionBalance,
-            final Entity productionLine) {
+            final Entity productionLine, final Entity parameter) {
         Entity order = costCalculationOrProductionBalance.getBelongsToField(L_ORDER);
         if (order == null) {
             return getWorkstationsFromTechnology(costCalculationOrProductionBalance.getBelongsToField(L_TECHNOLOGY),
-                    productionLine);
+                    productionLine, parameter);
         } else {
             return getWorkstationsFromOrder(order);
         }
     }
 
-    private Map<Long, Integer> getWorkstationsFromTechnology(final Entity technology, final Entity productionLine) {
+    private Map<Long, Integer> getWorkstationsFromTechnology(final Entity technology, final Entity productionLine,
+            final Entity parameter) {
         Map<Long, Integer> workstations = Maps.newHashMap();
-        if (parameterService.getParameter().getBooleanField("workstationsQuantityFromProductionLine")) {
+        if (parameter.getBooleanField("workstationsQuantityFromProductionLine")) {
             for (Entity operComp : technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS)) {
                 workstations.put(operComp.getId(), productionLinesService.getWorkstationTypesCount(operComp, productionLine));
             }
@@ -23,6 +23,7 @@
  */
 package com.qcadoo.mes.orderSupplies;
 
+import java.util.Collection;
 import java.util.List;
 
 import com.qcadoo.model.api.DataDefinition;
@@ -159,4 +160,6 @@ public interface OrderSuppliesService {
 
     void clearMaterialRequirementCoverage(final Long id);
 
+    void clearMaterialRequirementCoverageProducts(final Long id, final Collection<Long> productIds);
+
 }
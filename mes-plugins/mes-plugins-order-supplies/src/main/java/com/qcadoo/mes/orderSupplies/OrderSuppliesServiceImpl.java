@@ -51,6 +51,7 @@ import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -275,6 +276,27 @@ public class OrderSuppliesServiceImpl implements OrderSuppliesService {
         addCoverageProductConstraints(coverageProductConstraintNames);
     }
 
+    @Override
+    public void clearMaterialRequirementCoverageProducts(final Long id, final Collection<Long> productIds) {
+        String query = "DELETE FROM orderSupplies_coverageProductSelected selected USING orderSupplies_coverageProduct coverageProduct"
+                + " WHERE selected.coverageproduct_id = coverageProduct.id AND coverageProduct.materialrequirementcoverage_id = :id"
+                + " AND coverageProduct.product_id IN (:productIds);\n"
+
+                + "DELETE FROM orderSupplies_coverageProductLogging logging USING orderSupplies_coverageProduct coverageProduct"
+                + " WHERE logging.coverageproduct_id = coverageProduct.id AND coverageProduct.materialrequirementcoverage_id = :id"
+                + " AND coverageProduct.product_id IN (:productIds);\n"
+
+                + "DELETE FROM orderSupplies_coverageProduct WHERE materialrequirementcoverage_id = :id"
+                + " AND product_id IN (:productIds);";
+
+        Map<String, Object> params = Maps.newHashMap();
+
+        params.put("id", id);
+        params.put("productIds", productIds);
+
+        jdbcTemplate.update(query, params);
+    }
+
     private Map<String, Object> getCoverageProductConstraintNames() {
         Map<String, Object> coverageProductConstraintNames = Maps.newHashMap();
 
@@ -0,0 +1,96 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import java.util.Objects;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.qcadoo.mes.deliveries.constants.DeliveredProductFields;
+import com.qcadoo.mes.deliveries.constants.OrderedProductFields;
+import com.qcadoo.mes.materialFlowResources.constants.ResourceFields;
+import com.qcadoo.mes.orderSupplies.constants.CoverageRegisterFields;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+
+@Service
+public class CoverageChangesEvents {
+
+    @Autowired
+    private CoverageChangesService coverageChangesService;
+
+    public void onSaveRegisterEntry(final DataDefinition coverageRegisterDD, final Entity coverageRegister) {
+        markProductChanged(coverageRegister, CoverageRegisterFields.PRODUCT);
+    }
+
+    public void onDeleteRegisterEntry(final DataDefinition coverageRegisterDD, final Entity coverageRegister) {
+        markProductChanged(coverageRegister, CoverageRegisterFields.PRODUCT);
+    }
+
+    public void onSaveOrder(final DataDefinition orderDD, final Entity order) {
+        coverageChangesService.markOrderProductsChanged(order.getId());
+    }
+
+    public void onDeleteOrder(final DataDefinition orderDD, final Entity order) {
+        coverageChangesService.markOrderProductsChanged(order.getId());
+    }
+
+    public void onSaveDelivery(final DataDefinition deliveryDD, final Entity delivery) {
+        coverageChangesService.markDeliveryProductsChanged(delivery.getId());
+    }
+
+    public void onSaveOrderedProduct(final DataDefinition orderedProductDD, final Entity orderedProduct) {
+        markProductChanged(orderedProduct, OrderedProductFields.PRODUCT);
+    }
+
+    public void onDeleteOrderedProduct(final DataDefinition orderedProductDD, final Entity orderedProduct) {
+        markProductChanged(orderedProduct, OrderedProductFields.PRODUCT);
+    }
+
+    public void onSaveDeliveredProduct(final DataDefinition deliveredProductDD, final Entity deliveredProduct) {
+        markProductChanged(deliveredProduct, DeliveredProductFields.PRODUCT);
+    }
+
+    public void onDeleteDeliveredProduct(final DataDefinition deliveredProductDD, final Entity deliveredProduct) {
+        markProductChanged(deliveredProduct, DeliveredProductFields.PRODUCT);
+    }
+
+    public void onSaveResource(final DataDefinition resourceDD, final Entity resource) {
+        markProductChanged(resource, ResourceFields.PRODUCT);
+    }
+
+    public void onDeleteResource(final DataDefinition resourceDD, final Entity resource) {
+        markProductChanged(resource, ResourceFields.PRODUCT);
+    }
+
+    private void markProductChanged(final Entity entity, final String productFieldName) {
+        Entity product = entity.getBelongsToField(productFieldName);
+
+        if (Objects.nonNull(product)) {
+            coverageChangesService.markProductChanged(product.getId());
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Sets;
+
+/**
+ * Tracks products whose coverage timeline could have changed since a coverage was generated, so that the coverage can be
+ * refreshed only for those products. Changes and generations are stored in the tenant's database, in the transaction making
+ * them. A product is marked with id of the transaction changing it, and a generation with the oldest transaction that could
+ * still be in progress when it started - products marked by that or any later transaction could be changed after the
+ * generation read them. Coverages without a stored generation always need full generation.
+ */
+@Service
+public class CoverageChangesService {
+
+    private static final String L_CRITERIA = "criteria";
+
+    private static final String L_SNAPSHOT_XMIN = "snapshotxmin";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public long getVersion() {
+        String sql = "SELECT txid_snapshot_xmin(txid_current_snapshot())";
+
+        return jdbcTemplate.queryForObject(sql, new MapSqlParameterSource(), Long.class);
+    }
+
+    public void markProductChanged(final Long productId) {
+        if (Objects.nonNull(productId)) {
+            markProductsChanged(Sets.newHashSet(productId));
+        }
+    }
+
+    public void markProductsChanged(final Collection<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return;
+        }
+
+        String sql = "INSERT INTO ordersupplies_coverageproductchange (product_id, changetxid) "
+                + "SELECT id, txid_current() FROM basic_product WHERE id IN (:productIds) ORDER BY id "
+                + "ON CONFLICT (product_id) DO UPDATE SET changetxid = EXCLUDED.changetxid "
+                + "WHERE ordersupplies_coverageproductchange.changetxid < EXCLUDED.changetxid";
+
+        jdbcTemplate.update(sql, new MapSqlParameterSource("productIds", Sets.newHashSet(productIds)));
+    }
+
+    public void markOrderProductsChanged(final Long orderId) {
+        if (Objects.isNull(orderId)) {
+            return;
+        }
+
+        String sql = "SELECT DISTINCT product_id FROM ordersupplies_coverageregister WHERE order_id = :orderId";
+
+        markProductsChanged(jdbcTemplate.queryForList(sql, new MapSqlParameterSource("orderId", orderId), Long.class));
+    }
+
+    public void markDeliveryProductsChanged(final Long deliveryId) {
+        if (Objects.isNull(deliveryId)) {
+            return;
+        }
+
+        String sql = "SELECT product_id FROM deliveries_orderedproduct WHERE delivery_id = :deliveryId "
+                + "UNION SELECT product_id FROM deliveries_deliveredproduct WHERE delivery_id = :deliveryId";
+
+        markProductsChanged(jdbcTemplate.queryForList(sql, new MapSqlParameterSource("deliveryId", deliveryId), Long.class));
+    }
+
+    public Optional<Set<Long>> getProductsChangedSinceGeneration(final Long materialRequirementCoverageId,
+            final List<Object> criteria) {
+        String sql = "SELECT criteria, snapshotxmin FROM ordersupplies_coveragegeneration "
+                + "WHERE materialrequirementcoverage_id = :materialRequirementCoverageId";
+
+        List<Map<String, Object>> coverageGenerations = jdbcTemplate.queryForList(sql, new MapSqlParameterSource(
+                "materialRequirementCoverageId", materialRequirementCoverageId));
+
+        if (coverageGenerations.isEmpty() || !criteria.toString().equals(coverageGenerations.get(0).get(L_CRITERIA))) {
+            return Optional.empty();
+        }
+
+        sql = "SELECT product_id FROM ordersupplies_coverageproductchange WHERE changetxid >= :generationVersion";
+
+        return Optional.of(Sets.newHashSet(jdbcTemplate.queryForList(sql, new MapSqlParameterSource("generationVersion",
+                coverageGenerations.get(0).get(L_SNAPSHOT_XMIN)), Long.class)));
+    }
+
+    public void registerGeneration(final Long materialRequirementCoverageId, final List<Object> criteria,
+            final long generationVersion) {
+        String sql = "INSERT INTO ordersupplies_coveragegeneration (materialrequirementcoverage_id, criteria, snapshotxmin) "
+                + "VALUES (:materialRequirementCoverageId, :criteria, :generationVersion) "
+                + "ON CONFLICT (materialrequirementcoverage_id) DO UPDATE "
+                + "SET criteria = EXCLUDED.criteria, snapshotxmin = EXCLUDED.snapshotxmin";
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        params.addValue("materialRequirementCoverageId", materialRequirementCoverageId);
+        params.addValue(L_CRITERIA, criteria.toString());
+        params.addValue("generationVersion", generationVersion);
+
+        jdbcTemplate.update(sql, params);
+    }
+
+}
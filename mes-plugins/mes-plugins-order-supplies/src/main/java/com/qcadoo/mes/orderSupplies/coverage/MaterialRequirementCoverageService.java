@@ -35,4 +35,13 @@ public interface MaterialRequirementCoverageService {
      */
     void estimateProductCoverageInTime(final Entity materialRequirementCoverage);
 
+    /**
+     * Refreshes product coverage in time only for products changed since last generation, or generates it again when changes
+     * can't be determined
+     * 
+     * @param materialRequirementCoverage
+     *            materialRequirementCoverage
+     */
+    void refreshProductCoverageInTime(final Entity materialRequirementCoverage);
+
 }
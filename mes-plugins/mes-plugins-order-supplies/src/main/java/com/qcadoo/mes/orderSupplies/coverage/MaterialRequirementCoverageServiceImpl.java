@@ -32,6 +32,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.joda.time.DateTime;
@@ -45,8 +46,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.common.collect.ComparisonChain;
+import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Table;
 import com.qcadoo.mes.basic.constants.ProductFields;
 import com.qcadoo.mes.basic.tree.ProductNumberingServiceImpl;
 import com.qcadoo.mes.deliveries.DeliveriesService;
@@ -79,6 +82,7 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
 import com.qcadoo.model.api.search.SearchQueryBuilder;
 import com.qcadoo.model.api.search.SearchRestrictions;
 
@@ -93,6 +97,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
     private static final String L_PLANNED_QUANTITY = "planedQuantity";
 
+    private static final int L_LOGGINGS_BATCH_SIZE = 1000;
+
+    private static final int L_MAX_REFRESHED_PRODUCTS = 1000;
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
@@ -114,9 +122,49 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     @Autowired
     private DeliveriesService deliveriesService;
 
+    @Autowired
+    private CoverageChangesService coverageChangesService;
+
     @Transactional
     @Override
     public void estimateProductCoverageInTime(final Entity materialRequirementCoverage) {
+        estimateProductCoverageInTime(materialRequirementCoverage, null, coverageChangesService.getVersion());
+    }
+
+    @Transactional
+    @Override
+    public void refreshProductCoverageInTime(final Entity materialRequirementCoverage) {
+        long generationVersion = coverageChangesService.getVersion();
+
+        Optional<Set<Long>> maybeChangedProducts = coverageChangesService.getProductsChangedSinceGeneration(
+                materialRequirementCoverage.getId(), getCoverageCriteria(materialRequirementCoverage));
+
+        if (maybeChangedProducts.isPresent() && maybeChangedProducts.get().size() <= L_MAX_REFRESHED_PRODUCTS) {
+            Set<Long> changedProducts = maybeChangedProducts.get();
+
+            LOG.info("Refresh material requirement - id : " + materialRequirementCoverage.getId() + ", changed products : "
+                    + changedProducts.size());
+
+            if (changedProducts.isEmpty()) {
+                materialRequirementCoverage.getDataDefinition().save(materialRequirementCoverage);
+
+                coverageChangesService.registerGeneration(materialRequirementCoverage.getId(),
+                        getCoverageCriteria(materialRequirementCoverage), generationVersion);
+            } else {
+                orderSuppliesService.clearMaterialRequirementCoverageProducts(materialRequirementCoverage.getId(),
+                        changedProducts);
+
+                estimateProductCoverageInTime(materialRequirementCoverage, changedProducts, generationVersion);
+            }
+        } else {
+            orderSuppliesService.clearMaterialRequirementCoverage(materialRequirementCoverage.getId());
+
+            estimateProductCoverageInTime(materialRequirementCoverage, null, generationVersion);
+        }
+    }
+
+    private void estimateProductCoverageInTime(final Entity materialRequirementCoverage, final Set<Long> productIds,
+            final long generationVersion) {
         LOG.info("Start generation material requirement - id : " + materialRequirementCoverage.getId());
 
         Date coverageToDate = materialRequirementCoverage.getDateField(MaterialRequirementCoverageFields.COVERAGE_TO_DATE);
@@ -133,9 +181,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         List<Entity> coverageLocations = materialRequirementCoverage
                 .getHasManyField(MaterialRequirementCoverageFields.COVERAGE_LOCATIONS);
 
-        List<Entity> includedDeliveries = getDeliveriesFromDB(coverageToDate, includeDraftDeliveries);
+        List<Entity> includedDeliveries = getDeliveriesFromDB(coverageToDate, includeDraftDeliveries, productIds);
 
         Map<Long, Entity> productAndCoverageProducts = Maps.newHashMap();
+        Map<Long, List<Entity>> productAndCoverageProductLoggings = Maps.newHashMap();
 
         List<Entity> orderStates = materialRequirementCoverage
                 .getHasManyField(MaterialRequirementCoverageFields.COVERAGE_ORDER_STATES);
@@ -145,7 +194,8 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             orderStates = Collections.emptyList();
         }
 
-        fillFromRegistry(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        fillFromRegistry(productAndCoverageProducts, productAndCoverageProductLoggings, productIds, coverageToDate, actualDate,
+                orderStates);
 
         Entity assignedOrder = materialRequirementCoverage.getBelongsToField(L_ORDER);
 
@@ -153,20 +203,23 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             Optional<Entity> maybeState = orderStates.stream()
                     .filter(state -> state.equals(assignedOrder.getStringField(OrderFields.STATE))).findAny();
             if (!maybeState.isPresent()) {
-                fillFromRegistryAssignedOrder(productAndCoverageProducts, assignedOrder, coverageToDate, actualDate);
+                fillFromRegistryAssignedOrder(productAndCoverageProducts, productAndCoverageProductLoggings, productIds,
+                        assignedOrder, coverageToDate, actualDate);
             }
         }
 
-        estimateProductLocationsInTime(materialRequirementCoverage, productAndCoverageProducts, coverageLocations, actualDate);
+        estimateProductLocationsInTime(productAndCoverageProducts, productAndCoverageProductLoggings, productIds,
+                coverageLocations, actualDate);
 
-        estimateProductDeliveriesInTime(materialRequirementCoverage, productAndCoverageProducts, includedDeliveries, actualDate,
-                coverageToDate, belongsToFamily, includeDraftDeliveries);
+        estimateProductDeliveriesInTime(productAndCoverageProducts, productAndCoverageProductLoggings, includedDeliveries,
+                actualDate, belongsToFamily);
 
-        estimateProductProducedInTime(productAndCoverageProducts, coverageToDate, actualDate, orderStates);
+        estimateProductProducedInTime(productAndCoverageProducts, productAndCoverageProductLoggings, productIds, coverageToDate,
+                actualDate, orderStates);
 
         additionalProcessProductCoverage(materialRequirementCoverage, productAndCoverageProducts);
 
-        fillCoverageProductStatesAndQuantities(productAndCoverageProducts);
+        fillCoverageProductStatesAndQuantities(productAndCoverageProducts, productAndCoverageProductLoggings);
 
         fillCoverageProductSupplier(productAndCoverageProducts);
 
@@ -175,11 +228,54 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         saveCoverage(materialRequirementCoverage,
                 filterCoverageProducts(productAndCoverageProducts, productExtracted, coverageType));
 
+        if (Objects.nonNull(materialRequirementCoverage.getId())) {
+            coverageChangesService.registerGeneration(materialRequirementCoverage.getId(),
+                    getCoverageCriteria(materialRequirementCoverage), generationVersion);
+        }
+
         LOG.info("Finish generation material requirement - id : " + materialRequirementCoverage.getId());
     }
 
-    private void estimateProductProducedInTime(final Map<Long, Entity> productAndCoverageProducts, final Date coverageToDate,
-            final Date actualDate, final List<Entity> orderStates) {
+    private List<Object> getCoverageCriteria(final Entity materialRequirementCoverage) {
+        List<Object> criteria = Lists.newArrayList();
+
+        criteria.add(getTime(materialRequirementCoverage.getDateField(MaterialRequirementCoverageFields.COVERAGE_TO_DATE)));
+        criteria.add(getTime(materialRequirementCoverage.getDateField(MaterialRequirementCoverageFields.ACTUAL_DATE)));
+        criteria.add(materialRequirementCoverage.getStringField(MaterialRequirementCoverageFields.PRODUCT_EXTRACTED));
+        criteria.add(getId(materialRequirementCoverage.getBelongsToField(MaterialRequirementCoverageFields.BELONGS_TO_FAMILY)));
+        criteria.add(materialRequirementCoverage.getStringField(MaterialRequirementCoverageFields.COVERAGE_TYPE));
+        criteria.add(materialRequirementCoverage.getBooleanField(MaterialRequirementCoverageFields.INCLUDE_DRAFT_DELIVERIES));
+        criteria.add(materialRequirementCoverage.getHasManyField(MaterialRequirementCoverageFields.COVERAGE_LOCATIONS).stream()
+                .map(coverageLocation -> getId(coverageLocation.getBelongsToField(CoverageLocationFields.LOCATION)))
+                .collect(Collectors.toList()));
+        criteria.add(materialRequirementCoverage.getHasManyField(MaterialRequirementCoverageFields.COVERAGE_ORDER_STATES)
+                .stream().map(orderState -> orderState.getStringField(CoverageOrderStateFields.STATE))
+                .collect(Collectors.toList()));
+        criteria.add(getIdsFromCoverageOrders(materialRequirementCoverage.getHasManyField("coverageOrders")));
+        criteria.add(getId(materialRequirementCoverage.getBelongsToField(L_ORDER)));
+
+        return criteria;
+    }
+
+    private Long getTime(final Date date) {
+        if (Objects.isNull(date)) {
+            return null;
+        }
+
+        return date.getTime();
+    }
+
+    private Long getId(final Entity entity) {
+        if (Objects.isNull(entity)) {
+            return null;
+        }
+
+        return entity.getId();
+    }
+
+    private void estimateProductProducedInTime(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Set<Long> productIds,
+            final Date coverageToDate, final Date actualDate, final List<Entity> orderStates) {
         List<String> states = Lists.newArrayList();
 
         if (orderStates != null && !orderStates.isEmpty()) {
@@ -196,7 +292,11 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         query.append("WHERE registry.date <= :dateTo AND eventType IN ('05orderOutput') ");
 
         if (!states.isEmpty()) {
-            query.append("AND ord.state IN (:states)");
+            query.append("AND ord.state IN (:states) ");
+        }
+
+        if (Objects.nonNull(productIds)) {
+            query.append("AND registry.product.id IN (:productIds) ");
         }
 
         SearchQueryBuilder queryBuilder = getCoverageRegisterDD().find(query.toString()).setParameter("dateTo", coverageToDate);
@@ -205,28 +305,35 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             queryBuilder.setParameterList("states", states);
         }
 
+        if (Objects.nonNull(productIds)) {
+            queryBuilder.setParameterList("productIds", productIds);
+        }
+
         List<Entity> regs = queryBuilder.list().getEntities();
 
         for (Entity reg : regs) {
             if (BigDecimal.ZERO.compareTo(reg.getDecimalField(CoverageRegisterFields.QUANTITY)) < 0) {
                 Entity coverageProductLogging = createProductLoggingForOrderProduced(reg, actualDate, coverageToDate);
 
-                fillCoverageProductForOrderProduced(productAndCoverageProducts, reg.getBelongsToField("product"),
-                        coverageProductLogging);
+                fillCoverageProductForOrderProduced(productAndCoverageProducts, productAndCoverageProductLoggings,
+                        reg.getBelongsToField("product"), coverageProductLogging);
             }
         }
     }
 
-    private void fillCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
+    private void fillCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product,
             final Entity coverageProductLogging) {
         if (coverageProductLogging != null) {
             if (productAndCoverageProducts.containsKey(product.getId())) {
-                updateCoverageProductForOrderProduced(productAndCoverageProducts, product, coverageProductLogging);
+                updateCoverageProductForOrderProduced(productAndCoverageProducts, productAndCoverageProductLoggings, product,
+                        coverageProductLogging);
             }
         }
     }
 
-    private void updateCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
+    private void updateCoverageProductForOrderProduced(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product,
             final Entity coverageProductLogging) {
         Entity addedCoverageProduct = productAndCoverageProducts.get(product.getId());
 
@@ -236,13 +343,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         demandQuantity = demandQuantity.add(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES),
                 numberService.getMathContext());
 
-        List<Entity> coverageProductLoggings = Lists
-                .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        coverageProductLoggings.add(coverageProductLogging);
+        addCoverageProductLogging(productAndCoverageProductLoggings, product, coverageProductLogging);
 
         addedCoverageProduct.setField(CoverageProductFields.PRODUCE_QUANTITY,
                 numberService.setScaleWithDefaultMathContext(demandQuantity));
-        addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
 
         productAndCoverageProducts.put(product.getId(), addedCoverageProduct);
     }
@@ -277,34 +381,66 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
     private void saveCoverage(final Entity materialRequirementCoverage, final List<Entity> entities) {
         List<Entity> selectedOrders = materialRequirementCoverage.getHasManyField("coverageOrders");
 
+        List<Entity> coverageProducts = entities;
+
         if (!selectedOrders.isEmpty()) {
-            List<Entity> filtredEntities = entities.stream()
-                    .filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER)).collect(Collectors.toList());
+            coverageProducts = entities.stream().filter(e -> e.getBooleanField(CoverageProductFields.FROM_SELECTED_ORDER))
+                    .collect(Collectors.toList());
+        }
 
-            for (Entity covProduct : filtredEntities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
-            }
-        } else {
-            for (Entity covProduct : entities) {
-                saveCoverageProduct(materialRequirementCoverage, covProduct);
-                for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
-                    saveCoverageProductLogging(log);
-                }
+        if (coverageProducts.isEmpty()) {
+            return;
+        }
+
+        for (Entity covProduct : coverageProducts) {
+            saveCoverageProduct(materialRequirementCoverage, covProduct);
+        }
+
+        Map<Long, Long> productAndCoverageProductIds = getProductAndCoverageProductIds(materialRequirementCoverage);
+
+        List<SqlParameterSource> batchParameters = Lists.newArrayList();
+
+        for (Entity covProduct : coverageProducts) {
+            Long coverageProductId = productAndCoverageProductIds
+                    .get(covProduct.getBelongsToField(CoverageProductFields.PRODUCT).getId());
+
+            for (Entity log : covProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS)) {
+                batchParameters.add(createCoverageProductLoggingParameters(coverageProductId, log));
             }
         }
+
+        saveCoverageProductLoggings(batchParameters);
     }
 
-    private void saveCoverageProductLogging(final Entity log) {
+    private Map<Long, Long> getProductAndCoverageProductIds(final Entity materialRequirementCoverage) {
+        String sql = "SELECT product_id, id FROM ordersupplies_coverageproduct "
+                + "WHERE materialrequirementcoverage_id = :materialRequirementCoverageId";
+
+        Map<Long, Long> productAndCoverageProductIds = Maps.newHashMap();
+
+        jdbcTemplate.query(sql, new MapSqlParameterSource("materialRequirementCoverageId", materialRequirementCoverage.getId()),
+                rs -> {
+                    productAndCoverageProductIds.put(rs.getLong("product_id"), rs.getLong("id"));
+                });
+
+        return productAndCoverageProductIds;
+    }
+
+    private void saveCoverageProductLoggings(final List<SqlParameterSource> batchParameters) {
         String sqlLog = "INSERT INTO ordersupplies_coverageproductlogging(coverageproduct_id, date, "
                 + "order_id, delivery_id, operation_id, reservemissingquantity, changes, eventtype, state, warehouseNumber, deliveryNumberExternal) "
-                + "VALUES (currval('ordersupplies_coverageproduct_id_seq'), :date, :order_id, :delivery_id, :operation_id, "
-                + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal);";
+                + "VALUES (:coverageproduct_id, :date, :order_id, :delivery_id, :operation_id, "
+                + ":reservemissingquantity, :changes, :eventtype, :state, :warehouseNumber, :deliveryNumberExternal)";
+
+        for (List<SqlParameterSource> batch : Lists.partition(batchParameters, L_LOGGINGS_BATCH_SIZE)) {
+            jdbcTemplate.batchUpdate(sqlLog, batch.toArray(new SqlParameterSource[batch.size()]));
+        }
+    }
 
+    private SqlParameterSource createCoverageProductLoggingParameters(final Long coverageProductId, final Entity log) {
         Map<String, Object> parametersLogg = Maps.newHashMap();
 
+        parametersLogg.put("coverageproduct_id", coverageProductId);
         parametersLogg.put("date", log.getDateField(CoverageProductLoggingFields.DATE));
 
         if (log.getBelongsToField(CoverageProductLoggingFields.DELIVERY) != null) {
@@ -333,9 +469,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         parametersLogg.put("warehouseNumber", log.getStringField(CoverageProductLoggingFields.WAREHOUSE_NUMBER));
         parametersLogg.put("deliveryNumberExternal", log.getStringField("deliveryNumberExternal"));
 
-        SqlParameterSource nParameters = new MapSqlParameterSource(parametersLogg);
-
-        jdbcTemplate.update(sqlLog, nParameters);
+        return new MapSqlParameterSource(parametersLogg);
     }
 
     private void saveCoverageProduct(final Entity materialRequirementCoverage, final Entity coverageProduct) {
@@ -452,8 +586,9 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 .collect(Collectors.toList());
     }
 
-    private void fillFromRegistry(final Map<Long, Entity> productAndCoverageProducts, final Date coverageToDate,
-            final Date actualDate, final List<Entity> orderStates) {
+    private void fillFromRegistry(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Set<Long> productIds,
+            final Date coverageToDate, final Date actualDate, final List<Entity> orderStates) {
         List<String> states = Lists.newArrayList();
 
         if (!orderStates.isEmpty()) {
@@ -471,7 +606,11 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         query.append("WHERE registry.date <= :dateTo AND eventType IN ('04orderInput','03operationInput') ");
 
         if (!states.isEmpty()) {
-            query.append("AND ord.state IN (:states)");
+            query.append("AND ord.state IN (:states) ");
+        }
+
+        if (Objects.nonNull(productIds)) {
+            query.append("AND registry.product.id IN (:productIds) ");
         }
 
         SearchQueryBuilder queryBuilder = getCoverageRegisterDD().find(query.toString()).setParameter("dateTo", coverageToDate);
@@ -480,37 +619,50 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             queryBuilder.setParameterList("states", states);
         }
 
+        if (Objects.nonNull(productIds)) {
+            queryBuilder.setParameterList("productIds", productIds);
+        }
+
         List<Entity> regs = queryBuilder.list().getEntities();
 
         for (Entity reg : regs) {
             if (BigDecimal.ZERO.compareTo(reg.getDecimalField(CoverageRegisterFields.QUANTITY)) < 0) {
                 Entity coverageProductLogging = createCoverageProductLoggingForOrder(reg, actualDate, coverageToDate);
 
-                fillCoverageProductForOrder(productAndCoverageProducts, reg.getBelongsToField("product"),
-                        reg.getStringField("productType"), coverageProductLogging);
+                fillCoverageProductForOrder(productAndCoverageProducts, productAndCoverageProductLoggings,
+                        reg.getBelongsToField("product"), reg.getStringField("productType"), coverageProductLogging);
             }
         }
     }
 
-    private void fillFromRegistryAssignedOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity assignedOrder,
-            final Date coverageToDate, final Date actualDate) {
+    private void fillFromRegistryAssignedOrder(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Set<Long> productIds,
+            final Entity assignedOrder, final Date coverageToDate, final Date actualDate) {
         StringBuilder query = new StringBuilder();
 
         query.append("SELECT registry FROM #orderSupplies_coverageRegister AS registry ");
         query.append("WHERE registry.date <= :dateTo AND eventType IN ('04orderInput','03operationInput') ");
         query.append("AND order_id = :orderId ");
 
+        if (Objects.nonNull(productIds)) {
+            query.append("AND registry.product.id IN (:productIds) ");
+        }
+
         SearchQueryBuilder queryBuilder = getCoverageRegisterDD().find(query.toString()).setParameter("dateTo", coverageToDate);
 
         queryBuilder.setParameter("orderId", assignedOrder.getId());
 
+        if (Objects.nonNull(productIds)) {
+            queryBuilder.setParameterList("productIds", productIds);
+        }
+
         List<Entity> regs = queryBuilder.list().getEntities();
 
         for (Entity reg : regs) {
             if (BigDecimal.ZERO.compareTo(reg.getDecimalField(CoverageRegisterFields.QUANTITY)) < 0) {
                 Entity coverageProductLogging = createCoverageProductLoggingForOrder(reg, actualDate, coverageToDate);
-                fillCoverageProductForOrder(productAndCoverageProducts, reg.getBelongsToField("product"),
-                        reg.getStringField("productType"), coverageProductLogging);
+                fillCoverageProductForOrder(productAndCoverageProducts, productAndCoverageProductLoggings,
+                        reg.getBelongsToField("product"), reg.getStringField("productType"), coverageProductLogging);
             }
         }
     }
@@ -544,9 +696,9 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageDate;
     }
 
-    private void estimateProductDeliveriesInTime(final Entity materialRequirementCoverage,
-            final Map<Long, Entity> productAndCoverageProducts, final List<Entity> includedDeliveries, final Date actualDate,
-            final Date coverageToDate, final Entity belongsToFamily, final Boolean includeDraftDeliveries) {
+    private void estimateProductDeliveriesInTime(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final List<Entity> includedDeliveries,
+            final Date actualDate, final Entity belongsToFamily) {
         for (Entity delivery : includedDeliveries) {
             Date coverageDate = getCoverageProductLoggingDateForDelivery(delivery, actualDate);
 
@@ -559,13 +711,14 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
             }
 
             for (Entity deliveryProduct : deliveryProducts) {
-                estimateProductDelivery(productAndCoverageProducts,
+                estimateProductDelivery(productAndCoverageProducts, productAndCoverageProductLoggings,
                         new CoverageProductForDelivery(coverageDate, delivery, deliveryProduct), belongsToFamily);
             }
         }
     }
 
     private void estimateProductDelivery(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings,
             final CoverageProductForDelivery coverageProductForDelivery, final Entity belongsToFamily) {
         if (checkIfProductShouldBeAdded(belongsToFamily, coverageProductForDelivery.getProduct())
                 && productAndCoverageProducts.containsKey(coverageProductForDelivery.getProduct().getId())) {
@@ -575,8 +728,8 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
 
             Entity coverageProductLogging = createCoverageProductLoggingForDelivery(coverageProductForDelivery);
 
-            fillCoverageProductForDelivery(productAndCoverageProducts, coverageProductForDelivery.getProduct(),
-                    coverageProductLogging);
+            fillCoverageProductForDelivery(productAndCoverageProducts, productAndCoverageProductLoggings,
+                    coverageProductForDelivery.getProduct(), coverageProductLogging);
         }
     }
 
@@ -608,18 +761,22 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         return coverageProductLogging;
     }
 
-    private void fillCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
+    private void fillCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product,
             final Entity coverageProductLogging) {
         if (coverageProductLogging != null) {
             if (productAndCoverageProducts.containsKey(product.getId())) {
-                updateCoverageProductForDelivery(productAndCoverageProducts, product, coverageProductLogging);
+                updateCoverageProductForDelivery(productAndCoverageProducts, productAndCoverageProductLoggings, product,
+                        coverageProductLogging);
             } else {
-                addCoverageProductForDelivery(productAndCoverageProducts, product, coverageProductLogging);
+                addCoverageProductForDelivery(productAndCoverageProducts, productAndCoverageProductLoggings, product,
+                        coverageProductLogging);
             }
         }
     }
 
-    private void addCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
+    private void addCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product,
             final Entity coverageProductLogging) {
         Entity coverageProduct = orderSuppliesService.getCoverageProductDD().create();
 
@@ -627,12 +784,14 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         coverageProduct.setField(CoverageProductFields.DELIVERED_QUANTITY, numberService
                 .setScaleWithDefaultMathContext(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES)));
         coverageProduct.setField(CoverageProductFields.STATE, CoverageProductState.COVERED.getStringValue());
-        coverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, Lists.newArrayList(coverageProductLogging));
+
+        addCoverageProductLogging(productAndCoverageProductLoggings, product, coverageProductLogging);
 
         productAndCoverageProducts.put(product.getId(), coverageProduct);
     }
 
-    private void updateCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
+    private void updateCoverageProductForDelivery(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product,
             final Entity coverageProductLogging) {
         Entity addedCoverageProduct = productAndCoverageProducts.get(product.getId());
 
@@ -642,30 +801,31 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         deliveredQuantity = deliveredQuantity.add(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES),
                 numberService.getMathContext());
 
-        List<Entity> coverageProductLoggings = Lists
-                .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        coverageProductLoggings.add(coverageProductLogging);
+        addCoverageProductLogging(productAndCoverageProductLoggings, product, coverageProductLogging);
 
         addedCoverageProduct.setField(CoverageProductFields.DELIVERED_QUANTITY,
                 numberService.setScaleWithDefaultMathContext(deliveredQuantity));
-        addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
 
         productAndCoverageProducts.put(product.getId(), addedCoverageProduct);
     }
 
-    private void fillCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final String productType, final Entity coverageProductLogging) {
+    private void fillCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product, final String productType,
+            final Entity coverageProductLogging) {
         if (coverageProductLogging != null) {
             if (productAndCoverageProducts.containsKey(product.getId())) {
-                updateCoverageProductForOrder(productAndCoverageProducts, product, productType, coverageProductLogging);
+                updateCoverageProductForOrder(productAndCoverageProducts, productAndCoverageProductLoggings, product, productType,
+                        coverageProductLogging);
             } else {
-                addCoverageProductForOrder(productAndCoverageProducts, product, productType, coverageProductLogging);
+                addCoverageProductForOrder(productAndCoverageProducts, productAndCoverageProductLoggings, product, productType,
+                        coverageProductLogging);
             }
         }
     }
 
-    private void addCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final String productType, final Entity coverageProductLogging) {
+    private void addCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product, final String productType,
+            final Entity coverageProductLogging) {
         Entity coverageProduct = orderSuppliesService.getCoverageProductDD().create();
 
         coverageProduct.setField(CoverageProductFields.PRODUCT, product);
@@ -673,13 +833,15 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         coverageProduct.setField(CoverageProductFields.ALL_PRODUCTS_TYPE, productType);
         coverageProduct.setField(CoverageProductFields.DEMAND_QUANTITY, numberService
                 .setScaleWithDefaultMathContext(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES)));
-        coverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, Lists.newArrayList(coverageProductLogging));
+
+        addCoverageProductLogging(productAndCoverageProductLoggings, product, coverageProductLogging);
 
         productAndCoverageProducts.put(product.getId(), coverageProduct);
     }
 
-    private void updateCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts, final Entity product,
-            final String productType, final Entity coverageProductLogging) {
+    private void updateCoverageProductForOrder(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Entity product, final String productType,
+            final Entity coverageProductLogging) {
         Entity addedCoverageProduct = productAndCoverageProducts.get(product.getId());
 
         BigDecimal demandQuantity = BigDecimalUtils
@@ -688,13 +850,10 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         demandQuantity = demandQuantity.add(coverageProductLogging.getDecimalField(CoverageProductLoggingFields.CHANGES),
                 numberService.getMathContext());
 
-        List<Entity> coverageProductLoggings = Lists
-                .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-        coverageProductLoggings.add(coverageProductLogging);
+        addCoverageProductLogging(productAndCoverageProductLoggings, product, coverageProductLogging);
 
         addedCoverageProduct.setField(CoverageProductFields.DEMAND_QUANTITY,
                 numberService.setScaleWithDefaultMathContext(demandQuantity));
-        addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
 
         String types = addedCoverageProduct.getStringField(CoverageProductFields.ALL_PRODUCTS_TYPE);
 
@@ -706,36 +865,79 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         productAndCoverageProducts.put(product.getId(), addedCoverageProduct);
     }
 
-    private void estimateProductLocationsInTime(final Entity materialRequirementCoverage,
-            final Map<Long, Entity> productAndCoverageProducts, final List<Entity> coverageLocations, final Date actualDate) {
-        for (Entity coverageLocation : coverageLocations) {
-            Entity location = coverageLocation.getBelongsToField(CoverageLocationFields.LOCATION);
+    private void addCoverageProductLogging(final Map<Long, List<Entity>> productAndCoverageProductLoggings,
+            final Entity product, final Entity coverageProductLogging) {
+        productAndCoverageProductLoggings.computeIfAbsent(product.getId(), productId -> Lists.newArrayList())
+                .add(coverageProductLogging);
+    }
 
-            String sql = "SELECT resource.product.id AS product, SUM(resource.quantity) AS quantity "
-                    + "FROM #materialFlowResources_resource AS resource "
-                    + "WHERE resource.location.id = :locationId GROUP BY resource.product.id";
+    private void estimateProductLocationsInTime(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings, final Set<Long> productIds,
+            final List<Entity> coverageLocations, final Date actualDate) {
+        if (coverageLocations.isEmpty()) {
+            return;
+        }
 
-            List<Entity> resources = getResourceDD().find(sql).setParameter("locationId", location.getId()).list().getEntities();
+        List<Entity> locations = coverageLocations.stream()
+                .map(coverageLocation -> coverageLocation.getBelongsToField(CoverageLocationFields.LOCATION))
+                .collect(Collectors.toList());
 
-            Map<Long, BigDecimal> map = resources.stream()
-                    .collect(Collectors.toMap(res -> (Long) res.getField("product"), res -> res.getDecimalField("quantity")));
+        Table<Long, Long, BigDecimal> locationsQuantities = getLocationsQuantities(locations, productIds);
 
-            for (Entry<Long, Entity> productAndCoverageProduct : productAndCoverageProducts.entrySet()) {
-                Entity addedCoverageProduct = productAndCoverageProduct.getValue();
+        for (Entry<Long, Entity> productAndCoverageProduct : productAndCoverageProducts.entrySet()) {
+            Long productId = productAndCoverageProduct.getKey();
+            Entity addedCoverageProduct = productAndCoverageProduct.getValue();
+
+            List<Entity> coverageProductLoggings = productAndCoverageProductLoggings.computeIfAbsent(productId,
+                    key -> Lists.newArrayList());
 
-                BigDecimal locationsQuantity = BigDecimalUtils.convertNullToZero(map.get(productAndCoverageProduct.getKey()));
-                Entity coverageProductLogging = createCoverageProductLoggingForLocations(location, actualDate, locationsQuantity);
-                List<Entity> coverageProductLoggings = Lists
-                        .newArrayList(addedCoverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
-                coverageProductLoggings.add(coverageProductLogging);
-                BigDecimal lQuantity = BigDecimalUtils
-                        .convertNullToZero(addedCoverageProduct.getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
+            BigDecimal lQuantity = BigDecimalUtils
+                    .convertNullToZero(addedCoverageProduct.getDecimalField(CoverageProductFields.LOCATIONS_QUANTITY));
+
+            for (Entity location : locations) {
+                BigDecimal locationsQuantity = BigDecimalUtils
+                        .convertNullToZero(locationsQuantities.get(location.getId(), productId));
+
+                coverageProductLoggings.add(createCoverageProductLoggingForLocations(location, actualDate, locationsQuantity));
 
                 lQuantity = lQuantity.add(locationsQuantity, numberService.getMathContext());
-                addedCoverageProduct.setField(CoverageProductFields.LOCATIONS_QUANTITY, lQuantity);
-                addedCoverageProduct.setField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS, coverageProductLoggings);
             }
+
+            addedCoverageProduct.setField(CoverageProductFields.LOCATIONS_QUANTITY, lQuantity);
+        }
+    }
+
+    private Table<Long, Long, BigDecimal> getLocationsQuantities(final List<Entity> locations, final Set<Long> productIds) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT resource.location.id AS location, resource.product.id AS product, ");
+        query.append("SUM(resource.quantity) AS quantity FROM #materialFlowResources_resource AS resource ");
+        query.append("WHERE resource.location.id IN (:locationIds) ");
+
+        if (Objects.nonNull(productIds)) {
+            query.append("AND resource.product.id IN (:productIds) ");
+        }
+
+        query.append("GROUP BY resource.location.id, resource.product.id");
+
+        List<Long> locationIds = locations.stream().map(Entity::getId).distinct().collect(Collectors.toList());
+
+        SearchQueryBuilder queryBuilder = getResourceDD().find(query.toString()).setParameterList("locationIds", locationIds);
+
+        if (Objects.nonNull(productIds)) {
+            queryBuilder.setParameterList("productIds", productIds);
         }
+
+        List<Entity> resources = queryBuilder.list().getEntities();
+
+        Table<Long, Long, BigDecimal> locationsQuantities = HashBasedTable.create();
+
+        for (Entity resource : resources) {
+            locationsQuantities.put((Long) resource.getField("location"), (Long) resource.getField("product"),
+                    resource.getDecimalField("quantity"));
+        }
+
+        return locationsQuantities;
     }
 
     private Entity createCoverageProductLoggingForLocations(final Entity location, final Date actualDate,
@@ -763,11 +965,13 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                         .ifPresent(supplier -> coverageProduct.setField(CoverageProductFields.COMPANY, supplier)));
     }
 
-    private void fillCoverageProductStatesAndQuantities(final Map<Long, Entity> productAndCoverageProducts) {
+    private void fillCoverageProductStatesAndQuantities(final Map<Long, Entity> productAndCoverageProducts,
+            final Map<Long, List<Entity>> productAndCoverageProductLoggings) {
         for (Entry<Long, Entity> productAndCoverageProduct : productAndCoverageProducts.entrySet()) {
             Entity coverageProduct = productAndCoverageProduct.getValue();
 
-            fillCoverageProductLoggingsStates(coverageProduct);
+            fillCoverageProductLoggingsStates(coverageProduct, productAndCoverageProductLoggings
+                    .getOrDefault(productAndCoverageProduct.getKey(), Lists.newArrayList()));
             fillCoverageProductQuantities(coverageProduct);
         }
     }
@@ -814,9 +1018,7 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
         coverageProduct.setField(CoverageProductFields.STATE, state);
     }
 
-    private void fillCoverageProductLoggingsStates(final Entity coverageProduct) {
-        List<Entity> coverageProductLoggings = Lists
-                .newLinkedList(coverageProduct.getHasManyField(CoverageProductFields.COVERAGE_PRODUCT_LOGGINGS));
+    private void fillCoverageProductLoggingsStates(final Entity coverageProduct, final List<Entity> coverageProductLoggings) {
         Collections.sort(coverageProductLoggings, new Comparator<Entity>() {
 
             @Override
@@ -939,9 +1141,22 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                 || productNumberingServiceImpl.checkIfProductBelongsToProductsFamily(belongsToFamily, product));
     }
 
-    private List<Entity> getDeliveriesFromDB(final Date coverageToDate, final boolean includeDraftDeliveries) {
+    private List<Entity> getDeliveriesFromDB(final Date coverageToDate, final boolean includeDraftDeliveries,
+            final Set<Long> productIds) {
+        SearchCriteriaBuilder searchCriteriaBuilder = getDeliveryDD().find();
+
+        if (Objects.nonNull(productIds)) {
+            List<Long> deliveryIds = getDeliveryIdsForProducts(productIds);
+
+            if (deliveryIds.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            searchCriteriaBuilder.add(SearchRestrictions.in("id", deliveryIds));
+        }
+
         if (includeDraftDeliveries) {
-            return getDeliveryDD().find().add(SearchRestrictions.le(DeliveryFields.DELIVERY_DATE, coverageToDate))
+            return searchCriteriaBuilder.add(SearchRestrictions.le(DeliveryFields.DELIVERY_DATE, coverageToDate))
                     .add(SearchRestrictions.or(SearchRestrictions.eq(DeliveryFields.STATE, DeliveryStateStringValues.DRAFT),
                             SearchRestrictions.eq(DeliveryFields.STATE, DeliveryStateStringValues.PREPARED),
                             SearchRestrictions.eq(DeliveryFields.STATE, DeliveryStateStringValues.DURING_CORRECTION),
@@ -949,13 +1164,20 @@ public class MaterialRequirementCoverageServiceImpl implements MaterialRequireme
                             SearchRestrictions.eq(DeliveryFields.STATE, DeliveryStateStringValues.RECEIVE_CONFIRM_WAITING)))
                     .add(SearchRestrictions.eq(DeliveryFields.ACTIVE, true)).list().getEntities();
         } else {
-            return getDeliveryDD().find().add(SearchRestrictions.le(DeliveryFields.DELIVERY_DATE, coverageToDate))
+            return searchCriteriaBuilder.add(SearchRestrictions.le(DeliveryFields.DELIVERY_DATE, coverageToDate))
                     .add(SearchRestrictions.or(SearchRestrictions.eq(DeliveryFields.STATE, DeliveryStateStringValues.APPROVED),
                             SearchRestrictions.eq(DeliveryFields.STATE, DeliveryStateStringValues.RECEIVE_CONFIRM_WAITING)))
                     .add(SearchRestrictions.eq(DeliveryFields.ACTIVE, true)).list().getEntities();
         }
     }
 
+    private List<Long> getDeliveryIdsForProducts(final Set<Long> productIds) {
+        String sql = "SELECT delivery_id FROM deliveries_orderedproduct WHERE product_id IN (:productIds) "
+                + "UNION SELECT delivery_id FROM deliveries_deliveredproduct WHERE product_id IN (:productIds)";
+
+        return jdbcTemplate.queryForList(sql, new MapSqlParameterSource("productIds", productIds), Long.class);
+    }
+
     private boolean checkIfProductsAreSame(final Entity order, final Long product) {
         Entity orderProduct = order.getBelongsToField(OrderFields.PRODUCT);
 
@@ -86,6 +86,8 @@ public class GenerateMaterialRequirementCoverageHooks {
 
     private static final String L_GENERATE_MATERIAL_REQUIREMENT_COVERAGE = "generateMaterialRequirementCoverage";
 
+    private static final String L_REFRESH_MATERIAL_REQUIREMENT_COVERAGE = "refreshMaterialRequirementCoverage";
+
     private static final String L_ADD_MULTI = "addMulti";
 
     public static final String L_MATERIAL_AVAILABILITY = "materialAvailability";
@@ -204,6 +206,8 @@ public class GenerateMaterialRequirementCoverageHooks {
 
         RibbonActionItem generateMaterialRequirementCoverage = (RibbonActionItem) coverage
                 .getItemByName(L_GENERATE_MATERIAL_REQUIREMENT_COVERAGE);
+        RibbonActionItem refreshMaterialRequirementCoverage = (RibbonActionItem) coverage
+                .getItemByName(L_REFRESH_MATERIAL_REQUIREMENT_COVERAGE);
         RibbonActionItem printMaterialRequirementCoverage = (RibbonActionItem) coverage
                 .getItemByName(L_PRINT_MATERIAL_REQUIREMENT_COVERAGE);
         RibbonActionItem saveMaterialRequirementCoverage = (RibbonActionItem) reports
@@ -217,6 +221,7 @@ public class GenerateMaterialRequirementCoverageHooks {
         boolean areSaved = checkIfThereAreSavedMaterialRequirementCoverages();
 
         updateButtonState(generateMaterialRequirementCoverage, !saved);
+        updateButtonState(refreshMaterialRequirementCoverage, generated && !saved);
         updateButtonState(printMaterialRequirementCoverage, generated && !saved);
         updateButtonState(saveMaterialRequirementCoverage, generated && !saved);
         updateButtonState(showMaterialRequirementCoverages, areSaved);
@@ -188,6 +188,45 @@ public class GenerateMaterialRequirementCoverageListeners {
         state.performEvent(view, "refresh", new String[0]);
     }
 
+    public final void refreshMaterialRequirementCoverage(final ViewDefinitionState view, final ComponentState state,
+            final String[] args) {
+        state.performEvent(view, "save", args);
+
+        if (!state.isHasError()) {
+            refresh(view, state, args);
+        }
+    }
+
+    @Transactional
+    public final void refresh(final ViewDefinitionState view, final ComponentState state, final String[] args) {
+        FormComponent materialRequirementCoverageForm = (FormComponent) view.getComponentByReference(L_FORM);
+
+        Long materialRequirementCoverageId = materialRequirementCoverageForm.getEntityId();
+
+        if (materialRequirementCoverageId != null) {
+            Entity materialRequirementCoverage = orderSuppliesService
+                    .getMaterialRequirementCoverage(materialRequirementCoverageId);
+
+            materialRequirementCoverage.setField(MaterialRequirementCoverageFields.GENERATED, true);
+            materialRequirementCoverage.setField(MaterialRequirementCoverageFields.GENERATED_DATE, new SimpleDateFormat(
+                    DateUtils.L_DATE_TIME_FORMAT, LocaleContextHolder.getLocale()).format(new Date()));
+            materialRequirementCoverage.setField(MaterialRequirementCoverageFields.GENERATED_BY,
+                    securityService.getCurrentUserName());
+
+            materialRequirementCoverageService.refreshProductCoverageInTime(materialRequirementCoverage);
+
+            state.performEvent(view, "reset", new String[0]);
+
+            if (materialRequirementCoverage.getGlobalMessages().isEmpty()) {
+                state.addMessage("orderSupplies.materialRequirementCoverage.report.refreshedMessage", MessageType.SUCCESS);
+            } else {
+                materialRequirementCoverage.getGlobalMessages().forEach(
+                        message -> view.addMessage(message.getMessage(), MessageType.INFO, false));
+            }
+        }
+        state.performEvent(view, "refresh", new String[0]);
+    }
+
     public final void printMaterialRequirementCoverage(final ViewDefinitionState view, final ComponentState state,
             final String[] args) {
 
@@ -0,0 +1,181 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.orderSupplies.coverage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+public class CoverageChangesServiceTest {
+
+    private static final Long L_COVERAGE_ID = 1L;
+
+    private static final Long L_GENERATION_VERSION = 500L;
+
+    private static final String L_SELECT_GENERATION = "SELECT criteria, snapshotxmin FROM ordersupplies_coveragegeneration";
+
+    private static final String L_SELECT_CHANGED_PRODUCTS = "SELECT product_id FROM ordersupplies_coverageproductchange";
+
+    private CoverageChangesService coverageChangesService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    private List<Object> criteria;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        coverageChangesService = new CoverageChangesService();
+
+        ReflectionTestUtils.setField(coverageChangesService, "jdbcTemplate", jdbcTemplate);
+
+        criteria = Lists.newArrayList(10L, "01all");
+    }
+
+    @Test
+    public final void shouldRequireFullGenerationOfUnknownCoverage() {
+        // given
+        given(jdbcTemplate.queryForList(startsWith(L_SELECT_GENERATION), any(SqlParameterSource.class))).willReturn(
+                Lists.newArrayList());
+
+        // when
+        Optional<Set<Long>> changedProducts = coverageChangesService.getProductsChangedSinceGeneration(L_COVERAGE_ID, criteria);
+
+        // then
+        assertFalse(changedProducts.isPresent());
+    }
+
+    @Test
+    public final void shouldReturnProductsChangedSinceGeneration() {
+        // given
+        stubGeneration(criteria);
+
+        given(jdbcTemplate.queryForList(startsWith(L_SELECT_CHANGED_PRODUCTS),
+                argThat(hasValue("generationVersion", L_GENERATION_VERSION)), eq(Long.class))).willReturn(
+                Lists.newArrayList(200L, 300L));
+
+        // when
+        Optional<Set<Long>> changedProducts = coverageChangesService.getProductsChangedSinceGeneration(L_COVERAGE_ID,
+                Lists.newArrayList(10L, "01all"));
+
+        // then
+        assertTrue(changedProducts.isPresent());
+        assertEquals(Sets.newHashSet(200L, 300L), changedProducts.get());
+    }
+
+    @Test
+    public final void shouldRequireFullGenerationWhenCriteriaChanged() {
+        // given
+        stubGeneration(criteria);
+
+        // when
+        Optional<Set<Long>> changedProducts = coverageChangesService.getProductsChangedSinceGeneration(L_COVERAGE_ID,
+                Lists.newArrayList(20L, "01all"));
+
+        // then
+        assertFalse(changedProducts.isPresent());
+
+        verify(jdbcTemplate, never()).queryForList(startsWith(L_SELECT_CHANGED_PRODUCTS), any(SqlParameterSource.class),
+                eq(Long.class));
+    }
+
+    @Test
+    public final void shouldStoreGenerationWithCriteriaAndVersion() {
+        // when
+        coverageChangesService.registerGeneration(L_COVERAGE_ID, criteria, L_GENERATION_VERSION);
+
+        // then
+        verify(jdbcTemplate).update(startsWith("INSERT INTO ordersupplies_coveragegeneration"),
+                argThat(hasValue("criteria", criteria.toString())));
+    }
+
+    @Test
+    public final void shouldMarkEachProductOnce() {
+        // when
+        coverageChangesService.markProductsChanged(Lists.newArrayList(200L, 300L, 200L));
+
+        // then
+        verify(jdbcTemplate).update(startsWith("INSERT INTO ordersupplies_coverageproductchange"),
+                argThat(hasValue("productIds", Sets.newHashSet(200L, 300L))));
+    }
+
+    @Test
+    public final void shouldNotMarkAnythingWithoutProducts() {
+        // when
+        coverageChangesService.markProductsChanged(Lists.newArrayList());
+
+        // then
+        verify(jdbcTemplate, never()).update(any(String.class), any(SqlParameterSource.class));
+    }
+
+    private void stubGeneration(final List<Object> generationCriteria) {
+        Map<String, Object> coverageGeneration = ImmutableMap.of("criteria", generationCriteria.toString(), "snapshotxmin",
+                L_GENERATION_VERSION);
+
+        given(jdbcTemplate.queryForList(startsWith(L_SELECT_GENERATION),
+                argThat(hasValue("materialRequirementCoverageId", L_COVERAGE_ID)))).willReturn(
+                Lists.newArrayList(coverageGeneration));
+    }
+
+    private ArgumentMatcher<SqlParameterSource> hasValue(final String name, final Object value) {
+        return new ArgumentMatcher<SqlParameterSource>() {
+
+            @Override
+            public boolean matches(final Object params) {
+                return (params instanceof MapSqlParameterSource) && ((MapSqlParameterSource) params).hasValue(name)
+                        && value.equals(((MapSqlParameterSource) params).getValue(name));
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,479 @@
+package com.qcadoo.mes.orders.schedule;
+
+import static java.util.Map.Entry.comparingByValue;
+
+import java.sql.Types;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Queues;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.orders.constants.ScheduleFields;
+import com.qcadoo.mes.orders.constants.ScheduleWorkerAssignCriterion;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Assigns workers to schedule positions. Staff skills, finish dates of workers operational tasks and last workers of
+ * workstations are loaded up front, workstations which do not share any worker are solved in parallel and the positions are
+ * saved with one batch update.
+ */
+@Service
+public class ScheduleWorkersAssignService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleWorkersAssignService.class);
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    private static final String L_OPERATION_IDS = "operationIds";
+
+    private static final String L_SKILL_IDS = "skillIds";
+
+    private static final String L_STAFF_IDS = "staffIds";
+
+    private static final String L_WORKSTATION_IDS = "workstationIds";
+
+    private static final String L_ID = "id";
+
+    private static final String L_STAFF_ID = "staffId";
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void assignWorkersToOperations(final Entity schedule) {
+        long startedAt = System.currentTimeMillis();
+
+        List<Position> positions = getPositions(schedule.getId());
+
+        Set<Long> operationIds = positions.stream().map(Position::getOperationId).filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<Long> workstationIds = positions.stream().map(Position::getWorkstationId).filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Map<Long, List<OperationSkill>> operationsSkills = getOperationsSkills(operationIds);
+        Map<Long, List<Long>> operationsWorkers = getOperationsWorkers(operationIds, operationsSkills);
+
+        Set<Long> workerIds = Sets.newHashSet();
+        operationsWorkers.values().forEach(workerIds::addAll);
+
+        Map<Long, Date> operationalTasksFinishDates = getOperationalTasksMaxFinishDates(workerIds);
+        Map<Long, Long> operationalTasksLastWorkers = getOperationalTasksLastWorkers(workstationIds);
+
+        long loadedAt = System.currentTimeMillis();
+
+        boolean latestFinished = ScheduleWorkerAssignCriterion.WORKSTATION_LAST_OPERATOR_LATEST_FINISHED.getStringValue()
+                .equals(schedule.getStringField(ScheduleFields.WORKER_ASSIGN_CRITERION));
+
+        List<List<Position>> groups = groupByWorkstations(positions, operationsWorkers);
+
+        List<Position> assignedPositions = groups.parallelStream()
+                .map(group -> assign(group, operationsWorkers, operationalTasksFinishDates, operationalTasksLastWorkers,
+                        schedule.getDateField(ScheduleFields.START_TIME), latestFinished))
+                .flatMap(Collection::stream).collect(Collectors.toList());
+
+        long assignedAt = System.currentTimeMillis();
+
+        updatePositions(assignedPositions);
+
+        long updatedAt = System.currentTimeMillis();
+
+        LOG.info(String.format("Schedule %d: %d positions and %d workers loaded in %d ms, "
+                + "%d positions in %d workstation groups assigned in %d ms, saved in %d ms",
+                schedule.getId(), positions.size(), workerIds.size(), loadedAt - startedAt, assignedPositions.size(),
+                groups.size(), assignedAt - loadedAt, updatedAt - assignedAt));
+    }
+
+    /**
+     * Splits positions into groups of workstations connected by common candidate workers, positions of one group keep their
+     * order. Positions without workstation or machine work time are left out.
+     */
+    List<List<Position>> groupByWorkstations(final List<Position> positions, final Map<Long, List<Long>> operationsWorkers) {
+        Map<Long, Set<Long>> workstationsWorkers = Maps.newHashMap();
+        Map<Long, Set<Long>> workersWorkstations = Maps.newHashMap();
+
+        for (Position position : positions) {
+            if (!isToAssign(position)) {
+                continue;
+            }
+
+            Set<Long> workers = workstationsWorkers.computeIfAbsent(position.getWorkstationId(),
+                    workstationId -> Sets.newHashSet());
+
+            for (Long workerId : operationsWorkers.getOrDefault(position.getOperationId(), Lists.newArrayList())) {
+                workers.add(workerId);
+                workersWorkstations.computeIfAbsent(workerId, id -> Sets.newHashSet()).add(position.getWorkstationId());
+            }
+        }
+
+        Map<Long, Integer> workstationsGroups = Maps.newHashMap();
+        int groupsCount = 0;
+
+        for (Long workstationId : workstationsWorkers.keySet()) {
+            if (workstationsGroups.containsKey(workstationId)) {
+                continue;
+            }
+
+            Deque<Long> workstationsToVisit = Queues.newArrayDeque();
+
+            workstationsToVisit.add(workstationId);
+            workstationsGroups.put(workstationId, groupsCount);
+
+            while (!workstationsToVisit.isEmpty()) {
+                for (Long workerId : workstationsWorkers.get(workstationsToVisit.poll())) {
+                    for (Long connectedWorkstationId : workersWorkstations.get(workerId)) {
+                        if (!workstationsGroups.containsKey(connectedWorkstationId)) {
+                            workstationsGroups.put(connectedWorkstationId, groupsCount);
+                            workstationsToVisit.add(connectedWorkstationId);
+                        }
+                    }
+                }
+            }
+
+            groupsCount++;
+        }
+
+        List<List<Position>> groups = Lists.newArrayList();
+
+        for (int i = 0; i < groupsCount; i++) {
+            groups.add(Lists.newArrayList());
+        }
+
+        for (Position position : positions) {
+            if (isToAssign(position)) {
+                groups.get(workstationsGroups.get(position.getWorkstationId())).add(position);
+            }
+        }
+
+        return groups;
+    }
+
+    List<Position> assign(final List<Position> positions, final Map<Long, List<Long>> operationsWorkers,
+            final Map<Long, Date> operationalTasksFinishDates, final Map<Long, Long> operationalTasksLastWorkers,
+            final Date scheduleStartTime, final boolean latestFinished) {
+        Map<Long, Date> workersFinishDates = Maps.newHashMap();
+        Map<Long, Long> workstationLastWorkers = Maps.newHashMap();
+
+        for (Position position : positions) {
+            Map<Long, Date> operationWorkersFinishDates = Maps.newHashMap();
+
+            for (Long workerId : operationsWorkers.getOrDefault(position.getOperationId(), Lists.newArrayList())) {
+                Date finishDate = workersFinishDates.get(workerId);
+
+                if (Objects.isNull(finishDate)) {
+                    finishDate = operationalTasksFinishDates.get(workerId);
+
+                    if (Objects.nonNull(finishDate)) {
+                        workersFinishDates.put(workerId, finishDate);
+                    }
+                }
+                if (Objects.isNull(finishDate)) {
+                    finishDate = scheduleStartTime;
+                }
+                if (Objects.nonNull(position.getStartTime()) && finishDate.compareTo(position.getStartTime()) <= 0) {
+                    operationWorkersFinishDates.put(workerId, finishDate);
+                }
+            }
+
+            if (Objects.isNull(workstationLastWorkers.get(position.getWorkstationId()))) {
+                workstationLastWorkers.put(position.getWorkstationId(),
+                        operationalTasksLastWorkers.get(position.getWorkstationId()));
+            }
+
+            Long workstationLastWorkerId = workstationLastWorkers.get(position.getWorkstationId());
+
+            Optional<Entry<Long, Date>> chosenEntry = operationWorkersFinishDates.entrySet().stream()
+                    .filter(entry -> entry.getKey().equals(workstationLastWorkerId)).findFirst();
+
+            if (!chosenEntry.isPresent()) {
+                if (latestFinished) {
+                    chosenEntry = operationWorkersFinishDates.entrySet().stream().max(comparingByValue());
+                } else {
+                    chosenEntry = operationWorkersFinishDates.entrySet().stream().min(comparingByValue());
+                }
+            }
+
+            position.setStaffId(null);
+
+            chosenEntry.ifPresent(entry -> {
+                workersFinishDates.put(entry.getKey(), position.getEndTime());
+                workstationLastWorkers.put(position.getWorkstationId(), entry.getKey());
+
+                position.setStaffId(entry.getKey());
+            });
+        }
+
+        return positions;
+    }
+
+    private boolean isToAssign(final Position position) {
+        return position.getMachineWorkTime() != 0 && Objects.nonNull(position.getWorkstationId());
+    }
+
+    private List<Position> getPositions(final Long scheduleId) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT sp.id, sp.workstation_id AS workstationId, toc.operation_id AS operationId, ");
+        query.append("sp.machineworktime AS machineWorkTime, sp.starttime AS startTime, sp.endtime AS endTime ");
+        query.append("FROM orders_scheduleposition sp ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON sp.technologyoperationcomponent_id = toc.id ");
+        query.append("WHERE sp.schedule_id = :scheduleId ORDER BY sp.starttime ASC, sp.id ASC");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_SCHEDULE_ID, scheduleId);
+
+        return jdbcTemplate.query(query.toString(), parameters,
+                (resultSet, rowNum) -> new Position(resultSet.getLong("id"), (Long) resultSet.getObject("workstationId"),
+                        (Long) resultSet.getObject("operationId"), resultSet.getInt("machineWorkTime"),
+                        resultSet.getTimestamp("startTime"), resultSet.getTimestamp("endTime")));
+    }
+
+    private Map<Long, List<OperationSkill>> getOperationsSkills(final Set<Long> operationIds) {
+        Map<Long, List<OperationSkill>> operationsSkills = Maps.newHashMap();
+
+        if (operationIds.isEmpty()) {
+            return operationsSkills;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT os.operation_id AS operationId, os.skill_id AS skillId, os.requiredlevel AS requiredLevel ");
+        query.append("FROM technologies_operationskill os WHERE os.operation_id IN (:operationIds)");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_OPERATION_IDS, operationIds);
+
+        jdbcTemplate.query(query.toString(), parameters, resultSet -> {
+            operationsSkills.computeIfAbsent(resultSet.getLong("operationId"), operationId -> Lists.newArrayList())
+                    .add(new OperationSkill((Long) resultSet.getObject("skillId"),
+                            (Integer) resultSet.getObject("requiredLevel")));
+        });
+
+        return operationsSkills;
+    }
+
+    /**
+     * Workers having all skills of operation on at least required levels, operations without skills can be done by all staff.
+     */
+    private Map<Long, List<Long>> getOperationsWorkers(final Set<Long> operationIds,
+            final Map<Long, List<OperationSkill>> operationsSkills) {
+        Map<Long, List<Long>> operationsWorkers = Maps.newHashMap();
+
+        if (operationIds.isEmpty()) {
+            return operationsWorkers;
+        }
+
+        List<Long> staffIds = jdbcTemplate.queryForList("SELECT s.id FROM basic_staff s", Maps.newHashMap(), Long.class);
+        Map<Long, Map<Long, Integer>> staffSkillsLevels = getStaffSkillsLevels(operationsSkills);
+
+        for (Long operationId : operationIds) {
+            List<OperationSkill> operationSkills = operationsSkills.getOrDefault(operationId, Lists.newArrayList());
+
+            operationsWorkers.put(operationId,
+                    staffIds.stream()
+                            .filter(staffId -> operationSkills.stream()
+                                    .allMatch(operationSkill -> operationSkill.isMetBy(staffSkillsLevels.get(staffId))))
+                            .collect(Collectors.toList()));
+        }
+
+        return operationsWorkers;
+    }
+
+    private Map<Long, Map<Long, Integer>> getStaffSkillsLevels(final Map<Long, List<OperationSkill>> operationsSkills) {
+        Map<Long, Map<Long, Integer>> staffSkillsLevels = Maps.newHashMap();
+
+        Set<Long> skillIds = operationsSkills.values().stream().flatMap(Collection::stream).map(OperationSkill::getSkillId)
+                .filter(Objects::nonNull).collect(Collectors.toSet());
+
+        if (skillIds.isEmpty()) {
+            return staffSkillsLevels;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT ss.staff_id AS staffId, ss.skill_id AS skillId, MAX(ss.level) AS level ");
+        query.append("FROM basic_staffskill ss WHERE ss.skill_id IN (:skillIds) AND ss.level IS NOT NULL ");
+        query.append("GROUP BY ss.staff_id, ss.skill_id");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_SKILL_IDS, skillIds);
+
+        jdbcTemplate.query(query.toString(), parameters, resultSet -> {
+            staffSkillsLevels.computeIfAbsent(resultSet.getLong("staffId"), staffId -> Maps.newHashMap())
+                    .put(resultSet.getLong("skillId"), resultSet.getInt("level"));
+        });
+
+        return staffSkillsLevels;
+    }
+
+    private Map<Long, Date> getOperationalTasksMaxFinishDates(final Set<Long> workerIds) {
+        Map<Long, Date> operationalTasksFinishDates = Maps.newHashMap();
+
+        if (workerIds.isEmpty()) {
+            return operationalTasksFinishDates;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT ot.staff_id AS staffId, MAX(ot.finishdate) AS finishDate ");
+        query.append("FROM orders_operationaltask ot ");
+        query.append("WHERE ot.staff_id IN (:staffIds) AND ot.state <> '04rejected' ");
+        query.append("GROUP BY ot.staff_id");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_STAFF_IDS, workerIds);
+
+        jdbcTemplate.query(query.toString(), parameters, resultSet -> {
+            operationalTasksFinishDates.put(resultSet.getLong("staffId"), resultSet.getTimestamp("finishDate"));
+        });
+
+        return operationalTasksFinishDates;
+    }
+
+    private Map<Long, Long> getOperationalTasksLastWorkers(final Set<Long> workstationIds) {
+        Map<Long, Long> operationalTasksLastWorkers = Maps.newHashMap();
+
+        if (workstationIds.isEmpty()) {
+            return operationalTasksLastWorkers;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT DISTINCT ON (ot.workstation_id) ot.workstation_id AS workstationId, ot.staff_id AS staffId ");
+        query.append("FROM orders_operationaltask ot ");
+        query.append("WHERE ot.workstation_id IN (:workstationIds) AND ot.staff_id IS NOT NULL ");
+        query.append("AND ot.state <> '04rejected' ");
+        query.append("ORDER BY ot.workstation_id, ot.finishdate DESC");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_WORKSTATION_IDS, workstationIds);
+
+        jdbcTemplate.query(query.toString(), parameters, resultSet -> {
+            operationalTasksLastWorkers.put(resultSet.getLong("workstationId"), resultSet.getLong("staffId"));
+        });
+
+        return operationalTasksLastWorkers;
+    }
+
+    private void updatePositions(final List<Position> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        SqlParameterSource[] batchParameters = positions.stream()
+                .map(position -> new MapSqlParameterSource().addValue(L_ID, position.getId()).addValue(L_STAFF_ID,
+                        position.getStaffId(), Types.BIGINT))
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate("UPDATE orders_scheduleposition SET staff_id = :staffId WHERE id = :id", batchParameters);
+    }
+
+    static class Position {
+
+        private final Long id;
+
+        private final Long workstationId;
+
+        private final Long operationId;
+
+        private final int machineWorkTime;
+
+        private final Date startTime;
+
+        private final Date endTime;
+
+        private Long staffId;
+
+        Position(final Long id, final Long workstationId, final Long operationId, final int machineWorkTime,
+                final Date startTime, final Date endTime) {
+            this.id = id;
+            this.workstationId = workstationId;
+            this.operationId = operationId;
+            this.machineWorkTime = machineWorkTime;
+            this.startTime = startTime;
+            this.endTime = endTime;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        Long getWorkstationId() {
+            return workstationId;
+        }
+
+        Long getOperationId() {
+            return operationId;
+        }
+
+        int getMachineWorkTime() {
+            return machineWorkTime;
+        }
+
+        Date getStartTime() {
+            return startTime;
+        }
+
+        Date getEndTime() {
+            return endTime;
+        }
+
+        Long getStaffId() {
+            return staffId;
+        }
+
+        void setStaffId(final Long staffId) {
+            this.staffId = staffId;
+        }
+
+    }
+
+    private static class OperationSkill {
+
+        private final Long skillId;
+
+        private final Integer requiredLevel;
+
+        private OperationSkill(final Long skillId, final Integer requiredLevel) {
+            this.skillId = skillId;
+            this.requiredLevel = requiredLevel;
+        }
+
+        private Long getSkillId() {
+            return skillId;
+        }
+
+        private boolean isMetBy(final Map<Long, Integer> staffSkillsLevels) {
+            if (Objects.isNull(staffSkillsLevels) || Objects.isNull(requiredLevel)) {
+                return false;
+            }
+
+            Integer level = staffSkillsLevels.get(skillId);
+
+            return Objects.nonNull(level) && level >= requiredLevel;
+        }
+
+    }
+
+}
@@ -0,0 +1,427 @@
+package com.qcadoo.mes.orders.schedule;
+
+import static java.util.Map.Entry.comparingByValue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Table;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.constants.BasicConstants;
+import com.qcadoo.mes.orders.constants.ScheduleFields;
+import com.qcadoo.mes.orders.constants.ScheduleSortOrder;
+import com.qcadoo.mes.orders.constants.ScheduleWorkstationAssignCriterion;
+import com.qcadoo.mes.productionLines.constants.WorkstationFieldsPL;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchRestrictions;
+
+/**
+ * Assigns schedule positions to workstations. The whole schedule (positions, operation tree links, workstation candidates and
+ * finish dates of existing operational tasks) is loaded with a few queries, assigned in memory and saved with one batch update.
+ */
+@Service
+public class ScheduleWorkstationsAssignService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScheduleWorkstationsAssignService.class);
+
+    private static final String L_SCHEDULE_ID = "scheduleId";
+
+    private static final String L_WORKSTATION_IDS = "workstationIds";
+
+    private static final String L_SCHEDULE_START_TIME = "scheduleStartTime";
+
+    private static final String L_ID = "id";
+
+    private static final String L_WORKSTATION_ID = "workstationId";
+
+    private static final String L_START_TIME = "startTime";
+
+    private static final String L_END_TIME = "endTime";
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ShiftsService shiftsService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void assignOperationsToWorkstations(final Entity schedule) {
+        long startedAt = System.currentTimeMillis();
+
+        Date scheduleStartTime = schedule.getDateField(ScheduleFields.START_TIME);
+
+        List<Position> positions = getPositions(schedule);
+        Map<Long, List<Long>> operationComponentsWorkstations = getOperationComponentsWorkstations(schedule.getId());
+
+        Set<Long> workstationIds = Sets.newHashSet();
+        operationComponentsWorkstations.values().forEach(workstationIds::addAll);
+
+        Map<Long, Entity> workstationsProductionLines = getWorkstationsProductionLines(workstationIds);
+        Map<Long, Date> operationalTasksFinishDates = getOperationalTasksMaxFinishDates(workstationIds, scheduleStartTime);
+
+        long loadedAt = System.currentTimeMillis();
+
+        boolean shortestTime = ScheduleWorkstationAssignCriterion.SHORTEST_TIME.getStringValue()
+                .equals(schedule.getStringField(ScheduleFields.WORKSTATION_ASSIGN_CRITERION));
+
+        List<Position> assignedPositions = assign(positions, operationComponentsWorkstations, workstationsProductionLines,
+                operationalTasksFinishDates, scheduleStartTime, shortestTime);
+
+        long assignedAt = System.currentTimeMillis();
+
+        updatePositions(assignedPositions);
+
+        long updatedAt = System.currentTimeMillis();
+
+        LOG.info(String.format(
+                "Schedule %d: %d positions and %d workstations loaded in %d ms, %d positions assigned in %d ms, saved in %d ms",
+                schedule.getId(), positions.size(), workstationIds.size(), loadedAt - startedAt, assignedPositions.size(),
+                assignedAt - loadedAt, updatedAt - assignedAt));
+    }
+
+    List<Position> assign(final List<Position> positions, final Map<Long, List<Long>> operationComponentsWorkstations,
+            final Map<Long, Entity> workstationsProductionLines, final Map<Long, Date> operationalTasksFinishDates,
+            final Date scheduleStartTime, final boolean shortestTime) {
+        List<Position> assignedPositions = Lists.newArrayList();
+
+        Map<Long, Date> workstationsFinishDates = Maps.newHashMap();
+        Set<Long> ordersToAvoid = Sets.newHashSet();
+        Table<Long, Long, List<Position>> children = getChildren(positions);
+
+        for (Position position : positions) {
+            if (ordersToAvoid.contains(position.getOrderId())) {
+                continue;
+            }
+
+            List<Long> workstations = operationComponentsWorkstations.getOrDefault(position.getOperationComponentId(),
+                    Lists.newArrayList());
+
+            if (workstations.isEmpty() || position.getMachineWorkTime() == 0) {
+                ordersToAvoid.add(position.getOrderId());
+
+                continue;
+            }
+
+            Date childrenFinishDate = getChildrenFinishDate(children.get(position.getOrderId(),
+                    position.getOperationComponentId()));
+
+            Map<Long, Date> operationWorkstationsFinishDates = Maps.newHashMap();
+            Map<Long, Date> operationWorkstationsStartDates = Maps.newHashMap();
+
+            for (Long workstationId : workstations) {
+                Date finishDate = workstationsFinishDates.get(workstationId);
+
+                if (Objects.isNull(finishDate)) {
+                    finishDate = operationalTasksFinishDates.get(workstationId);
+
+                    if (Objects.nonNull(finishDate)) {
+                        workstationsFinishDates.put(workstationId, finishDate);
+                    }
+                }
+                if (Objects.isNull(finishDate)) {
+                    finishDate = scheduleStartTime;
+                }
+                if (Objects.nonNull(childrenFinishDate) && childrenFinishDate.after(finishDate)) {
+                    finishDate = childrenFinishDate;
+                }
+
+                Entity productionLine = workstationsProductionLines.get(workstationId);
+
+                DateTime finishDateTime = new DateTime(finishDate);
+                Date newStartDate = shiftsService.getNearestWorkingDate(finishDateTime, productionLine).orElse(finishDateTime)
+                        .toDate();
+                Date newFinishDate = shiftsService.findDateToForProductionLine(newStartDate, position.getMachineWorkTime(),
+                        productionLine);
+
+                operationWorkstationsStartDates.put(workstationId, newStartDate);
+                operationWorkstationsFinishDates.put(workstationId, newFinishDate);
+            }
+
+            Entry<Long, Date> chosenEntry;
+
+            if (shortestTime) {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().stream().min(comparingByValue()).get();
+            } else {
+                chosenEntry = operationWorkstationsFinishDates.entrySet().stream()
+                        .filter(entry -> workstationsFinishDates.containsKey(entry.getKey())).findFirst()
+                        .orElse(operationWorkstationsFinishDates.entrySet().iterator().next());
+            }
+
+            workstationsFinishDates.put(chosenEntry.getKey(), chosenEntry.getValue());
+
+            position.setWorkstationId(chosenEntry.getKey());
+            position.setStartTime(operationWorkstationsStartDates.get(chosenEntry.getKey()));
+            position.setEndTime(chosenEntry.getValue());
+
+            assignedPositions.add(position);
+        }
+
+        return assignedPositions;
+    }
+
+    private Table<Long, Long, List<Position>> getChildren(final List<Position> positions) {
+        Table<Long, Long, List<Position>> children = HashBasedTable.create();
+
+        for (Position position : positions) {
+            if (Objects.isNull(position.getParentOperationComponentId())) {
+                continue;
+            }
+
+            List<Position> siblings = children.get(position.getOrderId(), position.getParentOperationComponentId());
+
+            if (Objects.isNull(siblings)) {
+                siblings = Lists.newArrayList();
+
+                children.put(position.getOrderId(), position.getParentOperationComponentId(), siblings);
+            }
+
+            siblings.add(position);
+        }
+
+        return children;
+    }
+
+    private Date getChildrenFinishDate(final List<Position> children) {
+        Date childrenFinishDate = null;
+
+        if (Objects.isNull(children)) {
+            return null;
+        }
+
+        for (Position child : children) {
+            if (Objects.isNull(child.getEndTime())) {
+                continue;
+            }
+
+            Date childEndTimeWithAdditionalTime = Date
+                    .from(child.getEndTime().toInstant().plusSeconds(child.getAdditionalTime()));
+
+            if (Objects.isNull(childrenFinishDate) || childEndTimeWithAdditionalTime.after(childrenFinishDate)) {
+                childrenFinishDate = childEndTimeWithAdditionalTime;
+            }
+        }
+
+        return childrenFinishDate;
+    }
+
+    private List<Position> getPositions(final Entity schedule) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT sp.id, sp.order_id AS orderId, sp.technologyoperationcomponent_id AS operationComponentId, ");
+        query.append("toc.parent_id AS parentOperationComponentId, sp.machineworktime AS machineWorkTime, ");
+        query.append("sp.additionaltime AS additionalTime, sp.endtime AS endTime ");
+        query.append("FROM orders_scheduleposition sp ");
+        query.append("JOIN technologies_technologyoperationcomponent toc ON sp.technologyoperationcomponent_id = toc.id ");
+        query.append("WHERE sp.schedule_id = :scheduleId ORDER BY ");
+        query.append("string_to_array(regexp_replace(rtrim(toc.nodenumber, '.'), '[^0-9.]', '0', 'g'), '.')::int[] desc, ");
+
+        if (ScheduleSortOrder.DESCENDING.getStringValue().equals(schedule.getStringField(ScheduleFields.SORT_ORDER))) {
+            query.append("sp.machineworktime desc");
+        } else {
+            query.append("sp.machineworktime asc");
+        }
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_SCHEDULE_ID, schedule.getId());
+
+        return jdbcTemplate.query(query.toString(), parameters,
+                (resultSet, rowNum) -> new Position(resultSet.getLong("id"), resultSet.getLong("orderId"),
+                        resultSet.getLong("operationComponentId"), (Long) resultSet.getObject("parentOperationComponentId"),
+                        resultSet.getInt("machineWorkTime"), resultSet.getInt("additionalTime"),
+                        resultSet.getTimestamp("endTime")));
+    }
+
+    private Map<Long, List<Long>> getOperationComponentsWorkstations(final Long scheduleId) {
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT DISTINCT tocw.technologyoperationcomponent_id AS operationComponentId, ");
+        query.append("tocw.workstation_id AS workstationId ");
+        query.append("FROM jointable_technologyoperationcomponent_workstation tocw ");
+        query.append("JOIN orders_scheduleposition sp ");
+        query.append("ON sp.technologyoperationcomponent_id = tocw.technologyoperationcomponent_id ");
+        query.append("WHERE sp.schedule_id = :scheduleId");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_SCHEDULE_ID, scheduleId);
+
+        Map<Long, List<Long>> operationComponentsWorkstations = Maps.newHashMap();
+
+        jdbcTemplate.query(query.toString(), parameters, resultSet -> {
+            operationComponentsWorkstations
+                    .computeIfAbsent(resultSet.getLong("operationComponentId"), operationComponentId -> Lists.newArrayList())
+                    .add(resultSet.getLong("workstationId"));
+        });
+
+        return operationComponentsWorkstations;
+    }
+
+    private Map<Long, Entity> getWorkstationsProductionLines(final Set<Long> workstationIds) {
+        Map<Long, Entity> workstationsProductionLines = Maps.newHashMap();
+
+        if (workstationIds.isEmpty()) {
+            return workstationsProductionLines;
+        }
+
+        List<Entity> workstations = dataDefinitionService
+                .get(BasicConstants.PLUGIN_IDENTIFIER, BasicConstants.MODEL_WORKSTATION).find()
+                .add(SearchRestrictions.in(L_ID, workstationIds)).list().getEntities();
+
+        for (Entity workstation : workstations) {
+            workstationsProductionLines.put(workstation.getId(),
+                    workstation.getBelongsToField(WorkstationFieldsPL.PRODUCTION_LINE));
+        }
+
+        return workstationsProductionLines;
+    }
+
+    private Map<Long, Date> getOperationalTasksMaxFinishDates(final Set<Long> workstationIds, final Date scheduleStartTime) {
+        Map<Long, Date> operationalTasksFinishDates = Maps.newHashMap();
+
+        if (workstationIds.isEmpty()) {
+            return operationalTasksFinishDates;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("SELECT ot.workstation_id AS workstationId, MAX(ot.finishdate) AS finishDate ");
+        query.append("FROM orders_operationaltask ot ");
+        query.append("WHERE ot.workstation_id IN (:workstationIds) AND ot.state <> '04rejected' ");
+        query.append("AND ot.finishdate > :scheduleStartTime ");
+        query.append("GROUP BY ot.workstation_id");
+
+        Map<String, Object> parameters = Maps.newHashMap();
+
+        parameters.put(L_WORKSTATION_IDS, workstationIds);
+        parameters.put(L_SCHEDULE_START_TIME, scheduleStartTime);
+
+        jdbcTemplate.query(query.toString(), parameters, resultSet -> {
+            operationalTasksFinishDates.put(resultSet.getLong("workstationId"), resultSet.getTimestamp("finishDate"));
+        });
+
+        return operationalTasksFinishDates;
+    }
+
+    private void updatePositions(final List<Position> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        StringBuilder query = new StringBuilder();
+
+        query.append("UPDATE orders_scheduleposition ");
+        query.append("SET workstation_id = :workstationId, starttime = :startTime, endtime = :endTime, staff_id = NULL ");
+        query.append("WHERE id = :id");
+
+        SqlParameterSource[] batchParameters = positions.stream()
+                .map(position -> new MapSqlParameterSource().addValue(L_ID, position.getId())
+                        .addValue(L_WORKSTATION_ID, position.getWorkstationId())
+                        .addValue(L_START_TIME, position.getStartTime()).addValue(L_END_TIME, position.getEndTime()))
+                .toArray(SqlParameterSource[]::new);
+
+        jdbcTemplate.batchUpdate(query.toString(), batchParameters);
+    }
+
+    static class Position {
+
+        private final Long id;
+
+        private final Long orderId;
+
+        private final Long operationComponentId;
+
+        private final Long parentOperationComponentId;
+
+        private final int machineWorkTime;
+
+        private final int additionalTime;
+
+        private Long workstationId;
+
+        private Date startTime;
+
+        private Date endTime;
+
+        Position(final Long id, final Long orderId, final Long operationComponentId, final Long parentOperationComponentId,
+                final int machineWorkTime, final int additionalTime, final Date endTime) {
+            this.id = id;
+            this.orderId = orderId;
+            this.operationComponentId = operationComponentId;
+            this.parentOperationComponentId = parentOperationComponentId;
+            this.machineWorkTime = machineWorkTime;
+            this.additionalTime = additionalTime;
+            this.endTime = endTime;
+        }
+
+        Long getId() {
+            return id;
+        }
+
+        Long getOrderId() {
+            return orderId;
+        }
+
+        Long getOperationComponentId() {
+            return operationComponentId;
+        }
+
+        Long getParentOperationComponentId() {
+            return parentOperationComponentId;
+        }
+
+        int getMachineWorkTime() {
+            return machineWorkTime;
+        }
+
+        int getAdditionalTime() {
+            return additionalTime;
+        }
+
+        Long getWorkstationId() {
+            return workstationId;
+        }
+
+        void setWorkstationId(final Long workstationId) {
+            this.workstationId = workstationId;
+        }
+
+        Date getStartTime() {
+            return startTime;
+        }
+
+        void setStartTime(final Date startTime) {
+            this.startTime = startTime;
+        }
+
+        Date getEndTime() {
+            return endTime;
+        }
+
+        void setEndTime(final Date endTime) {
+            this.endTime = endTime;
+        }
+
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.qcadoo.mes.orders.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.orders.schedule.ScheduleWorkersAssignService.Position;
+
+public class ScheduleWorkersAssignServiceTest {
+
+    private static final Date L_SCHEDULE_START_TIME = new DateTime(2019, 1, 1, 8, 0, 0, 0).toDate();
+
+    private ScheduleWorkersAssignService scheduleWorkersAssignService;
+
+    private Map<Long, List<Long>> operationsWorkers;
+
+    @Before
+    public final void init() {
+        scheduleWorkersAssignService = new ScheduleWorkersAssignService();
+
+        operationsWorkers = Maps.newHashMap();
+    }
+
+    @Test
+    public final void shouldGroupWorkstationsSharingWorkers() {
+        // given
+        operationsWorkers.put(1L, Lists.newArrayList(100L));
+        operationsWorkers.put(2L, Lists.newArrayList(100L, 200L));
+        operationsWorkers.put(3L, Lists.newArrayList(300L));
+
+        Position first = new Position(1L, 10L, 1L, 60, date(8), date(9));
+        Position second = new Position(2L, 20L, 2L, 60, date(9), date(10));
+        Position third = new Position(3L, 30L, 3L, 60, date(10), date(11));
+        Position withoutWorkstation = new Position(4L, null, 3L, 60, date(11), date(12));
+
+        // when
+        List<List<Position>> groups = scheduleWorkersAssignService.groupByWorkstations(
+                Lists.newArrayList(first, second, third, withoutWorkstation), operationsWorkers);
+
+        // then
+        assertEquals(2, groups.size());
+        assertEquals(3, groups.stream().mapToInt(List::size).sum());
+        assertTrue(groups.stream().anyMatch(group -> group.equals(Lists.newArrayList(first, second))));
+        assertTrue(groups.stream().anyMatch(group -> group.equals(Lists.newArrayList(third))));
+    }
+
+    @Test
+    public final void shouldPreferLastWorkerOfWorkstation() {
+        // given
+        operationsWorkers.put(1L, Lists.newArrayList(100L, 200L));
+
+        Map<Long, Long> operationalTasksLastWorkers = Maps.newHashMap();
+        operationalTasksLastWorkers.put(10L, 200L);
+
+        Position position = new Position(1L, 10L, 1L, 60, date(9), date(10));
+
+        // when
+        scheduleWorkersAssignService.assign(Lists.newArrayList(position), operationsWorkers, Maps.newHashMap(),
+                operationalTasksLastWorkers, L_SCHEDULE_START_TIME, false);
+
+        // then
+        assertEquals(Long.valueOf(200L), position.getStaffId());
+    }
+
+    @Test
+    public final void shouldNotAssignBusyWorker() {
+        // given
+        operationsWorkers.put(1L, Lists.newArrayList(100L));
+
+        Position first = new Position(1L, 10L, 1L, 60, date(8), date(10));
+        Position second = new Position(2L, 10L, 1L, 60, date(9), date(11));
+
+        // when
+        scheduleWorkersAssignService.assign(Lists.newArrayList(first, second), operationsWorkers, Maps.newHashMap(),
+                Maps.newHashMap(), L_SCHEDULE_START_TIME, false);
+
+        // then
+        assertEquals(Long.valueOf(100L), first.getStaffId());
+        assertNull(second.getStaffId());
+    }
+
+    private Date date(final int hour) {
+        return new DateTime(2019, 1, 1, hour, 0, 0, 0).toDate();
+    }
+
+}
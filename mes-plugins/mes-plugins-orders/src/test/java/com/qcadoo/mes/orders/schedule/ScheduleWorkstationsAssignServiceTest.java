@@ -0,0 +1,134 @@
+package com.qcadoo.mes.orders.schedule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.orders.schedule.ScheduleWorkstationsAssignService.Position;
+
+public class ScheduleWorkstationsAssignServiceTest {
+
+    private static final Date L_SCHEDULE_START_TIME = new DateTime(2019, 1, 1, 8, 0, 0, 0).toDate();
+
+    private ScheduleWorkstationsAssignService scheduleWorkstationsAssignService;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    private Map<Long, List<Long>> operationComponentsWorkstations;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        scheduleWorkstationsAssignService = new ScheduleWorkstationsAssignService();
+
+        ReflectionTestUtils.setField(scheduleWorkstationsAssignService, "shiftsService", shiftsService);
+
+        given(shiftsService.getNearestWorkingDate(any(DateTime.class), any()))
+                .willAnswer(invocation -> Optional.of(invocation.getArguments()[0]));
+        given(shiftsService.findDateToForProductionLine(any(Date.class), anyLong(), any()))
+                .willAnswer(invocation -> Date.from(((Date) invocation.getArguments()[0]).toInstant()
+                        .plusSeconds((Long) invocation.getArguments()[1])));
+
+        operationComponentsWorkstations = Maps.newHashMap();
+    }
+
+    @Test
+    public final void shouldStartParentAfterChildrenWithAdditionalTime() {
+        // given
+        operationComponentsWorkstations.put(1L, Lists.newArrayList(10L));
+        operationComponentsWorkstations.put(2L, Lists.newArrayList(20L));
+
+        Position child = new Position(1L, 100L, 2L, 1L, 3600, 600, null);
+        Position parent = new Position(2L, 100L, 1L, null, 1800, 0, null);
+
+        // when
+        List<Position> assignedPositions = scheduleWorkstationsAssignService.assign(Lists.newArrayList(child, parent),
+                operationComponentsWorkstations, Maps.newHashMap(), Maps.newHashMap(), L_SCHEDULE_START_TIME, false);
+
+        // then
+        assertEquals(2, assignedPositions.size());
+        assertEquals(Long.valueOf(20L), child.getWorkstationId());
+        assertEquals(L_SCHEDULE_START_TIME, child.getStartTime());
+        assertEquals(new DateTime(2019, 1, 1, 9, 0, 0, 0).toDate(), child.getEndTime());
+        assertEquals(Long.valueOf(10L), parent.getWorkstationId());
+        assertEquals(new DateTime(2019, 1, 1, 9, 10, 0, 0).toDate(), parent.getStartTime());
+        assertEquals(new DateTime(2019, 1, 1, 9, 40, 0, 0).toDate(), parent.getEndTime());
+    }
+
+    @Test
+    public final void shouldAssignToWorkstationFinishingFirstWhenShortestTime() {
+        // given
+        operationComponentsWorkstations.put(1L, Lists.newArrayList(10L, 20L));
+
+        Map<Long, Date> operationalTasksFinishDates = Maps.newHashMap();
+        operationalTasksFinishDates.put(10L, new DateTime(2019, 1, 1, 12, 0, 0, 0).toDate());
+
+        Position position = new Position(1L, 100L, 1L, null, 3600, 0, null);
+
+        // when
+        scheduleWorkstationsAssignService.assign(Lists.newArrayList(position), operationComponentsWorkstations,
+                Maps.newHashMap(), operationalTasksFinishDates, L_SCHEDULE_START_TIME, true);
+
+        // then
+        assertEquals(Long.valueOf(20L), position.getWorkstationId());
+        assertEquals(L_SCHEDULE_START_TIME, position.getStartTime());
+    }
+
+    @Test
+    public final void shouldQueueOnAlreadyUsedWorkstation() {
+        // given
+        operationComponentsWorkstations.put(1L, Lists.newArrayList(10L, 20L));
+
+        Map<Long, Date> operationalTasksFinishDates = Maps.newHashMap();
+        operationalTasksFinishDates.put(20L, new DateTime(2019, 1, 1, 12, 0, 0, 0).toDate());
+
+        Position position = new Position(1L, 100L, 1L, null, 3600, 0, null);
+
+        // when
+        scheduleWorkstationsAssignService.assign(Lists.newArrayList(position), operationComponentsWorkstations,
+                Maps.newHashMap(), operationalTasksFinishDates, L_SCHEDULE_START_TIME, false);
+
+        // then
+        assertEquals(Long.valueOf(20L), position.getWorkstationId());
+        assertEquals(new DateTime(2019, 1, 1, 12, 0, 0, 0).toDate(), position.getStartTime());
+    }
+
+    @Test
+    public final void shouldSkipWholeOrderWhenOperationHasNoWorkstations() {
+        // given
+        operationComponentsWorkstations.put(2L, Lists.newArrayList(20L));
+
+        Position first = new Position(1L, 100L, 1L, null, 3600, 0, null);
+        Position second = new Position(2L, 100L, 2L, null, 3600, 0, null);
+        Position other = new Position(3L, 200L, 2L, null, 3600, 0, null);
+
+        // when
+        List<Position> assignedPositions = scheduleWorkstationsAssignService.assign(
+                Lists.newArrayList(first, second, other), operationComponentsWorkstations, Maps.newHashMap(),
+                Maps.newHashMap(), L_SCHEDULE_START_TIME, false);
+
+        // then
+        assertEquals(1, assignedPositions.size());
+        assertTrue(assignedPositions.contains(other));
+    }
+
+}
@@ -42,4 +42,6 @@ public final class ProductFlowThruDivisionConstants {
     public static final String MODEL_WAREHOUSE_ISSUE = "warehouseIssue";
 
     public static final String MODEL_WAREHOUSE_ISSUE_STATE_CHANGE = "warehouseIssueStateChange";
+
+    public static final String MODEL_PRODUCTION_TRACKING_DOCUMENTS_POSTING = "productionTrackingDocumentsPosting";
 }
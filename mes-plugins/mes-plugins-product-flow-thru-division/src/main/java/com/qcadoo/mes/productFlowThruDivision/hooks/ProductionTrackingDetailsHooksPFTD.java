@@ -1,11 +1,19 @@
 package com.qcadoo.mes.productFlowThruDivision.hooks;
 
+import java.util.Objects;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsPostingFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsPostingState;
+import com.qcadoo.mes.productFlowThruDivision.states.ProductionTrackingDocumentsPostingService;
 import com.qcadoo.mes.productionCounting.constants.OrderFieldsPC;
 import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
 import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
 import com.qcadoo.model.api.Entity;
+import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
 import com.qcadoo.view.api.components.WindowComponent;
@@ -23,6 +31,9 @@ public class ProductionTrackingDetailsHooksPFTD {
 
     private static final String L_COMPONENT_AVAILABILITY = "componentAvailability";
 
+    @Autowired
+    private ProductionTrackingDocumentsPostingService productionTrackingDocumentsPostingService;
+
     public void onBeforeRender(final ViewDefinitionState view) {
         WindowComponent window = (WindowComponent) view.getComponentByReference(L_WINDOW);
 
@@ -34,6 +45,8 @@ public class ProductionTrackingDetailsHooksPFTD {
 
         Entity productionTracking = productionTrackingForm.getEntity();
 
+        showDocumentsPostingNotification(productionTrackingForm, productionTracking);
+
         boolean isDraft = ProductionTrackingStateStringValues.DRAFT
                 .equals(productionTracking.getStringField(ProductionTrackingFields.STATE));
 
@@ -50,4 +63,36 @@ public class ProductionTrackingDetailsHooksPFTD {
         componentAvailabilityRibbonActionItem.requestUpdate(true);
     }
 
+    private void showDocumentsPostingNotification(final FormComponent productionTrackingForm, final Entity productionTracking) {
+        if (Objects.isNull(productionTracking.getId())) {
+            return;
+        }
+
+        Entity productionTrackingDocumentsPosting = productionTrackingDocumentsPostingService.getLastPosting(productionTracking);
+
+        if (Objects.isNull(productionTrackingDocumentsPosting)) {
+            return;
+        }
+
+        ProductionTrackingDocumentsPostingState state = ProductionTrackingDocumentsPostingState
+                .parseString(productionTrackingDocumentsPosting.getStringField(ProductionTrackingDocumentsPostingFields.STATE));
+
+        if (ProductionTrackingDocumentsPostingState.PENDING.equals(state)) {
+            productionTrackingForm.addMessage("productFlowThruDivision.productionTracking.info.documentsPostingPending",
+                    ComponentState.MessageType.INFO, true);
+        } else if (ProductionTrackingDocumentsPostingState.FAILED.equals(state)) {
+            String failCause = productionTrackingDocumentsPosting
+                    .getStringField(ProductionTrackingDocumentsPostingFields.FAIL_CAUSE);
+
+            if (StringUtils.isEmpty(failCause)) {
+                productionTrackingForm.addMessage("productFlowThruDivision.productionTracking.error.documentsPostingFailed",
+                        ComponentState.MessageType.FAILURE, false);
+            } else {
+                productionTrackingForm.addMessage(
+                        "productFlowThruDivision.productionTracking.error.documentsPostingFailed.withCause",
+                        ComponentState.MessageType.FAILURE, false, failCause);
+            }
+        }
+    }
+
 }
@@ -98,6 +98,9 @@ public class OrderStatesListenerServicePFTD {
 
     private static final String L_ACCEPT_INBOUND_DOCUMENT_ERROR = "productFlowThruDivision.productionTracking.completeOrderError.acceptInboundDocument";
 
+    private static final String L_POST_WAREHOUSE_DOCUMENTS_ERROR = "productFlowThruDivision.productionTracking."
+            + "completeOrderError.postWarehouseDocuments";
+
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
@@ -125,8 +128,16 @@ public class OrderStatesListenerServicePFTD {
     @Autowired
     private OrderMaterialAvailability orderMaterialAvailability;
 
+    @Autowired
+    private ProductionTrackingDocumentsPostingService productionTrackingDocumentsPostingService;
+
     public void acceptInboundDocumentsForOrder(final StateChangeContext stateChangeContext) {
         Entity order = stateChangeContext.getOwner();
+        List<String> postingErrors = productionTrackingDocumentsPostingService.postPendingPostingsForOrder(order);
+        if (!postingErrors.isEmpty()) {
+            stateChangeContext.addValidationError(L_POST_WAREHOUSE_DOCUMENTS_ERROR, StringUtils.join(postingErrors, " "));
+            return;
+        }
         String priceBasedOn = parameterService.getParameter().getStringField(ParameterFieldsPC.PRICE_BASED_ON);
         boolean isNominalProductCost = priceBasedOn != null
                 && priceBasedOn.equals(PriceBasedOn.NOMINAL_PRODUCT_COST.getStringValue());
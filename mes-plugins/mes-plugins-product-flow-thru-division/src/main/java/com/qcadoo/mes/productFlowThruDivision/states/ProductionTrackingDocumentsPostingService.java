@@ -0,0 +1,356 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.productFlowThruDivision.states;
+
+import java.sql.SQLException;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.localization.api.TranslationService;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.productFlowThruDivision.constants.ParameterFieldsPFTD;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductFlowThruDivisionConstants;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsPostingFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsPostingState;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Creates warehouse documents of accepted production trackings in the background, when enabled in parameters.
+ * Accept only registers a pending posting, so the documents are created after the tracking is committed. Postings are picked
+ * up by a trigger and processed on its thread, inside its tenant context, oldest first, so postings of one order are processed
+ * one after another. A posting is marked as posted in the same transaction in which its documents are created, so documents
+ * are never created twice. Lock conflicts are retried, other failures are stored in the posting and shown on the production
+ * tracking. Pending postings of an order are posted in the transaction completing it, so the order isn't completed without
+ * documents of its production trackings; the posting row is locked first, so it's never posted by both at once.
+ */
+@Service
+public class ProductionTrackingDocumentsPostingService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionTrackingDocumentsPostingService.class);
+
+    private static final String L_ID = "id";
+
+    private static final int L_MAX_POSTINGS_PER_RUN = 200;
+
+    private static final int L_MAX_ATTEMPTS = 5;
+
+    private static final int L_MAX_LOCK_RETRIES = 3;
+
+    private static final long L_LOCK_RETRY_DELAY = 500L;
+
+    private static final Set<String> L_LOCK_CONFLICT_SQL_STATES = Sets.newHashSet("40001", "40P01", "55P03");
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ParameterService parameterService;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private TranslationService translationService;
+
+    @Autowired
+    private ProductionTrackingListenerServicePFTD productionTrackingListenerServicePFTD;
+
+    public boolean isAsynchronousPostingEnabled() {
+        return parameterService.getParameter().getBooleanField(ParameterFieldsPFTD.POST_WAREHOUSE_DOCUMENTS_ASYNCHRONOUSLY);
+    }
+
+    public void registerPosting(final Entity productionTracking) {
+        DataDefinition productionTrackingDocumentsPostingDD = getProductionTrackingDocumentsPostingDD();
+
+        long postings = productionTrackingDocumentsPostingDD.count(SearchRestrictions.and(
+                SearchRestrictions.belongsTo(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING, productionTracking),
+                SearchRestrictions.ne(ProductionTrackingDocumentsPostingFields.STATE,
+                        ProductionTrackingDocumentsPostingState.FAILED.getStrValue())));
+
+        if (postings > 0) {
+            return;
+        }
+
+        Entity productionTrackingDocumentsPosting = productionTrackingDocumentsPostingDD.create();
+
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING,
+                productionTracking.getId());
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.PENDING.getStrValue());
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.ATTEMPTS, 0);
+
+        productionTrackingDocumentsPosting = productionTrackingDocumentsPostingDD.save(productionTrackingDocumentsPosting);
+
+        if (!productionTrackingDocumentsPosting.isValid()) {
+            productionTracking.addGlobalError(
+                    "productFlowThruDivision.productionTracking.productionTrackingError.registerDocumentsPosting");
+        }
+    }
+
+    public Entity getLastPosting(final Entity productionTracking) {
+        return getProductionTrackingDocumentsPostingDD().find()
+                .add(SearchRestrictions.belongsTo(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING,
+                        productionTracking))
+                .addOrder(SearchOrders.desc(L_ID)).setMaxResults(1).uniqueResult();
+    }
+
+    public void postWarehouseDocumentsTrigger() {
+        multiTenantService.doInMultiTenantContext(this::postWarehouseDocuments);
+    }
+
+    public void postWarehouseDocuments() {
+        List<Long> postingsIds = getPendingPostingsIds();
+
+        if (postingsIds.isEmpty()) {
+            return;
+        }
+
+        LOG.info("Posting warehouse documents of {} production trackings", postingsIds.size());
+
+        for (Long postingId : postingsIds) {
+            post(postingId);
+        }
+    }
+
+    @Transactional
+    public List<String> postPendingPostingsForOrder(final Entity order) {
+        List<Long> postingsIds = getPendingPostingsCriteria()
+                .add(SearchRestrictions.eq(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING + "."
+                        + ProductionTrackingFields.ORDER + "." + L_ID, order.getId()))
+                .list().getEntities().stream().map(projection -> (Long) projection.getField(L_ID))
+                .collect(Collectors.toList());
+
+        for (Long postingId : postingsIds) {
+            List<String> errors = postLocked(postingId);
+
+            if (!errors.isEmpty()) {
+                TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+
+                return errors;
+            }
+        }
+
+        return Lists.newArrayList();
+    }
+
+    private List<Long> getPendingPostingsIds() {
+        return getPendingPostingsCriteria().setMaxResults(L_MAX_POSTINGS_PER_RUN).list().getEntities().stream()
+                .map(projection -> (Long) projection.getField(L_ID)).collect(Collectors.toList());
+    }
+
+    private SearchCriteriaBuilder getPendingPostingsCriteria() {
+        return getProductionTrackingDocumentsPostingDD().find()
+                .createAlias(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING,
+                        ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING, JoinType.INNER)
+                .add(SearchRestrictions.eq(ProductionTrackingDocumentsPostingFields.STATE,
+                        ProductionTrackingDocumentsPostingState.PENDING.getStrValue()))
+                .setProjection(SearchProjections.alias(SearchProjections.id(), L_ID)).addOrder(SearchOrders.asc(L_ID));
+    }
+
+    private void post(final Long postingId) {
+        for (int retry = 1;; retry++) {
+            try {
+                List<String> errors = postInTransaction(postingId);
+
+                if (!errors.isEmpty()) {
+                    markAsFailed(postingId, StringUtils.join(errors, "\n"), false);
+                }
+
+                return;
+            } catch (RuntimeException e) {
+                boolean isLockConflict = isLockConflict(e);
+
+                if (isLockConflict && (retry < L_MAX_LOCK_RETRIES) && waitBeforeRetry(retry)) {
+                    continue;
+                }
+
+                LOG.warn("Warehouse documents of production tracking posting " + postingId + " could not be created", e);
+
+                markAsFailed(postingId, Throwables.getRootCause(e).getMessage(), isLockConflict);
+
+                return;
+            }
+        }
+    }
+
+    @Transactional
+    private List<String> postInTransaction(final Long postingId) {
+        List<String> errors = postLocked(postingId);
+
+        if (!errors.isEmpty()) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+        }
+
+        return errors;
+    }
+
+    private List<String> postLocked(final Long postingId) {
+        if (!lockPendingPosting(postingId)) {
+            return Lists.newArrayList();
+        }
+
+        DataDefinition productionTrackingDocumentsPostingDD = getProductionTrackingDocumentsPostingDD();
+
+        Entity productionTrackingDocumentsPosting = productionTrackingDocumentsPostingDD.get(postingId);
+
+        Entity productionTracking = productionTrackingDocumentsPosting
+                .getBelongsToField(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING);
+        productionTracking = productionTracking.getDataDefinition().get(productionTracking.getId());
+
+        String state = productionTracking.getStringField(ProductionTrackingFields.STATE);
+
+        if (!ProductionTrackingStateStringValues.ACCEPTED.equals(state)) {
+            return Lists.newArrayList(translate("productFlowThruDivision.productionTracking.error.documentsPosting.notAccepted"));
+        }
+
+        productionTrackingListenerServicePFTD.createWarehouseDocuments(productionTracking);
+
+        if (!productionTracking.getGlobalErrors().isEmpty()) {
+            return productionTracking.getGlobalErrors().stream()
+                    .map(error -> translate(error.getMessage(), error.getVars())).collect(Collectors.toList());
+        }
+
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.POSTED.getStrValue());
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.ATTEMPTS,
+                getAttempts(productionTrackingDocumentsPosting) + 1);
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.FAIL_CAUSE, null);
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.POST_DATE, new Date());
+
+        productionTrackingDocumentsPosting = productionTrackingDocumentsPostingDD.save(productionTrackingDocumentsPosting);
+
+        if (!productionTrackingDocumentsPosting.isValid()) {
+            throw new IllegalStateException("Production tracking posting " + postingId + " is invalid after posting");
+        }
+
+        return Lists.newArrayList();
+    }
+
+    private boolean lockPendingPosting(final Long postingId) {
+        String sql = "SELECT id FROM productflowthrudivision_productiontrackingdocumentsposting "
+                + "WHERE id = :postingId AND state = :state FOR UPDATE";
+
+        MapSqlParameterSource params = new MapSqlParameterSource();
+
+        params.addValue("postingId", postingId);
+        params.addValue("state", ProductionTrackingDocumentsPostingState.PENDING.getStrValue());
+
+        return !jdbcTemplate.queryForList(sql, params, Long.class).isEmpty();
+    }
+
+    @Transactional
+    private void markAsFailed(final Long postingId, final String failCause, final boolean canBeRetried) {
+        DataDefinition productionTrackingDocumentsPostingDD = getProductionTrackingDocumentsPostingDD();
+
+        Entity productionTrackingDocumentsPosting = productionTrackingDocumentsPostingDD.get(postingId);
+
+        if (Objects.isNull(productionTrackingDocumentsPosting)) {
+            return;
+        }
+
+        int attempts = getAttempts(productionTrackingDocumentsPosting) + 1;
+
+        if (!canBeRetried || (attempts >= L_MAX_ATTEMPTS)) {
+            productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.STATE,
+                    ProductionTrackingDocumentsPostingState.FAILED.getStrValue());
+        }
+
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.ATTEMPTS, attempts);
+        productionTrackingDocumentsPosting.setField(ProductionTrackingDocumentsPostingFields.FAIL_CAUSE, failCause);
+
+        productionTrackingDocumentsPostingDD.save(productionTrackingDocumentsPosting);
+    }
+
+    private int getAttempts(final Entity productionTrackingDocumentsPosting) {
+        Integer attempts = productionTrackingDocumentsPosting.getIntegerField(ProductionTrackingDocumentsPostingFields.ATTEMPTS);
+
+        return Objects.isNull(attempts) ? 0 : attempts;
+    }
+
+    private boolean isLockConflict(final Throwable throwable) {
+        for (Throwable cause : Throwables.getCausalChain(throwable)) {
+            if (cause instanceof ConcurrencyFailureException) {
+                return true;
+            }
+            if ((cause instanceof SQLException) && L_LOCK_CONFLICT_SQL_STATES.contains(((SQLException) cause).getSQLState())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean waitBeforeRetry(final int retry) {
+        try {
+            Thread.sleep(L_LOCK_RETRY_DELAY * retry);
+
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
+    private String translate(final String messageCode, final String... args) {
+        return translationService.translate(messageCode, LocaleContextHolder.getLocale(), args);
+    }
+
+    private DataDefinition getProductionTrackingDocumentsPostingDD() {
+        return dataDefinitionService.get(ProductFlowThruDivisionConstants.PLUGIN_IDENTIFIER,
+                ProductFlowThruDivisionConstants.MODEL_PRODUCTION_TRACKING_DOCUMENTS_POSTING);
+    }
+
+}
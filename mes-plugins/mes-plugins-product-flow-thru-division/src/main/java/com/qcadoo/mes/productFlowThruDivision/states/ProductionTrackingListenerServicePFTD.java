@@ -122,11 +122,18 @@ public final class ProductionTrackingListenerServicePFTD {
     @Autowired
     private ProductionTrackingDocumentsHelper productionTrackingDocumentsHelper;
 
+    @Autowired
+    private ProductionTrackingDocumentsPostingService productionTrackingDocumentsPostingService;
+
     public Entity onAccept(final Entity productionTracking, final String sourceState) {
         boolean isCorrection = productionTracking.getBooleanField(ProductionTrackingFields.IS_CORRECTION);
 
         if (!isCorrection && !ProductionTrackingStateStringValues.CORRECTED.equals(sourceState)) {
-            createWarehouseDocuments(productionTracking);
+            if (productionTrackingDocumentsPostingService.isAsynchronousPostingEnabled()) {
+                productionTrackingDocumentsPostingService.registerPosting(productionTracking);
+            } else {
+                createWarehouseDocuments(productionTracking);
+            }
         }
 
         return productionTracking;
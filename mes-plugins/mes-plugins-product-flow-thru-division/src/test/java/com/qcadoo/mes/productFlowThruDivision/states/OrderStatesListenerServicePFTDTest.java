@@ -0,0 +1,66 @@
+package com.qcadoo.mes.productFlowThruDivision.states;
+
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.basic.ParameterService;
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.model.api.Entity;
+
+public class OrderStatesListenerServicePFTDTest {
+
+    private OrderStatesListenerServicePFTD orderStatesListenerServicePFTD;
+
+    @Mock
+    private ProductionTrackingDocumentsPostingService productionTrackingDocumentsPostingService;
+
+    @Mock
+    private ParameterService parameterService;
+
+    @Mock
+    private StateChangeContext stateChangeContext;
+
+    @Mock
+    private Entity order;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        orderStatesListenerServicePFTD = new OrderStatesListenerServicePFTD();
+
+        ReflectionTestUtils.setField(orderStatesListenerServicePFTD, "productionTrackingDocumentsPostingService",
+                productionTrackingDocumentsPostingService);
+        ReflectionTestUtils.setField(orderStatesListenerServicePFTD, "parameterService", parameterService);
+
+        given(stateChangeContext.getOwner()).willReturn(order);
+    }
+
+    @Test
+    public void shouldNotCompleteOrderWhenPendingDocumentsCouldNotBePosted() {
+        // given
+        given(productionTrackingDocumentsPostingService.postPendingPostingsForOrder(order)).willReturn(
+                Lists.newArrayList("Production record is no longer accepted."));
+
+        // when
+        orderStatesListenerServicePFTD.acceptInboundDocumentsForOrder(stateChangeContext);
+
+        // then
+        verify(stateChangeContext).addValidationError(
+                "productFlowThruDivision.productionTracking.completeOrderError.postWarehouseDocuments",
+                "Production record is no longer accepted.");
+        verify(stateChangeContext, never()).setOwner(any(Entity.class));
+        verifyZeroInteractions(parameterService);
+    }
+
+}
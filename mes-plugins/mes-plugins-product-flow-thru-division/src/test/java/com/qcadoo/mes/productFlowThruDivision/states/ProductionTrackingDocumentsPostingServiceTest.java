@@ -0,0 +1,322 @@
+package com.qcadoo.mes.productFlowThruDivision.states;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentMatcher;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductFlowThruDivisionConstants;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsPostingFields;
+import com.qcadoo.mes.productFlowThruDivision.constants.ProductionTrackingDocumentsPostingState;
+import com.qcadoo.mes.productionCounting.constants.ProductionTrackingFields;
+import com.qcadoo.mes.productionCounting.states.constants.ProductionTrackingStateStringValues;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchCriterion;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchProjections;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ SearchRestrictions.class, SearchOrders.class, SearchProjections.class })
+public class ProductionTrackingDocumentsPostingServiceTest {
+
+    private static final Long L_POSTING_ID = 1L;
+
+    private static final Long L_PRODUCTION_TRACKING_ID = 2L;
+
+    private static final Long L_ORDER_ID = 3L;
+
+    private static final String L_LOCK_POSTING = "SELECT id FROM productflowthrudivision_productiontrackingdocumentsposting";
+
+    private ProductionTrackingDocumentsPostingService productionTrackingDocumentsPostingService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ProductionTrackingListenerServicePFTD productionTrackingListenerServicePFTD;
+
+    @Mock
+    private DataDefinition postingDD, productionTrackingDD;
+
+    @Mock
+    private SearchCriteriaBuilder postingsCriteria;
+
+    @Mock
+    private SearchResult postingsResult;
+
+    @Mock
+    private Entity postingProjection, posting, productionTracking, order;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productionTrackingDocumentsPostingService = new ProductionTrackingDocumentsPostingService();
+
+        ReflectionTestUtils.setField(productionTrackingDocumentsPostingService, "dataDefinitionService", dataDefinitionService);
+        ReflectionTestUtils.setField(productionTrackingDocumentsPostingService, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(productionTrackingDocumentsPostingService, "productionTrackingListenerServicePFTD",
+                productionTrackingListenerServicePFTD);
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+        PowerMockito.mockStatic(SearchOrders.class);
+        PowerMockito.mockStatic(SearchProjections.class);
+
+        given(dataDefinitionService.get(ProductFlowThruDivisionConstants.PLUGIN_IDENTIFIER,
+                ProductFlowThruDivisionConstants.MODEL_PRODUCTION_TRACKING_DOCUMENTS_POSTING)).willReturn(postingDD);
+
+        given(postingDD.find()).willReturn(postingsCriteria);
+        given(postingsCriteria.createAlias(anyString(), anyString(), any(JoinType.class))).willReturn(postingsCriteria);
+        given(postingsCriteria.add(any(SearchCriterion.class))).willReturn(postingsCriteria);
+        given(postingsCriteria.setProjection(any())).willReturn(postingsCriteria);
+        given(postingsCriteria.addOrder(any())).willReturn(postingsCriteria);
+        given(postingsCriteria.setMaxResults(anyInt())).willReturn(postingsCriteria);
+        given(postingsCriteria.list()).willReturn(postingsResult);
+        given(postingsResult.getEntities()).willReturn(Lists.newArrayList(postingProjection));
+        given(postingProjection.getField("id")).willReturn(L_POSTING_ID);
+
+        given(postingDD.get(L_POSTING_ID)).willReturn(posting);
+        given(postingDD.save(posting)).willReturn(posting);
+        given(posting.isValid()).willReturn(true);
+        given(posting.getBelongsToField(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING)).willReturn(
+                productionTracking);
+
+        given(productionTracking.getId()).willReturn(L_PRODUCTION_TRACKING_ID);
+        given(productionTracking.getDataDefinition()).willReturn(productionTrackingDD);
+        given(productionTrackingDD.get(L_PRODUCTION_TRACKING_ID)).willReturn(productionTracking);
+        given(productionTracking.getStringField(ProductionTrackingFields.STATE)).willReturn(
+                ProductionTrackingStateStringValues.ACCEPTED);
+
+        given(order.getId()).willReturn(L_ORDER_ID);
+
+        stubLock(true);
+    }
+
+    @Test
+    public void shouldSkipPostingWhichIsNotPendingAnymore() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.POSTED, 1);
+
+        // when
+        productionTrackingDocumentsPostingService.postWarehouseDocuments();
+
+        // then
+        verify(productionTrackingListenerServicePFTD, never()).createWarehouseDocuments(any(Entity.class));
+        verify(postingDD, never()).save(any(Entity.class));
+    }
+
+    @Test
+    public void shouldMarkPendingPostingAsPosted() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 0);
+
+        // when
+        productionTrackingDocumentsPostingService.postWarehouseDocuments();
+
+        // then
+        verify(productionTrackingListenerServicePFTD).createWarehouseDocuments(productionTracking);
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.POSTED.getStrValue());
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.ATTEMPTS, 1);
+        verify(postingDD).save(posting);
+    }
+
+    @Test
+    public void shouldRetryLockConflictAndKeepPostingPendingForNextRun() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 0);
+
+        willThrow(new ConcurrencyFailureException("lock conflict")).given(productionTrackingListenerServicePFTD)
+                .createWarehouseDocuments(productionTracking);
+
+        // when
+        productionTrackingDocumentsPostingService.postWarehouseDocuments();
+
+        // then
+        verify(productionTrackingListenerServicePFTD, times(3)).createWarehouseDocuments(productionTracking);
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.ATTEMPTS, 1);
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.FAIL_CAUSE, "lock conflict");
+        verify(posting, never()).setField(eq(ProductionTrackingDocumentsPostingFields.STATE), any());
+        verify(postingDD).save(posting);
+    }
+
+    @Test
+    public void shouldMarkPostingAsFailedWhenLockConflictReachesMaxAttempts() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 4);
+
+        willThrow(new ConcurrencyFailureException("lock conflict")).given(productionTrackingListenerServicePFTD)
+                .createWarehouseDocuments(productionTracking);
+
+        // when
+        productionTrackingDocumentsPostingService.postWarehouseDocuments();
+
+        // then
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.FAILED.getStrValue());
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.ATTEMPTS, 5);
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.FAIL_CAUSE, "lock conflict");
+    }
+
+    @Test
+    public void shouldMarkPostingAsFailedAtOnceWhenItIsNotLockConflict() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 0);
+
+        willThrow(new IllegalStateException("failure")).given(productionTrackingListenerServicePFTD).createWarehouseDocuments(
+                productionTracking);
+
+        // when
+        productionTrackingDocumentsPostingService.postWarehouseDocuments();
+
+        // then
+        verify(productionTrackingListenerServicePFTD).createWarehouseDocuments(productionTracking);
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.FAILED.getStrValue());
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.FAIL_CAUSE, "failure");
+    }
+
+    @Test
+    public void shouldSkipPostingLockedAndPostedByAnotherTransaction() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 0);
+        stubLock(false);
+
+        // when
+        productionTrackingDocumentsPostingService.postWarehouseDocuments();
+
+        // then
+        verify(productionTrackingListenerServicePFTD, never()).createWarehouseDocuments(any(Entity.class));
+        verify(postingDD, never()).save(any(Entity.class));
+    }
+
+    @Test
+    public void shouldPostPendingPostingsOfOrder() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 0);
+
+        // when
+        List<String> errors = productionTrackingDocumentsPostingService.postPendingPostingsForOrder(order);
+
+        // then
+        assertTrue(errors.isEmpty());
+
+        PowerMockito.verifyStatic();
+        SearchRestrictions.eq(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING + "." + ProductionTrackingFields.ORDER
+                + ".id", L_ORDER_ID);
+
+        verify(jdbcTemplate).queryForList(startsWith(L_LOCK_POSTING), argThat(hasPostingId(L_POSTING_ID)), eq(Long.class));
+        verify(productionTrackingListenerServicePFTD).createWarehouseDocuments(productionTracking);
+        verify(posting).setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.POSTED.getStrValue());
+        verify(postingDD).save(posting);
+    }
+
+    @Test
+    public void shouldNotPostPostingsOfOrderPostedMeanwhile() {
+        // given
+        stubPosting(ProductionTrackingDocumentsPostingState.PENDING, 0);
+        stubLock(false);
+
+        // when
+        List<String> errors = productionTrackingDocumentsPostingService.postPendingPostingsForOrder(order);
+
+        // then
+        assertTrue(errors.isEmpty());
+
+        verify(productionTrackingListenerServicePFTD, never()).createWarehouseDocuments(any(Entity.class));
+    }
+
+    @Test
+    public void shouldNotRegisterPostingWhenNotFailedOneExists() {
+        // given
+        given(postingDD.count(any(SearchCriterion.class))).willReturn(1L);
+
+        // when
+        productionTrackingDocumentsPostingService.registerPosting(productionTracking);
+
+        // then
+        verify(postingDD, never()).create();
+        verify(postingDD, never()).save(any(Entity.class));
+    }
+
+    @Test
+    public void shouldRegisterPendingPosting() {
+        // given
+        Entity newPosting = mock(Entity.class);
+
+        given(postingDD.count(any(SearchCriterion.class))).willReturn(0L);
+        given(postingDD.create()).willReturn(newPosting);
+        given(postingDD.save(newPosting)).willReturn(newPosting);
+        given(newPosting.isValid()).willReturn(true);
+
+        // when
+        productionTrackingDocumentsPostingService.registerPosting(productionTracking);
+
+        // then
+        verify(newPosting).setField(ProductionTrackingDocumentsPostingFields.PRODUCTION_TRACKING, L_PRODUCTION_TRACKING_ID);
+        verify(newPosting).setField(ProductionTrackingDocumentsPostingFields.STATE,
+                ProductionTrackingDocumentsPostingState.PENDING.getStrValue());
+        verify(postingDD).save(newPosting);
+        verify(productionTracking, never()).addGlobalError(anyString());
+    }
+
+    private void stubLock(final boolean isPending) {
+        given(jdbcTemplate.queryForList(startsWith(L_LOCK_POSTING), any(SqlParameterSource.class), eq(Long.class))).willReturn(
+                isPending ? Lists.newArrayList(L_POSTING_ID) : Lists.<Long> newArrayList());
+    }
+
+    private ArgumentMatcher<SqlParameterSource> hasPostingId(final Long postingId) {
+        return new ArgumentMatcher<SqlParameterSource>() {
+
+            @Override
+            public boolean matches(final Object params) {
+                return (params instanceof MapSqlParameterSource)
+                        && postingId.equals(((MapSqlParameterSource) params).getValue("postingId"));
+            }
+
+        };
+    }
+
+    private void stubPosting(final ProductionTrackingDocumentsPostingState state, final int attempts) {
+        given(posting.getStringField(ProductionTrackingDocumentsPostingFields.STATE)).willReturn(state.getStrValue());
+        given(posting.getIntegerField(ProductionTrackingDocumentsPostingFields.ATTEMPTS)).willReturn(attempts);
+    }
+
+}
@@ -127,8 +127,16 @@ public class ProductionBalanceDetailsListeners {
     }
 
     public void printProductionBalance(final ViewDefinitionState view, final ComponentState state, final String[] args) {
-        reportService.printGeneratedReport(view, state, new String[] { args[0], ProductionCountingConstants.PLUGIN_IDENTIFIER,
-                ProductionCountingConstants.MODEL_PRODUCTION_BALANCE });
+        Entity productionBalance = productionCountingService.getProductionBalance((Long) state.getFieldValue());
+
+        if ((productionBalance != null)
+                && StringUtils.isNotEmpty(productionBalance.getStringField(ProductionBalanceFields.FILE_NAME))
+                && productionBalanceXlsService.getDocumentFile(productionBalance).exists()) {
+            view.redirectTo("/productionCounting/productionBalance.xlsx?id=" + productionBalance.getId(), true, false);
+        } else {
+            reportService.printGeneratedReport(view, state, new String[] { args[0], ProductionCountingConstants.PLUGIN_IDENTIFIER,
+                    ProductionCountingConstants.MODEL_PRODUCTION_BALANCE });
+        }
     }
 
     public final void addAllRelatedOrders(final ViewDefinitionState view, final ComponentState state, final String[] args) {
@@ -0,0 +1,58 @@
+package com.qcadoo.mes.productionCounting.xls;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+
+import com.qcadoo.mes.productionCounting.ProductionCountingService;
+import com.qcadoo.model.api.Entity;
+
+@Controller
+final class ProductionBalanceController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ProductionBalanceController.class);
+
+    private static final String L_XLSX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
+
+    @Autowired
+    private ProductionCountingService productionCountingService;
+
+    @Autowired
+    private ProductionBalanceXlsService productionBalanceXlsService;
+
+    @RequestMapping(value = "/productionCounting/productionBalance.xlsx", method = RequestMethod.GET)
+    public void printProductionBalance(@RequestParam("id") final Long productionBalanceId, final HttpServletResponse response) {
+        Entity productionBalance = productionCountingService.getProductionBalance(productionBalanceId);
+
+        if (productionBalance == null) {
+            response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+
+            return;
+        }
+
+        File documentFile = productionBalanceXlsService.getDocumentFile(productionBalance);
+
+        response.setContentType(L_XLSX_CONTENT_TYPE);
+        response.setHeader("Content-disposition", "attachment; filename=" + documentFile.getName());
+
+        try (InputStream inputStream = new FileInputStream(documentFile)) {
+            IOUtils.copy(inputStream, response.getOutputStream());
+            response.flushBuffer();
+        } catch (IOException e) {
+            LOG.error("Problem with printing productionBalance report - " + e.getMessage());
+        }
+    }
+
+}
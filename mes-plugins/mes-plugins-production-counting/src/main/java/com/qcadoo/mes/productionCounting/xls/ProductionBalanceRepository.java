@@ -13,21 +13,51 @@ import com.qcadoo.mes.productionCounting.xls.dto.ProducedQuantity;
 import com.qcadoo.mes.productionCounting.xls.dto.ProductionCost;
 import com.qcadoo.model.api.Entity;
 
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.support.AbstractSqlTypeValue;
 import org.springframework.stereotype.Repository;
 
 @Repository
 class ProductionBalanceRepository {
 
+    private static final int L_FETCH_SIZE = 1000;
+
+    private static final String L_BIGINT = "int8";
+
+    private static final String L_NUMERIC = "numeric";
+
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
-    List<ProducedQuantity> getProducedQuantities(final List<Long> ordersIds) {
+    private NamedParameterJdbcTemplate streamingJdbcTemplate;
+
+    @PostConstruct
+    public void init() {
+        JdbcTemplate fetchingJdbcTemplate = new JdbcTemplate(((JdbcTemplate) jdbcTemplate.getJdbcOperations()).getDataSource());
+        fetchingJdbcTemplate.setFetchSize(L_FETCH_SIZE);
+
+        streamingJdbcTemplate = new NamedParameterJdbcTemplate(fetchingJdbcTemplate);
+    }
+
+    void getProducedQuantities(final List<Long> ordersIds, Consumer<ProducedQuantity> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -56,8 +86,39 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, productNumber, productName, productUnit, prodWaste.producedWastes ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProducedQuantity.class));
+        stream(query.toString(), ordersIds, ProducedQuantity.class, consumer);
+    }
+
+    private <T> void stream(final String query, final List<Long> ordersIds, final Class<T> rowClass,
+            final Consumer<T> consumer) {
+        RowMapper<T> rowMapper = BeanPropertyRowMapper.newInstance(rowClass);
+
+        streamingJdbcTemplate.query(query, createOrdersIdsParameters(ordersIds),
+                (RowCallbackHandler) resultSet -> consumer.accept(rowMapper.mapRow(resultSet, resultSet.getRow())));
+    }
+
+    private MapSqlParameterSource createOrdersIdsParameters(final List<Long> ordersIds) {
+        MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+        appendArray(parameters, "ordersIds", L_BIGINT, ordersIds, orderId -> orderId);
+
+        return parameters;
+    }
+
+    private <T> String appendArray(final MapSqlParameterSource parameters, final String name, final String typeName,
+            final Collection<T> values, final Function<T, Object> valueExtractor) {
+        Object[] array = values.stream().map(valueExtractor).toArray();
+
+        parameters.addValue(name, new AbstractSqlTypeValue() {
+
+            @Override
+            protected Object createTypeValue(final Connection connection, final int sqlType, final String sqlTypeName)
+                    throws SQLException {
+                return connection.createArrayOf(typeName, array);
+            }
+        }, Types.ARRAY);
+
+        return ":" + name;
     }
 
     private void appendProducedQuantity(StringBuilder query) {
@@ -65,10 +126,10 @@ class ProductionBalanceRepository {
     }
 
     private void appendWhereClause(StringBuilder query) {
-        query.append("WHERE o.id IN (:ordersIds) ");
+        query.append("WHERE o.id = ANY(:ordersIds) ");
     }
 
-    List<MaterialCost> getMaterialCosts(Entity entity, List<Long> ordersIds) {
+    void getMaterialCosts(Entity entity, List<Long> ordersIds, Consumer<MaterialCost> consumer) {
         StringBuilder query = new StringBuilder();
         appendCumulatedPlannedQuantities(query);
         appendMaterialCostsSelectionClause(query, entity);
@@ -91,8 +152,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY o.id, o.number, op.number, p.number, p.name, p.unit, topic.wasteunit, q.replacementTo) ");
         query.append("ORDER BY orderNumber, operationNumber, productNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(MaterialCost.class));
+        stream(query.toString(), ordersIds, MaterialCost.class, consumer);
     }
 
     private void appendForEachPlannedQuantities(StringBuilder query) {
@@ -248,7 +308,7 @@ class ProductionBalanceRepository {
         query.append("(COALESCE(SUM(topic.usedquantity), 0) - MIN(q.childsQuantity)) ");
     }
 
-    List<PieceworkDetails> getPieceworkDetails(List<Long> ordersIds) {
+    void getPieceworkDetails(List<Long> ordersIds, Consumer<PieceworkDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -263,11 +323,10 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber ");
         query.append("ORDER BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(PieceworkDetails.class));
+        stream(query.toString(), ordersIds, PieceworkDetails.class, consumer);
     }
 
-    List<LaborTime> getLaborTime(List<Long> ordersIds) {
+    void getLaborTime(List<Long> ordersIds, Consumer<LaborTime> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
@@ -289,11 +348,10 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, operationNumber, staffNumber, staffName, staffSurname, staffLaborHourlyCost, wageGroupName ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTime.class));
+        stream(query.toString(), ordersIds, LaborTime.class, consumer);
     }
 
-    List<LaborTimeDetails> getLaborTimeDetails(Entity entity, List<Long> ordersIds) {
+    void getLaborTimeDetails(Entity entity, List<Long> ordersIds, Consumer<LaborTimeDetails> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -400,11 +458,10 @@ class ProductionBalanceRepository {
         query.append("AND o.typeofproductionrecording = '03forEach') ");
         query.append("ORDER BY orderNumber, operationNumber, staffNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(LaborTimeDetails.class));
+        stream(query.toString(), ordersIds, LaborTimeDetails.class, consumer);
     }
 
-    List<ProductionCost> getProductionCosts(Entity entity, List<Long> ordersIds) {
+    void getProductionCosts(Entity entity, List<Long> ordersIds, Consumer<ProductionCost> consumer) {
         StringBuilder query = new StringBuilder();
         query.append("(WITH planned_time (order_id, staff_time, machine_time) AS (SELECT o.id AS orderId, ");
         appendPlannedStaffTime(entity, query);
@@ -540,8 +597,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderId, orderNumber, toc.id, operationNumber) ");
         query.append("ORDER BY orderNumber, operationNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(ProductionCost.class));
+        stream(query.toString(), ordersIds, ProductionCost.class, consumer);
     }
 
     private void appendRealStaffCosts(Entity entity, StringBuilder query, String typeOfProductionRecording) {
@@ -686,10 +742,11 @@ class ProductionBalanceRepository {
         }
     }
 
-    List<OrderBalance> getOrdersBalance(Entity entity, List<Long> ordersIds, List<MaterialCost> materialCosts,
-            List<ProductionCost> productionCosts) {
+    List<OrderBalance> getOrdersBalance(Entity entity, List<Long> ordersIds, Map<Long, BigDecimal> ordersMaterialCosts,
+            Map<Long, BigDecimal> ordersProductionCosts) {
         StringBuilder query = new StringBuilder();
-        appendOrdersBalanceWithQueries(materialCosts, productionCosts, query);
+        MapSqlParameterSource parameters = createOrdersIdsParameters(ordersIds);
+        appendOrdersBalanceWithQueries(ordersMaterialCosts, ordersProductionCosts, query, parameters);
         appendOrdersBalanceSelectionClause(entity, query);
         query.append("MIN(COALESCE(gmc.cost, 0)) AS materialCosts, ");
         query.append("MIN(gpc.cost) AS productionCosts, ");
@@ -722,36 +779,24 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderId, rootId, orderNumber, productNumber, productName ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(OrderBalance.class));
+        return jdbcTemplate.query(query.toString(), parameters, BeanPropertyRowMapper.newInstance(OrderBalance.class));
     }
 
-    private void appendOrdersBalanceWithQueries(List<MaterialCost> materialCosts, List<ProductionCost> productionCosts,
-            StringBuilder query) {
-        query.append("WITH real_material_cost (order_id, cost) AS (VALUES ");
-        if (materialCosts.isEmpty()) {
-            query.append("(NULL::numeric, NULL::numeric) ");
-        } else {
-            for (int i = 0; i < materialCosts.size(); i++) {
-                MaterialCost materialCost = materialCosts.get(i);
-                query.append("(" + materialCost.getOrderId() + ", " + materialCost.getRealCost() + ") ");
-                if (i != materialCosts.size() - 1) {
-                    query.append(", ");
-                }
-            }
-        }
-        query.append("), ");
-        query.append("grouped_material_cost AS (SELECT order_id, SUM(cost) AS cost FROM real_material_cost GROUP BY order_id), ");
-        query.append("real_production_cost (order_id, cost) AS (VALUES ");
-        for (int i = 0; i < productionCosts.size(); i++) {
-            ProductionCost productionCost = productionCosts.get(i);
-            query.append("(" + productionCost.getOrderId() + ", " + productionCost.getRealCostsSum() + ") ");
-            if (i != productionCosts.size() - 1) {
-                query.append(", ");
-            }
-        }
-        query.append("), ");
-        query.append("grouped_production_cost AS (SELECT order_id, SUM(cost) AS cost FROM real_production_cost GROUP BY order_id) ");
+    private void appendOrdersBalanceWithQueries(Map<Long, BigDecimal> ordersMaterialCosts,
+            Map<Long, BigDecimal> ordersProductionCosts, StringBuilder query, MapSqlParameterSource parameters) {
+        query.append("WITH grouped_material_cost (order_id, cost) AS (SELECT * FROM unnest(");
+        query.append(appendArray(parameters, "materialCostsOrdersIds", L_BIGINT, ordersMaterialCosts.entrySet(),
+                Map.Entry::getKey));
+        query.append(", ");
+        query.append(appendArray(parameters, "materialCosts", L_NUMERIC, ordersMaterialCosts.entrySet(), Map.Entry::getValue));
+        query.append(")), ");
+        query.append("grouped_production_cost (order_id, cost) AS (SELECT * FROM unnest(");
+        query.append(appendArray(parameters, "productionCostsOrdersIds", L_BIGINT, ordersProductionCosts.entrySet(),
+                Map.Entry::getKey));
+        query.append(", ");
+        query.append(appendArray(parameters, "productionCosts", L_NUMERIC, ordersProductionCosts.entrySet(),
+                Map.Entry::getValue));
+        query.append(")) ");
     }
 
     private void appendOrdersBalanceSelectionClause(Entity entity, StringBuilder query) {
@@ -854,7 +899,8 @@ class ProductionBalanceRepository {
 
     List<OrderBalance> getComponentsBalance(Entity entity, List<Long> ordersIds, List<OrderBalance> ordersBalance) {
         StringBuilder query = new StringBuilder();
-        appendComponentsBalanceWithQueries(ordersBalance, query);
+        MapSqlParameterSource parameters = createOrdersIdsParameters(ordersIds);
+        appendComponentsBalanceWithQueries(ordersBalance, query, parameters);
         query.append("SELECT ");
         query.append("o.number AS orderNumber, ");
         query.append("prod.id AS productId, ");
@@ -900,8 +946,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY orderNumber, productId, productNumber, productName ");
         query.append("ORDER BY orderNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(OrderBalance.class));
+        return jdbcTemplate.query(query.toString(), parameters, BeanPropertyRowMapper.newInstance(OrderBalance.class));
     }
 
     private void appendComponentsBalanceProfitValue(Entity entity, StringBuilder query) {
@@ -933,32 +978,39 @@ class ProductionBalanceRepository {
         query.append("ELSE 0 END ");
     }
 
-    private void appendComponentsBalanceWithQueries(List<OrderBalance> ordersBalance, StringBuilder query) {
+    private void appendComponentsBalanceWithQueries(List<OrderBalance> ordersBalance, StringBuilder query,
+            MapSqlParameterSource parameters) {
         query.append("WITH order_balance (order_id, root_id, material_costs, ");
         query.append("production_costs, technical_production_costs, material_cost_margin_value, ");
         query.append("production_cost_margin_value, additional_overhead, direct_additional_cost, total_costs ");
-        query.append(") AS (VALUES ");
-
-        for (int i = 0; i < ordersBalance.size(); i++) {
-            OrderBalance orderBalance = ordersBalance.get(i);
-            query.append("(");
-            query.append(orderBalance.getOrderId() + ", ");
-            query.append(orderBalance.getRootId() + "::INTEGER, ");
-            query.append(orderBalance.getMaterialCosts() + ", ");
-            query.append(orderBalance.getProductionCosts() + ", ");
-            query.append(orderBalance.getTechnicalProductionCosts() + ", ");
-            query.append(orderBalance.getMaterialCostMarginValue() + ", ");
-            query.append(orderBalance.getProductionCostMarginValue() + ", ");
-            query.append(orderBalance.getAdditionalOverhead() + ", ");
-            query.append(orderBalance.getDirectAdditionalCost() + ", ");
-            query.append(orderBalance.getTotalCosts());
-            query.append(") ");
-            if (i != ordersBalance.size() - 1) {
-                query.append(", ");
-            }
-
-        }
-        query.append("), ");
+        query.append(") AS (SELECT * FROM unnest(");
+        query.append(appendArray(parameters, "ordersBalanceOrderId", L_BIGINT, ordersBalance, OrderBalance::getOrderId));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceRootId", L_BIGINT, ordersBalance, OrderBalance::getRootId));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceMaterialCosts", L_NUMERIC, ordersBalance,
+                OrderBalance::getMaterialCosts));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceProductionCosts", L_NUMERIC, ordersBalance,
+                OrderBalance::getProductionCosts));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceTechnicalProductionCosts", L_NUMERIC, ordersBalance,
+                OrderBalance::getTechnicalProductionCosts));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceMaterialCostMarginValue", L_NUMERIC, ordersBalance,
+                OrderBalance::getMaterialCostMarginValue));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceProductionCostMarginValue", L_NUMERIC, ordersBalance,
+                OrderBalance::getProductionCostMarginValue));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceAdditionalOverhead", L_NUMERIC, ordersBalance,
+                OrderBalance::getAdditionalOverhead));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceDirectAdditionalCost", L_NUMERIC, ordersBalance,
+                OrderBalance::getDirectAdditionalCost));
+        query.append(", ");
+        query.append(appendArray(parameters, "ordersBalanceTotalCosts", L_NUMERIC, ordersBalance, OrderBalance::getTotalCosts));
+        query.append(")), ");
         query.append("order_balance_rec AS (WITH RECURSIVE order_balance_rec AS ");
         query.append("(SELECT order_id, order_id AS root_id, material_costs, ");
         query.append("production_costs, technical_production_costs, material_cost_margin_value, ");
@@ -978,7 +1030,8 @@ class ProductionBalanceRepository {
 
     List<OrderBalance> getProductsBalance(Entity entity, List<Long> ordersIds, List<OrderBalance> componentsBalance) {
         StringBuilder query = new StringBuilder();
-        appendProductsBalanceWithQueries(componentsBalance, query);
+        MapSqlParameterSource parameters = createOrdersIdsParameters(ordersIds);
+        appendProductsBalanceWithQueries(componentsBalance, query, parameters);
         query.append("SELECT ");
         query.append("prod.number AS productNumber, ");
         query.append("prod.name AS productName, ");
@@ -1019,8 +1072,7 @@ class ProductionBalanceRepository {
         query.append("GROUP BY productNumber, productName ");
         query.append("ORDER BY productNumber ");
 
-        return jdbcTemplate.query(query.toString(), new MapSqlParameterSource("ordersIds", ordersIds),
-                BeanPropertyRowMapper.newInstance(OrderBalance.class));
+        return jdbcTemplate.query(query.toString(), parameters, BeanPropertyRowMapper.newInstance(OrderBalance.class));
     }
 
     private void appendProductsBalanceProfitValue(Entity entity, StringBuilder query) {
@@ -1048,35 +1100,42 @@ class ProductionBalanceRepository {
         query.append("/ MIN(gcb.produced_quantity) ELSE 0 END ");
     }
 
-    private void appendProductsBalanceWithQueries(List<OrderBalance> componentsBalance, StringBuilder query) {
+    private void appendProductsBalanceWithQueries(List<OrderBalance> componentsBalance, StringBuilder query,
+            MapSqlParameterSource parameters) {
         query.append("WITH component_balance (product_id, produced_quantity, material_costs, ");
         query.append("production_costs, technical_production_costs, material_cost_margin_value, ");
         query.append("production_cost_margin_value, additional_overhead, direct_additional_cost, total_costs ");
-        query.append(") AS (VALUES ");
-        if (componentsBalance.isEmpty()) {
-            query.append("(NULL::integer, NULL::numeric, NULL::numeric, NULL::numeric, NULL::numeric, NULL::numeric, ");
-            query.append("NULL::numeric, NULL::numeric, NULL::numeric, NULL::numeric) ");
-        } else {
-            for (int i = 0; i < componentsBalance.size(); i++) {
-                OrderBalance orderBalance = componentsBalance.get(i);
-                query.append("(");
-                query.append(orderBalance.getProductId() + ", ");
-                query.append(orderBalance.getProducedQuantity() + ", ");
-                query.append(orderBalance.getMaterialCosts() + ", ");
-                query.append(orderBalance.getProductionCosts() + ", ");
-                query.append(orderBalance.getTechnicalProductionCosts() + ", ");
-                query.append(orderBalance.getMaterialCostMarginValue() + ", ");
-                query.append(orderBalance.getProductionCostMarginValue() + ", ");
-                query.append(orderBalance.getAdditionalOverhead() + ", ");
-                query.append(orderBalance.getDirectAdditionalCost() + ", ");
-                query.append(orderBalance.getTotalCosts());
-                query.append(") ");
-                if (i != componentsBalance.size() - 1) {
-                    query.append(", ");
-                }
-            }
-        }
-        query.append("), ");
+        query.append(") AS (SELECT * FROM unnest(");
+        query.append(appendArray(parameters, "componentsBalanceProductId", L_BIGINT, componentsBalance,
+                OrderBalance::getProductId));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceProducedQuantity", L_NUMERIC, componentsBalance,
+                OrderBalance::getProducedQuantity));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceMaterialCosts", L_NUMERIC, componentsBalance,
+                OrderBalance::getMaterialCosts));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceProductionCosts", L_NUMERIC, componentsBalance,
+                OrderBalance::getProductionCosts));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceTechnicalProductionCosts", L_NUMERIC, componentsBalance,
+                OrderBalance::getTechnicalProductionCosts));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceMaterialCostMarginValue", L_NUMERIC, componentsBalance,
+                OrderBalance::getMaterialCostMarginValue));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceProductionCostMarginValue", L_NUMERIC, componentsBalance,
+                OrderBalance::getProductionCostMarginValue));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceAdditionalOverhead", L_NUMERIC, componentsBalance,
+                OrderBalance::getAdditionalOverhead));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceDirectAdditionalCost", L_NUMERIC, componentsBalance,
+                OrderBalance::getDirectAdditionalCost));
+        query.append(", ");
+        query.append(appendArray(parameters, "componentsBalanceTotalCosts", L_NUMERIC, componentsBalance,
+                OrderBalance::getTotalCosts));
+        query.append(")), ");
         query.append("grouped_component_balance AS (SELECT product_id, SUM(produced_quantity) AS produced_quantity, ");
         query.append("SUM(material_costs) AS material_costs, SUM(production_costs) AS production_costs, ");
         query.append("SUM(technical_production_costs) AS technical_production_costs, SUM(material_cost_margin_value) AS material_cost_margin_value, ");
@@ -1,39 +1,44 @@
 package com.qcadoo.mes.productionCounting.xls;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.qcadoo.localization.api.TranslationService;
 import com.qcadoo.mes.productionCounting.constants.ProductionBalanceFields;
-import com.qcadoo.mes.productionCounting.xls.dto.LaborTime;
-import com.qcadoo.mes.productionCounting.xls.dto.LaborTimeDetails;
-import com.qcadoo.mes.productionCounting.xls.dto.MaterialCost;
 import com.qcadoo.mes.productionCounting.xls.dto.OrderBalance;
-import com.qcadoo.mes.productionCounting.xls.dto.PieceworkDetails;
-import com.qcadoo.mes.productionCounting.xls.dto.ProducedQuantity;
-import com.qcadoo.mes.productionCounting.xls.dto.ProductionCost;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.NumberService;
-import com.qcadoo.report.api.xls.XlsDocumentService;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.stream.Collectors;
 
-import org.apache.poi.hssf.usermodel.HSSFCell;
-import org.apache.poi.hssf.usermodel.HSSFCellStyle;
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.IndexedColors;
-import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 @Service
-public class ProductionBalanceXlsService extends XlsDocumentService {
+public class ProductionBalanceXlsService {
+
+    private static final String L_XLSX_EXTENSION = "xlsx";
+
+    private static final int L_ROW_ACCESS_WINDOW_SIZE = 100;
+
+    private static final int L_COLUMN_WIDTH = 5000;
 
     @Autowired
     private TranslationService translationService;
@@ -47,56 +52,45 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
     private static final List<String> PRODUCTION_QUANTITIES_HEADERS = Lists.newArrayList("orderNumber", "productNumber",
             "productName", "plannedQuantity", "producedQuantity", "wastesQuantity", "producedWastes", "deviation", "productUnit");
 
-    @Override
-    protected void addHeader(HSSFSheet sheet, Locale locale, Entity entity) {
-
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        HSSFRow headerRow = sheet.createRow(0);
-        int columnIndex = 0;
-        for (String key : PRODUCTION_QUANTITIES_HEADERS) {
-            createHeaderCell(stylesContainer, headerRow,
-                    translationService.translate("productionCounting.productionBalance.report.xls.header." + key, locale),
-                    columnIndex, HSSFCellStyle.ALIGN_LEFT);
-            columnIndex++;
-        }
-    }
+    public void generateDocument(final Entity entity, final Locale locale) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(L_ROW_ACCESS_WINDOW_SIZE);
+        workbook.setCompressTempFiles(true);
 
-    @Override
-    protected void addSeries(HSSFSheet sheet, Entity entity) {
-        List<Long> ordersIds = getOrdersIds(entity);
+        try {
+            createSheets(workbook, entity, locale);
 
-        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
-        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        createProducedQuantitiesSheet(sheet, ordersIds, stylesContainer);
+            try (OutputStream outputStream = new FileOutputStream(getDocumentFile(entity))) {
+                workbook.write(outputStream);
+            }
+        } finally {
+            workbook.dispose();
+        }
     }
 
-    @Override
-    public String getReportTitle(Locale locale) {
-        return translationService.translate("productionCounting.productionBalance.report.xls.sheet.producedQuantities", locale);
+    public File getDocumentFile(final Entity entity) {
+        return new File(entity.getStringField(ProductionBalanceFields.FILE_NAME) + "." + L_XLSX_EXTENSION);
     }
 
-    @Override
-    protected void addExtraSheets(final HSSFWorkbook workbook, Entity entity, Locale locale) {
+    private void createSheets(final Workbook workbook, final Entity entity, final Locale locale) {
         List<Long> ordersIds = getOrdersIds(entity);
-        List<MaterialCost> materialCosts = productionBalanceRepository.getMaterialCosts(entity, ordersIds);
-        createMaterialCostsSheet(materialCosts, createSheet(workbook,
+        createProducedQuantitiesSheet(createSheet(workbook,
+                translationService.translate("productionCounting.productionBalance.report.xls.sheet.producedQuantities", locale)),
+                ordersIds, locale);
+        Map<Long, BigDecimal> ordersMaterialCosts = createMaterialCostsSheet(entity, ordersIds, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts", locale)),
                 locale);
         createLaborTimeSheet(createSheet(workbook, translationService.translate(LaborTimeSheetConstants.SHEET_TITLE, locale)),
                 ordersIds, locale);
-        List<LaborTimeDetails> laborTimeDetailsList = productionBalanceRepository.getLaborTimeDetails(entity, ordersIds);
-        createLaborTimeDetailsSheet(laborTimeDetailsList, createSheet(workbook,
+        createLaborTimeDetailsSheet(entity, ordersIds, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.laborTimeDetails", locale)),
                 locale);
         createPieceworkSheet(createSheet(workbook, translationService.translate(PieceworkSheetConstants.SHEET_TITLE, locale)),
                 ordersIds, locale);
-        List<ProductionCost> productionCosts = productionBalanceRepository.getProductionCosts(entity, ordersIds);
-        createProductionCostsSheet(productionCosts, createSheet(workbook,
+        Map<Long, BigDecimal> ordersProductionCosts = createProductionCostsSheet(entity, ordersIds, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.productionCosts", locale)),
                 locale);
-        List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, materialCosts,
-                productionCosts);
+        List<OrderBalance> ordersBalance = productionBalanceRepository.getOrdersBalance(entity, ordersIds, ordersMaterialCosts,
+                ordersProductionCosts);
         createOrdersBalanceSheet(ordersBalance, createSheet(workbook,
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance", locale)),
                 locale);
@@ -110,17 +104,30 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 locale);
     }
 
+    private Sheet createSheet(final Workbook workbook, final String sheetName) {
+        return workbook.createSheet(WorkbookUtil.createSafeSheetName(sheetName));
+    }
+
     private List<Long> getOrdersIds(final Entity productionBalance) {
 
         List<Entity> orders = productionBalance.getHasManyField(ProductionBalanceFields.ORDERS);
         return orders.stream().map(Entity::getId).collect(Collectors.toList());
     }
 
-    private void createProducedQuantitiesSheet(HSSFSheet sheet, List<Long> ordersIds, StylesContainer stylesContainer) {
-        List<ProducedQuantity> producedQuantities = productionBalanceRepository.getProducedQuantities(ordersIds);
-        int rowIndex = 1;
-        for (ProducedQuantity producedQuantity : producedQuantities) {
-            HSSFRow row = sheet.createRow(rowIndex);
+    private void createProducedQuantitiesSheet(final Sheet sheet, final List<Long> ordersIds, final Locale locale) {
+        final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
+        final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
+        Row headerRow = sheet.createRow(0);
+        int columnIndex = 0;
+        for (String key : PRODUCTION_QUANTITIES_HEADERS) {
+            createHeaderCell(stylesContainer, headerRow,
+                    translationService.translate("productionCounting.productionBalance.report.xls.header." + key, locale),
+                    columnIndex, CellStyle.ALIGN_LEFT);
+            columnIndex++;
+        }
+
+        productionBalanceRepository.getProducedQuantities(ordersIds, producedQuantity -> {
+            Row row = sheet.createRow(sheet.getLastRowNum() + 1);
             createRegularCell(stylesContainer, row, 0, producedQuantity.getOrderNumber());
             createRegularCell(stylesContainer, row, 1, producedQuantity.getProductNumber());
             createRegularCell(stylesContainer, row, 2, producedQuantity.getProductName());
@@ -130,19 +137,16 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 6, producedQuantity.getProducedWastes(), false);
             createNumericCell(stylesContainer, row, 7, producedQuantity.getDeviation(), false);
             createRegularCell(stylesContainer, row, 8, producedQuantity.getProductUnit());
-            rowIndex++;
-        }
-
-        for (int i = 0; i < PRODUCTION_QUANTITIES_HEADERS.size(); i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        });
+        setColumnsWidths(sheet, PRODUCTION_QUANTITIES_HEADERS.size());
     }
 
-    private void createMaterialCostsSheet(List<MaterialCost> materialCosts, HSSFSheet sheet, Locale locale) {
+    private Map<Long, BigDecimal> createMaterialCostsSheet(final Entity entity, final List<Long> ordersIds, final Sheet sheet,
+            final Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        final Map<Long, BigDecimal> ordersMaterialCosts = Maps.newHashMap();
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.orderNumber", locale),
@@ -198,35 +202,33 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 translationService.translate("productionCounting.productionBalance.report.xls.sheet.materialCosts.unit", locale),
                 13, CellStyle.ALIGN_LEFT);
 
-        int rowCounter = 0;
-        for (MaterialCost materialCost : materialCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, materialCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, materialCost.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, materialCost.getProductNumber());
-            createRegularCell(stylesContainer, row, 3, materialCost.getProductName());
-            createRegularCell(stylesContainer, row, 4, materialCost.getReplacementTo());
-            createNumericCell(stylesContainer, row, 5, materialCost.getPlannedQuantity(), false);
-            createNumericCell(stylesContainer, row, 6, materialCost.getUsedQuantity(), true);
-            createNumericCell(stylesContainer, row, 7, materialCost.getQuantitativeDeviation(), false);
-            createRegularCell(stylesContainer, row, 8, materialCost.getProductUnit());
-            createNumericCell(stylesContainer, row, 9, materialCost.getPlannedCost(), false);
-            createNumericCell(stylesContainer, row, 10, materialCost.getRealCost(), true);
-            createNumericCell(stylesContainer, row, 11, materialCost.getValueDeviation(), false);
-            createNumericCell(stylesContainer, row, 12, materialCost.getUsedWasteQuantity(), false);
-            createRegularCell(stylesContainer, row, 13, materialCost.getUsedWasteUnit());
-            rowCounter++;
-        }
-        for (int i = 0; i <= 13; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        productionBalanceRepository.getMaterialCosts(entity, ordersIds, materialCost -> {
+            Row dataRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, dataRow, 0, materialCost.getOrderNumber());
+            createRegularCell(stylesContainer, dataRow, 1, materialCost.getOperationNumber());
+            createRegularCell(stylesContainer, dataRow, 2, materialCost.getProductNumber());
+            createRegularCell(stylesContainer, dataRow, 3, materialCost.getProductName());
+            createRegularCell(stylesContainer, dataRow, 4, materialCost.getReplacementTo());
+            createNumericCell(stylesContainer, dataRow, 5, materialCost.getPlannedQuantity(), false);
+            createNumericCell(stylesContainer, dataRow, 6, materialCost.getUsedQuantity(), true);
+            createNumericCell(stylesContainer, dataRow, 7, materialCost.getQuantitativeDeviation(), false);
+            createRegularCell(stylesContainer, dataRow, 8, materialCost.getProductUnit());
+            createNumericCell(stylesContainer, dataRow, 9, materialCost.getPlannedCost(), false);
+            createNumericCell(stylesContainer, dataRow, 10, materialCost.getRealCost(), true);
+            createNumericCell(stylesContainer, dataRow, 11, materialCost.getValueDeviation(), false);
+            createNumericCell(stylesContainer, dataRow, 12, materialCost.getUsedWasteQuantity(), false);
+            createRegularCell(stylesContainer, dataRow, 13, materialCost.getUsedWasteUnit());
+            addOrderCost(ordersMaterialCosts, materialCost.getOrderId(), materialCost.getRealCost());
+        });
+        setColumnsWidths(sheet, 14);
+
+        return ordersMaterialCosts;
     }
 
-    private void createPieceworkSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createPieceworkSheet(final Sheet sheet, final List<Long> ordersIds, final Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.ORDER_NUMBER, locale), 0,
                 CellStyle.ALIGN_LEFT);
         createHeaderCell(stylesContainer, row, translationService.translate(PieceworkSheetConstants.OPERATION_NUMBER, locale), 1,
@@ -235,25 +237,19 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                 translationService.translate(PieceworkSheetConstants.TOTAL_EXECUTED_OPERATION_CYCLES, locale), 2,
                 CellStyle.ALIGN_LEFT);
 
-        List<PieceworkDetails> pieceworkDetailsList = productionBalanceRepository.getPieceworkDetails(ordersIds);
-        int rowCounter = 0;
-        for (PieceworkDetails pieceworkDetails : pieceworkDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, pieceworkDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, pieceworkDetails.getOperationNumber());
-            createNumericCell(stylesContainer, row, 2, pieceworkDetails.getTotalExecutedOperationCycles(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 2; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        productionBalanceRepository.getPieceworkDetails(ordersIds, pieceworkDetails -> {
+            Row dataRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, dataRow, 0, pieceworkDetails.getOrderNumber());
+            createRegularCell(stylesContainer, dataRow, 1, pieceworkDetails.getOperationNumber());
+            createNumericCell(stylesContainer, dataRow, 2, pieceworkDetails.getTotalExecutedOperationCycles(), false);
+        });
+        setColumnsWidths(sheet, 3);
     }
 
-    private void createLaborTimeSheet(HSSFSheet sheet, List<Long> ordersIds, Locale locale) {
+    private void createLaborTimeSheet(final Sheet sheet, final List<Long> ordersIds, final Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.ORDER_NUMBER, locale), 0,
                 CellStyle.ALIGN_LEFT);
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.OPERATION_NUMBER, locale), 1,
@@ -271,30 +267,25 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
         createHeaderCell(stylesContainer, row, translationService.translate(LaborTimeSheetConstants.LABOR_TIME, locale), 7,
                 CellStyle.ALIGN_LEFT);
 
-        List<LaborTime> laborTimeList = productionBalanceRepository.getLaborTime(ordersIds);
-        int rowCounter = 0;
-        for (LaborTime laborTime : laborTimeList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTime.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, laborTime.getOperationNumber());
-            createRegularCell(stylesContainer, row, 2, laborTime.getStaffNumber());
-            createRegularCell(stylesContainer, row, 3, laborTime.getStaffName());
-            createRegularCell(stylesContainer, row, 4, laborTime.getStaffSurname());
-            createRegularCell(stylesContainer, row, 5, laborTime.getWageGroupName());
-            createNumericCell(stylesContainer, row, 6, laborTime.getStaffLaborHourlyCost(), false);
-            createTimeCell(stylesContainer, row, 7, laborTime.getLaborTime(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 7; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        productionBalanceRepository.getLaborTime(ordersIds, laborTime -> {
+            Row dataRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, dataRow, 0, laborTime.getOrderNumber());
+            createRegularCell(stylesContainer, dataRow, 1, laborTime.getOperationNumber());
+            createRegularCell(stylesContainer, dataRow, 2, laborTime.getStaffNumber());
+            createRegularCell(stylesContainer, dataRow, 3, laborTime.getStaffName());
+            createRegularCell(stylesContainer, dataRow, 4, laborTime.getStaffSurname());
+            createRegularCell(stylesContainer, dataRow, 5, laborTime.getWageGroupName());
+            createNumericCell(stylesContainer, dataRow, 6, laborTime.getStaffLaborHourlyCost(), false);
+            createTimeCell(stylesContainer, dataRow, 7, laborTime.getLaborTime(), false);
+        });
+        setColumnsWidths(sheet, 8);
     }
 
-    private void createLaborTimeDetailsSheet(List<LaborTimeDetails> laborTimeDetailsList, HSSFSheet sheet, Locale locale) {
+    private void createLaborTimeDetailsSheet(final Entity entity, final List<Long> ordersIds, final Sheet sheet,
+            final Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer, row,
                 translationService.translate(
                         "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.divisionNumber", locale),
@@ -400,48 +391,45 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                         "productionCounting.productionBalance.report.xls.sheet.laborTimeDetails.machineTimeDeviation", locale),
                 25, CellStyle.ALIGN_LEFT);
 
-        int rowCounter = 0;
-        for (LaborTimeDetails laborTimeDetails : laborTimeDetailsList) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, laborTimeDetails.getDivisionNumber());
-            createRegularCell(stylesContainer, row, 1, laborTimeDetails.getProductionLineNumber());
-            createRegularCell(stylesContainer, row, 2, laborTimeDetails.getOrderNumber());
-            createRegularCell(stylesContainer, row, 3, translationService.translate(
+        productionBalanceRepository.getLaborTimeDetails(entity, ordersIds, laborTimeDetails -> {
+            Row dataRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, dataRow, 0, laborTimeDetails.getDivisionNumber());
+            createRegularCell(stylesContainer, dataRow, 1, laborTimeDetails.getProductionLineNumber());
+            createRegularCell(stylesContainer, dataRow, 2, laborTimeDetails.getOrderNumber());
+            createRegularCell(stylesContainer, dataRow, 3, translationService.translate(
                     "orders.order.state.value." + laborTimeDetails.getOrderState(), locale));
-            createDateTimeCell(stylesContainer, row, 4, laborTimeDetails.getPlannedDateFrom());
-            createDateTimeCell(stylesContainer, row, 5, laborTimeDetails.getEffectiveDateFrom());
-            createDateTimeCell(stylesContainer, row, 6, laborTimeDetails.getPlannedDateTo());
-            createDateTimeCell(stylesContainer, row, 7, laborTimeDetails.getEffectiveDateTo());
-            createRegularCell(stylesContainer, row, 8, laborTimeDetails.getProductNumber());
-            createRegularCell(stylesContainer, row, 9, laborTimeDetails.getOrderName());
-            createNumericCell(stylesContainer, row, 10, laborTimeDetails.getPlannedQuantity(), false);
-            createNumericCell(stylesContainer, row, 11, laborTimeDetails.getAmountOfProductProduced(), false);
-            createRegularCell(stylesContainer, row, 12, laborTimeDetails.getStaffNumber());
-            createRegularCell(stylesContainer, row, 13, laborTimeDetails.getStaffName());
-            createRegularCell(stylesContainer, row, 14, laborTimeDetails.getStaffSurname());
-            createRegularCell(stylesContainer, row, 15, laborTimeDetails.getOperationNumber());
-            createDateTimeCell(stylesContainer, row, 16, laborTimeDetails.getTimeRangeFrom());
-            createDateTimeCell(stylesContainer, row, 17, laborTimeDetails.getTimeRangeTo());
-            createRegularCell(stylesContainer, row, 18, laborTimeDetails.getShiftName());
-            createDateTimeCell(stylesContainer, row, 19, laborTimeDetails.getCreateDate());
-            createTimeCell(stylesContainer, row, 20, laborTimeDetails.getLaborTime(), false);
-            createTimeCell(stylesContainer, row, 21, laborTimeDetails.getPlannedLaborTime(), false);
-            createTimeCell(stylesContainer, row, 22, laborTimeDetails.getLaborTimeDeviation(), false);
-            createTimeCell(stylesContainer, row, 23, laborTimeDetails.getMachineTime(), false);
-            createTimeCell(stylesContainer, row, 24, laborTimeDetails.getPlannedMachineTime(), false);
-            createTimeCell(stylesContainer, row, 25, laborTimeDetails.getMachineTimeDeviation(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 25; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+            createDateTimeCell(stylesContainer, dataRow, 4, laborTimeDetails.getPlannedDateFrom());
+            createDateTimeCell(stylesContainer, dataRow, 5, laborTimeDetails.getEffectiveDateFrom());
+            createDateTimeCell(stylesContainer, dataRow, 6, laborTimeDetails.getPlannedDateTo());
+            createDateTimeCell(stylesContainer, dataRow, 7, laborTimeDetails.getEffectiveDateTo());
+            createRegularCell(stylesContainer, dataRow, 8, laborTimeDetails.getProductNumber());
+            createRegularCell(stylesContainer, dataRow, 9, laborTimeDetails.getOrderName());
+            createNumericCell(stylesContainer, dataRow, 10, laborTimeDetails.getPlannedQuantity(), false);
+            createNumericCell(stylesContainer, dataRow, 11, laborTimeDetails.getAmountOfProductProduced(), false);
+            createRegularCell(stylesContainer, dataRow, 12, laborTimeDetails.getStaffNumber());
+            createRegularCell(stylesContainer, dataRow, 13, laborTimeDetails.getStaffName());
+            createRegularCell(stylesContainer, dataRow, 14, laborTimeDetails.getStaffSurname());
+            createRegularCell(stylesContainer, dataRow, 15, laborTimeDetails.getOperationNumber());
+            createDateTimeCell(stylesContainer, dataRow, 16, laborTimeDetails.getTimeRangeFrom());
+            createDateTimeCell(stylesContainer, dataRow, 17, laborTimeDetails.getTimeRangeTo());
+            createRegularCell(stylesContainer, dataRow, 18, laborTimeDetails.getShiftName());
+            createDateTimeCell(stylesContainer, dataRow, 19, laborTimeDetails.getCreateDate());
+            createTimeCell(stylesContainer, dataRow, 20, laborTimeDetails.getLaborTime(), false);
+            createTimeCell(stylesContainer, dataRow, 21, laborTimeDetails.getPlannedLaborTime(), false);
+            createTimeCell(stylesContainer, dataRow, 22, laborTimeDetails.getLaborTimeDeviation(), false);
+            createTimeCell(stylesContainer, dataRow, 23, laborTimeDetails.getMachineTime(), false);
+            createTimeCell(stylesContainer, dataRow, 24, laborTimeDetails.getPlannedMachineTime(), false);
+            createTimeCell(stylesContainer, dataRow, 25, laborTimeDetails.getMachineTimeDeviation(), false);
+        });
+        setColumnsWidths(sheet, 26);
     }
 
-    private void createProductionCostsSheet(List<ProductionCost> productionCosts, HSSFSheet sheet, Locale locale) {
+    private Map<Long, BigDecimal> createProductionCostsSheet(final Entity entity, final List<Long> ordersIds,
+            final Sheet sheet, final Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
-        final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        final Map<Long, BigDecimal> ordersProductionCosts = Maps.newHashMap();
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.productionCosts.orderNumber", locale),
@@ -511,38 +499,37 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
                         "productionCounting.productionBalance.report.xls.sheet.productionCosts.realPieceworkCosts", locale),
                 16, CellStyle.ALIGN_LEFT);
 
-        int rowCounter = 0;
-        for (ProductionCost productionCost : productionCosts) {
-            row = sheet.createRow(rowOffset + rowCounter);
-            createRegularCell(stylesContainer, row, 0, productionCost.getOrderNumber());
-            createRegularCell(stylesContainer, row, 1, productionCost.getOperationNumber());
-            createNumericCell(stylesContainer, row, 2, productionCost.getPlannedCostsSum(), false);
-            createNumericCell(stylesContainer, row, 3, productionCost.getRealCostsSum(), false);
-            createNumericCell(stylesContainer, row, 4, productionCost.getSumCostsDeviation(), false);
-            createTimeCell(stylesContainer, row, 5, productionCost.getPlannedStaffTime(), false);
-            createTimeCell(stylesContainer, row, 6, productionCost.getRealStaffTime(), true);
-            createTimeCell(stylesContainer, row, 7, productionCost.getPlannedMachineTime(), false);
-            createTimeCell(stylesContainer, row, 8, productionCost.getRealMachineTime(), true);
-            createNumericCell(stylesContainer, row, 9, productionCost.getPlannedStaffCosts(), false);
-            createNumericCell(stylesContainer, row, 10, productionCost.getRealStaffCosts(), false);
-            createNumericCell(stylesContainer, row, 11, productionCost.getStaffCostsDeviation(), false);
-            createNumericCell(stylesContainer, row, 12, productionCost.getPlannedMachineCosts(), false);
-            createNumericCell(stylesContainer, row, 13, productionCost.getRealMachineCosts(), false);
-            createNumericCell(stylesContainer, row, 14, productionCost.getMachineCostsDeviation(), false);
-            createNumericCell(stylesContainer, row, 15, productionCost.getPlannedPieceworkCosts(), false);
-            createNumericCell(stylesContainer, row, 16, productionCost.getRealPieceworkCosts(), false);
-            rowCounter++;
-        }
-        for (int i = 0; i <= 16; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        productionBalanceRepository.getProductionCosts(entity, ordersIds, productionCost -> {
+            Row dataRow = sheet.createRow(sheet.getLastRowNum() + 1);
+            createRegularCell(stylesContainer, dataRow, 0, productionCost.getOrderNumber());
+            createRegularCell(stylesContainer, dataRow, 1, productionCost.getOperationNumber());
+            createNumericCell(stylesContainer, dataRow, 2, productionCost.getPlannedCostsSum(), false);
+            createNumericCell(stylesContainer, dataRow, 3, productionCost.getRealCostsSum(), false);
+            createNumericCell(stylesContainer, dataRow, 4, productionCost.getSumCostsDeviation(), false);
+            createTimeCell(stylesContainer, dataRow, 5, productionCost.getPlannedStaffTime(), false);
+            createTimeCell(stylesContainer, dataRow, 6, productionCost.getRealStaffTime(), true);
+            createTimeCell(stylesContainer, dataRow, 7, productionCost.getPlannedMachineTime(), false);
+            createTimeCell(stylesContainer, dataRow, 8, productionCost.getRealMachineTime(), true);
+            createNumericCell(stylesContainer, dataRow, 9, productionCost.getPlannedStaffCosts(), false);
+            createNumericCell(stylesContainer, dataRow, 10, productionCost.getRealStaffCosts(), false);
+            createNumericCell(stylesContainer, dataRow, 11, productionCost.getStaffCostsDeviation(), false);
+            createNumericCell(stylesContainer, dataRow, 12, productionCost.getPlannedMachineCosts(), false);
+            createNumericCell(stylesContainer, dataRow, 13, productionCost.getRealMachineCosts(), false);
+            createNumericCell(stylesContainer, dataRow, 14, productionCost.getMachineCostsDeviation(), false);
+            createNumericCell(stylesContainer, dataRow, 15, productionCost.getPlannedPieceworkCosts(), false);
+            createNumericCell(stylesContainer, dataRow, 16, productionCost.getRealPieceworkCosts(), false);
+            addOrderCost(ordersProductionCosts, productionCost.getOrderId(), productionCost.getRealCostsSum());
+        });
+        setColumnsWidths(sheet, 17);
+
+        return ordersProductionCosts;
     }
 
-    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, HSSFSheet sheet, Locale locale) {
+    private void createOrdersBalanceSheet(List<OrderBalance> ordersBalance, Sheet sheet, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.orderNumber", locale),
@@ -657,16 +644,14 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 20, orderBalance.getSellPrice(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 20; i++) {
-            sheet.autoSizeColumn(i, false);
-        }
+        setColumnsWidths(sheet, 21);
     }
 
-    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, HSSFSheet sheet, Locale locale) {
+    private void createProductsBalanceSheet(List<OrderBalance> productsBalance, Sheet sheet, Locale locale) {
         final FontsContainer fontsContainer = new FontsContainer(sheet.getWorkbook());
         final StylesContainer stylesContainer = new StylesContainer(sheet.getWorkbook(), fontsContainer);
         final int rowOffset = 1;
-        HSSFRow row = sheet.createRow(0);
+        Row row = sheet.createRow(0);
         createHeaderCell(stylesContainer,
                 row, translationService
                         .translate("productionCounting.productionBalance.report.xls.sheet.ordersBalance.productNumber", locale),
@@ -776,58 +761,70 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             createNumericCell(stylesContainer, row, 19, orderBalance.getSellPrice(), false);
             rowCounter++;
         }
-        for (int i = 0; i <= 19; i++) {
-            sheet.autoSizeColumn(i, false);
+        setColumnsWidths(sheet, 20);
+    }
+
+    private void addOrderCost(final Map<Long, BigDecimal> ordersCosts, final Long orderId, final BigDecimal cost) {
+        if (cost == null) {
+            ordersCosts.putIfAbsent(orderId, null);
+        } else {
+            ordersCosts.merge(orderId, cost, BigDecimal::add);
+        }
+    }
+
+    private void setColumnsWidths(final Sheet sheet, final int columnsCount) {
+        for (int i = 0; i < columnsCount; i++) {
+            sheet.setColumnWidth(i, L_COLUMN_WIDTH);
         }
     }
 
-    private HSSFCell createRegularCell(StylesContainer stylesContainer, HSSFRow row, int column, String content) {
-        HSSFCell cell = row.createCell(column);
+    private Cell createRegularCell(StylesContainer stylesContainer, Row row, int column, String content) {
+        Cell cell = row.createCell(column);
         cell.setCellValue(content);
-        cell.setCellStyle(StylesContainer.aligned(stylesContainer.regularStyle, HSSFCellStyle.ALIGN_LEFT));
+        cell.setCellStyle(StylesContainer.aligned(stylesContainer.regularStyle, CellStyle.ALIGN_LEFT));
         return cell;
     }
 
-    private HSSFCell createNumericCell(StylesContainer stylesContainer, HSSFRow row, int column, BigDecimal value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
+    private Cell createNumericCell(StylesContainer stylesContainer, Row row, int column, BigDecimal value, boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
         cell.setCellValue(numberService.setScaleWithDefaultMathContext(value, 2).doubleValue());
         if (bold) {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberBoldStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberBoldStyle, CellStyle.ALIGN_RIGHT));
         } else {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(StylesContainer.aligned(stylesContainer.numberStyle, CellStyle.ALIGN_RIGHT));
         }
         return cell;
     }
 
-    private HSSFCell createTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Integer value, boolean bold) {
-        HSSFCell cell = row.createCell(column, HSSFCell.CELL_TYPE_NUMERIC);
+    private Cell createTimeCell(StylesContainer stylesContainer, Row row, int column, Integer value, boolean bold) {
+        Cell cell = row.createCell(column, Cell.CELL_TYPE_NUMERIC);
         if (value == null) {
             value = 0;
         }
         cell.setCellValue(Math.abs(value) / 86400d);
         if (value >= 0) {
             if (bold) {
-                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeBoldStyle, HSSFCellStyle.ALIGN_RIGHT));
+                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeBoldStyle, CellStyle.ALIGN_RIGHT));
             } else {
-                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeStyle, HSSFCellStyle.ALIGN_RIGHT));
+                cell.setCellStyle(StylesContainer.aligned(stylesContainer.timeStyle, CellStyle.ALIGN_RIGHT));
             }
         } else {
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.negativeTimeStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(StylesContainer.aligned(stylesContainer.negativeTimeStyle, CellStyle.ALIGN_RIGHT));
         }
         return cell;
     }
 
-    private HSSFCell createDateTimeCell(StylesContainer stylesContainer, HSSFRow row, int column, Date value) {
-        HSSFCell cell = row.createCell(column);
+    private Cell createDateTimeCell(StylesContainer stylesContainer, Row row, int column, Date value) {
+        Cell cell = row.createCell(column);
         if (value != null) {
             cell.setCellValue(value);
-            cell.setCellStyle(StylesContainer.aligned(stylesContainer.dateTimeStyle, HSSFCellStyle.ALIGN_RIGHT));
+            cell.setCellStyle(StylesContainer.aligned(stylesContainer.dateTimeStyle, CellStyle.ALIGN_RIGHT));
         }
         return cell;
     }
 
-    private HSSFCell createHeaderCell(StylesContainer stylesContainer, HSSFRow row, String content, int column, short align) {
-        HSSFCell cell = row.createCell(column);
+    private Cell createHeaderCell(StylesContainer stylesContainer, Row row, String content, int column, short align) {
+        Cell cell = row.createCell(column);
         cell.setCellValue(content);
         cell.setCellStyle(StylesContainer.aligned(stylesContainer.headerStyle, align));
         return cell;
@@ -835,31 +832,31 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
     private static class StylesContainer {
 
-        private final HSSFCellStyle regularStyle;
+        private final CellStyle regularStyle;
 
-        private final HSSFCellStyle headerStyle;
+        private final CellStyle headerStyle;
 
-        private final HSSFCellStyle timeStyle;
+        private final CellStyle timeStyle;
 
-        private final HSSFCellStyle timeBoldStyle;
+        private final CellStyle timeBoldStyle;
 
-        private final HSSFCellStyle negativeTimeStyle;
+        private final CellStyle negativeTimeStyle;
 
-        private final HSSFCellStyle numberStyle;
+        private final CellStyle numberStyle;
 
-        private final HSSFCellStyle numberBoldStyle;
+        private final CellStyle numberBoldStyle;
 
-        private final HSSFCellStyle dateTimeStyle;
+        private final CellStyle dateTimeStyle;
 
-        StylesContainer(HSSFWorkbook workbook, FontsContainer fontsContainer) {
+        StylesContainer(Workbook workbook, FontsContainer fontsContainer) {
             regularStyle = workbook.createCellStyle();
-            regularStyle.setVerticalAlignment(HSSFCellStyle.VERTICAL_CENTER);
+            regularStyle.setVerticalAlignment(CellStyle.VERTICAL_CENTER);
 
             headerStyle = workbook.createCellStyle();
             headerStyle.setFont(fontsContainer.boldFont);
-            headerStyle.setFillPattern(XSSFCellStyle.SOLID_FOREGROUND);
+            headerStyle.setFillPattern(CellStyle.SOLID_FOREGROUND);
             headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-            headerStyle.setBorderBottom(XSSFCellStyle.BORDER_MEDIUM);
+            headerStyle.setBorderBottom(CellStyle.BORDER_MEDIUM);
             headerStyle.setWrapText(true);
 
             timeStyle = workbook.createCellStyle();
@@ -883,7 +880,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
             dateTimeStyle.setDataFormat(workbook.createDataFormat().getFormat("yyyy-mm-dd hh:mm"));
         }
 
-        private static HSSFCellStyle aligned(HSSFCellStyle style, short align) {
+        private static CellStyle aligned(CellStyle style, short align) {
             style.setAlignment(align);
             return style;
         }
@@ -894,7 +891,7 @@ public class ProductionBalanceXlsService extends XlsDocumentService {
 
         private final Font boldFont;
 
-        FontsContainer(HSSFWorkbook workbook) {
+        FontsContainer(Workbook workbook) {
             boldFont = workbook.createFont();
             boldFont.setBoldweight(Font.BOLDWEIGHT_BOLD);
         }
@@ -0,0 +1,40 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.model.api.validators.ErrorMessage;
+import com.qcadoo.model.api.validators.GlobalMessage;
+import com.qcadoo.view.api.ComponentMessagesHolder;
+import com.qcadoo.view.api.ComponentState;
+
+/**
+ * Collects messages of a single state change, so that they can be passed to the view after the change (possibly run on a worker
+ * thread) is finished.
+ */
+public class StateChangeMessages {
+
+    private final List<Consumer<ComponentMessagesHolder>> messages = Lists.newArrayList();
+
+    public void addMessage(final String message, final ComponentState.MessageType messageType) {
+        messages.add(messagesHolder -> messagesHolder.addMessage(message, messageType));
+    }
+
+    public void addMessage(final ErrorMessage errorMessage) {
+        messages.add(messagesHolder -> messagesHolder.addMessage(errorMessage));
+    }
+
+    public void addMessage(final GlobalMessage globalMessage) {
+        messages.add(messagesHolder -> messagesHolder.addMessage(globalMessage));
+    }
+
+    public void addMessages(final StateChangeMessages stateChangeMessages) {
+        messages.addAll(stateChangeMessages.messages);
+    }
+
+    public void copyTo(final ComponentMessagesHolder messagesHolder) {
+        messages.forEach(message -> message.accept(messagesHolder));
+    }
+
+}
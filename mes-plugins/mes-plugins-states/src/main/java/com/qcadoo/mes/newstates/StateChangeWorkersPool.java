@@ -0,0 +1,143 @@
+package com.qcadoo.mes.newstates;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.qcadoo.mes.basic.util.ThreadContextPropagation;
+
+/**
+ * Bounded pool running state changes of many entities at once. Tasks run in the tenant, locale and security context of the
+ * thread submitting them. The request itself isn't shared with workers - each task gets its own request scope, so request
+ * scoped beans used by nested state changes are created per task and destroyed when it's finished.
+ */
+@Service
+public class StateChangeWorkersPool {
+
+    private static final int L_POOL_SIZE = 4;
+
+    @Autowired
+    private ThreadContextPropagation threadContextPropagation;
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(L_POOL_SIZE,
+            new ThreadFactoryBuilder().setNameFormat("state-change-%d").setDaemon(true).build());
+
+    public <T> List<T> invokeAll(final List<Callable<T>> tasks) {
+        List<Callable<T>> contextTasks = tasks.stream()
+                .map(task -> threadContextPropagation.withCurrentContext(withRequestScope(task))).collect(Collectors.toList());
+
+        try {
+            List<T> results = Lists.newArrayList();
+
+            for (Future<T> future : executorService.invokeAll(contextTasks)) {
+                results.add(future.get());
+            }
+
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("State changes were interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("State change task failed", e.getCause());
+        }
+    }
+
+    private <T> Callable<T> withRequestScope(final Callable<T> task) {
+        return () -> {
+            TaskRequestAttributes requestAttributes = new TaskRequestAttributes();
+
+            RequestContextHolder.setRequestAttributes(requestAttributes);
+
+            try {
+                return task.call();
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+
+                requestAttributes.requestCompleted();
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Request scope of a single task, confined to the worker thread running it. There is no session, so session attributes are
+     * kept with request ones.
+     */
+    private static final class TaskRequestAttributes implements RequestAttributes {
+
+        private final Map<String, Object> attributes = Maps.newHashMap();
+
+        private final Map<String, Runnable> destructionCallbacks = Maps.newLinkedHashMap();
+
+        private final Object sessionMutex = new Object();
+
+        @Override
+        public Object getAttribute(final String name, final int scope) {
+            return attributes.get(name);
+        }
+
+        @Override
+        public void setAttribute(final String name, final Object value, final int scope) {
+            attributes.put(name, value);
+        }
+
+        @Override
+        public void removeAttribute(final String name, final int scope) {
+            attributes.remove(name);
+            destructionCallbacks.remove(name);
+        }
+
+        @Override
+        public String[] getAttributeNames(final int scope) {
+            return attributes.keySet().toArray(new String[attributes.size()]);
+        }
+
+        @Override
+        public void registerDestructionCallback(final String name, final Runnable callback, final int scope) {
+            destructionCallbacks.put(name, callback);
+        }
+
+        @Override
+        public Object resolveReference(final String key) {
+            return null;
+        }
+
+        @Override
+        public String getSessionId() {
+            return Thread.currentThread().getName();
+        }
+
+        @Override
+        public Object getSessionMutex() {
+            return sessionMutex;
+        }
+
+        private void requestCompleted() {
+            destructionCallbacks.values().forEach(Runnable::run);
+            destructionCallbacks.clear();
+            attributes.clear();
+        }
+
+    }
+
+}
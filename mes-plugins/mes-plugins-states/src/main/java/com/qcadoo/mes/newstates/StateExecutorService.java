@@ -9,6 +9,8 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.stream.Collectors;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -33,13 +35,13 @@ import com.qcadoo.mes.states.exception.StateTransitionNotAlloweException;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.exception.EntityRuntimeException;
 import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
 import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.validators.ErrorMessage;
 import com.qcadoo.model.api.validators.GlobalMessage;
 import com.qcadoo.plugin.api.PluginUtils;
 import com.qcadoo.plugin.api.RunIfEnabled;
 import com.qcadoo.security.api.SecurityService;
-import com.qcadoo.view.api.ComponentMessagesHolder;
 import com.qcadoo.view.api.ComponentState;
 import com.qcadoo.view.api.ViewDefinitionState;
 import com.qcadoo.view.api.components.FormComponent;
@@ -62,26 +64,21 @@ public class StateExecutorService {
     @Autowired
     private SecurityService securityService;
 
-    private ComponentMessagesHolder componentMessagesHolder;
+    @Autowired
+    private StateChangeWorkersPool stateChangeWorkersPool;
+
+    private static final ThreadLocal<StateChangeMessages> BULK_CHANGE_MESSAGES = new ThreadLocal<>();
 
     private static final Logger LOGGER = Logger.getLogger(StateExecutorService.class);
 
     public <M extends StateService> void changeState(Class<M> serviceMarker, final ViewDefinitionState view, String[] args) {
-        componentMessagesHolder = view;
         Long userId = securityService.getCurrentUserId();
         String userLogin = securityService.getCurrentUserName();
 
         Optional<GridComponent> maybeGridComponent = view.tryFindComponentByReference("grid");
         if (maybeGridComponent.isPresent()) {
-            maybeGridComponent.get().getSelectedEntities().forEach(entity -> {
-                entity = entity.getDataDefinition().getMasterModelEntity(entity.getId());
-                entity.setField(USER_CHANGE_STATE, userId);
-
-                entity = changeState(serviceMarker, entity, userLogin, args[0]);
-
-                copyMessages(entity);
-            });
-
+            changeStates(serviceMarker, maybeGridComponent.get().getSelectedEntitiesIds(), userId, userLogin, args[0])
+                    .forEach(messages -> messages.copyTo(view));
         } else {
             Optional<FormComponent> maybeForm = view.tryFindComponentByReference("form");
             if (maybeForm.isPresent()) {
@@ -89,16 +86,95 @@ public class StateExecutorService {
                 Entity entity = formComponent.getEntity().getDataDefinition().get(formComponent.getEntityId());
                 entity.setField(USER_CHANGE_STATE, userId);
                 if (entity.isValid()) {
-                    entity = changeState(serviceMarker, entity, userLogin, args[0]);
+                    StateChangeMessages messages = new StateChangeMessages();
+
+                    BULK_CHANGE_MESSAGES.set(messages);
+
+                    try {
+                        entity = changeState(serviceMarker, entity, userLogin, args[0]);
+                    } finally {
+                        BULK_CHANGE_MESSAGES.remove();
+                    }
+
+                    messages.copyTo(view);
                     formComponent.setEntity(entity);
                 }
             }
         }
     }
 
+    /**
+     * Changes state of many entities at once - services are looked up and entities are fetched only once, and entities are
+     * changed on {@link StateChangeWorkersPool}. Each change is performed in its own transaction, so failure of one change
+     * doesn't affect the others.
+     *
+     * @return messages of each state change, in order of the changed entities
+     */
+    public <M extends StateService> List<StateChangeMessages> changeStates(Class<M> serviceMarker, Collection<Long> ids,
+            Long userId, String userLogin, String targetState) {
+        List<M> services = lookupChangeStateServices(serviceMarker);
+        StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
+
+        List<Entity> owners = getOwners(describer, ids);
+
+        if (owners.size() == 1) {
+            return Lists.newArrayList(changeStateInBulk(services, describer, owners.get(0), userId, userLogin, targetState));
+        }
+
+        List<Callable<StateChangeMessages>> tasks = owners.stream()
+                .map(entity -> (Callable<StateChangeMessages>) () -> changeStateInBulk(services, describer, entity, userId,
+                        userLogin, targetState)).collect(Collectors.toList());
+
+        return stateChangeWorkersPool.invokeAll(tasks);
+    }
+
+    private List<Entity> getOwners(StateChangeEntityDescriber describer, Collection<Long> ids) {
+        if ((ids == null) || ids.isEmpty()) {
+            return Lists.newArrayList();
+        }
+
+        return describer.getOwnerDataDefinition().find().add(SearchRestrictions.in("id", ids)).addOrder(SearchOrders.asc("id"))
+                .list().getEntities();
+    }
+
+    private <M extends StateService> StateChangeMessages changeStateInBulk(List<M> services,
+            StateChangeEntityDescriber describer, Entity entity, Long userId, String userLogin, String targetState) {
+        StateChangeMessages messages = new StateChangeMessages();
+
+        BULK_CHANGE_MESSAGES.set(messages);
+
+        try {
+            entity.setField(USER_CHANGE_STATE, userId);
+
+            entity = changeState(services, describer, entity, userLogin, targetState, messages);
+
+            copyMessages(entity, messages);
+        } catch (RuntimeException exception) {
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            LOG.warn(String.format("Can't perform state change. Entity name : %S id : %d. Target state : %S",
+                    describer.getOwnerDataDefinition().getName(), entity.getId(), targetState), exception);
+        } finally {
+            BULK_CHANGE_MESSAGES.remove();
+        }
+
+        return messages;
+    }
+
     public <M extends StateService> Entity changeState(Class<M> serviceMarker, Entity entity, String userLogin, String targetState) {
         List<M> services = lookupChangeStateServices(serviceMarker);
         StateChangeEntityDescriber describer = services.stream().findFirst().get().getChangeEntityDescriber();
+        StateChangeMessages messages = new StateChangeMessages();
+
+        entity = changeState(services, describer, entity, userLogin, targetState, messages);
+
+        passMessages(messages);
+
+        return entity;
+    }
+
+    private <M extends StateService> Entity changeState(List<M> services, StateChangeEntityDescriber describer, Entity entity,
+            String userLogin, String targetState, StateChangeMessages messages) {
         String sourceState = entity.getStringField(describer.getOwnerStateFieldName());
 
         Entity stateChangeEntity = buildStateChangeEntity(describer, entity, userLogin, sourceState, targetState);
@@ -111,47 +187,47 @@ public class StateExecutorService {
             entity = performChangeState(services, entity, stateChangeEntity, describer);
 
             if (entity.isValid()) {
-                copyMessages(entity);
+                copyMessages(entity, messages);
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.SUCCESSFUL);
-                message("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
+                messages.addMessage("states.messages.change.successful", ComponentState.MessageType.SUCCESS);
                 LOG.info(String.format("Change state successful. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
             } else {
                 saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
                 entity = rollbackStateChange(entity, sourceState);
-                message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+                messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
                 LOG.info(String.format("Change state failure. Entity name : %S id : %d. Target state : %S", entity
                         .getDataDefinition().getName(), entity.getId(), stateChangeEntity.getStringField(describer
                         .getTargetStateFieldName())));
             }
 
         } catch (EntityRuntimeException entityException) {
-            copyMessages(entityException.getEntity(), entity);
+            copyMessages(entityException.getEntity(), entity, messages);
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
             return entity;
 
         } catch (AnotherChangeInProgressException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.anotherChangeInProgress", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("Another state change in progress. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
         } catch (StateTransitionNotAlloweException e) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.transitionNotAllowed", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("State change - transition not allowed. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
         } catch (Exception exception) {
             entity = rollbackStateChange(entity, sourceState);
             saveStateChangeEntity(stateChangeEntity, StateChangeStatus.FAILURE);
-            message("states.messages.change.failure", ComponentState.MessageType.FAILURE);
-            message("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure", ComponentState.MessageType.FAILURE);
+            messages.addMessage("states.messages.change.failure.internalServerError", ComponentState.MessageType.FAILURE);
             LOG.info(String.format("State change exception. Entity name : %S id : %d. Target state : %S", entity
                     .getDataDefinition().getName(), entity.getId(), targetState));
             LOG.warn("Can't perform state change", exception);
@@ -324,28 +400,33 @@ public class StateExecutorService {
         return true;
     }
 
-    private void copyMessages(Entity entity, Entity mainEntity) {
+    private void copyMessages(Entity entity, Entity mainEntity, StateChangeMessages messages) {
         if (mainEntity != null && mainEntity.equals(entity) && entity.getGlobalErrors() == mainEntity.getGlobalErrors()) {
             return;
         }
-        if (componentMessagesHolder == null) {
-            return;
-        }
 
         for (ErrorMessage errorMessage : entity.getGlobalErrors()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            messages.addMessage(errorMessage);
         }
         for (ErrorMessage errorMessage : entity.getErrors().values()) {
-            componentMessagesHolder.addMessage(errorMessage);
+            messages.addMessage(errorMessage);
         }
 
         for (GlobalMessage globalMessage : entity.getGlobalMessages()) {
-            componentMessagesHolder.addMessage(globalMessage);
+            messages.addMessage(globalMessage);
         }
     }
 
-    private void copyMessages(Entity entity) {
-        copyMessages(entity, null);
+    private void copyMessages(Entity entity, StateChangeMessages messages) {
+        copyMessages(entity, null, messages);
+    }
+
+    private void passMessages(StateChangeMessages messages) {
+        StateChangeMessages bulkChangeMessages = BULK_CHANGE_MESSAGES.get();
+
+        if (bulkChangeMessages != null) {
+            bulkChangeMessages.addMessages(messages);
+        }
     }
 
     private Entity saveAndValidate(final Entity entity) {
@@ -360,12 +441,6 @@ public class StateExecutorService {
         return saved;
     }
 
-    private void message(String msg, ComponentState.MessageType messageType) {
-        if (componentMessagesHolder != null) {
-            componentMessagesHolder.addMessage(msg, messageType);
-        }
-    }
-
     private void checkForUnfinishedStateChange(final StateChangeEntityDescriber describer, final Entity owner) {
         final String ownerFieldName = describer.getOwnerFieldName();
         final String statusFieldName = describer.getStatusFieldName();
@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.states.aop;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.DeclarePrecedence;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Configurable;
+
+import com.qcadoo.mes.states.StateChangeContext;
+import com.qcadoo.mes.states.metrics.StateChangeListenersMetricsService;
+
+/**
+ * Measures execution time of state change listeners. Precedence puts this advice inside phase and transition filters, so only
+ * listeners which were really executed are measured.
+ */
+@Aspect
+@Configurable
+@DeclarePrecedence("com.qcadoo.mes.states.aop.RunInPhaseAspect, com.qcadoo.mes.states.aop.RunForStateTransitionAspect, "
+        + "com.qcadoo.mes.states.aop.StateChangeListenerMetricsAspect")
+public class StateChangeListenerMetricsAspect {
+
+    @Autowired
+    private StateChangeListenersMetricsService stateChangeListenersMetricsService;
+
+    @Around("StatesXpiAspect.listenerExecutionWithContext(stateChangeContext)")
+    public Object measureListenerExecution(final ProceedingJoinPoint pjp, final StateChangeContext stateChangeContext)
+            throws Throwable {
+        if (stateChangeListenersMetricsService == null) {
+            return pjp.proceed();
+        }
+
+        long startTime = System.nanoTime();
+
+        try {
+            return pjp.proceed();
+        } finally {
+            Signature signature = pjp.getSignature();
+
+            stateChangeListenersMetricsService.record(signature.getDeclaringTypeName() + "." + signature.getName(),
+                    stateChangeContext.getPhase(), System.nanoTime() - startTime);
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.states.metrics;
+
+public final class StateChangeListenerMetrics {
+
+    private final String listener;
+
+    private final int phase;
+
+    private final long invocations;
+
+    private final long totalNanos;
+
+    private final long maxNanos;
+
+    StateChangeListenerMetrics(final String listener, final int phase, final long invocations, final long totalNanos,
+            final long maxNanos) {
+        this.listener = listener;
+        this.phase = phase;
+        this.invocations = invocations;
+        this.totalNanos = totalNanos;
+        this.maxNanos = maxNanos;
+    }
+
+    public String getListener() {
+        return listener;
+    }
+
+    public int getPhase() {
+        return phase;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getTotalMillis() {
+        return toMillis(totalNanos);
+    }
+
+    public long getMaxMillis() {
+        return toMillis(maxNanos);
+    }
+
+    public long getAverageMillis() {
+        if (invocations == 0) {
+            return 0;
+        }
+
+        return toMillis(totalNanos / invocations);
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    private long toMillis(final long nanos) {
+        return nanos / 1000000L;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (phase %d): %d invocation(s), total %d ms, avg %d ms, max %d ms", listener, phase,
+                invocations, getTotalMillis(), getAverageMillis(), getMaxMillis());
+    }
+
+}
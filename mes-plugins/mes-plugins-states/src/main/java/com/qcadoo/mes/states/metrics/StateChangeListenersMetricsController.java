@@ -0,0 +1,69 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.states.metrics;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+import com.qcadoo.security.api.SecurityService;
+
+@Controller
+@RequestMapping(value = "/states/listenersMetrics")
+public class StateChangeListenersMetricsController {
+
+    private static final String L_ROLE_SUPERADMIN = "ROLE_SUPERADMIN";
+
+    @Autowired
+    private StateChangeListenersMetricsService stateChangeListenersMetricsService;
+
+    @Autowired
+    private SecurityService securityService;
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public List<StateChangeListenerMetrics> getMetrics() {
+        return stateChangeListenersMetricsService.getMetrics();
+    }
+
+    @ResponseBody
+    @RequestMapping(method = RequestMethod.DELETE)
+    public void reset(final HttpServletResponse response) {
+        if (!securityService.hasCurrentUserRole(L_ROLE_SUPERADMIN)) {
+            response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+
+            return;
+        }
+
+        stateChangeListenersMetricsService.reset();
+    }
+
+}
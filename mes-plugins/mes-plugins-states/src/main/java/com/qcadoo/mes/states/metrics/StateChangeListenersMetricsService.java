@@ -0,0 +1,128 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.states.metrics;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+/**
+ * Collects execution times of state change listeners, grouped by listener method and state change phase.
+ * 
+ * Counters are kept in memory since application start (or last {@link #reset()}) and are fed by
+ * {@link com.qcadoo.mes.states.aop.StateChangeListenerMetricsAspect}.
+ */
+@Service
+public class StateChangeListenersMetricsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StateChangeListenersMetricsService.class);
+
+    private static final long L_SLOW_LISTENER_THRESHOLD_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Map<ListenerKey, ListenerCounters> counters = new ConcurrentHashMap<>();
+
+    public void record(final String listener, final int phase, final long nanos) {
+        counters.computeIfAbsent(new ListenerKey(listener, phase), key -> new ListenerCounters()).add(nanos);
+
+        if ((nanos >= L_SLOW_LISTENER_THRESHOLD_NANOS) && LOG.isWarnEnabled()) {
+            LOG.warn(String.format("Slow state change listener %s in phase %d took %d ms", listener, phase,
+                    TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+    }
+
+    public List<StateChangeListenerMetrics> getMetrics() {
+        return counters.entrySet().stream()
+                .map(entry -> entry.getValue().toMetrics(entry.getKey()))
+                .sorted(Comparator.comparingLong(StateChangeListenerMetrics::getTotalNanos).reversed())
+                .collect(Collectors.toList());
+    }
+
+    public void reset() {
+        counters.clear();
+    }
+
+    private static final class ListenerKey {
+
+        private final String listener;
+
+        private final int phase;
+
+        private ListenerKey(final String listener, final int phase) {
+            this.listener = listener;
+            this.phase = phase;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ListenerKey)) {
+                return false;
+            }
+
+            ListenerKey other = (ListenerKey) obj;
+
+            return (phase == other.phase) && listener.equals(other.listener);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(listener, phase);
+        }
+
+    }
+
+    private static final class ListenerCounters {
+
+        private final LongAdder invocations = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0L);
+
+        private void add(final long nanos) {
+            invocations.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        private StateChangeListenerMetrics toMetrics(final ListenerKey key) {
+            return new StateChangeListenerMetrics(key.listener, key.phase, invocations.sum(), totalNanos.sum(),
+                    maxNanos.get());
+        }
+
+    }
+
+}
@@ -0,0 +1,339 @@
+package com.qcadoo.mes.newstates;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.powermock.api.mockito.PowerMockito;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.basic.ShiftsService;
+import com.qcadoo.mes.basic.util.ThreadContextPropagation;
+import com.qcadoo.mes.states.StateChangeEntityDescriber;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.security.api.SecurityService;
+import com.qcadoo.tenant.api.MultiTenantCallback;
+import com.qcadoo.tenant.api.MultiTenantService;
+import com.qcadoo.view.api.ComponentMessagesHolder;
+import com.qcadoo.view.api.ComponentState.MessageType;
+import com.qcadoo.view.api.ViewDefinitionState;
+import com.qcadoo.view.api.components.FormComponent;
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ SearchRestrictions.class, SearchOrders.class })
+public class StateExecutorServiceTest {
+
+    private static final String L_TARGET_STATE = "02accepted";
+
+    private static final int L_TENANT_ID = 5;
+
+    private static final ThreadLocal<Integer> CURRENT_TENANT_ID = new ThreadLocal<>();
+
+    private StateExecutorService stateExecutorService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private ShiftsService shiftsService;
+
+    @Mock
+    private SecurityService securityService;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private TestStateService stateService;
+
+    @Mock
+    private StateChangeEntityDescriber describer;
+
+    @Mock
+    private DataDefinition ownerDD, stateChangeDD;
+
+    @Mock
+    private SearchCriteriaBuilder ownersCriteria, stateChangesCriteria;
+
+    @Mock
+    private SearchResult ownersResult, stateChangesResult;
+
+    @Mock
+    private Entity owner1, owner2, owner3;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        stateExecutorService = new StateExecutorService();
+
+        ReflectionTestUtils.setField(stateExecutorService, "applicationContext", applicationContext);
+        ReflectionTestUtils.setField(stateExecutorService, "shiftsService", shiftsService);
+        ReflectionTestUtils.setField(stateExecutorService, "securityService", securityService);
+        ReflectionTestUtils.setField(stateExecutorService, "stateChangeWorkersPool", createStateChangeWorkersPool());
+
+        PowerMockito.mockStatic(SearchRestrictions.class);
+        PowerMockito.mockStatic(SearchOrders.class);
+
+        given(applicationContext.getBeansOfType(TestStateService.class)).willReturn(
+                ImmutableMap.of("testStateService", stateService));
+        given(stateService.getChangeEntityDescriber()).willReturn(describer);
+        given(stateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class), eq(describer)))
+                .willAnswer(invocation -> invocation.getArguments()[0]);
+        given(stateService.onBeforeSave(any(Entity.class), anyString(), anyString(), any(Entity.class), eq(describer)))
+                .willAnswer(invocation -> invocation.getArguments()[0]);
+        given(stateService.onAfterSave(any(Entity.class), anyString(), anyString(), any(Entity.class), eq(describer)))
+                .willAnswer(invocation -> invocation.getArguments()[0]);
+
+        given(describer.getOwnerDataDefinition()).willReturn(ownerDD);
+        given(describer.getDataDefinition()).willReturn(stateChangeDD);
+        given(describer.getOwnerStateFieldName()).willReturn("state");
+        given(describer.getSourceStateFieldName()).willReturn("sourceState");
+        given(describer.getTargetStateFieldName()).willReturn("targetState");
+        given(describer.getOwnerFieldName()).willReturn("owner");
+        given(describer.getStatusFieldName()).willReturn("status");
+
+        given(ownerDD.find()).willReturn(ownersCriteria);
+        given(ownersCriteria.add(any())).willReturn(ownersCriteria);
+        given(ownersCriteria.addOrder(any())).willReturn(ownersCriteria);
+        given(ownersCriteria.list()).willReturn(ownersResult);
+        given(ownerDD.save(any(Entity.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        given(stateChangeDD.create()).willAnswer(invocation -> mockStateChange());
+        given(stateChangeDD.find()).willReturn(stateChangesCriteria);
+        given(stateChangesCriteria.add(any())).willReturn(stateChangesCriteria);
+        given(stateChangesCriteria.list()).willReturn(stateChangesResult);
+        given(stateChangesResult.getTotalNumberOfEntities()).willReturn(0);
+        given(stateChangeDD.save(any(Entity.class))).willAnswer(invocation -> invocation.getArguments()[0]);
+
+        stubOwner(owner1, 1L);
+        stubOwner(owner2, 2L);
+        stubOwner(owner3, 3L);
+
+        CURRENT_TENANT_ID.set(L_TENANT_ID);
+    }
+
+    @After
+    public void shutdown() {
+        CURRENT_TENANT_ID.remove();
+    }
+
+    @Test
+    public void shouldNotStopOtherChangesWhenOneEntityFails() {
+        // given
+        given(ownersResult.getEntities()).willReturn(Lists.newArrayList(owner1, owner2, owner3));
+        given(stateService.onValidate(eq(owner2), anyString(), anyString(), any(Entity.class), eq(describer))).willThrow(
+                new IllegalStateException("failure"));
+
+        // when
+        List<StateChangeMessages> messages = stateExecutorService.changeStates(TestStateService.class,
+                Lists.newArrayList(1L, 2L, 3L), 1L, "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(3, messages.size());
+
+        verify(ownerDD).save(owner1);
+        verify(ownerDD, never()).save(owner2);
+        verify(ownerDD).save(owner3);
+        verify(owner2).setField("state", "01draft");
+
+        verifySuccessful(messages.get(0));
+        verifyFailed(messages.get(1));
+        verifySuccessful(messages.get(2));
+    }
+
+    @Test
+    public void shouldReturnMessagesInOrderOfEntities() {
+        // given
+        given(ownersResult.getEntities()).willReturn(Lists.newArrayList(owner1, owner2, owner3));
+        given(stateService.onValidate(eq(owner1), anyString(), anyString(), any(Entity.class), eq(describer))).willThrow(
+                new IllegalStateException("failure"));
+        given(stateService.onValidate(eq(owner3), anyString(), anyString(), any(Entity.class), eq(describer))).willThrow(
+                new IllegalStateException("failure"));
+
+        // when
+        List<StateChangeMessages> messages = stateExecutorService.changeStates(TestStateService.class,
+                Lists.newArrayList(3L, 1L, 2L), 1L, "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(3, messages.size());
+
+        verifyFailed(messages.get(0));
+        verifySuccessful(messages.get(1));
+        verifyFailed(messages.get(2));
+    }
+
+    @Test
+    public void shouldChangeSingleEntityInCallingThread() {
+        // given
+        StateChangeWorkersPool stateChangeWorkersPool = mock(StateChangeWorkersPool.class);
+
+        ReflectionTestUtils.setField(stateExecutorService, "stateChangeWorkersPool", stateChangeWorkersPool);
+
+        given(ownersResult.getEntities()).willReturn(Lists.newArrayList(owner1));
+
+        // when
+        List<StateChangeMessages> messages = stateExecutorService.changeStates(TestStateService.class,
+                Lists.newArrayList(1L), 1L, "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(1, messages.size());
+
+        verify(ownerDD).save(owner1);
+        verify(owner1).setField(StateExecutorService.USER_CHANGE_STATE, 1L);
+        verifyZeroInteractions(stateChangeWorkersPool);
+        verifySuccessful(messages.get(0));
+    }
+
+    @Test
+    public void shouldChangeStatesInTenantOfCaller() {
+        // given
+        Set<Integer> tenantsIds = Sets.newConcurrentHashSet();
+
+        given(ownersResult.getEntities()).willReturn(Lists.newArrayList(owner1, owner2, owner3));
+        given(stateService.onValidate(any(Entity.class), anyString(), anyString(), any(Entity.class), eq(describer)))
+                .willAnswer(invocation -> {
+                    tenantsIds.add(CURRENT_TENANT_ID.get());
+
+                    return invocation.getArguments()[0];
+                });
+
+        // when
+        stateExecutorService.changeStates(TestStateService.class, Lists.newArrayList(1L, 2L, 3L), 1L, "admin",
+                L_TARGET_STATE);
+
+        // then
+        assertEquals(Sets.newHashSet(L_TENANT_ID), tenantsIds);
+    }
+
+    @Test
+    public void shouldPassMessagesOfFormChangeToView() {
+        // given
+        ViewDefinitionState view = mock(ViewDefinitionState.class);
+        FormComponent form = mock(FormComponent.class);
+
+        given(view.tryFindComponentByReference("grid")).willReturn(Optional.absent());
+        given(view.tryFindComponentByReference("form")).willReturn(Optional.of(form));
+        given(form.getEntity()).willReturn(owner1);
+        given(form.getEntityId()).willReturn(1L);
+        given(ownerDD.get(1L)).willReturn(owner1);
+
+        // when
+        stateExecutorService.changeState(TestStateService.class, view, new String[] { L_TARGET_STATE });
+
+        // then
+        verify(ownerDD).save(owner1);
+        verify(view).addMessage("states.messages.change.successful", MessageType.SUCCESS);
+        verify(form).setEntity(owner1);
+    }
+
+    @Test
+    public void shouldNotChangeAnythingWithoutSelectedEntities() {
+        // when
+        List<StateChangeMessages> messages = stateExecutorService.changeStates(TestStateService.class,
+                Lists.<Long> newArrayList(), 1L, "admin", L_TARGET_STATE);
+
+        // then
+        assertEquals(0, messages.size());
+
+        verify(ownerDD, never()).find();
+        verify(ownerDD, never()).save(any(Entity.class));
+    }
+
+    private void verifySuccessful(final StateChangeMessages messages) {
+        ComponentMessagesHolder messagesHolder = mock(ComponentMessagesHolder.class);
+
+        messages.copyTo(messagesHolder);
+
+        verify(messagesHolder).addMessage("states.messages.change.successful", MessageType.SUCCESS);
+        verifyNoMoreInteractions(messagesHolder);
+    }
+
+    private void verifyFailed(final StateChangeMessages messages) {
+        ComponentMessagesHolder messagesHolder = mock(ComponentMessagesHolder.class);
+
+        messages.copyTo(messagesHolder);
+
+        InOrder inOrder = inOrder(messagesHolder);
+        inOrder.verify(messagesHolder).addMessage("states.messages.change.failure", MessageType.FAILURE);
+        inOrder.verify(messagesHolder).addMessage("states.messages.change.failure.internalServerError", MessageType.FAILURE);
+        verifyNoMoreInteractions(messagesHolder);
+    }
+
+    private void stubOwner(final Entity owner, final Long id) {
+        given(owner.getId()).willReturn(id);
+        given(owner.getDataDefinition()).willReturn(ownerDD);
+        given(owner.getStringField("state")).willReturn("01draft");
+        given(owner.isValid()).willReturn(true);
+    }
+
+    private StateChangeWorkersPool createStateChangeWorkersPool() {
+        ThreadContextPropagation threadContextPropagation = new ThreadContextPropagation();
+        StateChangeWorkersPool stateChangeWorkersPool = new StateChangeWorkersPool();
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> CURRENT_TENANT_ID.get());
+        willAnswer(invocation -> {
+            CURRENT_TENANT_ID.set((Integer) invocation.getArguments()[0]);
+
+            try {
+                ((MultiTenantCallback) invocation.getArguments()[1]).invoke();
+            } finally {
+                CURRENT_TENANT_ID.remove();
+            }
+
+            return null;
+        }).given(multiTenantService).doInMultiTenantContext(anyInt(), any(MultiTenantCallback.class));
+
+        ReflectionTestUtils.setField(threadContextPropagation, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(stateChangeWorkersPool, "threadContextPropagation", threadContextPropagation);
+
+        return stateChangeWorkersPool;
+    }
+
+    private Entity mockStateChange() {
+        Entity stateChange = mock(Entity.class);
+
+        given(stateChange.getDataDefinition()).willReturn(stateChangeDD);
+        given(stateChange.getStringField("sourceState")).willReturn("01draft");
+        given(stateChange.getStringField("targetState")).willReturn(L_TARGET_STATE);
+        given(stateChange.isValid()).willReturn(true);
+
+        return stateChange;
+    }
+
+    interface TestStateService extends StateService {
+    }
+
+}
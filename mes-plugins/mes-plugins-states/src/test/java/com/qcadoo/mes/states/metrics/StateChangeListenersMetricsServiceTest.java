@@ -0,0 +1,88 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.states.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class StateChangeListenersMetricsServiceTest {
+
+    private static final String L_FIRST_LISTENER = "com.qcadoo.mes.test.FirstListenerAspect.onAccept";
+
+    private static final String L_SECOND_LISTENER = "com.qcadoo.mes.test.SecondListenerAspect.onAccept";
+
+    private StateChangeListenersMetricsService stateChangeListenersMetricsService;
+
+    @Before
+    public final void init() {
+        stateChangeListenersMetricsService = new StateChangeListenersMetricsService();
+    }
+
+    @Test
+    public final void shouldAggregateInvocationsPerListenerAndPhase() {
+        // when
+        stateChangeListenersMetricsService.record(L_FIRST_LISTENER, 1, TimeUnit.MILLISECONDS.toNanos(10));
+        stateChangeListenersMetricsService.record(L_FIRST_LISTENER, 1, TimeUnit.MILLISECONDS.toNanos(30));
+        stateChangeListenersMetricsService.record(L_FIRST_LISTENER, 2, TimeUnit.MILLISECONDS.toNanos(5));
+        stateChangeListenersMetricsService.record(L_SECOND_LISTENER, 1, TimeUnit.MILLISECONDS.toNanos(100));
+
+        // then
+        List<StateChangeListenerMetrics> metrics = stateChangeListenersMetricsService.getMetrics();
+
+        assertEquals(3, metrics.size());
+
+        StateChangeListenerMetrics slowest = metrics.get(0);
+
+        assertEquals(L_SECOND_LISTENER, slowest.getListener());
+        assertEquals(1L, slowest.getInvocations());
+
+        StateChangeListenerMetrics first = metrics.get(1);
+
+        assertEquals(L_FIRST_LISTENER, first.getListener());
+        assertEquals(1, first.getPhase());
+        assertEquals(2L, first.getInvocations());
+        assertEquals(40L, first.getTotalMillis());
+        assertEquals(20L, first.getAverageMillis());
+        assertEquals(30L, first.getMaxMillis());
+    }
+
+    @Test
+    public final void shouldClearMetricsOnReset() {
+        // given
+        stateChangeListenersMetricsService.record(L_FIRST_LISTENER, 1, TimeUnit.MILLISECONDS.toNanos(10));
+
+        // when
+        stateChangeListenersMetricsService.reset();
+
+        // then
+        assertTrue(stateChangeListenersMetricsService.getMetrics().isEmpty());
+    }
+
+}
@@ -0,0 +1,101 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.dto.CompiledTechnology;
+import com.qcadoo.mes.technologies.states.constants.TechnologyState;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+/**
+ * Keeps compiled operation trees of accepted technologies. Accepted technologies can't be edited, so entries are dropped only
+ * when technology is saved (which includes every state change) or gets too old. Technologies ids are unique only within a
+ * tenant, so compiled technologies are kept per tenant.
+ */
+@Service
+public class CompiledTechnologyService {
+
+    private static final long L_COMPILED_TECHNOLOGY_MAX_AGE = 30 * 60 * 1000L;
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    private final Map<Integer, Map<Long, CompiledTechnology>> compiledTechnologiesByTenant = new ConcurrentHashMap<>();
+
+    public Optional<CompiledTechnology> getCompiledTechnology(final Entity technology) {
+        if (Objects.isNull(technology.getId())
+                || !TechnologyState.ACCEPTED.getStringValue().equals(technology.getStringField(TechnologyFields.STATE))) {
+            return Optional.empty();
+        }
+
+        Map<Long, CompiledTechnology> compiledTechnologies = getCompiledTechnologies(multiTenantService.getCurrentTenantId());
+        CompiledTechnology compiledTechnology = compiledTechnologies.get(technology.getId());
+
+        if (Objects.isNull(compiledTechnology)
+                || System.currentTimeMillis() - compiledTechnology.getCompiledAt() > L_COMPILED_TECHNOLOGY_MAX_AGE) {
+            compiledTechnology = CompiledTechnology.compile(technology);
+
+            compiledTechnologies.put(technology.getId(), compiledTechnology);
+        }
+
+        return Optional.of(compiledTechnology);
+    }
+
+    public void invalidate(final Long technologyId) {
+        if (Objects.isNull(technologyId)) {
+            return;
+        }
+
+        int tenantId = multiTenantService.getCurrentTenantId();
+
+        getCompiledTechnologies(tenantId).remove(technologyId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+                @Override
+                public void afterCompletion(final int status) {
+                    getCompiledTechnologies(tenantId).remove(technologyId);
+                }
+
+            });
+        }
+    }
+
+    private Map<Long, CompiledTechnology> getCompiledTechnologies(final int tenantId) {
+        return compiledTechnologiesByTenant.computeIfAbsent(tenantId, id -> new ConcurrentHashMap<>());
+    }
+
+}
@@ -0,0 +1,163 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.dto.CompiledTechnology;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.TechnologyExplosion;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.NumberService;
+
+/**
+ * Explodes technologies of many orders at once. Orders with the same compiled technology and planned quantity share one
+ * explosion, distinct explosions of compiled technologies run in parallel. Technologies which can't be compiled are exploded in
+ * the calling thread, as they need the database session.
+ */
+@Service
+public class ProductQuantitiesExplosionService {
+
+    private static final String L_TECHNOLOGY = "technology";
+
+    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
+
+    private static final int L_PARALLELISM = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+
+    private final ForkJoinPool explosionsPool = new ForkJoinPool(L_PARALLELISM);
+
+    @Autowired
+    private NumberService numberService;
+
+    @Autowired
+    private CompiledTechnologyService compiledTechnologyService;
+
+    @Autowired
+    private ProductQuantitiesService productQuantitiesService;
+
+    /**
+     * Returns explosions of orders technologies for their planned quantities, in orders order. Orders sharing an explosion get
+     * the same instance, so it mustn't be modified.
+     */
+    public List<TechnologyExplosion> explodeOrders(final List<Entity> orders) {
+        Map<List<Object>, CompiledTechnology> compiledTechnologies = Maps.newLinkedHashMap();
+        List<List<Object>> ordersKeys = Lists.newArrayList();
+        List<TechnologyExplosion> explosions = Lists.newArrayList();
+
+        for (Entity order : orders) {
+            BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
+
+            Entity technology = order.getBelongsToField(L_TECHNOLOGY);
+
+            if (technology == null) {
+                throw new IllegalStateException("Order doesn't contain technology.");
+            }
+
+            Optional<CompiledTechnology> compiledTechnology = compiledTechnologyService.getCompiledTechnology(technology);
+
+            if (compiledTechnology.isPresent()) {
+                List<Object> key = Lists.newArrayList(technology.getId(), plannedQuantity);
+
+                compiledTechnologies.putIfAbsent(key, compiledTechnology.get());
+                ordersKeys.add(key);
+                explosions.add(null);
+            } else {
+                Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+                Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+                ordersKeys.add(null);
+                explosions.add(new TechnologyExplosion(productQuantitiesService
+                        .getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity, operationRuns,
+                                nonComponents), operationRuns, nonComponents));
+            }
+        }
+
+        Map<List<Object>, TechnologyExplosion> compiledExplosions = explode(compiledTechnologies);
+
+        for (int i = 0; i < explosions.size(); i++) {
+            if (explosions.get(i) == null) {
+                explosions.set(i, compiledExplosions.get(ordersKeys.get(i)));
+            }
+        }
+
+        return explosions;
+    }
+
+    private Map<List<Object>, TechnologyExplosion> explode(final Map<List<Object>, CompiledTechnology> compiledTechnologies) {
+        MathContext mathContext = numberService.getMathContext();
+
+        Map<List<Object>, TechnologyExplosion> compiledExplosions = Maps.newConcurrentMap();
+
+        if (compiledTechnologies.size() < 2) {
+            compiledTechnologies.forEach((key, compiledTechnology) -> compiledExplosions.put(key,
+                    explode(compiledTechnology, (BigDecimal) key.get(1), mathContext)));
+
+            return compiledExplosions;
+        }
+
+        try {
+            explosionsPool.submit(() -> compiledTechnologies.entrySet().parallelStream()
+                    .forEach(entry -> compiledExplosions.put(entry.getKey(),
+                            explode(entry.getValue(), (BigDecimal) entry.getKey().get(1), mathContext)))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("Exploding technologies was interrupted.", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Exploding technologies failed.", e.getCause());
+        }
+
+        return compiledExplosions;
+    }
+
+    private TechnologyExplosion explode(final CompiledTechnology compiledTechnology, final BigDecimal plannedQuantity,
+            final MathContext mathContext) {
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        return new TechnologyExplosion(compiledTechnology.explode(plannedQuantity, mathContext, operationRuns, nonComponents),
+                operationRuns, nonComponents);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        explosionsPool.shutdownNow();
+    }
+
+}
@@ -58,6 +58,13 @@ public interface ProductQuantitiesService {
      */
     OperationProductComponentWithQuantityContainer getProductComponentQuantities(final Entity order);
 
+    /**
+     * @param orders Given list of orders
+     * @return Map of order ids to their product quantities, the same as returned by
+     * {@link #getProductComponentQuantities(Entity)}, with orders of the same technology and quantity exploded once
+     */
+    Map<Long, OperationProductComponentWithQuantityContainer> getProductComponentQuantitiesForOrders(final List<Entity> orders);
+
     /**
      * @param orders Given list of orders
      * @return Map of products and their quantities (products that occur in multiple operations or even in multiple orders are
@@ -25,9 +25,11 @@ package com.qcadoo.mes.technologies;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,9 +46,11 @@ import com.qcadoo.mes.technologies.constants.ProductComponentFields;
 import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.mes.technologies.dto.CompiledTechnology;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
 import com.qcadoo.mes.technologies.dto.ProductQuantitiesHolder;
+import com.qcadoo.mes.technologies.dto.TechnologyExplosion;
 import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
@@ -59,10 +63,6 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
 
     private static final String L_ORDER = "order";
 
-    private static final String L_TECHNOLOGY = "technology";
-
-    private static final String L_PLANNED_QUANTITY = "plannedQuantity";
-
     private static final String L_QUANTITY = "quantity";
 
     @Autowired
@@ -71,6 +71,12 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     @Autowired
     private DataDefinitionService dataDefinitionService;
 
+    @Autowired
+    private CompiledTechnologyService compiledTechnologyService;
+
+    @Autowired
+    private ProductQuantitiesExplosionService productQuantitiesExplosionService;
+
     @Override
     public ProductQuantitiesHolder getProductComponentQuantities(final Entity technology, final BigDecimal givenQuantity) {
         Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
@@ -194,6 +200,13 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     public OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForTechnology(final Entity technology,
             final BigDecimal givenQuantity, final Map<Long, BigDecimal> operationRuns,
             final Set<OperationProductComponentHolder> nonComponents) {
+        Optional<CompiledTechnology> compiledTechnology = compiledTechnologyService.getCompiledTechnology(technology);
+
+        if (compiledTechnology.isPresent()) {
+            return compiledTechnology.get().explode(givenQuantity, numberService.getMathContext(), operationRuns,
+                    nonComponents);
+        }
+
         OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
 
         EntityTree operationComponents = getOperationComponentsFromTechnology(technology);
@@ -216,22 +229,42 @@ public class ProductQuantitiesServiceImpl implements ProductQuantitiesService {
     private OperationProductComponentWithQuantityContainer getProductComponentWithQuantitiesForOrders(final List<Entity> orders,
             final Map<Long, BigDecimal> operationRuns, final Set<OperationProductComponentHolder> nonComponents,
             final boolean onTheFly) {
-        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
+        return groupOperationProductComponentWithQuantities(getProductComponentWithQuantitiesForEachOrder(orders, operationRuns,
+                nonComponents, onTheFly));
+    }
 
-        for (Entity order : orders) {
-            BigDecimal plannedQuantity = order.getDecimalField(L_PLANNED_QUANTITY);
+    /**
+     * Orders are exploded by {@link ProductQuantitiesExplosionService}, results are merged into a map keyed by order id.
+     */
+    private Map<Long, OperationProductComponentWithQuantityContainer> getProductComponentWithQuantitiesForEachOrder(
+            final List<Entity> orders, final Map<Long, BigDecimal> operationRuns,
+            final Set<OperationProductComponentHolder> nonComponents, final boolean onTheFly) {
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
 
-            Entity technology = order.getBelongsToField(L_TECHNOLOGY);
+        List<TechnologyExplosion> ordersExplosions = productQuantitiesExplosionService.explodeOrders(orders);
 
-            if (technology == null) {
-                throw new IllegalStateException("Order doesn't contain technology.");
-            }
+        for (int i = 0; i < orders.size(); i++) {
+            TechnologyExplosion explosion = ordersExplosions.get(i);
 
-            productComponentWithQuantitiesForOrders.put(order.getId(),
-                    getProductComponentWithQuantitiesForTechnology(technology, plannedQuantity, operationRuns, nonComponents));
+            operationRuns.putAll(explosion.getOperationRuns());
+            nonComponents.addAll(explosion.getNonComponents());
+            productComponentWithQuantitiesForOrders.put(orders.get(i).getId(), explosion.getProductComponentWithQuantities());
         }
 
-        return groupOperationProductComponentWithQuantities(productComponentWithQuantitiesForOrders);
+        return productComponentWithQuantitiesForOrders;
+    }
+
+    @Override
+    public Map<Long, OperationProductComponentWithQuantityContainer> getProductComponentQuantitiesForOrders(
+            final List<Entity> orders) {
+        Map<Long, OperationProductComponentWithQuantityContainer> productComponentWithQuantitiesForOrders = Maps.newHashMap();
+
+        getProductComponentWithQuantitiesForEachOrder(orders, Maps.newHashMap(), Sets.newHashSet(), false).forEach(
+                (orderId, productComponentWithQuantities) -> productComponentWithQuantitiesForOrders.put(orderId,
+                        groupOperationProductComponentWithQuantities(Collections.singletonMap(orderId,
+                                productComponentWithQuantities))));
+
+        return productComponentWithQuantitiesForOrders;
     }
 
     @Override
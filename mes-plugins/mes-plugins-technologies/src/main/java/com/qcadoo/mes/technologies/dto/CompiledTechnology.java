@@ -0,0 +1,312 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.dto;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.qcadoo.mes.technologies.constants.OperationProductInComponentFields;
+import com.qcadoo.mes.technologies.constants.TechnologyFields;
+import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
+import com.qcadoo.model.api.Entity;
+
+/**
+ * Immutable, flattened operation tree of a technology. Operations are kept in pre-order with indices of their parents, product
+ * components point to quantity slots (one slot for each distinct {@link OperationProductComponentHolder}), so explosion for
+ * given quantity is a single pass over arrays without touching the database.
+ */
+public final class CompiledTechnology {
+
+    private static final int L_NO_PARENT = -1;
+
+    private final Long technologyId;
+
+    private final long technologyProductId;
+
+    private final long compiledAt;
+
+    private final long[] operationComponentIds;
+
+    private final int[] parentIndices;
+
+    private final boolean[] areProductQuantitiesDivisible;
+
+    private final boolean[] areTjDivisible;
+
+    private final int[] inComponentsOffsets;
+
+    private final int[] inComponentsSlots;
+
+    private final long[] inComponentsProductIds;
+
+    private final int[] outComponentsOffsets;
+
+    private final int[] outComponentsSlots;
+
+    private final long[] outComponentsProductIds;
+
+    private final OperationProductComponentHolder[] slotsHolders;
+
+    private final BigDecimal[] slotsQuantities;
+
+    private CompiledTechnology(final Builder builder) {
+        this.technologyId = builder.technologyId;
+        this.technologyProductId = builder.technologyProductId;
+        this.compiledAt = System.currentTimeMillis();
+        this.operationComponentIds = builder.operationComponentIds.stream().mapToLong(Long::longValue).toArray();
+        this.parentIndices = builder.parentIndices.stream().mapToInt(Integer::intValue).toArray();
+        this.areProductQuantitiesDivisible = toArray(builder.areProductQuantitiesDivisible);
+        this.areTjDivisible = toArray(builder.areTjDivisible);
+        this.inComponentsOffsets = builder.inComponentsOffsets.stream().mapToInt(Integer::intValue).toArray();
+        this.inComponentsSlots = builder.inComponentsSlots.stream().mapToInt(Integer::intValue).toArray();
+        this.inComponentsProductIds = builder.inComponentsProductIds.stream().mapToLong(Long::longValue).toArray();
+        this.outComponentsOffsets = builder.outComponentsOffsets.stream().mapToInt(Integer::intValue).toArray();
+        this.outComponentsSlots = builder.outComponentsSlots.stream().mapToInt(Integer::intValue).toArray();
+        this.outComponentsProductIds = builder.outComponentsProductIds.stream().mapToLong(Long::longValue).toArray();
+        this.slotsHolders = builder.slotsHolders.toArray(new OperationProductComponentHolder[builder.slotsHolders.size()]);
+        this.slotsQuantities = builder.slotsQuantities.toArray(new BigDecimal[builder.slotsQuantities.size()]);
+    }
+
+    public static CompiledTechnology compile(final Entity technology) {
+        Builder builder = new Builder(technology);
+
+        Entity root = technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS).getRoot();
+
+        if (Objects.nonNull(root)) {
+            builder.addOperationComponent(root, L_NO_PARENT);
+        }
+
+        return new CompiledTechnology(builder);
+    }
+
+    public Long getTechnologyId() {
+        return technologyId;
+    }
+
+    public long getCompiledAt() {
+        return compiledAt;
+    }
+
+    /**
+     * Calculates quantities of product components and operation runs needed to produce given quantity of technology product,
+     * the same way as tree traversing in ProductQuantitiesService does.
+     */
+    public OperationProductComponentWithQuantityContainer explode(final BigDecimal givenQuantity,
+            final MathContext mathContext, final Map<Long, BigDecimal> operationRuns,
+            final Set<OperationProductComponentHolder> nonComponents) {
+        OperationProductComponentWithQuantityContainer operationProductComponentWithQuantityContainer = new OperationProductComponentWithQuantityContainer();
+
+        if (operationComponentIds.length == 0) {
+            return operationProductComponentWithQuantityContainer;
+        }
+
+        BigDecimal[] quantities = slotsQuantities.clone();
+
+        for (long operationComponentId : operationComponentIds) {
+            operationRuns.put(operationComponentId, BigDecimal.ONE);
+        }
+
+        for (int index = 0; index < operationComponentIds.length; index++) {
+            int parentIndex = parentIndices[index];
+
+            if (parentIndex == L_NO_PARENT) {
+                int outComponent = findOutComponent(index, technologyProductId);
+
+                if (outComponent != L_NO_PARENT) {
+                    multiply(index, givenQuantity, quantities[outComponentsSlots[outComponent]], quantities, mathContext,
+                            operationRuns);
+                }
+            } else {
+                int firstInComponent = inComponentsOffsets[parentIndex];
+                int lastInComponent = inComponentsOffsets[parentIndex + 1];
+
+                for (int inComponent = firstInComponent; inComponent < lastInComponent; inComponent++) {
+                    int outComponent = findOutComponent(index, inComponentsProductIds[inComponent]);
+
+                    if (outComponent != L_NO_PARENT) {
+                        multiply(index, quantities[inComponentsSlots[inComponent]],
+                                quantities[outComponentsSlots[outComponent]], quantities, mathContext, operationRuns);
+
+                        nonComponents.add(slotsHolders[inComponentsSlots[inComponent]]);
+                    }
+                }
+            }
+        }
+
+        for (int slot = 0; slot < slotsHolders.length; slot++) {
+            operationProductComponentWithQuantityContainer.put(slotsHolders[slot], quantities[slot]);
+        }
+
+        return operationProductComponentWithQuantityContainer;
+    }
+
+    private int findOutComponent(final int index, final long productId) {
+        for (int outComponent = outComponentsOffsets[index]; outComponent < outComponentsOffsets[index + 1]; outComponent++) {
+            if (outComponentsProductIds[outComponent] == productId) {
+                return outComponent;
+            }
+        }
+
+        return L_NO_PARENT;
+    }
+
+    private void multiply(final int index, final BigDecimal needed, final BigDecimal actual, final BigDecimal[] quantities,
+            final MathContext mathContext, final Map<Long, BigDecimal> operationRuns) {
+        BigDecimal multiplier = needed.divide(actual, mathContext);
+
+        if (!areProductQuantitiesDivisible[index]) {
+            // It's intentional to round up the operation runs
+            multiplier = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        BigDecimal runs = multiplier;
+
+        if (!areTjDivisible[index]) {
+            runs = multiplier.setScale(0, RoundingMode.CEILING);
+        }
+
+        operationRuns.put(operationComponentIds[index], runs);
+
+        for (int inComponent = inComponentsOffsets[index]; inComponent < inComponentsOffsets[index + 1]; inComponent++) {
+            multiply(quantities, inComponentsSlots[inComponent], multiplier, mathContext);
+        }
+        for (int outComponent = outComponentsOffsets[index]; outComponent < outComponentsOffsets[index + 1]; outComponent++) {
+            multiply(quantities, outComponentsSlots[outComponent], multiplier, mathContext);
+        }
+    }
+
+    private void multiply(final BigDecimal[] quantities, final int slot, final BigDecimal multiplier,
+            final MathContext mathContext) {
+        quantities[slot] = quantities[slot].multiply(multiplier, mathContext).setScale(5, RoundingMode.CEILING);
+    }
+
+    private static boolean[] toArray(final List<Boolean> values) {
+        boolean[] array = new boolean[values.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+
+        return array;
+    }
+
+    private static final class Builder {
+
+        private final Long technologyId;
+
+        private final long technologyProductId;
+
+        private final List<Long> operationComponentIds = Lists.newArrayList();
+
+        private final List<Integer> parentIndices = Lists.newArrayList();
+
+        private final List<Boolean> areProductQuantitiesDivisible = Lists.newArrayList();
+
+        private final List<Boolean> areTjDivisible = Lists.newArrayList();
+
+        private final List<Integer> inComponentsOffsets = Lists.newArrayList(0);
+
+        private final List<Integer> inComponentsSlots = Lists.newArrayList();
+
+        private final List<Long> inComponentsProductIds = Lists.newArrayList();
+
+        private final List<Integer> outComponentsOffsets = Lists.newArrayList(0);
+
+        private final List<Integer> outComponentsSlots = Lists.newArrayList();
+
+        private final List<Long> outComponentsProductIds = Lists.newArrayList();
+
+        private final List<OperationProductComponentHolder> slotsHolders = Lists.newArrayList();
+
+        private final List<BigDecimal> slotsQuantities = Lists.newArrayList();
+
+        private final Map<OperationProductComponentHolder, Integer> slots = Maps.newHashMap();
+
+        private Builder(final Entity technology) {
+            this.technologyId = technology.getId();
+            this.technologyProductId = technology.getBelongsToField(TechnologyFields.PRODUCT).getId();
+        }
+
+        private void addOperationComponent(final Entity operationComponent, final int parentIndex) {
+            int index = operationComponentIds.size();
+
+            operationComponentIds.add(operationComponent.getId());
+            parentIndices.add(parentIndex);
+            areProductQuantitiesDivisible.add(operationComponent
+                    .getBooleanField(TechnologyOperationComponentFields.ARE_PRODUCT_QUANTITIES_DIVISIBLE));
+            areTjDivisible.add(operationComponent.getBooleanField(TechnologyOperationComponentFields.IS_TJ_DIVISIBLE));
+
+            for (Entity operationProductInComponent : operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS)) {
+                inComponentsSlots.add(addSlot(operationProductInComponent));
+                inComponentsProductIds.add(getProductId(operationProductInComponent));
+            }
+            for (Entity operationProductOutComponent : operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_OUT_COMPONENTS)) {
+                outComponentsSlots.add(addSlot(operationProductOutComponent));
+                outComponentsProductIds.add(getProductId(operationProductOutComponent));
+            }
+
+            inComponentsOffsets.add(inComponentsSlots.size());
+            outComponentsOffsets.add(outComponentsSlots.size());
+
+            for (Entity child : operationComponent.getHasManyField(TechnologyOperationComponentFields.CHILDREN)) {
+                addOperationComponent(child, index);
+            }
+        }
+
+        private int addSlot(final Entity operationProductComponent) {
+            OperationProductComponentHolder operationProductComponentHolder = new OperationProductComponentHolder(
+                    operationProductComponent);
+            BigDecimal quantity = operationProductComponent.getDecimalField(OperationProductInComponentFields.QUANTITY);
+
+            Integer slot = slots.get(operationProductComponentHolder);
+
+            if (Objects.isNull(slot)) {
+                slot = slotsHolders.size();
+
+                slots.put(operationProductComponentHolder, slot);
+                slotsHolders.add(operationProductComponentHolder);
+                slotsQuantities.add(quantity);
+            } else {
+                slotsQuantities.set(slot, quantity);
+            }
+
+            return slot;
+        }
+
+        private long getProductId(final Entity operationProductComponent) {
+            return operationProductComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId();
+        }
+
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.mes.technologies.dto.CompiledTechnology;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentHolder;
+import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
+import com.qcadoo.mes.technologies.dto.TechnologyExplosion;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+import com.qcadoo.model.api.NumberService;
+
+public class ProductQuantitiesExplosionServiceTest {
+
+    private ProductQuantitiesExplosionService productQuantitiesExplosionService;
+
+    @Mock
+    private NumberService numberService;
+
+    @Mock
+    private CompiledTechnologyService compiledTechnologyService;
+
+    @Mock
+    private ProductQuantitiesService productQuantitiesService;
+
+    @Mock
+    private Entity technology1, technology2, technology3, product1, product2, product3, product4;
+
+    @Mock
+    private Entity operationComponent1, operationComponent2;
+
+    @Mock
+    private Entity productInComponent1, productInComponent2, productInComponent3;
+
+    @Mock
+    private Entity productOutComponent2, productOutComponent4;
+
+    @Mock
+    private DataDefinition inDD, outDD;
+
+    @Mock
+    private EntityTree operationComponents;
+
+    private CompiledTechnology compiledTechnology1, compiledTechnology2;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        productQuantitiesExplosionService = new ProductQuantitiesExplosionService();
+
+        ReflectionTestUtils.setField(productQuantitiesExplosionService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesExplosionService, "compiledTechnologyService", compiledTechnologyService);
+        ReflectionTestUtils.setField(productQuantitiesExplosionService, "productQuantitiesService", productQuantitiesService);
+
+        given(numberService.getMathContext()).willReturn(MathContext.DECIMAL64);
+
+        given(inDD.getName()).willReturn("operationProductInComponent");
+        given(outDD.getName()).willReturn("operationProductOutComponent");
+
+        given(product1.getId()).willReturn(1L);
+        given(product2.getId()).willReturn(2L);
+        given(product3.getId()).willReturn(3L);
+        given(product4.getId()).willReturn(4L);
+
+        given(operationComponent1.getId()).willReturn(11L);
+        given(operationComponent2.getId()).willReturn(12L);
+
+        stubTechnology(technology1, 1L);
+        stubTechnology(technology2, 2L);
+        stubTechnology(technology3, 3L);
+        given(operationComponents.getRoot()).willReturn(operationComponent2);
+
+        stubProductComponent(productInComponent1, 21L, inDD, product1, operationComponent1, "5");
+        stubProductComponent(productOutComponent2, 22L, outDD, product2, operationComponent1, "3");
+        stubProductComponent(productInComponent2, 23L, inDD, product2, operationComponent2, "2");
+        stubProductComponent(productInComponent3, 24L, inDD, product3, operationComponent2, "1.5");
+        stubProductComponent(productOutComponent4, 25L, outDD, product4, operationComponent2, "1");
+
+        stubHasMany(operationComponent1, "operationProductInComponents", asList(productInComponent1));
+        stubHasMany(operationComponent1, "operationProductOutComponents", asList(productOutComponent2));
+        stubHasMany(operationComponent1, "children", Collections.<Entity> emptyList());
+        stubHasMany(operationComponent2, "operationProductInComponents", asList(productInComponent2, productInComponent3));
+        stubHasMany(operationComponent2, "operationProductOutComponents", asList(productOutComponent4));
+        stubHasMany(operationComponent2, "children", asList(operationComponent1));
+
+        compiledTechnology1 = CompiledTechnology.compile(technology1);
+        compiledTechnology2 = CompiledTechnology.compile(technology2);
+
+        given(compiledTechnologyService.getCompiledTechnology(technology1)).willReturn(Optional.of(compiledTechnology1));
+        given(compiledTechnologyService.getCompiledTechnology(technology2)).willReturn(Optional.of(compiledTechnology2));
+        given(compiledTechnologyService.getCompiledTechnology(technology3)).willReturn(Optional.empty());
+    }
+
+    @Test
+    public void shouldExplodeInParallelTheSameAsSerially() {
+        // given
+        List<Entity> orders = asList(mockOrder(technology1, "4.5"), mockOrder(technology2, "10"), mockOrder(technology1, "7"),
+                mockOrder(technology2, "0.333"), mockOrder(technology1, "4.5"));
+
+        // when
+        List<TechnologyExplosion> explosions = productQuantitiesExplosionService.explodeOrders(orders);
+
+        // then
+        assertEquals(orders.size(), explosions.size());
+
+        for (int i = 0; i < orders.size(); i++) {
+            Entity order = orders.get(i);
+            CompiledTechnology compiledTechnology = technology1.equals(order.getBelongsToField("technology"))
+                    ? compiledTechnology1 : compiledTechnology2;
+
+            Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+            Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+            OperationProductComponentWithQuantityContainer productComponentWithQuantities = compiledTechnology.explode(
+                    order.getDecimalField("plannedQuantity"), MathContext.DECIMAL64, operationRuns, nonComponents);
+
+            assertEquals(productComponentWithQuantities, explosions.get(i).getProductComponentWithQuantities());
+            assertEquals(operationRuns, explosions.get(i).getOperationRuns());
+            assertEquals(nonComponents, explosions.get(i).getNonComponents());
+        }
+
+        assertSame(explosions.get(0), explosions.get(4));
+    }
+
+    @Test
+    public void shouldExplodeNotCompiledTechnologyWithProductQuantitiesService() {
+        // given
+        Entity order = mockOrder(technology3, "2");
+        OperationProductComponentWithQuantityContainer productComponentWithQuantities =
+                new OperationProductComponentWithQuantityContainer();
+
+        given(productQuantitiesService.getProductComponentWithQuantitiesForTechnology(eq(technology3), eq(new BigDecimal("2")),
+                anyMapOf(Long.class, BigDecimal.class), anySetOf(OperationProductComponentHolder.class))).willReturn(
+                productComponentWithQuantities);
+
+        // when
+        List<TechnologyExplosion> explosions = productQuantitiesExplosionService.explodeOrders(asList(order));
+
+        // then
+        assertSame(productComponentWithQuantities, explosions.get(0).getProductComponentWithQuantities());
+        verify(productQuantitiesService).getProductComponentWithQuantitiesForTechnology(eq(technology3), eq(new BigDecimal("2")),
+                anyMapOf(Long.class, BigDecimal.class), anySetOf(OperationProductComponentHolder.class));
+    }
+
+    private Entity mockOrder(final Entity technology, final String plannedQuantity) {
+        Entity order = mock(Entity.class);
+
+        given(order.getBelongsToField("technology")).willReturn(technology);
+        given(order.getDecimalField("plannedQuantity")).willReturn(new BigDecimal(plannedQuantity));
+
+        return order;
+    }
+
+    private void stubTechnology(final Entity technology, final Long id) {
+        given(technology.getId()).willReturn(id);
+        given(technology.getBelongsToField("product")).willReturn(product4);
+        given(technology.getTreeField("operationComponents")).willReturn(operationComponents);
+    }
+
+    private void stubProductComponent(final Entity productComponent, final Long id, final DataDefinition dataDefinition,
+            final Entity product, final Entity operationComponent, final String quantity) {
+        given(productComponent.getId()).willReturn(id);
+        given(productComponent.getDataDefinition()).willReturn(dataDefinition);
+        given(productComponent.getBelongsToField("product")).willReturn(product);
+        given(productComponent.getBelongsToField("operationComponent")).willReturn(operationComponent);
+        given(productComponent.getDecimalField("quantity")).willReturn(new BigDecimal(quantity));
+    }
+
+    private void stubHasMany(final Entity entity, final String fieldName, final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willAnswer(invocation -> entities.iterator());
+        given(entity.getHasManyField(fieldName)).willReturn(entityList);
+    }
+
+}
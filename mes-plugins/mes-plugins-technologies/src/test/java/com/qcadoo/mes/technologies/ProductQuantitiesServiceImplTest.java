@@ -35,6 +35,7 @@ import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import org.junit.Before;
 import org.junit.Ignore;
@@ -83,6 +84,9 @@ public class ProductQuantitiesServiceImplTest {
     @Mock
     private NumberService numberService;
 
+    @Mock
+    private CompiledTechnologyService compiledTechnologyService;
+
     private EntityTree tree;
 
     private Map<Entity, List<Entity>> productInComponents;
@@ -112,6 +116,17 @@ public class ProductQuantitiesServiceImplTest {
         productQuantitiesService = new ProductQuantitiesServiceImpl();
 
         ReflectionTestUtils.setField(productQuantitiesService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesService, "compiledTechnologyService", compiledTechnologyService);
+
+        ProductQuantitiesExplosionService productQuantitiesExplosionService = new ProductQuantitiesExplosionService();
+
+        ReflectionTestUtils.setField(productQuantitiesExplosionService, "numberService", numberService);
+        ReflectionTestUtils.setField(productQuantitiesExplosionService, "compiledTechnologyService", compiledTechnologyService);
+        ReflectionTestUtils.setField(productQuantitiesExplosionService, "productQuantitiesService", productQuantitiesService);
+        ReflectionTestUtils.setField(productQuantitiesService, "productQuantitiesExplosionService",
+                productQuantitiesExplosionService);
+
+        when(compiledTechnologyService.getCompiledTechnology(technology)).thenReturn(Optional.empty());
 
         when(order.getBelongsToField("technology")).thenReturn(technology);
 
@@ -0,0 +1,158 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.technologies.dto;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.EntityTree;
+
+public class CompiledTechnologyTest {
+
+    @Mock
+    private Entity technology, product1, product2, product3, product4;
+
+    @Mock
+    private Entity operationComponent1, operationComponent2;
+
+    @Mock
+    private Entity productInComponent1, productInComponent2, productInComponent3, productOutComponent2, productOutComponent4;
+
+    @Mock
+    private DataDefinition inDD, outDD;
+
+    @Mock
+    private EntityTree operationComponents;
+
+    @Before
+    public void init() {
+        MockitoAnnotations.initMocks(this);
+
+        given(inDD.getName()).willReturn("operationProductInComponent");
+        given(outDD.getName()).willReturn("operationProductOutComponent");
+
+        given(product1.getId()).willReturn(1L);
+        given(product2.getId()).willReturn(2L);
+        given(product3.getId()).willReturn(3L);
+        given(product4.getId()).willReturn(4L);
+
+        given(operationComponent1.getId()).willReturn(11L);
+        given(operationComponent2.getId()).willReturn(12L);
+
+        given(technology.getId()).willReturn(1L);
+        given(technology.getBelongsToField("product")).willReturn(product4);
+        given(technology.getTreeField("operationComponents")).willReturn(operationComponents);
+        given(operationComponents.getRoot()).willReturn(operationComponent2);
+
+        stubProductComponent(productInComponent1, 21L, inDD, product1, operationComponent1, 5);
+        stubProductComponent(productOutComponent2, 22L, outDD, product2, operationComponent1, 1);
+        stubProductComponent(productInComponent2, 23L, inDD, product2, operationComponent2, 2);
+        stubProductComponent(productInComponent3, 24L, inDD, product3, operationComponent2, 1);
+        stubProductComponent(productOutComponent4, 25L, outDD, product4, operationComponent2, 1);
+
+        stubHasMany(operationComponent1, "operationProductInComponents", asList(productInComponent1));
+        stubHasMany(operationComponent1, "operationProductOutComponents", asList(productOutComponent2));
+        stubHasMany(operationComponent1, "children", Collections.<Entity> emptyList());
+        stubHasMany(operationComponent2, "operationProductInComponents", asList(productInComponent2, productInComponent3));
+        stubHasMany(operationComponent2, "operationProductOutComponents", asList(productOutComponent4));
+        stubHasMany(operationComponent2, "children", asList(operationComponent1));
+    }
+
+    @Test
+    public void shouldExplodeQuantitiesAndOperationRuns() {
+        // given
+        CompiledTechnology compiledTechnology = CompiledTechnology.compile(technology);
+
+        Map<Long, BigDecimal> operationRuns = Maps.newHashMap();
+        Set<OperationProductComponentHolder> nonComponents = Sets.newHashSet();
+
+        // when
+        OperationProductComponentWithQuantityContainer quantities = compiledTechnology.explode(new BigDecimal("4.5"),
+                MathContext.DECIMAL64, operationRuns, nonComponents);
+
+        // then
+        assertEquals(0, new BigDecimal(50).compareTo(quantities.get(productInComponent1)));
+        assertEquals(0, new BigDecimal(10).compareTo(quantities.get(productOutComponent2)));
+        assertEquals(0, new BigDecimal(10).compareTo(quantities.get(productInComponent2)));
+        assertEquals(0, new BigDecimal(5).compareTo(quantities.get(productInComponent3)));
+        assertEquals(0, new BigDecimal(5).compareTo(quantities.get(productOutComponent4)));
+        assertEquals(0, new BigDecimal(5).compareTo(operationRuns.get(12L)));
+        assertEquals(0, new BigDecimal(10).compareTo(operationRuns.get(11L)));
+        assertEquals(1, nonComponents.size());
+        assertTrue(nonComponents.contains(new OperationProductComponentHolder(productInComponent2)));
+    }
+
+    @Test
+    public void shouldNotChangeCompiledQuantitiesBetweenExplosions() {
+        // given
+        CompiledTechnology compiledTechnology = CompiledTechnology.compile(technology);
+
+        compiledTechnology.explode(new BigDecimal(100), MathContext.DECIMAL64, Maps.newHashMap(), Sets.newHashSet());
+
+        // when
+        OperationProductComponentWithQuantityContainer quantities = compiledTechnology.explode(BigDecimal.ONE,
+                MathContext.DECIMAL64, Maps.newHashMap(), Sets.newHashSet());
+
+        // then
+        assertEquals(0, new BigDecimal(10).compareTo(quantities.get(productInComponent1)));
+        assertEquals(0, new BigDecimal(2).compareTo(quantities.get(productInComponent2)));
+    }
+
+    private void stubProductComponent(final Entity productComponent, final Long id, final DataDefinition dataDefinition,
+            final Entity product, final Entity operationComponent, final int quantity) {
+        given(productComponent.getId()).willReturn(id);
+        given(productComponent.getDataDefinition()).willReturn(dataDefinition);
+        given(productComponent.getBelongsToField("product")).willReturn(product);
+        given(productComponent.getBelongsToField("operationComponent")).willReturn(operationComponent);
+        given(productComponent.getDecimalField("quantity")).willReturn(new BigDecimal(quantity));
+    }
+
+    private void stubHasMany(final Entity entity, final String fieldName, final List<Entity> entities) {
+        EntityList entityList = mock(EntityList.class);
+
+        given(entityList.iterator()).willReturn(entities.iterator());
+        given(entity.getHasManyField(fieldName)).willReturn(entityList);
+    }
+
+}
@@ -24,7 +24,10 @@
 package com.qcadoo.mes.warehouseMinimalState;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -52,6 +55,19 @@ public class WarehouseMinimalStateHelper {
                 .setMaxResults(1).uniqueResult().getDecimalField("orderedQuantity");
     }
 
+    public Map<Long, BigDecimal> getOrderedQuantitiesForProductsAndLocation(final Long warehouse,
+            final Collection<Long> products) {
+        String query = "select op.product.id as productId, COALESCE(sum(op.orderedQuantity),0) as orderedQuantity "
+                + "from #deliveries_orderedProduct op, #deliveries_delivery del where op.delivery.id=del.id "
+                + "and op.product.id in (:products) and del.location.id = :warehouseId "
+                + "and del.state in ('01draft', '02prepared', '03duringCorrection', '05approved') and del.active=true "
+                + "group by op.product.id";
+        return getResourceStockDtoDD().find(query).setParameter("warehouseId", warehouse).setParameterList("products", products)
+                .list().getEntities().stream()
+                .collect(Collectors.toMap(orderedQuantity -> (Long) orderedQuantity.getField("productId"),
+                        orderedQuantity -> orderedQuantity.getDecimalField("orderedQuantity")));
+    }
+
     // WARNING unused argument is used in aspect in plugin integration
     public List<Entity> getWarehouseStockWithTooSmallMinState(final Entity warehouse, final List<Entity> product) {
 
@@ -25,6 +25,7 @@ package com.qcadoo.mes.workPlans.pdf.document;
 
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.lowagie.text.*;
 import com.lowagie.text.pdf.*;
 import com.qcadoo.localization.api.TranslationService;
@@ -86,13 +87,17 @@ public class WorkPlanPdfForDivision {
         ListMultimap<String, OrderOperationComponent> titleToOperationComponent = groupingContainer
                 .getTitleToOperationComponent();
 
+        Map<List<Long>, Optional<Entity>> componentsTechnologies = Maps.newHashMap();
+        Map<Long, Set<String>> technologiesProductNames = Maps.newHashMap();
+
         for (String title : titleToOperationComponent.keySet()) {
             addWorkPlanTitle(document, workPlan, title, locale);
             List<OrderOperationComponent> components = titleToOperationComponent.get(title);
             List<OrderOperationComponent> sorted = sortOrderOperationComponents(components);
             addMainOrders(document, sorted, locale);
             for (OrderOperationComponent orderOperationComponent : sorted) {
-                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, locale);
+                addOperationTable(pdfWriter, groupingContainer, document, orderOperationComponent, componentsTechnologies,
+                        technologiesProductNames, locale);
 
             }
             document.newPage();
@@ -137,7 +142,8 @@ public class WorkPlanPdfForDivision {
     }
 
     private void addOperationTable(PdfWriter pdfWriter, GroupingContainer groupingContainer, Document document,
-            OrderOperationComponent orderOperationComponent, Locale locale) throws DocumentException {
+            OrderOperationComponent orderOperationComponent, Map<List<Long>, Optional<Entity>> componentsTechnologies,
+            Map<Long, Set<String>> technologiesProductNames, Locale locale) throws DocumentException {
 
         Map<Long, Map<OperationProductColumn, ColumnAlignment>> outputProductsMap = groupingContainer
                 .getOperationComponentIdProductOutColumnToAlignment();
@@ -172,8 +178,8 @@ public class WorkPlanPdfForDivision {
 
         addOrderSummary(headerCell, order, product, operationComponent);
 
-        addOperationProductsTable(inputCell, addMaterialComponents(operationProductInComponents(operationComponent), order),
-                inputProductColumnAlignmentMap, ProductDirection.IN, locale);
+        addOperationProductsTable(inputCell, addMaterialComponents(operationProductInComponents(operationComponent), order,
+                componentsTechnologies, technologiesProductNames), inputProductColumnAlignmentMap, ProductDirection.IN, locale);
         addOperationProductsTable(outputCell, operationProductOutComponents(operationComponent), outputProductColumnAlignmentMap,
                 ProductDirection.OUT, locale);
 
@@ -294,25 +300,18 @@ public class WorkPlanPdfForDivision {
         cell.addElement(table);
     }
 
-    private List<Entity> addMaterialComponents(List<Entity> productComponents, Entity order) {
+    private List<Entity> addMaterialComponents(List<Entity> productComponents, Entity order,
+            Map<List<Long>, Optional<Entity>> componentsTechnologies, Map<Long, Set<String>> technologiesProductNames) {
         for (Entity productComponent : productComponents) {
             if (productComponent.getBooleanField(OperationProductInComponentFieldsWP.SHOW_MATERIAL_COMPONENT)) {
                 Entity product = productComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT);
 
-                Entity technology = getTechnologyForComponent(productComponent, order);
-                if (technology != null) {
-                    Set<String> distinctProductNames = new HashSet<>();
-                    EntityList operationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
-                    for (Entity operationComponent : operationComponents) {
-                        EntityList operationProductsInComponents = operationComponent
-                                .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
-                        List<String> ProductNames = operationProductsInComponents.stream()
-                                .filter(opic -> !technologyService.isIntermediateProduct(opic))
-                                .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT))
-                                .map(p -> p.getStringField(ProductFields.NAME)).collect(Collectors.toList());
-
-                        distinctProductNames.addAll(ProductNames);
-                    }
+                Optional<Entity> technology = componentsTechnologies.computeIfAbsent(
+                        Arrays.asList(order.getId(), product.getId()),
+                        key -> Optional.ofNullable(getTechnologyForComponent(productComponent, order)));
+                if (technology.isPresent()) {
+                    Set<String> distinctProductNames = technologiesProductNames.computeIfAbsent(technology.get().getId(),
+                            technologyId -> getDistinctProductNames(technology.get()));
                     if (!distinctProductNames.isEmpty()) {
                         String name = product.getStringField(ProductFields.NAME) + "\n- "
                                 + String.join("\n- ", distinctProductNames);
@@ -325,10 +324,26 @@ public class WorkPlanPdfForDivision {
         return productComponents;
     }
 
+    private Set<String> getDistinctProductNames(Entity technology) {
+        Set<String> distinctProductNames = new HashSet<>();
+        EntityList operationComponents = technology.getHasManyField(TechnologyFields.OPERATION_COMPONENTS);
+        for (Entity operationComponent : operationComponents) {
+            EntityList operationProductsInComponents = operationComponent
+                    .getHasManyField(TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS);
+            List<String> productNames = operationProductsInComponents.stream()
+                    .filter(opic -> !technologyService.isIntermediateProduct(opic))
+                    .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT))
+                    .map(p -> p.getStringField(ProductFields.NAME)).collect(Collectors.toList());
+
+            distinctProductNames.addAll(productNames);
+        }
+        return distinctProductNames;
+    }
+
     private Entity getTechnologyForComponent(Entity productComponent, Entity order) {
         Entity product = productComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT);
         List<Entity> productOrders = order.getDataDefinition().find().add(SearchRestrictions.belongsTo("parent", order))
-                .add(SearchRestrictions.belongsTo("product", product)).list().getEntities();
+                .add(SearchRestrictions.belongsTo("product", product)).setMaxResults(1).list().getEntities();
         if (productOrders != null && !productOrders.isEmpty()) {
             return productOrders.get(0).getBelongsToField(OrderFields.TECHNOLOGY);
         } else {
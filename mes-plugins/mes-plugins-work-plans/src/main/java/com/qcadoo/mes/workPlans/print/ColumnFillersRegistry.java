@@ -0,0 +1,166 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.print;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.workPlans.constants.WorkPlansConstants;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.tenant.api.MultiTenantService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps column fillers of work plan column models resolved to beans and bound method handles, so that class loading, bean
+ * lookup and method resolution are done once per column model and evaluator method. Column definitions are tenant data, so
+ * fillers are kept per tenant and only the current tenant's ones are cleared whenever column definitions change.
+ */
+@Service
+public class ColumnFillersRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ColumnFillersRegistry.class);
+
+    private static final String L_COLUMN_FILLER = "columnFiller";
+
+    private static final MethodType L_EVALUATOR_METHOD_TYPE = MethodType.methodType(Map.class, List.class);
+
+    private final Map<Integer, Map<String, List<CompiledColumnFiller>>> columnFillersByTenant = new ConcurrentHashMap<>();
+
+    @Autowired
+    private MultiTenantService multiTenantService;
+
+    @Autowired
+    private DataDefinitionService dataDefinitionService;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    public List<CompiledColumnFiller> getColumnFillers(final String columnsModelName, final String methodName) {
+        return getTenantColumnFillers().computeIfAbsent(columnsModelName + "." + methodName,
+                key -> compileColumnFillers(columnsModelName, methodName));
+    }
+
+    public void invalidate() {
+        getTenantColumnFillers().clear();
+    }
+
+    private Map<String, List<CompiledColumnFiller>> getTenantColumnFillers() {
+        return columnFillersByTenant.computeIfAbsent(multiTenantService.getCurrentTenantId(), id -> new ConcurrentHashMap<>());
+    }
+
+    private List<CompiledColumnFiller> compileColumnFillers(final String columnsModelName, final String methodName) {
+        List<Entity> columnDefinitions = dataDefinitionService.get(WorkPlansConstants.PLUGIN_IDENTIFIER, columnsModelName)
+                .find().list().getEntities();
+
+        Set<String> classNames = new LinkedHashSet<>();
+
+        for (Entity columnDefinition : columnDefinitions) {
+            classNames.add(columnDefinition.getStringField(L_COLUMN_FILLER));
+        }
+
+        List<CompiledColumnFiller> compiledColumnFillers = Lists.newArrayList();
+
+        for (String className : classNames) {
+            compiledColumnFillers.add(compileColumnFiller(className, methodName));
+        }
+
+        return compiledColumnFillers;
+    }
+
+    private CompiledColumnFiller compileColumnFiller(final String className, final String methodName) {
+        Class<?> clazz;
+        try {
+            clazz = Thread.currentThread().getContextClassLoader().loadClass(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Failed to find class: " + className, e);
+        }
+
+        Object bean = applicationContext.getBean(clazz);
+
+        if (bean == null) {
+            throw new IllegalStateException("Failed to find bean for class: " + className);
+        }
+
+        MethodHandle methodHandle;
+
+        try {
+            methodHandle = MethodHandles.publicLookup().findVirtual(clazz, methodName, L_EVALUATOR_METHOD_TYPE).bindTo(bean);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            throw new IllegalStateException("Failed to find column evaulator method in class: " + className, e);
+        }
+
+        return new CompiledColumnFiller(className + "." + methodName, methodHandle);
+    }
+
+    public static final class CompiledColumnFiller {
+
+        private final String name;
+
+        private final MethodHandle methodHandle;
+
+        private CompiledColumnFiller(final String name, final MethodHandle methodHandle) {
+            this.name = name;
+            this.methodHandle = methodHandle;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map<Entity, Map<String, String>> fill(final List<Entity> orders) {
+            long startTime = System.nanoTime();
+
+            Map<Entity, Map<String, String>> values;
+
+            try {
+                values = (Map<Entity, Map<String, String>>) methodHandle.invoke(orders);
+            } catch (Throwable e) {
+                throw new IllegalStateException("Failed to invoke column evaulator method", e);
+            }
+
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(String.format("Column filler %s evaluated %d order(s) in %d ms", name, orders.size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)));
+            }
+
+            return values;
+        }
+
+    }
+
+}
@@ -26,13 +26,17 @@ package com.qcadoo.mes.workPlans.print;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Locale;
-import java.util.Optional;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.lowagie.text.Document;
 import com.lowagie.text.DocumentException;
 import com.lowagie.text.pdf.PdfWriter;
@@ -48,7 +52,6 @@ import com.qcadoo.mes.technologies.constants.TechnologiesConstants;
 import com.qcadoo.mes.technologies.constants.TechnologyFields;
 import com.qcadoo.mes.technologies.constants.TechnologyOperationComponentFields;
 import com.qcadoo.mes.technologies.dto.OperationProductComponentWithQuantityContainer;
-import com.qcadoo.mes.technologies.grouping.OperationMergeService;
 import com.qcadoo.mes.workPlans.constants.WorkPlanFields;
 import com.qcadoo.mes.workPlans.pdf.document.WorkPlanPdf;
 import com.qcadoo.mes.workPlans.pdf.document.operation.grouping.container.GroupingContainer;
@@ -57,12 +60,19 @@ import com.qcadoo.model.api.DataDefinition;
 import com.qcadoo.model.api.DataDefinitionService;
 import com.qcadoo.model.api.Entity;
 import com.qcadoo.model.api.EntityList;
+import com.qcadoo.model.api.search.JoinType;
+import com.qcadoo.model.api.search.SearchOrders;
+import com.qcadoo.model.api.search.SearchRestrictions;
 import com.qcadoo.model.api.utils.EntityTreeUtilsService;
 import com.qcadoo.report.api.pdf.PdfDocumentWithWriterService;
 
 @Service
 public class WorkPlanPdfService extends PdfDocumentWithWriterService {
 
+    private static final String L_ORDER = "order";
+
+    private static final String L_ID = "id";
+
     @Autowired
     private TranslationService translationService;
 
@@ -72,9 +82,6 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
     @Autowired
     private WorkPlanPdf workPlanPdf;
 
-    @Autowired
-    private OperationMergeService operationMergeService;
-
     @Autowired
     private ProductQuantitiesServiceImpl productQuantitiesServiceImpl;
 
@@ -97,25 +104,47 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
             throws DocumentException {
         GroupingContainer groupingContainer = groupingContainerFactory.create(workPlan, locale);
 
-        for (Entity order : orders(workPlan)) {
-            OperationProductComponentWithQuantityContainer productQuantities = productQuantitiesServiceImpl
-                    .getProductComponentQuantities(order);
-            removeAlreadyExistsMergesForOrder(order);
-            for (Entity operationComponent : operationComponents(technology(order))) {
-                Entity updatedComponent = updateOperationProductComponents(order, operationComponent);
-                groupingContainer.add(order, updatedComponent, productQuantities);
-            }
-        }
+        fillGroupingContainer(groupingContainer, orders(workPlan));
 
         workPlanPdf.print(writer, groupingContainer, workPlan, document, locale);
 
     }
 
+    /**
+     * Quantities of all orders are exploded in one batch and production counting quantities are loaded with a single query.
+     * Operation components are added serially, as the grouping container persists operation merges.
+     */
+    public void fillGroupingContainer(final GroupingContainer groupingContainer, final List<Entity> orders) {
+        Map<Long, OperationProductComponentWithQuantityContainer> productQuantities = productQuantitiesServiceImpl
+                .getProductComponentQuantitiesForOrders(orders);
+        Map<Long, ListMultimap<Long, Entity>> productionCountingQuantities = getProductionCountingQuantities(orders);
+
+        removeAlreadyExistsMergesForOrders(orders);
+
+        for (Entity order : orders) {
+            ListMultimap<Long, Entity> orderProductionCountingQuantities = productionCountingQuantities.getOrDefault(
+                    order.getId(), ArrayListMultimap.create());
+
+            for (Entity operationComponent : operationComponents(technology(order))) {
+                Entity updatedComponent = updateOperationProductComponents(order, operationComponent,
+                        orderProductionCountingQuantities.get(operationComponent.getId()));
+                groupingContainer.add(order, updatedComponent, productQuantities.get(order.getId()));
+            }
+        }
+    }
+
     public Entity updateOperationProductComponents(final Entity order, final Entity operationComponent) {
-        if (!OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE))) {
-            List<Entity> productionCountingQuantities = basicProductionCountingService
-                    .getMaterialsForOperationFromProductionCountingQuantities(order, operationComponent);
+        if (isPending(order)) {
+            return operationComponent;
+        }
 
+        return updateOperationProductComponents(order, operationComponent,
+                basicProductionCountingService.getMaterialsForOperationFromProductionCountingQuantities(order, operationComponent));
+    }
+
+    private Entity updateOperationProductComponents(final Entity order, final Entity operationComponent,
+            final List<Entity> productionCountingQuantities) {
+        if (!isPending(order)) {
             List<Entity> inComponents = updateOperationProductComponents(operationComponent, productionCountingQuantities,
                     TechnologyOperationComponentFields.OPERATION_PRODUCT_IN_COMPONENTS,
                     ProductionCountingQuantityRole.USED.getStringValue(), dataDefinitionService.get(
@@ -140,33 +169,25 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
         List<Entity> productionCountingQuantitiesForRole = productionCountingQuantities.stream()
                 .filter(pcq -> role.equals(pcq.getStringField(ProductionCountingQuantityFields.ROLE)))
                 .collect(Collectors.toList());
-        List<Long> allProductionCountingQuantityIds = productionCountingQuantitiesForRole.stream()
-                .map(pcq -> pcq.getBelongsToField(ProductionCountingQuantityFields.PRODUCT).getId()).collect(Collectors.toList());
-
-        List<Entity> existingProductComponents = operationComponent
-                .getHasManyField(componentsField)
-                .stream()
-                .filter(opic -> allProductionCountingQuantityIds.contains(opic.getBelongsToField(
-                        OperationProductInComponentFields.PRODUCT).getId())).collect(Collectors.toList());
-
-        List<Long> existingProductComponentIds = existingProductComponents.stream()
-                .map(opic -> opic.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId())
-                .collect(Collectors.toList());
+        Set<Long> productionCountingQuantityProductIds = productionCountingQuantitiesForRole.stream()
+                .map(pcq -> pcq.getBelongsToField(ProductionCountingQuantityFields.PRODUCT).getId()).collect(Collectors.toSet());
+
+        Map<Long, Entity> existingProductComponents = Maps.newHashMap();
+        for (Entity productComponent : operationComponent.getHasManyField(componentsField)) {
+            Long productId = productComponent.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId();
+            if (productionCountingQuantityProductIds.contains(productId)) {
+                existingProductComponents.putIfAbsent(productId, productComponent);
+            }
+        }
 
         List<Entity> mergedProductComponents = Lists.newArrayList();
         for (Entity pcq : productionCountingQuantitiesForRole) {
             Entity product = pcq.getBelongsToField(ProductionCountingQuantityFields.PRODUCT);
             BigDecimal plannedQuantity = pcq.getDecimalField(ProductionCountingQuantityFields.PLANNED_QUANTITY);
-            if (existingProductComponentIds.contains(product.getId())) {
-                Optional<Entity> maybeExistingComponent = existingProductComponents
-                        .stream()
-                        .filter(component -> component.getBelongsToField(OperationProductInComponentFields.PRODUCT).getId()
-                                .equals(product.getId())).findFirst();
-                if (maybeExistingComponent.isPresent()) {
-                    Entity existingComponent = maybeExistingComponent.get();
-                    existingComponent.setField(OperationProductInComponentFields.QUANTITY, plannedQuantity);
-                    mergedProductComponents.add(existingComponent);
-                }
+            Entity existingComponent = existingProductComponents.get(product.getId());
+            if (existingComponent != null) {
+                existingComponent.setField(OperationProductInComponentFields.QUANTITY, plannedQuantity);
+                mergedProductComponents.add(existingComponent);
             } else {
                 Entity newComponent = dataDefinition.create();
                 newComponent.setField(OperationProductInComponentFields.PRODUCT, product);
@@ -178,6 +199,39 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
         return mergedProductComponents;
     }
 
+    private Map<Long, ListMultimap<Long, Entity>> getProductionCountingQuantities(final List<Entity> orders) {
+        Map<Long, ListMultimap<Long, Entity>> productionCountingQuantities = Maps.newHashMap();
+
+        List<Long> ordersIds = orders.stream().filter(order -> !isPending(order)).map(Entity::getId)
+                .collect(Collectors.toList());
+
+        if (ordersIds.isEmpty()) {
+            return productionCountingQuantities;
+        }
+
+        List<Entity> pcqs = basicProductionCountingService.getProductionCountingQuantityDD().find()
+                .createAlias(ProductionCountingQuantityFields.ORDER, L_ORDER, JoinType.INNER)
+                .add(SearchRestrictions.in(L_ORDER + ".id", ordersIds)).addOrder(SearchOrders.asc(L_ID)).list()
+                .getEntities();
+
+        for (Entity pcq : pcqs) {
+            Entity operationComponent = pcq.getBelongsToField(ProductionCountingQuantityFields.TECHNOLOGY_OPERATION_COMPONENT);
+
+            if (operationComponent != null) {
+                productionCountingQuantities
+                        .computeIfAbsent(pcq.getBelongsToField(ProductionCountingQuantityFields.ORDER).getId(),
+                                orderId -> ArrayListMultimap.create())
+                        .put(operationComponent.getId(), pcq);
+            }
+        }
+
+        return productionCountingQuantities;
+    }
+
+    private boolean isPending(final Entity order) {
+        return OrderState.PENDING.getStringValue().equals(order.getStringField(OrderFields.STATE));
+    }
+
     private List<Entity> operationComponents(Entity technology) {
         return entityTreeUtilsService.getSortedEntities(technology.getTreeField(TechnologyFields.OPERATION_COMPONENTS));
     }
@@ -190,15 +244,26 @@ public class WorkPlanPdfService extends PdfDocumentWithWriterService {
         return workPlan.getHasManyField(WorkPlanFields.ORDERS);
     }
 
-    private void removeAlreadyExistsMergesForOrder(Entity order) {
-        List<Entity> mergedProductInsByOrder = operationMergeService.findMergedProductInByOrder(order);
-        for (Entity entity : mergedProductInsByOrder) {
-            entity.getDataDefinition().delete(entity.getId());
+    private void removeAlreadyExistsMergesForOrders(final List<Entity> orders) {
+        List<Long> ordersIds = orders.stream().map(Entity::getId).collect(Collectors.toList());
+
+        if (ordersIds.isEmpty()) {
+            return;
         }
 
-        List<Entity> mergedProductOutsByOrder = operationMergeService.findMergedProductOutByOrder(order);
-        for (Entity entity : mergedProductOutsByOrder) {
-            entity.getDataDefinition().delete(entity.getId());
+        removeMerges(TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT_MERGE_PRODUCT_IN, ordersIds);
+        removeMerges(TechnologiesConstants.MODEL_TECHNOLOGY_OPERATION_COMPONENT_MERGE_PRODUCT_OUT, ordersIds);
+    }
+
+    private void removeMerges(final String modelName, final List<Long> ordersIds) {
+        DataDefinition mergeDD = dataDefinitionService.get(TechnologiesConstants.PLUGIN_IDENTIFIER, modelName);
+
+        List<Long> mergesIds = mergeDD.find().createAlias(L_ORDER, L_ORDER, JoinType.INNER)
+                .add(SearchRestrictions.in(L_ORDER + ".id", ordersIds)).list().getEntities().stream()
+                .map(Entity::getId).collect(Collectors.toList());
+
+        if (!mergesIds.isEmpty()) {
+            mergeDD.delete(mergesIds.toArray(new Long[0]));
         }
     }
 
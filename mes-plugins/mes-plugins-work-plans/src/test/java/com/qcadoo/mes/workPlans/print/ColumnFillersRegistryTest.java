@@ -0,0 +1,165 @@
+/**
+ * ***************************************************************************
+ * Copyright (c) 2010 Qcadoo Limited
+ * Project: Qcadoo MES
+ * Version: 1.4
+ *
+ * This file is part of Qcadoo.
+ *
+ * Qcadoo is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation; either version 3 of the License,
+ * or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA  02110-1301  USA
+ * ***************************************************************************
+ */
+package com.qcadoo.mes.workPlans.print;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.google.common.collect.Lists;
+import com.qcadoo.mes.workPlans.constants.WorkPlansConstants;
+import com.qcadoo.mes.workPlans.print.ColumnFillersRegistry.CompiledColumnFiller;
+import com.qcadoo.model.api.DataDefinition;
+import com.qcadoo.model.api.DataDefinitionService;
+import com.qcadoo.model.api.Entity;
+import com.qcadoo.model.api.search.SearchCriteriaBuilder;
+import com.qcadoo.model.api.search.SearchResult;
+import com.qcadoo.tenant.api.MultiTenantService;
+
+public class ColumnFillersRegistryTest {
+
+    private static final int L_TENANT_ID = 3;
+
+    private int currentTenantId;
+
+    private ColumnFillersRegistry columnFillersRegistry;
+
+    @Mock
+    private MultiTenantService multiTenantService;
+
+    @Mock
+    private DataDefinitionService dataDefinitionService;
+
+    @Mock
+    private ApplicationContext applicationContext;
+
+    @Mock
+    private DataDefinition columnForOrdersDD;
+
+    @Mock
+    private SearchCriteriaBuilder searchCriteriaBuilder;
+
+    @Mock
+    private SearchResult searchResult;
+
+    @Mock
+    private Entity firstColumn, secondColumn, order;
+
+    @Before
+    public final void init() {
+        MockitoAnnotations.initMocks(this);
+
+        columnFillersRegistry = new ColumnFillersRegistry();
+
+        ReflectionTestUtils.setField(columnFillersRegistry, "multiTenantService", multiTenantService);
+        ReflectionTestUtils.setField(columnFillersRegistry, "dataDefinitionService", dataDefinitionService);
+
+        currentTenantId = L_TENANT_ID;
+
+        given(multiTenantService.getCurrentTenantId()).willAnswer(invocation -> currentTenantId);
+        ReflectionTestUtils.setField(columnFillersRegistry, "applicationContext", applicationContext);
+
+        given(dataDefinitionService.get(WorkPlansConstants.PLUGIN_IDENTIFIER, WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS))
+                .willReturn(columnForOrdersDD);
+        given(columnForOrdersDD.find()).willReturn(searchCriteriaBuilder);
+        given(searchCriteriaBuilder.list()).willReturn(searchResult);
+        given(searchResult.getEntities()).willReturn(Lists.newArrayList(firstColumn, secondColumn));
+        given(firstColumn.getStringField("columnFiller")).willReturn(TestColumnFiller.class.getName());
+        given(secondColumn.getStringField("columnFiller")).willReturn(TestColumnFiller.class.getName());
+        given(applicationContext.getBean(TestColumnFiller.class)).willReturn(new TestColumnFiller());
+    }
+
+    @Test
+    public final void shouldCompileEachColumnFillerOnce() {
+        // when
+        List<CompiledColumnFiller> columnFillers = columnFillersRegistry.getColumnFillers(
+                WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+        columnFillersRegistry.getColumnFillers(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+
+        // then
+        assertEquals(1, columnFillers.size());
+        assertEquals("value", columnFillers.get(0).fill(Lists.newArrayList(order)).get(order).get("column"));
+        verify(columnForOrdersDD, times(1)).find();
+    }
+
+    @Test
+    public final void shouldCompileColumnFillersAgainAfterInvalidation() {
+        // given
+        columnFillersRegistry.getColumnFillers(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+
+        // when
+        columnFillersRegistry.invalidate();
+        columnFillersRegistry.getColumnFillers(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+
+        // then
+        verify(columnForOrdersDD, times(2)).find();
+    }
+
+    @Test
+    public final void shouldKeepColumnFillersPerTenant() {
+        // given
+        columnFillersRegistry.getColumnFillers(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+
+        currentTenantId = L_TENANT_ID + 1;
+
+        columnFillersRegistry.getColumnFillers(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+
+        // when
+        columnFillersRegistry.invalidate();
+
+        currentTenantId = L_TENANT_ID;
+
+        columnFillersRegistry.getColumnFillers(WorkPlansConstants.MODEL_COLUMN_FOR_ORDERS, "getOrderValues");
+
+        // then
+        verify(columnForOrdersDD, times(2)).find();
+    }
+
+    public static final class TestColumnFiller implements ColumnFiller {
+
+        @Override
+        public Map<Entity, Map<String, String>> getOrderValues(final List<Entity> orders) {
+            return Collections.singletonMap(orders.get(0), Collections.singletonMap("column", "value"));
+        }
+
+        @Override
+        public Map<Entity, Map<String, String>> getValues(final List<Entity> orders) {
+            return Collections.emptyMap();
+        }
+
+    }
+
+}